@@ -0,0 +1,199 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of DynamoDB items, used to keep cached items outside the
+ * Java heap. Every value is a one-byte type tag followed by its content; strings,
+ * numbers, and binary values are length-prefixed, and sets, lists, and maps are
+ * prefixed with their number of elements.
+ */
+final class AttributeValueCodec {
+    private static final byte S = 1;
+    private static final byte N = 2;
+    private static final byte B = 3;
+    private static final byte TRUE = 4;
+    private static final byte FALSE = 5;
+    private static final byte NUL = 6;
+    private static final byte SS = 7;
+    private static final byte NS = 8;
+    private static final byte BS = 9;
+    private static final byte L = 10;
+    private static final byte M = 11;
+
+    private AttributeValueCodec() {
+    }
+
+    /**
+     * Encodes an item into a new direct buffer that holds exactly the encoded bytes.
+     */
+    static ByteBuffer encodeDirect(Map<String, AttributeValue> item) {
+        byte[] encoded = encode(item);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length);
+        buffer.put(encoded).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    static byte[] encode(Map<String, AttributeValue> item) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeMap(out, item);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an item from the remaining bytes of the buffer, without moving its position.
+     */
+    static Map<String, AttributeValue> decode(ByteBuffer encoded) {
+        return readMap(encoded.duplicate());
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, AttributeValue> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, AttributeValue> attribute : map.entrySet()) {
+            writeString(out, attribute.getKey());
+            writeValue(out, attribute.getValue());
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, AttributeValue value) throws IOException {
+        switch (value.type()) {
+            case S -> {
+                out.writeByte(S);
+                writeString(out, value.s());
+            }
+            case N -> {
+                out.writeByte(N);
+                writeString(out, value.n());
+            }
+            case B -> {
+                out.writeByte(B);
+                writeBytes(out, value.b());
+            }
+            case BOOL -> out.writeByte(value.bool() ? TRUE : FALSE);
+            case NUL -> out.writeByte(NUL);
+            case SS -> {
+                out.writeByte(SS);
+                out.writeInt(value.ss().size());
+                for (String element : value.ss()) {
+                    writeString(out, element);
+                }
+            }
+            case NS -> {
+                out.writeByte(NS);
+                out.writeInt(value.ns().size());
+                for (String element : value.ns()) {
+                    writeString(out, element);
+                }
+            }
+            case BS -> {
+                out.writeByte(BS);
+                out.writeInt(value.bs().size());
+                for (SdkBytes element : value.bs()) {
+                    writeBytes(out, element);
+                }
+            }
+            case L -> {
+                out.writeByte(L);
+                out.writeInt(value.l().size());
+                for (AttributeValue element : value.l()) {
+                    writeValue(out, element);
+                }
+            }
+            case M -> {
+                out.writeByte(M);
+                writeMap(out, value.m());
+            }
+            default -> throw new IllegalArgumentException("Unsupported attribute value: " + value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeBytes(DataOutputStream out, SdkBytes value) throws IOException {
+        byte[] bytes = value.asByteArrayUnsafe();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Map<String, AttributeValue> readMap(ByteBuffer in) {
+        int size = in.getInt();
+        Map<String, AttributeValue> map = new HashMap<>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    private static AttributeValue readValue(ByteBuffer in) {
+        byte type = in.get();
+        return switch (type) {
+            case S -> AttributeValue.fromS(readString(in));
+            case N -> AttributeValue.fromN(readString(in));
+            case B -> AttributeValue.fromB(readBytes(in));
+            case TRUE -> AttributeValue.fromBool(true);
+            case FALSE -> AttributeValue.fromBool(false);
+            case NUL -> AttributeValue.fromNul(true);
+            case SS, NS -> {
+                int size = in.getInt();
+                List<String> elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(readString(in));
+                }
+                yield type == SS ? AttributeValue.fromSs(elements) : AttributeValue.fromNs(elements);
+            }
+            case BS -> {
+                int size = in.getInt();
+                List<SdkBytes> elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(readBytes(in));
+                }
+                yield AttributeValue.fromBs(elements);
+            }
+            case L -> {
+                int size = in.getInt();
+                List<AttributeValue> elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(readValue(in));
+                }
+                yield AttributeValue.fromL(elements);
+            }
+            case M -> AttributeValue.fromM(readMap(in));
+            default -> throw new IllegalStateException("Corrupt cache entry, unknown type " + type);
+        };
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] utf8 = new byte[in.getInt()];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static SdkBytes readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return SdkBytes.fromByteArrayUnsafe(bytes);
+    }
+}
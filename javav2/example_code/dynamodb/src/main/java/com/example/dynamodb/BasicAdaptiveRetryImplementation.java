@@ -33,6 +33,7 @@ import java.util.Map;
  * @snippet BasicAdaptiveRetryImplementation.createDynamoDbClientWithAdaptiveRetry
  * @snippet BasicAdaptiveRetryImplementation.createDynamoDbClientWithCustomAdaptiveRetry
  * @snippet BasicAdaptiveRetryImplementation.createDynamoDbClientWithRetryMode
+ * @snippet BasicAdaptiveRetryImplementation.createDynamoDbClientWithSharedGovernor
  */
 public class BasicAdaptiveRetryImplementation {
 
@@ -202,4 +203,32 @@ public class BasicAdaptiveRetryImplementation {
                 .build();
     }
     // snippet-end:[dynamodb.java2.basic_adaptive_retry.simple_client]
+
+    // snippet-start:[dynamodb.java2.basic_adaptive_retry.shared_governor_client]
+    /**
+     * Creates a DynamoDbClient that is paced by the JVM-wide ThrottlingGovernor.
+     *
+     * AdaptiveRetryStrategy limits the rate of each client on its own. When many clients
+     * in one JVM write to the same table, the governor lets them share one rate per table,
+     * which it learns from the throttling errors that any of the clients get. The
+     * clients keep a StandardRetryStrategy for their retries, because the governor
+     * already does the rate limiting that AdaptiveRetryStrategy would add.
+     *
+     * @return DynamoDbClient that shares its request rate with every other client
+     *         created by this method
+     */
+    public static DynamoDbClient createDynamoDbClientWithSharedGovernor() {
+        return DynamoDbClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                    .retryStrategy(StandardRetryStrategy.builder()
+                        .maxAttempts(5)
+                        .build())
+                    // Every client that adds this interceptor draws from the same limiters
+                    .addExecutionInterceptor(ThrottlingGovernor.shared().interceptor())
+                    .build())
+                .build();
+    }
+    // snippet-end:[dynamodb.java2.basic_adaptive_retry.shared_governor_client]
 }
@@ -5,6 +5,7 @@ package com.example.dynamodb;
 
 // snippet-start:[dynamodb.java2.batch.get.items.paginator.main]
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
@@ -13,6 +14,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class BatchGetItemsPaginator {
 
@@ -62,5 +65,29 @@ public class BatchGetItemsPaginator {
                     ", SongTitle: " + item.get("SongTitle").s());
             });
     }
+
+    /**
+     * Looks up many items concurrently, one key per call, the way a service handles
+     * independent requests. The loader coalesces the lookups into BatchGetItem requests
+     * of up to 100 keys, sends the same key only once, and retries unprocessed keys, so
+     * every lookup still gets its own result.
+     */
+    public static void getItemsCoalesced(DynamoDbAsyncClient dynamoDbAsyncClient, String tableName,
+                                         List<String> artists) {
+        try (BatchGetLoader loader = BatchGetLoader.create(dynamoDbAsyncClient, BatchGetLoader.Config.defaults())) {
+            List<CompletableFuture<Map<String, AttributeValue>>> lookups = artists.stream()
+                .map(artist -> loader.load(tableName, Map.of("Artist", AttributeValue.fromS(artist))))
+                .toList();
+            CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new)).join();
+
+            lookups.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .forEach(item -> System.out.println("Artist: " + item.get("Artist").s()));
+            BatchGetLoader.Stats stats = loader.stats();
+            System.out.printf("%d lookups took %d BatchGetItem requests (%.1f keys each).%n",
+                stats.loads(), stats.batches(), stats.averageBatchSize());
+        }
+    }
 }
 // snippet-end:[dynamodb.java2.batch.get.items.paginator.main]
\ No newline at end of file
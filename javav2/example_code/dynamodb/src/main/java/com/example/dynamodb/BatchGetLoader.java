@@ -0,0 +1,397 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single-item lookups into BatchGetItem requests, like a
+ * DataLoader.
+ *
+ * Callers ask for one key at a time with {@link #load(String, Map)} and get a future.
+ * The keys that arrive within a short window, or until 100 keys are waiting, are sent
+ * together in one BatchGetItem request. The same key asked for twice in a window is
+ * only requested once, and both callers get the same future. Keys of several tables can
+ * share a request.
+ *
+ * BatchGetItem can return some keys as UnprocessedKeys when the table is throttled or
+ * the response would exceed 16 MB. Those keys are sent again with exponential backoff
+ * and full jitter; only attempts that return nothing count against maxAttempts. Each
+ * future completes as soon as its item arrives, so one slow key doesn't hold up the rest
+ * of its batch. A key that doesn't exist completes with null, and keys that still fail
+ * complete exceptionally.
+ *
+ * Compared with one GetItem per lookup, this cuts the request count by up to 100 times
+ * for fan-out reads, at the cost of up to one window of added latency. Items are read
+ * with eventually consistent reads unless consistentRead is set.
+ */
+public class BatchGetLoader implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchGetLoader.class);
+
+    static final int MAX_KEYS_PER_BATCH = 100;
+
+    /**
+     * Settings for coalescing.
+     *
+     * @param window             how long the first key of a batch waits for more keys
+     * @param maxBatchSize       the number of keys that sends a batch right away, at most 100
+     * @param maxBatchesInFlight the number of BatchGetItem requests that are sent at the same time;
+     *                           further batches wait until one finishes
+     * @param maxAttempts        the number of times a batch is sent without getting anything back
+     *                           before its keys fail
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     * @param consistentRead     whether to use strongly consistent reads
+     */
+    public record Config(Duration window, int maxBatchSize, int maxBatchesInFlight, int maxAttempts,
+                         Duration retryBaseDelay, boolean consistentRead) {
+
+        public Config {
+            if (maxBatchSize < 1 || maxBatchSize > MAX_KEYS_PER_BATCH) {
+                throw new IllegalArgumentException("maxBatchSize must be between 1 and " + MAX_KEYS_PER_BATCH);
+            }
+            if (maxBatchesInFlight < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("maxBatchesInFlight and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns a 2 ms window, batches of 100 keys, 16 batches in flight, and 5 attempts starting
+         * with a 25 ms backoff, with eventually consistent reads.
+         */
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(2), MAX_KEYS_PER_BATCH, 16, 5, Duration.ofMillis(25), false);
+        }
+    }
+
+    /**
+     * Counters since the loader was created.
+     *
+     * @param loads             the number of calls to load
+     * @param deduplicatedLoads the calls that joined a lookup of the same key in the same window
+     * @param batches           the number of BatchGetItem requests, including retries
+     * @param keysRequested     the number of keys in those requests
+     * @param unprocessedKeys   the number of keys that were returned as unprocessed and sent again
+     */
+    public record Stats(long loads, long deduplicatedLoads, long batches, long keysRequested, long unprocessedKeys) {
+
+        /**
+         * Returns the average number of keys per BatchGetItem request.
+         */
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) keysRequested / batches;
+        }
+    }
+
+    private record TableKey(String tableName, Map<String, AttributeValue> key) {
+    }
+
+    private final Function<BatchGetItemRequest, CompletableFuture<BatchGetItemResponse>> batchGetItem;
+    private final Config config;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService ownedExecutor;
+    // Guarded by this: the keys of the window that's open, and the batches waiting for a free slot.
+    private Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> windowTimer;
+    private final Queue<Map<TableKey, CompletableFuture<Map<String, AttributeValue>>>> waitingBatches =
+        new ArrayDeque<>();
+    private int batchesInFlight;
+    private boolean closed;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong deduplicatedLoads = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong keysRequested = new AtomicLong();
+    private final AtomicLong unprocessedKeys = new AtomicLong();
+
+    BatchGetLoader(Function<BatchGetItemRequest, CompletableFuture<BatchGetItemResponse>> batchGetItem,
+                   Config config, ExecutorService ownedExecutor) {
+        this.batchGetItem = batchGetItem;
+        this.config = config;
+        this.ownedExecutor = ownedExecutor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("batch-get-window").factory());
+    }
+
+    /**
+     * Creates a loader that sends its batches with a DynamoDbAsyncClient.
+     */
+    public static BatchGetLoader create(DynamoDbAsyncClient dynamoDbAsyncClient, Config config) {
+        return new BatchGetLoader(dynamoDbAsyncClient::batchGetItem, config, null);
+    }
+
+    /**
+     * Creates a loader that sends its batches with a DynamoDbClient, on maxBatchesInFlight
+     * threads of its own.
+     */
+    public static BatchGetLoader create(DynamoDbClient dynamoDbClient, Config config) {
+        ExecutorService executor = Executors.newFixedThreadPool(config.maxBatchesInFlight(),
+            Thread.ofPlatform().daemon().name("batch-get-", 0).factory());
+        return new BatchGetLoader(request -> CompletableFuture.supplyAsync(
+            () -> dynamoDbClient.batchGetItem(request), executor), config, executor);
+    }
+
+    /**
+     * Looks up an item by its key.
+     *
+     * @param tableName the name of the table
+     * @param key       all key attributes of the item, and nothing else
+     * @return a future that completes with the item, or with null if there's no item with the key
+     * @throws IllegalStateException if the loader is closed
+     */
+    public CompletableFuture<Map<String, AttributeValue>> load(String tableName, Map<String, AttributeValue> key) {
+        loads.incrementAndGet();
+        TableKey tableKey = new TableKey(tableName, Map.copyOf(key));
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> fullBatch = null;
+        CompletableFuture<Map<String, AttributeValue>> future;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The loader is closed");
+            }
+            future = pending.get(tableKey);
+            if (future != null) {
+                deduplicatedLoads.incrementAndGet();
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(tableKey, future);
+            if (pending.size() >= config.maxBatchSize()) {
+                fullBatch = takePending();
+            } else if (pending.size() == 1) {
+                windowTimer = scheduler.schedule(this::flush, config.window().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            submit(fullBatch);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the keys that are waiting for the window to end right away.
+     */
+    public void flush() {
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        submit(batch);
+    }
+
+    /**
+     * Returns the counters since the loader was created.
+     */
+    public Stats stats() {
+        return new Stats(loads.get(), deduplicatedLoads.get(), batches.get(), keysRequested.get(),
+            unprocessedKeys.get());
+    }
+
+    /**
+     * Sends the keys that are waiting and stops accepting new ones. Batches in flight,
+     * waiting for a slot, or waiting to retry unprocessed keys still complete their
+     * futures; the loader's own threads stop once the last of them is done.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+        boolean idle;
+        synchronized (this) {
+            idle = batchesInFlight == 0 && waitingBatches.isEmpty();
+        }
+        if (idle) {
+            shutDownOwnedExecutor();
+        }
+    }
+
+    private void shutDownOwnedExecutor() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    // Called with the lock held.
+    private Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> takePending() {
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        return batch;
+    }
+
+    private void submit(Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch) {
+        synchronized (this) {
+            if (batchesInFlight >= config.maxBatchesInFlight()) {
+                waitingBatches.add(batch);
+                return;
+            }
+            batchesInFlight++;
+        }
+        send(batch, 1);
+    }
+
+    // A batch holds its slot until all of its keys are settled, retries included.
+    private void batchDone() {
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> next;
+        boolean lastAfterClose = false;
+        synchronized (this) {
+            next = waitingBatches.poll();
+            if (next == null) {
+                batchesInFlight--;
+                lastAfterClose = closed && batchesInFlight == 0;
+            }
+        }
+        if (next == null) {
+            if (lastAfterClose) {
+                shutDownOwnedExecutor();
+            }
+            return;
+        }
+        // The slot of the finished batch goes to the next one.
+        send(next, 1);
+    }
+
+    private void send(Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch, int attempt) {
+        Map<String, List<Map<String, AttributeValue>>> keysByTable = new HashMap<>();
+        batch.keySet().forEach(tableKey -> keysByTable
+            .computeIfAbsent(tableKey.tableName(), name -> new ArrayList<>()).add(tableKey.key()));
+        Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+        keysByTable.forEach((tableName, keys) -> requestItems.put(tableName, KeysAndAttributes.builder()
+            .keys(keys)
+            .consistentRead(config.consistentRead())
+            .build()));
+        batches.incrementAndGet();
+        keysRequested.addAndGet(batch.size());
+
+        CompletableFuture<BatchGetItemResponse> response;
+        try {
+            response = batchGetItem.apply(BatchGetItemRequest.builder().requestItems(requestItems).build());
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                    if (Retries.isRetryable(cause) && attempt < config.maxAttempts()) {
+                        retryLater(batch, attempt + 1);
+                        return;
+                    }
+                    batch.values().forEach(future -> future.completeExceptionally(cause));
+                    batchDone();
+                    return;
+                }
+                handleResponse(batch, result, attempt);
+            } catch (RuntimeException e) {
+                batch.values().forEach(future -> future.completeExceptionally(e));
+                batchDone();
+            }
+        });
+    }
+
+    private void handleResponse(Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch,
+                                BatchGetItemResponse response, int attempt) {
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> remaining = new LinkedHashMap<>(batch);
+        // Match every returned item to the key it was requested with.
+        response.responses().forEach((tableName, items) -> {
+            for (Map<String, AttributeValue> item : items) {
+                TableKey tableKey = keyOf(tableName, item, batch);
+                CompletableFuture<Map<String, AttributeValue>> future = remaining.remove(tableKey);
+                if (future != null) {
+                    future.complete(item);
+                }
+            }
+        });
+
+        Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> unprocessed = new LinkedHashMap<>();
+        response.unprocessedKeys().forEach((tableName, keysAndAttributes) -> {
+            for (Map<String, AttributeValue> key : keysAndAttributes.keys()) {
+                TableKey tableKey = new TableKey(tableName, key);
+                CompletableFuture<Map<String, AttributeValue>> future = remaining.remove(tableKey);
+                if (future != null) {
+                    unprocessed.put(tableKey, future);
+                }
+            }
+        });
+        // What's neither returned nor unprocessed doesn't exist.
+        remaining.values().forEach(future -> future.complete(null));
+
+        if (unprocessed.isEmpty()) {
+            batchDone();
+            return;
+        }
+        unprocessedKeys.addAndGet(unprocessed.size());
+        // Only attempts that return nothing count, as long as the table makes progress.
+        int nextAttempt = unprocessed.size() < batch.size() ? 1 : attempt + 1;
+        if (nextAttempt > config.maxAttempts()) {
+            IllegalStateException failure = new IllegalStateException(
+                "Keys were still unprocessed after " + config.maxAttempts() + " attempts");
+            unprocessed.values().forEach(future -> future.completeExceptionally(failure));
+            batchDone();
+            return;
+        }
+        logger.debug("{} of {} keys were unprocessed, retrying", unprocessed.size(), batch.size());
+        retryLater(unprocessed, nextAttempt);
+    }
+
+    // The key attributes of an item are the ones that its table's keys were requested with.
+    private static TableKey keyOf(String tableName, Map<String, AttributeValue> item,
+                                  Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch) {
+        for (TableKey requested : batch.keySet()) {
+            if (requested.tableName().equals(tableName)) {
+                Map<String, AttributeValue> key = new HashMap<>();
+                for (String name : requested.key().keySet()) {
+                    AttributeValue value = item.get(name);
+                    if (value == null) {
+                        throw new IllegalStateException("An item of table " + tableName
+                            + " returned by BatchGetItem has no key attribute " + name);
+                    }
+                    key.put(name, value);
+                }
+                return new TableKey(tableName, Map.copyOf(key));
+            }
+        }
+        return null;
+    }
+
+    // A retry after progress is sent as attempt 1 again, with the base delay.
+    private void retryLater(Map<TableKey, CompletableFuture<Map<String, AttributeValue>>> batch, int attempt) {
+        // The backoff follows the attempt before this one.
+        CompletableFuture.delayedExecutor(Retries.backOffNanos(config.retryBaseDelay(), Math.max(attempt - 1, 1)),
+            TimeUnit.NANOSECONDS).execute(() -> send(batch, attempt));
+    }
+}
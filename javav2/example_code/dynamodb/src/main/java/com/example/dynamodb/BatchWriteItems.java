@@ -7,8 +7,6 @@ package com.example.dynamodb;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
@@ -16,6 +14,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Before running this Java V2 code example, set up your development environment, including your credentials.
@@ -45,8 +44,8 @@ public class BatchWriteItems {
     }
 
     public static void addBatchItems(DynamoDbClient dynamoDbClient, String tableName) {
-        // Specify the updates you want to perform.
-        List<WriteRequest> writeRequests = new ArrayList<>();
+        // Specify the items you want to put.
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
 
         // Set item 1.
         Map<String, AttributeValue> item1Attributes = new HashMap<>();
@@ -54,7 +53,7 @@ public class BatchWriteItems {
         item1Attributes.put("Rating", AttributeValue.builder().s("5").build());
         item1Attributes.put("Comments", AttributeValue.builder().s("Great song!").build());
         item1Attributes.put("SongTitle", AttributeValue.builder().s("SongTitle1").build());
-        writeRequests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item1Attributes).build()).build());
+        items.add(item1Attributes);
 
         // Set item 2.
         Map<String, AttributeValue> item2Attributes = new HashMap<>();
@@ -62,24 +61,45 @@ public class BatchWriteItems {
         item2Attributes.put("Rating", AttributeValue.builder().s("4").build());
         item2Attributes.put("Comments", AttributeValue.builder().s("Nice melody.").build());
         item2Attributes.put("SongTitle", AttributeValue.builder().s("SongTitle2").build());
-        writeRequests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item2Attributes).build()).build());
+        items.add(item2Attributes);
 
         try {
-            // Create the BatchWriteItemRequest.
-            BatchWriteItemRequest batchWriteItemRequest = BatchWriteItemRequest.builder()
-                .requestItems(Map.of(tableName, writeRequests))
-                .build();
-
-            // Execute the BatchWriteItem operation.
-            BatchWriteItemResponse batchWriteItemResponse = dynamoDbClient.batchWriteItem(batchWriteItemRequest);
-
-            // Process the response.
-            System.out.println("Batch write successful: " + batchWriteItemResponse);
+            // Unlike a single BatchWriteItem call, the writer also sends the items that DynamoDB returns as unprocessed.
+            BulkItemWriter.Summary summary = addItemsInBulk(dynamoDbClient, tableName, items.stream());
+            if (summary.failedItemCount() > 0) {
+                System.err.println("Batch write failed for " + summary.failedItemCount() + " of "
+                    + (summary.itemsWritten() + summary.failedItemCount()) + " items");
+                summary.failures().forEach(failure -> System.err.println(failure.reason()));
+                System.exit(1);
+            }
+            System.out.println("Batch write successful: " + summary.itemsWritten() + " items written");
 
         } catch (DynamoDbException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
     }
+
+    /**
+     * Writes a stream of items of any length, in batches of up to 25 items with several
+     * batches in flight at once. Items that DynamoDB leaves unprocessed are sent again
+     * with backoff, and the ones that can't be written are reported in the summary.
+     *
+     * @param dynamoDbClient the client that sends the batches
+     * @param tableName      the name of the table
+     * @param items          the items to put, which are consumed as batches become free
+     * @return the number of written items, the consumed write capacity, and the items that failed
+     */
+    public static BulkItemWriter.Summary addItemsInBulk(DynamoDbClient dynamoDbClient, String tableName,
+                                                        Stream<Map<String, AttributeValue>> items) {
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, tableName,
+            items.map(item -> WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build()),
+            BulkItemWriter.Config.defaults());
+        System.out.printf("Wrote %d items (%.0f items/s) using %.1f WCU; %d items failed.%n",
+            summary.itemsWritten(), summary.itemsPerSecond(), summary.consumedWriteCapacityUnits(),
+            summary.failedItemCount());
+        summary.failures().forEach(failure -> System.err.println("Failed: " + failure));
+        return summary;
+    }
 }
 // snippet-end:[dynamodb.java2.batch.write.items.main]
@@ -0,0 +1,486 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.stream.Stream;
+
+/**
+ * Writes any number of items to an Amazon DynamoDB table with BatchWriteItem,
+ * handling the limits and partial failures of the API so that callers don't have to.
+ *
+ * Writes are added one at a time and packed into batches of up to 25 requests and
+ * 16 MB. A full batch is sent right away on one of a bounded number of sender threads;
+ * when all of them are busy, adding waits, so a stream of any length is written with
+ * constant memory. Two writes of the same key in one batch are rejected by DynamoDB,
+ * so a later write of a key replaces the earlier one in the batch that's being filled.
+ * A write of a key that is in a batch in flight waits until that batch has finished,
+ * retries included, so the writes of a key are applied in the order they were added.
+ *
+ * The items that DynamoDB returns as UnprocessedItems, usually because the table is
+ * throttled, are sent again with exponential backoff and full jitter until they're
+ * written. Only attempts that write nothing count against maxAttempts, so a table that
+ * is slowly working through a large load isn't given up on. Requests that fail with a
+ * retryable error are retried the same way, and a batch that DynamoDB rejects as
+ * invalid is split into single writes so that one bad item doesn't fail the others.
+ * The writes that still fail are reported in the {@link Summary} instead of being
+ * dropped. Progress, including items per second and consumed write capacity units, is
+ * logged at a fixed interval.
+ *
+ * The DynamoDbClient's HTTP client should allow maxBatchesInFlight connections.
+ */
+public class BulkItemWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkItemWriter.class);
+
+    static final int MAX_ITEMS_PER_BATCH = 25;
+    static final long MAX_BATCH_BYTES = 16L * 1024 * 1024;
+    // Leaves room for the JSON around the items, so an estimate that's a little low still fits.
+    private static final long BATCH_BYTES_LIMIT = MAX_BATCH_BYTES - 64 * 1024;
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    /**
+     * Settings for writing.
+     *
+     * @param maxBatchesInFlight the number of BatchWriteItem requests that are sent at the same time
+     * @param maxAttempts        the number of times a batch is sent without writing anything before its
+     *                           writes are given up
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     * @param progressInterval   how often progress is logged
+     */
+    public record Config(int maxBatchesInFlight, int maxAttempts, Duration retryBaseDelay,
+                         Duration progressInterval) {
+
+        public Config {
+            if (maxBatchesInFlight < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("maxBatchesInFlight and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns 8 batches in flight, 10 attempts starting with a 50 ms backoff, and progress every
+         * 10 seconds.
+         */
+        public static Config defaults() {
+            return new Config(8, 10, Duration.ofMillis(50), Duration.ofSeconds(10));
+        }
+    }
+
+    /**
+     * A write that couldn't be applied.
+     *
+     * @param request the write
+     * @param reason  the error, or a note that it stayed unprocessed
+     */
+    public record FailedWrite(WriteRequest request, String reason) {
+    }
+
+    /**
+     * The outcome of a run.
+     *
+     * @param itemsWritten               the number of writes that were applied
+     * @param consumedWriteCapacityUnits the write capacity units that DynamoDB reported for them
+     * @param batches                    the number of BatchWriteItem requests that were sent, including retries
+     * @param failedItemCount            the number of writes that couldn't be applied
+     * @param failures                   the first 1,000 writes that couldn't be applied
+     * @param elapsed                    the duration of the run
+     */
+    public record Summary(long itemsWritten, double consumedWriteCapacityUnits, long batches, long failedItemCount,
+                          List<FailedWrite> failures, Duration elapsed) {
+
+        public double itemsPerSecond() {
+            return perSecond(itemsWritten);
+        }
+
+        public double writeCapacityUnitsPerSecond() {
+            return perSecond(consumedWriteCapacityUnits);
+        }
+
+        private double perSecond(double count) {
+            return count / Math.max(0.001, elapsed.toNanos() / 1e9);
+        }
+    }
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final List<String> keyAttributeNames;
+    private final Config config;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService reporter;
+    private final Semaphore batchesInFlight;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong itemsWritten = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong failedItems = new AtomicLong();
+    private final DoubleAdder consumedUnits = new DoubleAdder();
+    private final List<FailedWrite> failures = Collections.synchronizedList(new ArrayList<>());
+    // The batch being filled, and the position of every key in it.
+    private List<WriteRequest> batch = new ArrayList<>(MAX_ITEMS_PER_BATCH);
+    private final Map<List<AttributeValue>, Integer> batchKeys = new HashMap<>();
+    // The keys of the batches in flight, each with a latch that opens when its batch has finished.
+    private final Map<List<AttributeValue>, CountDownLatch> keysInFlight = new ConcurrentHashMap<>();
+    private long batchBytes;
+    private Summary summary;
+
+    /**
+     * Creates a writer for the table, reading its key schema with DescribeTable.
+     *
+     * @param dynamoDbClient the client that sends the batches
+     * @param tableName      the name of the table
+     * @param config         the writer settings
+     */
+    public BulkItemWriter(DynamoDbClient dynamoDbClient, String tableName, Config config) {
+        this(dynamoDbClient, tableName, dynamoDbClient.describeTable(b -> b.tableName(tableName)).table().keySchema()
+            .stream().map(KeySchemaElement::attributeName).toList(), config);
+    }
+
+    /**
+     * Creates a writer for a table with the given key attributes.
+     *
+     * @param dynamoDbClient    the client that sends the batches
+     * @param tableName         the name of the table
+     * @param keyAttributeNames the partition key attribute and, if the table has one, the sort key attribute
+     * @param config            the writer settings
+     */
+    public BulkItemWriter(DynamoDbClient dynamoDbClient, String tableName, List<String> keyAttributeNames,
+                          Config config) {
+        if (keyAttributeNames.isEmpty()) {
+            throw new IllegalArgumentException("The table must have at least a partition key");
+        }
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.keyAttributeNames = List.copyOf(keyAttributeNames);
+        this.config = config;
+        this.batchesInFlight = new Semaphore(config.maxBatchesInFlight());
+        this.senders = Executors.newFixedThreadPool(config.maxBatchesInFlight(),
+            Thread.ofPlatform().daemon().name("bulk-write-", 0).factory());
+        this.reporter = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("bulk-write-progress").factory());
+        long intervalNanos = config.progressInterval().toNanos();
+        reporter.scheduleAtFixedRate(new ProgressReporter(), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes every request of the stream and waits until all of them are applied or given up.
+     *
+     * @param dynamoDbClient the client that sends the batches
+     * @param tableName      the name of the table
+     * @param writes         the writes, which are consumed as batches become free
+     * @param config         the writer settings
+     * @return the number of written items and the writes that failed
+     */
+    public static Summary writeAll(DynamoDbClient dynamoDbClient, String tableName, Stream<WriteRequest> writes,
+                                   Config config) {
+        BulkItemWriter writer = new BulkItemWriter(dynamoDbClient, tableName, config);
+        try (writer) {
+            writes.forEach(writer::write);
+        }
+        return writer.summary();
+    }
+
+    /**
+     * Adds a put of the item, waiting while the maximum number of batches is in flight.
+     */
+    public void put(Map<String, AttributeValue> item) {
+        write(WriteRequest.builder().putRequest(p -> p.item(item)).build());
+    }
+
+    /**
+     * Adds a delete of the item with the key, waiting while the maximum number of batches is in flight.
+     */
+    public void delete(Map<String, AttributeValue> key) {
+        write(WriteRequest.builder().deleteRequest(d -> d.key(key)).build());
+    }
+
+    /**
+     * Adds a write, waiting while the maximum number of batches is in flight.
+     *
+     * @throws IllegalArgumentException if the item or key is missing a key attribute
+     * @throws IllegalStateException    if the writer is closed
+     */
+    public synchronized void write(WriteRequest writeRequest) {
+        if (summary != null) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        Map<String, AttributeValue> attributes = writeRequest.putRequest() != null
+            ? writeRequest.putRequest().item() : writeRequest.deleteRequest().key();
+        List<AttributeValue> key = key(attributes);
+        long size = estimateSize(attributes);
+
+        Integer existing = batchKeys.get(key);
+        if (existing != null) {
+            // DynamoDB rejects a batch with the same key twice, and the later write wins anyway.
+            WriteRequest replaced = batch.set(existing, writeRequest);
+            batchBytes += size - estimateSize(replaced.putRequest() != null
+                ? replaced.putRequest().item() : replaced.deleteRequest().key());
+            return;
+        }
+        if (batch.size() == MAX_ITEMS_PER_BATCH || (!batch.isEmpty() && batchBytes + size > BATCH_BYTES_LIMIT)) {
+            submitBatch();
+        }
+        awaitKey(key);
+        batchKeys.put(key, batch.size());
+        batch.add(writeRequest);
+        batchBytes += size;
+    }
+
+    /**
+     * Sends the last batch, waits for every batch in flight, and stops the sender threads.
+     * The outcome is available from {@link #summary()} afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (summary != null) {
+            return;
+        }
+        try {
+            if (!batch.isEmpty()) {
+                submitBatch();
+            }
+            // All permits are back once every batch in flight has finished.
+            batchesInFlight.acquire(config.maxBatchesInFlight());
+            batchesInFlight.release(config.maxBatchesInFlight());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while writing to " + tableName).cause(e).build();
+        } finally {
+            senders.shutdownNow();
+            reporter.shutdownNow();
+            summary = currentSummary();
+        }
+        logger.info("Wrote {} items to {} ({} items/s, {} WCU/s) in {} batches, {} items failed in {}",
+            summary.itemsWritten(), tableName, Math.round(summary.itemsPerSecond()),
+            Math.round(summary.writeCapacityUnitsPerSecond()), summary.batches(), summary.failedItemCount(),
+            summary.elapsed());
+    }
+
+    /**
+     * Returns the outcome, once the writer is closed.
+     *
+     * @throws IllegalStateException if the writer is still open
+     */
+    public synchronized Summary summary() {
+        if (summary == null) {
+            throw new IllegalStateException("The writer is still open");
+        }
+        return summary;
+    }
+
+    private Summary currentSummary() {
+        return new Summary(itemsWritten.get(), consumedUnits.sum(), batchesSent.get(), failedItems.get(),
+            List.copyOf(failures), Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    private List<AttributeValue> key(Map<String, AttributeValue> attributes) {
+        AttributeValue[] key = new AttributeValue[keyAttributeNames.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = attributes.get(keyAttributeNames.get(i));
+            if (key[i] == null) {
+                throw new IllegalArgumentException("The write is missing the key attribute " + keyAttributeNames.get(i));
+            }
+        }
+        return Arrays.asList(key);
+    }
+
+    // Waits until an earlier write of the key, if one is in flight, has been applied or given up. Senders
+    // don't take the writer's lock, so they finish while a caller waits here.
+    private void awaitKey(List<AttributeValue> key) {
+        CountDownLatch batchDone = keysInFlight.get(key);
+        if (batchDone == null) {
+            return;
+        }
+        try {
+            batchDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while waiting for an earlier write").cause(e).build();
+        }
+    }
+
+    private void submitBatch() {
+        List<WriteRequest> fullBatch = batch;
+        Set<List<AttributeValue>> fullBatchKeys = Set.copyOf(batchKeys.keySet());
+        batch = new ArrayList<>(MAX_ITEMS_PER_BATCH);
+        batchKeys.clear();
+        batchBytes = 0;
+        try {
+            // Adding waits here while the maximum number of batches is in flight.
+            batchesInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while waiting for batches").cause(e).build();
+        }
+        CountDownLatch batchDone = new CountDownLatch(1);
+        fullBatchKeys.forEach(key -> keysInFlight.put(key, batchDone));
+        Runnable finish = () -> {
+            fullBatchKeys.forEach(key -> keysInFlight.remove(key, batchDone));
+            batchDone.countDown();
+            batchesInFlight.release();
+        };
+        try {
+            senders.execute(() -> {
+                try {
+                    sendBatch(fullBatch);
+                } finally {
+                    finish.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            finish.run();
+            throw e;
+        }
+    }
+
+    private void sendBatch(List<WriteRequest> writes) {
+        List<WriteRequest> remaining = writes;
+        for (int attempt = 1; ; attempt++) {
+            List<WriteRequest> batchWrites = remaining;
+            BatchWriteItemResponse response;
+            try {
+                batchesSent.incrementAndGet();
+                response = dynamoDbClient.batchWriteItem(b -> b
+                    .requestItems(Map.of(tableName, batchWrites))
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            } catch (SdkException e) {
+                if (isInvalidBatch(e) && batchWrites.size() > 1) {
+                    // Find the write that makes the batch invalid by sending each one alone.
+                    batchWrites.forEach(write -> sendBatch(List.of(write)));
+                    return;
+                }
+                if (!Retries.isRetryable(e) || attempt >= config.maxAttempts()) {
+                    batchWrites.forEach(write -> recordFailure(write, e.getMessage()));
+                    return;
+                }
+                backOff(attempt);
+                continue;
+            }
+
+            for (ConsumedCapacity capacity : response.consumedCapacity()) {
+                if (capacity.capacityUnits() != null) {
+                    consumedUnits.add(capacity.capacityUnits());
+                }
+            }
+            List<WriteRequest> unprocessed = response.unprocessedItems().getOrDefault(tableName, List.of());
+            itemsWritten.addAndGet(batchWrites.size() - unprocessed.size());
+            if (unprocessed.isEmpty()) {
+                return;
+            }
+            if (unprocessed.size() < batchWrites.size()) {
+                // The table is making progress, so only attempts that write nothing count.
+                attempt = 0;
+            } else if (attempt >= config.maxAttempts()) {
+                unprocessed.forEach(write -> recordFailure(write,
+                    "Unprocessed after " + config.maxAttempts() + " attempts"));
+                return;
+            }
+            logger.debug("{} of {} items were unprocessed, retrying", unprocessed.size(), batchWrites.size());
+            remaining = unprocessed;
+            backOff(Math.max(attempt, 1));
+        }
+    }
+
+    private void recordFailure(WriteRequest write, String reason) {
+        failedItems.incrementAndGet();
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(new FailedWrite(write, reason));
+        }
+    }
+
+    private static boolean isInvalidBatch(SdkException e) {
+        return e instanceof AwsServiceException serviceException && serviceException.awsErrorDetails() != null
+            && "ValidationException".equals(serviceException.awsErrorDetails().errorCode());
+    }
+
+    private void backOff(int attempt) {
+        try {
+            Retries.backOff(config.retryBaseDelay(), attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while backing off").cause(e).build();
+        }
+    }
+
+    /**
+     * Estimates the size of the item in a BatchWriteItem request. Binary values count with their
+     * Base64 encoding, and every attribute with a few bytes of JSON around it.
+     */
+    static long estimateSize(Map<String, AttributeValue> attributes) {
+        long size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : attributes.entrySet()) {
+            size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length + estimateSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(AttributeValue value) {
+        long overhead = 12;
+        return overhead + switch (value.type()) {
+            case S -> value.s().getBytes(StandardCharsets.UTF_8).length;
+            case N -> value.n().length();
+            case B -> base64Length(value.b().asByteArray().length);
+            case BOOL, NUL -> 5;
+            case SS -> value.ss().stream().mapToLong(s -> s.getBytes(StandardCharsets.UTF_8).length + 3).sum();
+            case NS -> value.ns().stream().mapToLong(n -> n.length() + 3).sum();
+            case BS -> value.bs().stream().mapToLong(b -> base64Length(b.asByteArray().length) + 3).sum();
+            case L -> value.l().stream().mapToLong(BulkItemWriter::estimateSize).sum();
+            case M -> estimateSize(value.m());
+            default -> 0;
+        };
+    }
+
+    private static long base64Length(int bytes) {
+        return (bytes + 2L) / 3 * 4;
+    }
+
+    private final class ProgressReporter implements Runnable {
+        private long lastNanos = System.nanoTime();
+        private long lastWritten;
+        private double lastUnits;
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            double seconds = (now - lastNanos) / 1e9;
+            long written = itemsWritten.get();
+            double units = consumedUnits.sum();
+            logger.info("Wrote {} items to {} ({} items/s, {} WCU/s), {} failed, {} batches in flight",
+                written, tableName, Math.round((written - lastWritten) / seconds),
+                Math.round((units - lastUnits) / seconds), failedItems.get(),
+                config.maxBatchesInFlight() - batchesInFlight.availablePermits());
+            lastNanos = now;
+            lastWritten = written;
+            lastUnits = units;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClientExtension;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.CreateTableEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.DescribeTableEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedResponse;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedResponse;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A {@link DynamoDbTable} decorator that keeps recently read items in a local,
+ * bounded near-cache, so that repeated reads of popular items don't wait for a round
+ * trip to Amazon DynamoDB.
+ *
+ * The cache holds the attribute value maps of the items rather than the mapped
+ * objects, so every read returns a new object that the caller is free to change.
+ * Entries are weighed by their DynamoDB item size and evicted with the W-TinyLFU
+ * policy of {@link NearCache}, which keeps frequently read items even while many
+ * items are read once. With offHeap set, the maps are encoded into direct buffers
+ * instead, which keeps large caches out of the garbage collector's way at the cost of
+ * decoding every hit; size the JVM's -XX:MaxDirectMemorySize accordingly. Items that
+ * don't exist can be cached too, so that lookups of missing keys are cheap as well.
+ *
+ * The cache stays coherent with the writes made through this table: putItem,
+ * updateItem, and deleteItem invalidate the key once the write has been sent, whether
+ * or not it succeeded, and a read that was running at the same time doesn't put the
+ * old item back. Writes made by other processes, other table objects, or batch and
+ * transaction requests aren't seen, so expireAfterWrite bounds how stale a read can be.
+ * Consistent reads always go to DynamoDB, and refresh the cache with what they read.
+ *
+ * All other operations, including query and scan, are passed to the decorated table.
+ */
+public final class CachingDynamoDbTable<T> implements DynamoDbTable<T> {
+
+    // Rough per-entry bookkeeping cost on top of the item itself: the node, the key, and the map entry.
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final Object MISSING_ITEM = new Object();
+
+    private final DynamoDbTable<T> delegate;
+    private final Config config;
+    private final NearCache<Key, Object> cache;
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Settings for the cache.
+     *
+     * @param maximumWeightBytes the total size of the cached items, by DynamoDB's item size rules
+     * @param expireAfterWrite   how long an item is served from the cache after it was read
+     * @param offHeap            whether to store the items in direct buffers outside the Java heap
+     * @param cacheMissingItems  whether to remember that an item doesn't exist
+     */
+    public record Config(long maximumWeightBytes, Duration expireAfterWrite, boolean offHeap,
+                         boolean cacheMissingItems) {
+
+        public Config {
+            if (maximumWeightBytes < 1) {
+                throw new IllegalArgumentException("maximumWeightBytes must be positive");
+            }
+            if (expireAfterWrite.isNegative() || expireAfterWrite.isZero()) {
+                throw new IllegalArgumentException("expireAfterWrite must be positive");
+            }
+        }
+
+        /**
+         * Returns settings that cache up to 64 MiB of items on the heap for 5 minutes.
+         */
+        public static Config defaults() {
+            return new Config(64L * 1024 * 1024, Duration.ofMinutes(5), false, true);
+        }
+    }
+
+    /**
+     * The cache metrics since the table was created.
+     *
+     * @param hits                 reads that were served from the cache
+     * @param misses               reads that had to go to DynamoDB
+     * @param loads                GetItem requests sent, including consistent reads
+     * @param meanLoadTime         the average time a GetItem request took
+     * @param p99LoadTime          the 99th percentile of the time a GetItem request took
+     * @param evictions            items removed to stay within the maximum weight
+     * @param evictedBytes         the total weight of the evicted items
+     * @param expirations          items that were removed because they expired
+     * @param invalidations        keys that were invalidated by a write
+     * @param entries              the number of cached items
+     * @param weightBytes          the total weight of the cached items
+     */
+    public record Stats(long hits, long misses, long loads, Duration meanLoadTime, Duration p99LoadTime,
+                        long evictions, long evictedBytes, long expirations, long invalidations, int entries,
+                        long weightBytes) {
+
+        /**
+         * Returns the fraction of reads that were served from the cache.
+         */
+        public double hitRatio() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+    }
+
+    /**
+     * Creates a caching view of the table. Use one instance per table and share it, because
+     * the cache only sees the writes made through it.
+     *
+     * @param delegate the table that reads and writes are sent to
+     * @param config   the cache settings
+     */
+    public CachingDynamoDbTable(DynamoDbTable<T> delegate, Config config) {
+        this.delegate = delegate;
+        this.config = config;
+        // Assume items of about 1 KB to size the frequency sketch.
+        this.cache = new NearCache<>(config.maximumWeightBytes(), config.expireAfterWrite(), 1024);
+    }
+
+    /**
+     * Returns the table that this one decorates. Writes sent to it directly aren't seen by the cache.
+     */
+    public DynamoDbTable<T> delegate() {
+        return delegate;
+    }
+
+    /**
+     * Removes an item from the cache, for example after it was changed by another process.
+     */
+    public void invalidate(Key key) {
+        cache.invalidate(key);
+        invalidations.increment();
+    }
+
+    /**
+     * Removes all items from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Stats stats() {
+        return new Stats(cache.hitCount(), cache.missCount(), loadLatency.count(), loadLatency.mean(),
+            loadLatency.percentile(99), cache.evictionCount(), cache.evictedWeight(), cache.expirationCount(),
+            invalidations.sum(), cache.size(), cache.weightedSize());
+    }
+
+    @Override
+    public T getItem(GetItemEnhancedRequest request) {
+        Key key = request.key();
+        if (!Boolean.TRUE.equals(request.consistentRead())) {
+            Object cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return cached == MISSING_ITEM ? null : tableSchema().mapToItem(itemOf(cached));
+            }
+        }
+        long generation = cache.generation(key);
+        long start = System.nanoTime();
+        T item = delegate.getItem(request);
+        loadLatency.record(System.nanoTime() - start);
+        cache(key, item, generation);
+        return item;
+    }
+
+    @Override
+    public T getItem(Consumer<GetItemEnhancedRequest.Builder> requestConsumer) {
+        GetItemEnhancedRequest.Builder builder = GetItemEnhancedRequest.builder();
+        requestConsumer.accept(builder);
+        return getItem(builder.build());
+    }
+
+    @Override
+    public T getItem(Key key) {
+        return getItem(GetItemEnhancedRequest.builder().key(key).build());
+    }
+
+    @Override
+    public T getItem(T keyItem) {
+        return getItem(keyFrom(keyItem));
+    }
+
+    /**
+     * Always reads from DynamoDB, because the response reports the consumed capacity of
+     * the request, but still refreshes the cache.
+     */
+    @Override
+    public GetItemEnhancedResponse<T> getItemWithResponse(GetItemEnhancedRequest request) {
+        long generation = cache.generation(request.key());
+        long start = System.nanoTime();
+        GetItemEnhancedResponse<T> response = delegate.getItemWithResponse(request);
+        loadLatency.record(System.nanoTime() - start);
+        cache(request.key(), response.attributes(), generation);
+        return response;
+    }
+
+    @Override
+    public GetItemEnhancedResponse<T> getItemWithResponse(Consumer<GetItemEnhancedRequest.Builder> requestConsumer) {
+        GetItemEnhancedRequest.Builder builder = GetItemEnhancedRequest.builder();
+        requestConsumer.accept(builder);
+        return getItemWithResponse(builder.build());
+    }
+
+    @Override
+    public void putItem(PutItemEnhancedRequest<T> request) {
+        writeThrough(keyFrom(request.item()), () -> {
+            delegate.putItem(request);
+            return null;
+        });
+    }
+
+    @Override
+    public void putItem(Consumer<PutItemEnhancedRequest.Builder<T>> requestConsumer) {
+        PutItemEnhancedRequest.Builder<T> builder = PutItemEnhancedRequest.builder(tableSchema().itemType().rawClass());
+        requestConsumer.accept(builder);
+        putItem(builder.build());
+    }
+
+    @Override
+    public void putItem(T item) {
+        putItem(PutItemEnhancedRequest.builder(tableSchema().itemType().rawClass()).item(item).build());
+    }
+
+    @Override
+    public PutItemEnhancedResponse<T> putItemWithResponse(PutItemEnhancedRequest<T> request) {
+        return writeThrough(keyFrom(request.item()), () -> delegate.putItemWithResponse(request));
+    }
+
+    @Override
+    public PutItemEnhancedResponse<T> putItemWithResponse(
+        Consumer<PutItemEnhancedRequest.Builder<T>> requestConsumer) {
+        PutItemEnhancedRequest.Builder<T> builder = PutItemEnhancedRequest.builder(tableSchema().itemType().rawClass());
+        requestConsumer.accept(builder);
+        return putItemWithResponse(builder.build());
+    }
+
+    @Override
+    public T updateItem(UpdateItemEnhancedRequest<T> request) {
+        return writeThrough(keyFrom(request.item()), () -> delegate.updateItem(request));
+    }
+
+    @Override
+    public T updateItem(Consumer<UpdateItemEnhancedRequest.Builder<T>> requestConsumer) {
+        UpdateItemEnhancedRequest.Builder<T> builder =
+            UpdateItemEnhancedRequest.builder(tableSchema().itemType().rawClass());
+        requestConsumer.accept(builder);
+        return updateItem(builder.build());
+    }
+
+    @Override
+    public T updateItem(T item) {
+        return updateItem(UpdateItemEnhancedRequest.builder(tableSchema().itemType().rawClass()).item(item).build());
+    }
+
+    @Override
+    public UpdateItemEnhancedResponse<T> updateItemWithResponse(UpdateItemEnhancedRequest<T> request) {
+        return writeThrough(keyFrom(request.item()), () -> delegate.updateItemWithResponse(request));
+    }
+
+    @Override
+    public UpdateItemEnhancedResponse<T> updateItemWithResponse(
+        Consumer<UpdateItemEnhancedRequest.Builder<T>> requestConsumer) {
+        UpdateItemEnhancedRequest.Builder<T> builder =
+            UpdateItemEnhancedRequest.builder(tableSchema().itemType().rawClass());
+        requestConsumer.accept(builder);
+        return updateItemWithResponse(builder.build());
+    }
+
+    @Override
+    public T deleteItem(DeleteItemEnhancedRequest request) {
+        return writeThrough(request.key(), () -> delegate.deleteItem(request));
+    }
+
+    @Override
+    public T deleteItem(Consumer<DeleteItemEnhancedRequest.Builder> requestConsumer) {
+        DeleteItemEnhancedRequest.Builder builder = DeleteItemEnhancedRequest.builder();
+        requestConsumer.accept(builder);
+        return deleteItem(builder.build());
+    }
+
+    @Override
+    public T deleteItem(Key key) {
+        return deleteItem(DeleteItemEnhancedRequest.builder().key(key).build());
+    }
+
+    @Override
+    public T deleteItem(T keyItem) {
+        return deleteItem(keyFrom(keyItem));
+    }
+
+    @Override
+    public DeleteItemEnhancedResponse<T> deleteItemWithResponse(DeleteItemEnhancedRequest request) {
+        return writeThrough(request.key(), () -> delegate.deleteItemWithResponse(request));
+    }
+
+    @Override
+    public DeleteItemEnhancedResponse<T> deleteItemWithResponse(
+        Consumer<DeleteItemEnhancedRequest.Builder> requestConsumer) {
+        DeleteItemEnhancedRequest.Builder builder = DeleteItemEnhancedRequest.builder();
+        requestConsumer.accept(builder);
+        return deleteItemWithResponse(builder.build());
+    }
+
+    @Override
+    public DynamoDbIndex<T> index(String indexName) {
+        return delegate.index(indexName);
+    }
+
+    @Override
+    public void createTable(CreateTableEnhancedRequest request) {
+        delegate.createTable(request);
+    }
+
+    @Override
+    public void createTable(Consumer<CreateTableEnhancedRequest.Builder> requestConsumer) {
+        delegate.createTable(requestConsumer);
+    }
+
+    @Override
+    public void createTable() {
+        delegate.createTable();
+    }
+
+    @Override
+    public void deleteTable() {
+        try {
+            delegate.deleteTable();
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public DescribeTableEnhancedResponse describeTable() {
+        return delegate.describeTable();
+    }
+
+    @Override
+    public PageIterable<T> query(QueryEnhancedRequest request) {
+        return delegate.query(request);
+    }
+
+    @Override
+    public PageIterable<T> query(Consumer<QueryEnhancedRequest.Builder> requestConsumer) {
+        return delegate.query(requestConsumer);
+    }
+
+    @Override
+    public PageIterable<T> query(QueryConditional queryConditional) {
+        return delegate.query(queryConditional);
+    }
+
+    @Override
+    public PageIterable<T> scan(ScanEnhancedRequest request) {
+        return delegate.scan(request);
+    }
+
+    @Override
+    public PageIterable<T> scan(Consumer<ScanEnhancedRequest.Builder> requestConsumer) {
+        return delegate.scan(requestConsumer);
+    }
+
+    @Override
+    public PageIterable<T> scan() {
+        return delegate.scan();
+    }
+
+    @Override
+    public DynamoDbEnhancedClientExtension mapperExtension() {
+        return delegate.mapperExtension();
+    }
+
+    @Override
+    public TableSchema<T> tableSchema() {
+        return delegate.tableSchema();
+    }
+
+    @Override
+    public String tableName() {
+        return delegate.tableName();
+    }
+
+    @Override
+    public Key keyFrom(T item) {
+        return delegate.keyFrom(item);
+    }
+
+    private void cache(Key key, T item, long generation) {
+        if (item != null) {
+            Map<String, AttributeValue> attributes = tableSchema().itemToMap(item, true);
+            long weight = BulkItemWriter.estimateSize(attributes) + ENTRY_OVERHEAD_BYTES;
+            Object value = config.offHeap() ? AttributeValueCodec.encodeDirect(attributes) : attributes;
+            cache.putIfUnchanged(key, value, weight, generation);
+        } else if (config.cacheMissingItems()) {
+            cache.putIfUnchanged(key, MISSING_ITEM, ENTRY_OVERHEAD_BYTES, generation);
+        }
+    }
+
+    // Invalidates after the write, so that a read racing with it can't cache the old item.
+    private <R> R writeThrough(Key key, Supplier<R> write) {
+        try {
+            return write.get();
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, AttributeValue> itemOf(Object cached) {
+        return cached instanceof ByteBuffer encoded
+            ? AttributeValueCodec.decode(encoded)
+            : (Map<String, AttributeValue>) cached;
+    }
+}
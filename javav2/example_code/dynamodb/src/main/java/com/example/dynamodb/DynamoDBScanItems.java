@@ -10,7 +10,6 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
-import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import java.util.Map;
 import java.util.Set;
 // snippet-end:[dynamodb.java2.dynamoDB_scan.import]
@@ -61,13 +60,17 @@ public class DynamoDBScanItems {
                     .tableName(tableName)
                     .build();
 
-            ScanResponse response = ddb.scan(scanRequest);
-            for (Map<String, AttributeValue> item : response.items()) {
-                Set<String> keys = item.keySet();
-                for (String key : keys) {
-                    System.out.println("The key name is " + key + "\n");
-                    System.out.println("The value is " + item.get(key).s());
-                }
+            // Scan all pages of all segments in parallel; a single Scan request returns only the first 1 MB.
+            try (ParallelScan<Map<String, AttributeValue>> scan = ParallelScan.scan(ddb, scanRequest,
+                    ParallelScan.Config.defaults(), null)) {
+                scan.forEachRemaining(item -> {
+                    Set<String> keys = item.keySet();
+                    for (String key : keys) {
+                        System.out.println("The key name is " + key + "\n");
+                        System.out.println("The value is " + item.get(key).s());
+                    }
+                });
+                System.out.println("Scanned " + scan.itemCount() + " items");
             }
 
         } catch (DynamoDbException e) {
@@ -0,0 +1,60 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link StreamCheckpointStore} that keeps the checkpoints in a DynamoDB table, so
+ * they survive restarts and can be read by the replicator that takes over a stream.
+ *
+ * The table needs a string partition key; each shard is one item, keyed by the stream
+ * ARN and the shard ID, with its checkpoint in the "checkpoint" attribute. Checkpoints
+ * are read with strongly consistent reads.
+ */
+public class DynamoDbStreamCheckpointStore implements StreamCheckpointStore {
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final String partitionKey;
+
+    /**
+     * @param dynamoDbClient the client for the checkpoint table
+     * @param tableName      the checkpoint table
+     * @param partitionKey   the name of the table's string partition key
+     */
+    public DynamoDbStreamCheckpointStore(DynamoDbClient dynamoDbClient, String tableName, String partitionKey) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+    }
+
+    @Override
+    public Optional<String> load(String streamArn, String shardId) {
+        Map<String, AttributeValue> item = dynamoDbClient.getItem(r -> r
+            .tableName(tableName)
+            .key(key(streamArn, shardId))
+            .consistentRead(true)).item();
+        return item == null || !item.containsKey(CHECKPOINT) ? Optional.empty()
+            : Optional.of(item.get(CHECKPOINT).s());
+    }
+
+    @Override
+    public void save(String streamArn, String shardId, String checkpoint) {
+        Map<String, AttributeValue> item = new HashMap<>(key(streamArn, shardId));
+        item.put(CHECKPOINT, AttributeValue.fromS(checkpoint));
+        dynamoDbClient.putItem(r -> r.tableName(tableName).item(item));
+    }
+
+    private Map<String, AttributeValue> key(String streamArn, String shardId) {
+        return Map.of(partitionKey, AttributeValue.fromS(streamArn + "/" + shardId));
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+/**
+ * A count-min sketch with 4-bit counters that estimates how often a key was seen
+ * recently, the TinyLFU frequency filter of {@link NearCache}.
+ *
+ * Every key maps to four counters in different positions, and its estimate is the
+ * smallest of them, so collisions can only make a key look more popular. Counters stop
+ * at 15, and once the sketch has counted ten times as many keys as it has rows, all
+ * counters are halved, so keys that were popular a while ago are forgotten.
+ *
+ * Not thread-safe; the cache only uses it while holding its eviction lock.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries about how many entries the cache holds; each one gets a row of 16 counters
+     */
+    FrequencySketch(long expectedEntries) {
+        int rows = Integer.highestOneBit((int) Math.clamp(expectedEntries, 64, 1 << 24) * 2 - 1);
+        this.table = new long[rows];
+        this.tableMask = rows - 1;
+        this.sampleSize = rows * 10;
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int offset = counterOffset(hash, i);
+            frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> offset) & 0xf));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = counterOffset(hash, i);
+            if (((table[index] >>> offset) & 0xf) != 0xf) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    // Each of the four counters of a key uses a different one of the 16 counters of its row.
+    private static int counterOffset(int hash, int i) {
+        return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
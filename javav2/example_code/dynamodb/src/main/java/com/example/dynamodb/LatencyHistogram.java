@@ -0,0 +1,80 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations with log-linear buckets: every power of two is
+ * split into 8 buckets, so percentiles are reported within 12.5% of the true value
+ * without keeping the individual samples.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    Duration mean() {
+        long samples = count.sum();
+        return samples == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / samples);
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the given percentile, or zero
+     * when nothing was recorded.
+     *
+     * @param percentile a value between 0 and 100, such as 99
+     */
+    Duration percentile(double percentile) {
+        long samples = count.sum();
+        if (samples == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Duration.ofNanos(upperBoundOf(bucket));
+            }
+        }
+        return Duration.ofNanos(upperBoundOf(counts.length() - 1));
+    }
+
+    // Values below 8 get a bucket of their own; larger ones are bucketed by their top 4 bits.
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        return exponent >= 62 ? Long.MAX_VALUE : lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,356 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, weighted in-memory cache with W-TinyLFU eviction and a time to live,
+ * used by {@link CachingDynamoDbTable}.
+ *
+ * New entries go into a small LRU window that holds 1% of the maximum weight. An
+ * entry that falls out of the window becomes a candidate for the main region, which
+ * is a segmented LRU: entries start on probation and move to the protected segment
+ * (80% of the main region) when they're read again. When the cache is over its
+ * weight, the candidate competes with the least recently used entry on probation,
+ * and the one that a {@link FrequencySketch} estimates was requested less often is
+ * evicted. This keeps one-off reads, such as a scan through many keys, from pushing
+ * out the entries that are read all the time.
+ *
+ * Reads don't wait for the eviction lock: if it's busy, the read isn't recorded,
+ * which only makes the LRU order slightly less exact. Writes and evictions hold the
+ * lock. Expired entries are dropped when they're read or evicted.
+ *
+ * {@link #generation(Object)} and {@link #putIfUnchanged} let a caller that loads a
+ * value find out whether the key was invalidated while the load was running, so that
+ * a slow read never puts back a value that a concurrent write has replaced.
+ */
+final class NearCache<K, V> {
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedWeight = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    private enum Region { WINDOW, PROBATION, PROTECTED }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        final long expiresAtNanos;
+        Region region;
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight, long expiresAtNanos) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    /**
+     * @param maximumWeight     the total weight the entries may have
+     * @param expireAfterWrite  how long an entry is served after it was put
+     * @param expectedEntryWeight about how much an entry weighs, to size the frequency sketch
+     */
+    NearCache(long maximumWeight, Duration expireAfterWrite, long expectedEntryWeight) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.sketch = new FrequencySketch(maximumWeight / Math.max(1, expectedEntryWeight));
+    }
+
+    /**
+     * Returns the value of the key, or null when it isn't cached or has expired.
+     */
+    V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null && System.nanoTime() - node.expiresAtNanos >= 0) {
+            expire(node);
+            node = null;
+        }
+        if (evictionLock.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (node != null && node.region != null) {
+                    onAccess(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Returns a number that changes whenever the key is invalidated. Read it before
+     * loading a value and pass it to {@link #putIfUnchanged}.
+     */
+    long generation(K key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Caches the value unless the key was invalidated since the generation was read.
+     * Values that weigh more than the whole cache aren't cached.
+     *
+     * @return whether the value was cached
+     */
+    boolean putIfUnchanged(K key, V value, long weight, long generation) {
+        if (weight > maximumWeight) {
+            return false;
+        }
+        evictionLock.lock();
+        try {
+            if (generations.get(stripe(key)) != generation) {
+                return false;
+            }
+            Node<K, V> node = new Node<>(key, value, weight, System.nanoTime() + expireAfterWriteNanos);
+            Node<K, V> previous = data.put(key, node);
+            if (previous != null) {
+                unlink(previous);
+            }
+            node.region = Region.WINDOW;
+            window.addLast(node);
+            windowWeight += weight;
+            evict();
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the key, and keeps loads that started before this call from caching it again.
+     */
+    void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    void invalidateAll() {
+        evictionLock.lock();
+        try {
+            for (int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            for (Node<K, V> node : data.values()) {
+                unlink(node);
+            }
+            data.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    long evictedWeight() {
+        return evictedWeight.sum();
+    }
+
+    long expirationCount() {
+        return expirations.sum();
+    }
+
+    int size() {
+        return data.size();
+    }
+
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            return windowWeight + probationWeight + protectedWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void expire(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            if (data.remove(node.key, node)) {
+                unlink(node);
+                expirations.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.region) {
+            case WINDOW -> window.moveToBack(node);
+            case PROBATION -> {
+                probation.remove(node);
+                probationWeight -= node.weight;
+                node.region = Region.PROTECTED;
+                protectedQueue.addLast(node);
+                protectedWeight += node.weight;
+                // Entries pushed out of the protected segment get another chance on probation.
+                while (protectedWeight > protectedMaximum && protectedQueue.first() != node) {
+                    Node<K, V> demoted = protectedQueue.pollFirst();
+                    protectedWeight -= demoted.weight;
+                    demoted.region = Region.PROBATION;
+                    probation.addLast(demoted);
+                    probationWeight += demoted.weight;
+                }
+            }
+            case PROTECTED -> protectedQueue.moveToBack(node);
+        }
+    }
+
+    private void evict() {
+        // Entries that fall out of the window join the tail of probation as candidates.
+        while (windowWeight > windowMaximum && window.first() != null) {
+            Node<K, V> candidate = window.pollFirst();
+            windowWeight -= candidate.weight;
+            candidate.region = Region.PROBATION;
+            probation.addLast(candidate);
+            probationWeight += candidate.weight;
+        }
+        while (windowWeight + probationWeight + protectedWeight > maximumWeight) {
+            Node<K, V> victim = probation.first();
+            Node<K, V> candidate = probation.last();
+            if (victim == null) {
+                victim = protectedQueue.first() != null ? protectedQueue.first() : window.first();
+            } else if (victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                // The candidate isn't requested more often than the entry it would replace.
+                victim = candidate;
+            }
+            data.remove(victim.key, victim);
+            unlink(victim);
+            evictions.increment();
+            evictedWeight.add(victim.weight);
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.region == null) {
+            return;
+        }
+        switch (node.region) {
+            case WINDOW -> {
+                window.remove(node);
+                windowWeight -= node.weight;
+            }
+            case PROBATION -> {
+                probation.remove(node);
+                probationWeight -= node.weight;
+            }
+            case PROTECTED -> {
+                protectedQueue.remove(node);
+                protectedWeight -= node.weight;
+            }
+        }
+        node.region = null;
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    // A doubly linked list through the nodes, from least to most recently used.
+    private static final class AccessOrderQueue<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        Node<K, V> last() {
+            return tail;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+    }
+}
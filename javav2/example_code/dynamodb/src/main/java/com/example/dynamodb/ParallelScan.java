@@ -0,0 +1,357 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans a whole Amazon DynamoDB table with parallel scan segments and hands out the
+ * items one at a time as the pages arrive.
+ *
+ * The table is split into TotalSegments segments, either a fixed number or one per
+ * bytesPerSegment of table size as reported by DescribeTable. A fixed number of
+ * platform threads each take the next unscanned segment and page through it. Items go
+ * through a bounded buffer, so a slow consumer stops the scan threads instead of
+ * filling the heap, and closing the stream stops them for good.
+ *
+ * The scan can be resumed: {@link #checkpoint()} returns the LastEvaluatedKey of every
+ * segment up to which all items have been consumed, and a scan that's created with that
+ * checkpoint continues from there. Requests that fail with a retryable error, such as
+ * throttling, are retried with exponential backoff and full jitter.
+ *
+ * The same engine scans with a {@link DynamoDbClient} or an enhanced
+ * {@link DynamoDbTable}; see {@link ParallelScanPublisher} for the
+ * DynamoDbAsyncClient. Items arrive in no particular order.
+ *
+ * @param <T> the type of the items, an attribute map or a mapped class
+ */
+public final class ParallelScan<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelScan.class);
+
+    static final int MAX_TOTAL_SEGMENTS = 1_000_000;
+    private static final Object END_OF_SCAN = new Object();
+
+    /**
+     * Settings for a parallel scan.
+     *
+     * @param totalSegments       the number of segments, or 0 to derive it from the table size
+     * @param bytesPerSegment     the table size per segment when the number of segments is derived
+     * @param maxSegmentsInFlight the number of segments that are scanned at the same time
+     * @param pageSize            the Limit of every Scan request, or 0 for pages of up to 1 MB
+     * @param bufferedItems       the number of items that are fetched ahead of the consumer; the
+     *                            scan can run ahead by up to one more page per segment in flight
+     * @param maxAttempts         the number of times a page is requested before the scan fails
+     * @param retryBaseDelay      the backoff before the second attempt; it doubles for every further attempt
+     */
+    public record Config(int totalSegments, long bytesPerSegment, int maxSegmentsInFlight, int pageSize,
+                         int bufferedItems, int maxAttempts, Duration retryBaseDelay) {
+
+        public Config {
+            if (totalSegments < 0 || totalSegments > MAX_TOTAL_SEGMENTS) {
+                throw new IllegalArgumentException("totalSegments must be between 0 and " + MAX_TOTAL_SEGMENTS);
+            }
+            if (bytesPerSegment < 1 || maxSegmentsInFlight < 1 || bufferedItems < 1 || maxAttempts < 1
+                || pageSize < 0) {
+                throw new IllegalArgumentException(
+                    "bytesPerSegment, maxSegmentsInFlight, bufferedItems, and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns one segment per GiB of table data, 16 segments in flight, 1 MB pages, 10,000
+         * buffered items, and 5 attempts starting with a 100 ms backoff.
+         */
+        public static Config defaults() {
+            return new Config(0, 1L << 30, 16, 0, 10_000, 5, Duration.ofMillis(100));
+        }
+
+        /**
+         * Returns the number of segments for a table of the given size.
+         */
+        public int segmentsFor(long tableSizeBytes) {
+            if (totalSegments > 0) {
+                return totalSegments;
+            }
+            long segments = (tableSizeBytes + bytesPerSegment - 1) / bytesPerSegment;
+            return (int) Math.max(1, Math.min(MAX_TOTAL_SEGMENTS, segments));
+        }
+    }
+
+    // Reads one page of a segment.
+    @FunctionalInterface
+    interface PageReader<T> {
+        ScanPage<T> read(int segment, int totalSegments, Map<String, AttributeValue> exclusiveStartKey);
+    }
+
+    record ScanPage<T>(List<T> items, Map<String, AttributeValue> lastEvaluatedKey) {
+    }
+
+    // Follows the items of a page in the buffer, so that the checkpoint moves once they're consumed.
+    private record PageEnd(int segment, Map<String, AttributeValue> lastEvaluatedKey) {
+    }
+
+    private final PageReader<T> pageReader;
+    private final Config config;
+    private final ScanCheckpoint.Tracker tracker;
+    private final Queue<Integer> segments = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<Object> buffer;
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private volatile boolean closed;
+    private Object next;
+    private boolean ended;
+    private long itemCount;
+
+    ParallelScan(PageReader<T> pageReader, Config config, ScanCheckpoint resumeFrom) {
+        this.pageReader = pageReader;
+        this.config = config;
+        this.tracker = new ScanCheckpoint.Tracker(resumeFrom);
+        this.buffer = new ArrayBlockingQueue<>(config.bufferedItems());
+        for (int segment = 0; segment < tracker.totalSegments(); segment++) {
+            if (!tracker.isCompleted(segment)) {
+                segments.add(segment);
+            }
+        }
+        int threads = Math.min(config.maxSegmentsInFlight(), Math.max(1, segments.size()));
+        runningWorkers.set(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().daemon().name("parallel-scan-", i).start(this::scanSegments));
+        }
+        logger.debug("Scanning {} segments with {} threads", segments.size(), threads);
+    }
+
+    /**
+     * Starts a parallel scan of a table with a DynamoDbClient.
+     *
+     * @param dynamoDbClient the client that sends the Scan requests
+     * @param request        the table name and any other scan settings; Segment, TotalSegments,
+     *                       and ExclusiveStartKey are set for every segment
+     * @param config         the scan settings
+     * @param resumeFrom     the checkpoint of an earlier scan to continue, or null to scan from the start
+     * @return the items of the table, which arrive as the scan runs
+     */
+    public static ParallelScan<Map<String, AttributeValue>> scan(DynamoDbClient dynamoDbClient, ScanRequest request,
+                                                                 Config config, ScanCheckpoint resumeFrom) {
+        ScanCheckpoint start = resumeFrom != null ? resumeFrom : startingCheckpoint(config, () ->
+            dynamoDbClient.describeTable(b -> b.tableName(request.tableName())).table().tableSizeBytes());
+        return new ParallelScan<>((segment, totalSegments, startKey) -> {
+            ScanResponse response = dynamoDbClient.scan(pageRequest(request, config, segment, totalSegments, startKey));
+            return new ScanPage<>(response.items(), response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null);
+        }, config, start);
+    }
+
+    /**
+     * Starts a parallel scan of a table with the enhanced client.
+     *
+     * @param table      the table to scan
+     * @param request    the scan settings; Segment, TotalSegments, and ExclusiveStartKey are set for
+     *                   every segment
+     * @param config     the scan settings
+     * @param resumeFrom the checkpoint of an earlier scan to continue, or null to scan from the start
+     * @return the items of the table, which arrive as the scan runs
+     */
+    public static <T> ParallelScan<T> scan(DynamoDbTable<T> table, ScanEnhancedRequest request, Config config,
+                                           ScanCheckpoint resumeFrom) {
+        ScanCheckpoint start = resumeFrom != null ? resumeFrom
+            : startingCheckpoint(config, () -> table.describeTable().table().tableSizeBytes());
+        return new ParallelScan<>((segment, totalSegments, startKey) -> {
+            ScanEnhancedRequest.Builder pageRequest = request.toBuilder()
+                .segment(segment)
+                .totalSegments(totalSegments)
+                .exclusiveStartKey(startKey);
+            if (config.pageSize() > 0) {
+                pageRequest.limit(config.pageSize());
+            }
+            // Only the first page of the iterable is read; the next one is a new request.
+            Page<T> page = table.scan(pageRequest.build()).iterator().next();
+            return new ScanPage<>(page.items(), page.lastEvaluatedKey());
+        }, config, start);
+    }
+
+    static ScanCheckpoint startingCheckpoint(Config config, Supplier<Long> tableSizeBytes) {
+        int totalSegments = config.totalSegments();
+        if (totalSegments == 0) {
+            // DescribeTable updates the size about every six hours and leaves it out for new tables.
+            Long size = tableSizeBytes.get();
+            totalSegments = config.segmentsFor(size == null ? 0 : size);
+        }
+        return new ScanCheckpoint(totalSegments, Map.of(), Set.of());
+    }
+
+    static ScanRequest pageRequest(ScanRequest request, Config config, int segment, int totalSegments,
+                                   Map<String, AttributeValue> startKey) {
+        ScanRequest.Builder builder = request.toBuilder()
+            .segment(segment)
+            .totalSegments(totalSegments)
+            .exclusiveStartKey(startKey);
+        if (config.pageSize() > 0) {
+            builder.limit(config.pageSize());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a sequential stream of the items. Closing the returned stream closes the scan.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+            .onClose(this::close);
+    }
+
+    /**
+     * Returns the position up to which the items have been consumed.
+     */
+    public ScanCheckpoint checkpoint() {
+        return tracker.snapshot();
+    }
+
+    /**
+     * Returns the number of items handed out so far.
+     */
+    public long itemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !ended) {
+            Object taken = take();
+            if (taken instanceof PageEnd pageEnd) {
+                tracker.pageConsumed(pageEnd.segment(), pageEnd.lastEvaluatedKey());
+            } else if (taken == END_OF_SCAN) {
+                ended = true;
+            } else if (taken instanceof Throwable error) {
+                ended = true;
+                close();
+                throw error instanceof SdkException sdkException ? sdkException
+                    : SdkClientException.create("The scan failed", error);
+            } else {
+                next = taken;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T item = (T) next;
+        next = null;
+        itemCount++;
+        return item;
+    }
+
+    /**
+     * Stops the scan threads. Items that weren't taken yet are dropped, and the checkpoint
+     * stays at the last page that was fully consumed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ended = true;
+        workers.forEach(Thread::interrupt);
+        buffer.clear();
+    }
+
+    private Object take() {
+        try {
+            while (true) {
+                Object taken = buffer.poll(50, TimeUnit.MILLISECONDS);
+                if (taken != null) {
+                    return taken;
+                }
+                // A failed segment ends the scan even while other threads are still blocked on a full buffer.
+                if (failure.get() != null) {
+                    return failure.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw AbortedException.builder().message("Interrupted while waiting for items").cause(e).build();
+        }
+    }
+
+    // Each scan thread takes the next segment until none are left, then the last one ends the scan.
+    private void scanSegments() {
+        try {
+            Integer segment;
+            while (!closed && (segment = segments.poll()) != null) {
+                scanSegment(segment);
+            }
+            if (runningWorkers.decrementAndGet() == 0) {
+                buffer.put(END_OF_SCAN);
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            closed = true;
+        }
+    }
+
+    private void scanSegment(int segment) throws InterruptedException {
+        Map<String, AttributeValue> startKey = tracker.startKey(segment);
+        do {
+            ScanPage<T> page = readWithRetries(segment, startKey);
+            for (T item : page.items()) {
+                buffer.put(item);
+            }
+            startKey = page.lastEvaluatedKey() == null || page.lastEvaluatedKey().isEmpty()
+                ? null : page.lastEvaluatedKey();
+            buffer.put(new PageEnd(segment, startKey));
+        } while (startKey != null && !closed);
+    }
+
+    private ScanPage<T> readWithRetries(int segment, Map<String, AttributeValue> startKey)
+        throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return pageReader.read(segment, tracker.totalSegments(), startKey);
+            } catch (SdkException e) {
+                if (!Retries.isRetryable(e) || attempt >= config.maxAttempts() || closed) {
+                    throw e;
+                }
+                logger.debug("Scan of segment {} failed on attempt {}, retrying", segment, attempt);
+                Retries.backOff(config.retryBaseDelay(), attempt);
+            }
+        }
+    }
+}
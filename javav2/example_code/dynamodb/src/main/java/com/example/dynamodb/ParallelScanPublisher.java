@@ -0,0 +1,244 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scans a whole Amazon DynamoDB table with parallel scan segments using a
+ * DynamoDbAsyncClient, and publishes the items as a Reactive Streams publisher.
+ *
+ * This is the asynchronous counterpart of {@link ParallelScan}, with the same
+ * {@link ParallelScan.Config} and {@link ScanCheckpoint}. No threads are blocked:
+ * up to maxSegmentsInFlight Scan requests run at the same time, and a new page is only
+ * requested while fewer than bufferedItems items are waiting for the subscriber's
+ * demand. A subscriber that requests slowly therefore slows down the scan.
+ * {@link #checkpoint()} moves once all items of a page have been delivered.
+ *
+ * The publisher can be subscribed to once. Items arrive in no particular order.
+ */
+public final class ParallelScanPublisher implements Publisher<Map<String, AttributeValue>> {
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final ScanRequest request;
+    private final ParallelScan.Config config;
+    private final ScanCheckpoint resumeFrom;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicReference<ScanCheckpoint.Tracker> tracker = new AtomicReference<>();
+    private final Deque<SegmentPosition> pending = new ConcurrentLinkedDeque<>();
+    // Items and page ends, in the order in which the pages arrived.
+    private final Queue<Object> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedItems = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile Subscriber<? super Map<String, AttributeValue>> subscriber;
+    private volatile boolean started;
+    private volatile boolean done;
+
+    private record SegmentPosition(int segment, Map<String, AttributeValue> startKey) {
+    }
+
+    private record PageEnd(int segment, Map<String, AttributeValue> lastEvaluatedKey) {
+    }
+
+    /**
+     * Creates a publisher that starts the scan when it's subscribed to.
+     *
+     * @param dynamoDbAsyncClient the client that sends the Scan requests
+     * @param request             the table name and any other scan settings; Segment, TotalSegments,
+     *                            and ExclusiveStartKey are set for every segment
+     * @param config              the scan settings
+     * @param resumeFrom          the checkpoint of an earlier scan to continue, or null to scan from the start
+     */
+    public ParallelScanPublisher(DynamoDbAsyncClient dynamoDbAsyncClient, ScanRequest request,
+                                 ParallelScan.Config config, ScanCheckpoint resumeFrom) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.request = request;
+        this.config = config;
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Returns the position up to which the items have been delivered, or null before the number
+     * of segments is known.
+     */
+    public ScanCheckpoint checkpoint() {
+        ScanCheckpoint.Tracker current = tracker.get();
+        return current == null ? null : current.snapshot();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Map<String, AttributeValue>> newSubscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            newSubscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            newSubscriber.onError(new IllegalStateException("The scan can only be subscribed to once"));
+            return;
+        }
+        subscriber = newSubscriber;
+        newSubscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Demand must be positive, see rule 3.9"));
+                    return;
+                }
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+                clearBuffer();
+            }
+        });
+
+        CompletableFuture<ScanCheckpoint> start = resumeFrom != null || config.totalSegments() > 0
+            ? CompletableFuture.completedFuture(resumeFrom != null ? resumeFrom
+                : ParallelScan.startingCheckpoint(config, () -> 0L))
+            : dynamoDbAsyncClient.describeTable(b -> b.tableName(request.tableName()))
+                .thenApply(response -> ParallelScan.startingCheckpoint(config, () -> response.table().tableSizeBytes()));
+        start.whenComplete((checkpoint, error) -> {
+            if (error != null) {
+                fail(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            ScanCheckpoint.Tracker positions = new ScanCheckpoint.Tracker(checkpoint);
+            for (int segment = 0; segment < checkpoint.totalSegments(); segment++) {
+                if (!positions.isCompleted(segment)) {
+                    pending.add(new SegmentPosition(segment, positions.startKey(segment)));
+                }
+            }
+            tracker.set(positions);
+            this.started = true;
+            drain();
+        });
+    }
+
+    // Runs on whichever thread calls it, but only one thread at a time delivers items and sends requests.
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (done) {
+                clearBuffer();
+                return;
+            }
+            Throwable error = failure.get();
+            if (error != null) {
+                done = true;
+                clearBuffer();
+                subscriber.onError(error);
+                return;
+            }
+            deliver();
+            if (started && buffer.isEmpty() && pending.isEmpty() && inFlight.get() == 0) {
+                done = true;
+                subscriber.onComplete();
+                return;
+            }
+            while (started && !pending.isEmpty() && inFlight.get() < config.maxSegmentsInFlight()
+                && bufferedItems.get() < config.bufferedItems()) {
+                inFlight.incrementAndGet();
+                readPage(pending.poll(), 1);
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    // Dropped items no longer count against bufferedItems.
+    private void clearBuffer() {
+        buffer.clear();
+        bufferedItems.set(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver() {
+        Object next;
+        while ((next = buffer.peek()) != null && !done) {
+            if (next instanceof PageEnd pageEnd) {
+                // Page ends don't need demand, so the checkpoint moves as soon as the page is delivered.
+                buffer.poll();
+                tracker.get().pageConsumed(pageEnd.segment(), pageEnd.lastEvaluatedKey());
+                continue;
+            }
+            if (demand.get() == 0) {
+                return;
+            }
+            buffer.poll();
+            bufferedItems.decrementAndGet();
+            demand.decrementAndGet();
+            subscriber.onNext((Map<String, AttributeValue>) next);
+        }
+    }
+
+    private void readPage(SegmentPosition position, int attempt) {
+        ScanRequest pageRequest = ParallelScan.pageRequest(request, config, position.segment(),
+            tracker.get().totalSegments(), position.startKey());
+        dynamoDbAsyncClient.scan(pageRequest).whenComplete((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (Retries.isRetryable(cause) && attempt < config.maxAttempts() && !done) {
+                    CompletableFuture.delayedExecutor(Retries.backOffNanos(config.retryBaseDelay(), attempt),
+                        TimeUnit.NANOSECONDS).execute(() -> readPage(position, attempt + 1));
+                    return;
+                }
+                inFlight.decrementAndGet();
+                fail(cause);
+                return;
+            }
+            addPage(position.segment(), response);
+            inFlight.decrementAndGet();
+            drain();
+        });
+    }
+
+    private void addPage(int segment, ScanResponse response) {
+        Map<String, AttributeValue> lastKey = response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null;
+        bufferedItems.addAndGet(response.items().size());
+        buffer.addAll(response.items());
+        buffer.add(new PageEnd(segment, lastKey));
+        if (lastKey != null) {
+            // Continue this segment before starting a new one, so that started segments finish first.
+            pending.addFirst(new SegmentPosition(segment, lastKey));
+        }
+    }
+
+    private void fail(Throwable error) {
+        failure.compareAndSet(null, error);
+        drain();
+    }
+}
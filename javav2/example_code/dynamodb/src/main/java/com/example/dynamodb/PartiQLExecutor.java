@@ -0,0 +1,421 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementError;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementErrorCodeEnum;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementResponse;
+import software.amazon.awssdk.services.dynamodb.model.ExecuteStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.ExecuteStatementResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs PartiQL statements against DynamoDB in bulk.
+ *
+ * Statements are written as templates with a {@code {table}} placeholder, such as
+ * {@code SELECT * FROM {table} WHERE title = ? AND year = ?}. {@link #statement(String, String)}
+ * checks the template once, quotes the table name as a PartiQL identifier, and caches
+ * the result, so the statement text isn't built again for every item and a wrong number
+ * of parameters fails before anything is sent. DynamoDB has no server-side prepared
+ * statements; the cache saves the client-side work.
+ *
+ * {@link #executeBatch(List)} and {@link #executeAll(Stream)} split any number of
+ * statements into BatchExecuteStatement calls of 25 and send up to
+ * {@link Config#maxBatchesInFlight()} of them at the same time. A batch call succeeds
+ * even when some of its statements fail, so each statement that fails with a transient
+ * error, such as ThrottlingError or ProvisionedThroughputExceeded, is sent again in a
+ * later call, with exponential backoff and full jitter. Statements that fail for other
+ * reasons, such as ConditionalCheckFailed, are returned with their error.
+ *
+ * {@link #items(ExecuteStatementRequest)} follows the NextToken of ExecuteStatement
+ * lazily, page by page, which the SDK has no paginator for. Together, a bulk update is
+ * a stream: {@code executor.executeAll(executor.items(select).map(item -> update.bind(...)))}.
+ */
+public class PartiQLExecutor implements AutoCloseable {
+
+    static final int MAX_STATEMENTS_PER_BATCH = 25;
+    private static final int MAX_CACHED_STATEMENTS = 10_000;
+    private static final int MAX_REPORTED_FAILURES = 1000;
+    private static final String TABLE_PLACEHOLDER = "{table}";
+    private static final Pattern TABLE_NAME = Pattern.compile("[a-zA-Z0-9_.-]{3,255}");
+    private static final Set<BatchStatementErrorCodeEnum> TRANSIENT_ERRORS = EnumSet.of(
+        BatchStatementErrorCodeEnum.THROTTLING_ERROR,
+        BatchStatementErrorCodeEnum.PROVISIONED_THROUGHPUT_EXCEEDED,
+        BatchStatementErrorCodeEnum.REQUEST_LIMIT_EXCEEDED,
+        BatchStatementErrorCodeEnum.INTERNAL_SERVER_ERROR,
+        BatchStatementErrorCodeEnum.TRANSACTION_CONFLICT);
+
+    /**
+     * Settings for batch execution.
+     *
+     * @param maxBatchesInFlight the number of BatchExecuteStatement calls that are sent at the same time
+     * @param maxAttempts        the number of times a statement is sent before a transient error is
+     *                           returned as its result
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     */
+    public record Config(int maxBatchesInFlight, int maxAttempts, Duration retryBaseDelay) {
+
+        public Config {
+            if (maxBatchesInFlight < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("maxBatchesInFlight and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns 8 batches in flight and 10 attempts starting with a 50 ms backoff.
+         */
+        public static Config defaults() {
+            return new Config(8, 10, Duration.ofMillis(50));
+        }
+    }
+
+    /**
+     * A statement template bound to a table.
+     *
+     * @param template       the template the statement was made from
+     * @param tableName      the table
+     * @param text           the statement that is sent
+     * @param parameterCount the number of ? parameters the statement takes
+     */
+    public record Statement(String template, String tableName, String text, int parameterCount) {
+
+        public BatchStatementRequest bind(AttributeValue... parameters) {
+            return bind(Arrays.asList(parameters));
+        }
+
+        public BatchStatementRequest bind(List<AttributeValue> parameters) {
+            checkParameters(parameters);
+            // DynamoDB rejects an empty parameter list, so a statement without parameters sends none.
+            return BatchStatementRequest.builder().statement(text)
+                .parameters(parameters.isEmpty() ? null : parameters).build();
+        }
+
+        /**
+         * Returns an ExecuteStatement request for the statement, for example to read it
+         * with {@link PartiQLExecutor#items(ExecuteStatementRequest)}.
+         */
+        public ExecuteStatementRequest request(AttributeValue... parameters) {
+            List<AttributeValue> list = Arrays.asList(parameters);
+            checkParameters(list);
+            return ExecuteStatementRequest.builder().statement(text).parameters(list.isEmpty() ? null : list).build();
+        }
+
+        private void checkParameters(List<AttributeValue> parameters) {
+            if (parameters.size() != parameterCount) {
+                throw new IllegalArgumentException("The statement takes " + parameterCount + " parameters but got "
+                    + parameters.size() + ": " + text);
+            }
+        }
+    }
+
+    /**
+     * A statement that failed.
+     *
+     * @param request the statement
+     * @param error   the error of its last attempt
+     */
+    public record FailedStatement(BatchStatementRequest request, BatchStatementError error) {
+    }
+
+    /**
+     * The outcome of {@link #executeAll(Stream)}.
+     *
+     * @param statements  the number of statements that were executed
+     * @param failedCount the number of statements that failed
+     * @param failures    the first 1,000 statements that failed
+     * @param calls       the number of BatchExecuteStatement calls, including the re-drives
+     * @param redriven    the number of times a statement was sent again after a transient error
+     * @param elapsed     the duration of the run
+     */
+    public record Summary(long statements, long failedCount, List<FailedStatement> failures, long calls,
+                          long redriven, Duration elapsed) {
+    }
+
+    private record StatementKey(String template, String tableName) {
+    }
+
+    private final DynamoDbClient dynamoDbClient;
+    private final Config config;
+    private final ExecutorService senders;
+    private final Map<StatementKey, Statement> statements = new ConcurrentHashMap<>();
+
+    public PartiQLExecutor(DynamoDbClient dynamoDbClient, Config config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+        this.senders = Executors.newFixedThreadPool(config.maxBatchesInFlight(),
+            Thread.ofPlatform().daemon().name("partiql-", 0).factory());
+    }
+
+    /**
+     * Returns the template bound to the table. The result is cached, so calling this for
+     * every item is cheap.
+     *
+     * @throws IllegalArgumentException if the table name isn't a valid DynamoDB table name, or
+     *                                  the template has no {@code {table}} placeholder
+     */
+    public Statement statement(String template, String tableName) {
+        StatementKey key = new StatementKey(template, tableName);
+        Statement statement = statements.get(key);
+        if (statement == null) {
+            statement = parse(template, tableName);
+            // Templates are normally constants; a bound keeps generated ones from filling the heap.
+            if (statements.size() < MAX_CACHED_STATEMENTS) {
+                statements.putIfAbsent(key, statement);
+            }
+        }
+        return statement;
+    }
+
+    // Replaces the placeholders outside of string literals and quoted identifiers, and counts the parameters.
+    static Statement parse(String template, String tableName) {
+        if (!TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Not a valid table name: " + tableName);
+        }
+        StringBuilder text = new StringBuilder(template.length() + tableName.length());
+        int parameters = 0;
+        boolean hasTable = false;
+        char quote = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (quote != 0) {
+                // A doubled quote inside a literal is an escaped quote; the loop sees it as closing and reopening.
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '?') {
+                parameters++;
+            } else if (template.startsWith(TABLE_PLACEHOLDER, i)) {
+                text.append('"').append(tableName).append('"');
+                i += TABLE_PLACEHOLDER.length() - 1;
+                hasTable = true;
+                continue;
+            }
+            text.append(c);
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated literal in " + template);
+        }
+        if (!hasTable) {
+            throw new IllegalArgumentException("The template has no " + TABLE_PLACEHOLDER + " placeholder: " + template);
+        }
+        return new Statement(template, tableName, text.toString(), parameters);
+    }
+
+    /**
+     * Executes the statements and returns a response for each of them, in the same order.
+     * A response has an error if its statement failed with an error that isn't transient,
+     * or still failed after {@link Config#maxAttempts()}.
+     *
+     * @throws SdkException if a BatchExecuteStatement call itself fails with an error that isn't
+     *                      retryable, or still fails after maxAttempts; the other calls may have been
+     *                      executed
+     */
+    public List<BatchStatementResponse> executeBatch(List<BatchStatementRequest> statements) {
+        Run run = new Run();
+        List<Future<List<BatchStatementResponse>>> chunks = new ArrayList<>();
+        for (int start = 0; start < statements.size(); start += MAX_STATEMENTS_PER_BATCH) {
+            List<BatchStatementRequest> chunk =
+                statements.subList(start, Math.min(statements.size(), start + MAX_STATEMENTS_PER_BATCH));
+            chunks.add(senders.submit(() -> execute(chunk, run)));
+        }
+        List<BatchStatementResponse> responses = new ArrayList<>(statements.size());
+        try {
+            for (Future<List<BatchStatementResponse>> chunk : chunks) {
+                responses.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while executing statements").cause(e).build();
+        } catch (ExecutionException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            throw rethrow(e.getCause());
+        }
+        return responses;
+    }
+
+    /**
+     * Executes every statement of the stream and waits until all of them are done. The
+     * stream is consumed as batches become free, so it can be longer than what fits in
+     * memory; only the failures are kept.
+     *
+     * @throws SdkException if a BatchExecuteStatement call itself fails with an error that isn't
+     *                      retryable, or still fails after maxAttempts; no more statements are taken
+     *                      from the stream, and the ones in flight finish first
+     */
+    public Summary executeAll(Stream<BatchStatementRequest> statements) {
+        Run run = new Run();
+        Semaphore inFlight = new Semaphore(config.maxBatchesInFlight());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong executed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<FailedStatement> failures = Collections.synchronizedList(new ArrayList<>());
+        try {
+            Iterator<BatchStatementRequest> iterator = statements.iterator();
+            while (iterator.hasNext() && failure.get() == null) {
+                List<BatchStatementRequest> chunk = new ArrayList<>(MAX_STATEMENTS_PER_BATCH);
+                while (chunk.size() < MAX_STATEMENTS_PER_BATCH && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+                inFlight.acquire();
+                senders.execute(() -> {
+                    try {
+                        List<BatchStatementResponse> responses = execute(chunk, run);
+                        executed.addAndGet(chunk.size());
+                        for (int i = 0; i < chunk.size(); i++) {
+                            if (responses.get(i).error() != null) {
+                                failed.incrementAndGet();
+                                if (failures.size() < MAX_REPORTED_FAILURES) {
+                                    failures.add(new FailedStatement(chunk.get(i), responses.get(i).error()));
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(config.maxBatchesInFlight());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while executing statements").cause(e).build();
+        }
+        if (failure.get() != null) {
+            throw rethrow(failure.get());
+        }
+        return new Summary(executed.get(), failed.get(), List.copyOf(failures), run.calls.get(), run.redriven.get(),
+            Duration.ofNanos(System.nanoTime() - run.startNanos));
+    }
+
+    // Sends one chunk, and sends its statements with transient errors again until they succeed or run out of attempts.
+    private List<BatchStatementResponse> execute(List<BatchStatementRequest> chunk, Run run)
+            throws InterruptedException {
+        BatchStatementResponse[] responses = new BatchStatementResponse[chunk.size()];
+        List<Integer> pending = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            pending.add(i);
+        }
+        for (int attempt = 1; ; attempt++) {
+            List<BatchStatementRequest> requests = pending.stream().map(chunk::get).toList();
+            BatchExecuteStatementResponse response;
+            try {
+                run.calls.incrementAndGet();
+                response = dynamoDbClient.batchExecuteStatement(r -> r.statements(requests));
+            } catch (SdkException e) {
+                if (!Retries.isRetryable(e) || attempt >= config.maxAttempts()) {
+                    throw e;
+                }
+                Retries.backOff(config.retryBaseDelay(), attempt);
+                continue;
+            }
+            List<Integer> retry = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                BatchStatementResponse statementResponse = response.responses().get(i);
+                BatchStatementError error = statementResponse.error();
+                if (error != null && TRANSIENT_ERRORS.contains(error.code()) && attempt < config.maxAttempts()) {
+                    retry.add(pending.get(i));
+                } else {
+                    responses[pending.get(i)] = statementResponse;
+                }
+            }
+            if (retry.isEmpty()) {
+                return Arrays.asList(responses);
+            }
+            run.redriven.addAndGet(retry.size());
+            pending = retry;
+            Retries.backOff(config.retryBaseDelay(), attempt);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        return AbortedException.builder().message("Interrupted while executing statements").cause(failure).build();
+    }
+
+    /**
+     * Returns the pages of an ExecuteStatement request. Each page is requested when the
+     * previous one has been consumed.
+     */
+    public Iterable<ExecuteStatementResponse> pages(ExecuteStatementRequest request) {
+        return () -> new Iterator<>() {
+            private ExecuteStatementResponse last;
+
+            @Override
+            public boolean hasNext() {
+                return last == null || last.nextToken() != null;
+            }
+
+            @Override
+            public ExecuteStatementResponse next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ExecuteStatementRequest pageRequest = last == null ? request
+                    : request.toBuilder().nextToken(last.nextToken()).build();
+                last = dynamoDbClient.executeStatement(pageRequest);
+                return last;
+            }
+        };
+    }
+
+    /**
+     * Returns the items of an ExecuteStatement request as a lazy stream. Pages that a
+     * filter leaves empty are skipped.
+     */
+    public Stream<Map<String, AttributeValue>> items(ExecuteStatementRequest request) {
+        Spliterator<ExecuteStatementResponse> pages =
+            Spliterators.spliteratorUnknownSize(pages(request).iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(pages, false).flatMap(page -> page.items().stream());
+    }
+
+    @Override
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    // The counters of one call to executeBatch or executeAll.
+    private static final class Run {
+        final long startNanos = System.nanoTime();
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong redriven = new AtomicLong();
+    }
+}
@@ -0,0 +1,54 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The retry rules that the bulk examples in this package share: which errors are worth
+ * another attempt, and how long to wait before it.
+ */
+final class Retries {
+
+    private Retries() {
+    }
+
+    /**
+     * Returns whether a call that failed with the error can succeed when it is sent again:
+     * throttling, server errors, and client errors such as timeouts, but not a call that
+     * was aborted or one that DynamoDB rejected.
+     */
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof AbortedException) {
+            return false;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkException;
+    }
+
+    /**
+     * Returns the wait before the attempt after the given one: a random time up to the base
+     * delay, which doubles with every attempt. Full jitter keeps requests that were throttled
+     * together from retrying together.
+     */
+    static long backOffNanos(Duration baseDelay, int attempt) {
+        long baseNanos = baseDelay.toNanos() << Math.min(attempt - 1, 10);
+        return ThreadLocalRandom.current().nextLong(baseNanos + 1);
+    }
+
+    /**
+     * Sleeps for {@link #backOffNanos(Duration, int)}.
+     */
+    static void backOff(Duration baseDelay, int attempt) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(backOffNanos(baseDelay, attempt));
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The position of a parallel scan, from which a new scan can resume after a crash or
+ * a restart.
+ *
+ * For every segment, the checkpoint holds the LastEvaluatedKey of the last page whose
+ * items have all been handed to the consumer, or marks the segment as completed.
+ * Segments that aren't mentioned start from the beginning. Because a page only counts
+ * once all its items are consumed, a resumed scan can repeat the items of the pages
+ * that were being consumed, but it never skips any.
+ *
+ * @param totalSegments     the number of segments the scan was split into
+ * @param startKeys         the ExclusiveStartKey to resume each unfinished segment from
+ * @param completedSegments the segments that were scanned to the end
+ */
+public record ScanCheckpoint(int totalSegments, Map<Integer, Map<String, AttributeValue>> startKeys,
+                             Set<Integer> completedSegments) {
+
+    public ScanCheckpoint {
+        if (totalSegments < 1) {
+            throw new IllegalArgumentException("totalSegments must be positive");
+        }
+        startKeys = Map.copyOf(startKeys);
+        completedSegments = Set.copyOf(completedSegments);
+    }
+
+    /**
+     * Returns whether every segment was scanned to the end.
+     */
+    public boolean isComplete() {
+        return completedSegments.size() == totalSegments;
+    }
+
+    // Records the progress of a running scan; pages are reported once their items are consumed.
+    static final class Tracker {
+        private final int totalSegments;
+        private final Map<Integer, Map<String, AttributeValue>> startKeys = new ConcurrentHashMap<>();
+        private final Set<Integer> completedSegments = ConcurrentHashMap.newKeySet();
+
+        Tracker(ScanCheckpoint resumeFrom) {
+            this.totalSegments = resumeFrom.totalSegments();
+            this.startKeys.putAll(resumeFrom.startKeys());
+            this.completedSegments.addAll(resumeFrom.completedSegments());
+        }
+
+        int totalSegments() {
+            return totalSegments;
+        }
+
+        boolean isCompleted(int segment) {
+            return completedSegments.contains(segment);
+        }
+
+        Map<String, AttributeValue> startKey(int segment) {
+            return startKeys.get(segment);
+        }
+
+        // A page without a LastEvaluatedKey is the last one of its segment.
+        void pageConsumed(int segment, Map<String, AttributeValue> lastEvaluatedKey) {
+            if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+                completedSegments.add(segment);
+                startKeys.remove(segment);
+            } else {
+                startKeys.put(segment, lastEvaluatedKey);
+            }
+        }
+
+        ScanCheckpoint snapshot() {
+            return new ScanCheckpoint(totalSegments, new TreeMap<>(startKeys), new TreeSet<>(completedSegments));
+        }
+    }
+}
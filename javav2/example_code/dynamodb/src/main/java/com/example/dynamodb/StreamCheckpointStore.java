@@ -0,0 +1,56 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where a {@link StreamReplicator} keeps how far it has applied each shard of a
+ * DynamoDB stream, so that a restarted replicator continues after the last applied
+ * record instead of from the beginning of the stream.
+ *
+ * A checkpoint is the sequence number of the last applied record of a shard, or
+ * {@link #SHARD_END} once a closed shard has been applied completely.
+ */
+public interface StreamCheckpointStore {
+
+    /**
+     * The checkpoint of a shard that was read to its end.
+     */
+    String SHARD_END = "SHARD_END";
+
+    /**
+     * Returns the checkpoint of the shard, or an empty optional if it has none.
+     */
+    Optional<String> load(String streamArn, String shardId);
+
+    /**
+     * Saves the checkpoint of the shard, replacing the previous one.
+     */
+    void save(String streamArn, String shardId, String checkpoint);
+
+    /**
+     * Returns a store that keeps the checkpoints in memory, which is enough for tests and
+     * for replicators that can start over after a restart.
+     */
+    static StreamCheckpointStore inMemory() {
+        return new InMemory();
+    }
+
+    final class InMemory implements StreamCheckpointStore {
+        private final Map<String, String> checkpoints = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<String> load(String streamArn, String shardId) {
+            return Optional.ofNullable(checkpoints.get(streamArn + "/" + shardId));
+        }
+
+        @Override
+        public void save(String streamArn, String shardId, String checkpoint) {
+            checkpoints.put(streamArn + "/" + shardId, checkpoint);
+        }
+    }
+}
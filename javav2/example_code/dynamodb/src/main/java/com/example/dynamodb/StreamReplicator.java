@@ -0,0 +1,491 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.LimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Replicates a table into another table by applying the records of the source table's
+ * DynamoDB stream, with the AWS SDK for Java 2.x.
+ *
+ * Every open shard of the stream is read by its own thread, up to
+ * {@link Config#maxShardsInFlight()} shards at a time. A child shard is only read once
+ * its parent has been applied to its end, and within a shard the records are applied in
+ * order, so the writes to each key are applied in the order they were made.
+ *
+ * The records of each GetRecords call are coalesced by key: only the last change of a
+ * key is written, as a put of its new image or a delete. The writes are then sent as
+ * BatchWriteItem calls of 25, up to {@link Config#maxBatchesInFlight()} at a time across
+ * all shards, and unprocessed items are sent again with exponential backoff and full
+ * jitter. A batch of records is applied completely before the next one is read, so the
+ * order of the writes to a key is kept across batches. The stream needs the NEW_IMAGE or
+ * NEW_AND_OLD_IMAGES view type.
+ *
+ * The position in each shard is saved to a {@link StreamCheckpointStore} after
+ * {@link Config#checkpointEveryRecords()} records or {@link Config#checkpointInterval()},
+ * whichever comes first, and when the replicator is closed. Records after the last
+ * checkpoint are applied again after a restart, which is harmless because a put or a
+ * delete of the latest state can be repeated.
+ *
+ * {@link #stats()} reports the records per second and the replication lag, which is the
+ * age of the last applied record of the shard that is furthest behind.
+ */
+public class StreamReplicator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamReplicator.class);
+
+    static final int MAX_ITEMS_PER_BATCH = 25;
+    static final int MAX_RECORDS_PER_READ = 1000;
+
+    /**
+     * Settings for replication.
+     *
+     * @param maxShardsInFlight      the number of shards that are read at the same time
+     * @param maxBatchesInFlight     the number of BatchWriteItem requests that are sent at the same time
+     * @param recordsPerRead         the Limit of each GetRecords call, at most 1,000
+     * @param pollInterval           how long a shard that has no new records waits before it reads again
+     * @param shardDiscoveryInterval how often the stream is described to find new shards
+     * @param checkpointEveryRecords the number of applied records of a shard that triggers a checkpoint
+     * @param checkpointInterval     the time after which a shard with applied records is checkpointed
+     * @param maxAttempts            the number of times a request is sent before replication fails
+     * @param retryBaseDelay         the backoff before the second attempt; it doubles for every further attempt
+     * @param progressInterval       how often progress is logged and the records per second are measured
+     */
+    public record Config(int maxShardsInFlight, int maxBatchesInFlight, int recordsPerRead, Duration pollInterval,
+                         Duration shardDiscoveryInterval, int checkpointEveryRecords, Duration checkpointInterval,
+                         int maxAttempts, Duration retryBaseDelay, Duration progressInterval) {
+
+        public Config {
+            if (maxShardsInFlight < 1 || maxBatchesInFlight < 1 || maxAttempts < 1 || checkpointEveryRecords < 1) {
+                throw new IllegalArgumentException(
+                    "maxShardsInFlight, maxBatchesInFlight, maxAttempts and checkpointEveryRecords must be positive");
+            }
+            if (recordsPerRead < 1 || recordsPerRead > MAX_RECORDS_PER_READ) {
+                throw new IllegalArgumentException("recordsPerRead must be between 1 and " + MAX_RECORDS_PER_READ);
+            }
+        }
+
+        /**
+         * Returns 32 shards and 16 batches in flight, reads of 1,000 records, a 1 second poll
+         * interval, shard discovery every 10 seconds, a checkpoint every 1,000 records or
+         * 10 seconds, 10 attempts starting with a 50 ms backoff, and progress every 10 seconds.
+         */
+        public static Config defaults() {
+            return new Config(32, 16, MAX_RECORDS_PER_READ, Duration.ofSeconds(1), Duration.ofSeconds(10), 1000,
+                Duration.ofSeconds(10), 10, Duration.ofMillis(50), Duration.ofSeconds(10));
+        }
+    }
+
+    /**
+     * The progress of the replication.
+     *
+     * @param recordsApplied   the stream records that have been applied
+     * @param writes           the puts and deletes that were written; coalescing makes this lower than
+     *                         recordsApplied
+     * @param recordsPerSecond the records applied per second during the last progress interval
+     * @param lag              the age of the last applied record of the shard that is furthest behind, or
+     *                         zero when every shard has caught up
+     * @param activeShards     the shards that are being read
+     * @param finishedShards   the closed shards that have been applied to their end
+     * @param checkpoints      the checkpoints that were saved
+     */
+    public record Stats(long recordsApplied, long writes, double recordsPerSecond, Duration lag, int activeShards,
+                        int finishedShards, long checkpoints) {
+    }
+
+    private final DynamoDbStreamsClient streamsClient;
+    private final DynamoDbClient dynamoDbClient;
+    private final String streamArn;
+    private final String targetTable;
+    private final StreamCheckpointStore checkpointStore;
+    private final Config config;
+    private final ExecutorService readers;
+    private final ExecutorService writers;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, ShardReader> activeShards = new ConcurrentHashMap<>();
+    private final Set<String> finishedShards = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch closing = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong recordsApplied = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+    private volatile double recordsPerSecond;
+    private boolean started;
+
+    /**
+     * @param streamsClient   the client that reads the stream
+     * @param dynamoDbClient  the client that writes to the target table
+     * @param streamArn       the stream of the source table
+     * @param targetTable     the table the changes are applied to
+     * @param checkpointStore where the position in each shard is kept
+     * @param config          the replication settings
+     */
+    public StreamReplicator(DynamoDbStreamsClient streamsClient, DynamoDbClient dynamoDbClient, String streamArn,
+                            String targetTable, StreamCheckpointStore checkpointStore, Config config) {
+        this.streamsClient = streamsClient;
+        this.dynamoDbClient = dynamoDbClient;
+        this.streamArn = streamArn;
+        this.targetTable = targetTable;
+        this.checkpointStore = checkpointStore;
+        this.config = config;
+        this.readers = Executors.newFixedThreadPool(config.maxShardsInFlight(),
+            Thread.ofPlatform().daemon().name("stream-shard-", 0).factory());
+        this.writers = Executors.newFixedThreadPool(config.maxBatchesInFlight(),
+            Thread.ofPlatform().daemon().name("stream-write-", 0).factory());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("stream-replicator").factory());
+    }
+
+    /**
+     * Starts reading the stream. Replication runs in the background until {@link #close()}
+     * is called or it fails; see {@link #failure()}.
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("The replicator was already started");
+        }
+        started = true;
+        scheduler.scheduleWithFixedDelay(this::discoverShards, 0, config.shardDiscoveryInterval().toNanos(),
+            TimeUnit.NANOSECONDS);
+        long intervalNanos = config.progressInterval().toNanos();
+        scheduler.scheduleAtFixedRate(new ProgressReporter(), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the progress of the replication.
+     */
+    public Stats stats() {
+        Instant now = Instant.now();
+        Duration lag = activeShards.values().stream()
+            .map(reader -> reader.lag(now))
+            .max(Duration::compareTo)
+            .orElse(Duration.ZERO);
+        return new Stats(recordsApplied.get(), writes.get(), recordsPerSecond, lag, activeShards.size(),
+            finishedShards.size(), checkpoints.get());
+    }
+
+    /**
+     * Returns the error that stopped the replication, if it failed.
+     */
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure.get());
+    }
+
+    /**
+     * Stops reading, waits for the records being applied, and checkpoints them.
+     */
+    @Override
+    public void close() {
+        closing.countDown();
+        scheduler.shutdownNow();
+        readers.shutdown();
+        try {
+            if (!readers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Shard readers of {} didn't stop within a minute", streamArn);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readers.shutdownNow();
+            writers.shutdownNow();
+        }
+    }
+
+    // Starts a reader for every shard whose parent is done, up to maxShardsInFlight.
+    private void discoverShards() {
+        try {
+            List<Shard> shards = new ArrayList<>();
+            String lastShardId = null;
+            do {
+                String exclusiveStartShardId = lastShardId;
+                DescribeStreamResponse response = withRetries(() -> streamsClient.describeStream(r -> r
+                    .streamArn(streamArn).exclusiveStartShardId(exclusiveStartShardId)));
+                shards.addAll(response.streamDescription().shards());
+                lastShardId = response.streamDescription().lastEvaluatedShardId();
+            } while (lastShardId != null);
+
+            Set<String> shardIds = new HashSet<>();
+            shards.forEach(shard -> shardIds.add(shard.shardId()));
+            for (Shard shard : shards) {
+                String shardId = shard.shardId();
+                if (finishedShards.contains(shardId) || activeShards.containsKey(shardId)) {
+                    continue;
+                }
+                // A parent that has been trimmed from the stream no longer holds back its children.
+                String parent = shard.parentShardId();
+                if (parent != null && shardIds.contains(parent) && !finishedShards.contains(parent)
+                    && !isFinished(parent)) {
+                    continue;
+                }
+                Optional<String> checkpoint = checkpointStore.load(streamArn, shardId);
+                if (checkpoint.filter(StreamCheckpointStore.SHARD_END::equals).isPresent()) {
+                    finishedShards.add(shardId);
+                    continue;
+                }
+                if (activeShards.size() >= config.maxShardsInFlight() || closing.getCount() == 0) {
+                    return;
+                }
+                ShardReader reader = new ShardReader(shardId, checkpoint.orElse(null));
+                activeShards.put(shardId, reader);
+                readers.execute(reader);
+            }
+        } catch (RuntimeException e) {
+            // A failed discovery is tried again at the next interval; readers that are running carry on.
+            logger.warn("Couldn't describe the shards of {}", streamArn, e);
+        }
+    }
+
+    private boolean isFinished(String shardId) {
+        if (checkpointStore.load(streamArn, shardId).filter(StreamCheckpointStore.SHARD_END::equals).isPresent()) {
+            finishedShards.add(shardId);
+            return true;
+        }
+        return false;
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            logger.error("Replication of {} into {} failed", streamArn, targetTable, e);
+        }
+        closing.countDown();
+    }
+
+    // Applies the records of one read as puts and deletes of the last state of each key.
+    private void apply(List<Record> records) throws InterruptedException {
+        Map<Map<String, AttributeValue>, WriteRequest> latest = new LinkedHashMap<>();
+        for (Record record : records) {
+            StreamRecord change = record.dynamodb();
+            if (record.eventName() == OperationType.REMOVE) {
+                latest.put(change.keys(), WriteRequest.builder()
+                    .deleteRequest(DeleteRequest.builder().key(change.keys()).build()).build());
+            } else if (change.hasNewImage()) {
+                latest.put(change.keys(), WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(change.newImage()).build()).build());
+            } else {
+                throw new IllegalStateException("The stream record has no new image; "
+                    + "the stream needs the NEW_IMAGE or NEW_AND_OLD_IMAGES view type");
+            }
+        }
+        List<WriteRequest> pending = new ArrayList<>(latest.values());
+        List<Future<?>> batches = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += MAX_ITEMS_PER_BATCH) {
+            List<WriteRequest> batch = pending.subList(start, Math.min(pending.size(), start + MAX_ITEMS_PER_BATCH));
+            batches.add(writers.submit(() -> {
+                writeBatch(batch);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (ExecutionException e) {
+            batches.forEach(batch -> batch.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw AbortedException.builder().message("Couldn't apply the stream records").cause(e.getCause()).build();
+        }
+        writes.addAndGet(pending.size());
+    }
+
+    private void writeBatch(List<WriteRequest> batch) throws InterruptedException {
+        List<WriteRequest> pending = batch;
+        for (int attempt = 1; ; attempt++) {
+            Map<String, List<WriteRequest>> requestItems = Map.of(targetTable, pending);
+            try {
+                BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(r -> r.requestItems(requestItems));
+                List<WriteRequest> unprocessed = response.unprocessedItems().getOrDefault(targetTable, List.of());
+                if (unprocessed.isEmpty()) {
+                    return;
+                }
+                if (attempt >= config.maxAttempts()) {
+                    throw SdkException.create(unprocessed.size() + " writes were still unprocessed after "
+                        + attempt + " attempts", null);
+                }
+                pending = unprocessed;
+            } catch (SdkException e) {
+                if (!Retries.isRetryable(e) || attempt >= config.maxAttempts()) {
+                    throw e;
+                }
+            }
+            Retries.backOff(config.retryBaseDelay(), attempt);
+        }
+    }
+
+    private <T> T withRetries(Supplier<T> call) throws SdkException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (SdkException e) {
+                // DynamoDB Streams throttles with LimitExceededException, which the SDK doesn't count as throttling.
+                boolean retryable = e instanceof LimitExceededException || Retries.isRetryable(e);
+                if (!retryable || e instanceof ExpiredIteratorException || attempt >= config.maxAttempts()) {
+                    throw e;
+                }
+            }
+            try {
+                Retries.backOff(config.retryBaseDelay(), attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while retrying").cause(e).build();
+            }
+        }
+    }
+
+    // Reads one shard from its checkpoint to its end, or until the replicator closes.
+    private final class ShardReader implements Runnable {
+        private final String shardId;
+        private String lastSequenceNumber;
+        private String checkpointedSequenceNumber;
+        private long recordsSinceCheckpoint;
+        private long lastCheckpointNanos = System.nanoTime();
+        private volatile Instant lastRecordCreated;
+        private volatile boolean caughtUp;
+
+        ShardReader(String shardId, String checkpoint) {
+            this.shardId = shardId;
+            this.lastSequenceNumber = checkpoint;
+            this.checkpointedSequenceNumber = checkpoint;
+        }
+
+        Duration lag(Instant now) {
+            Instant created = lastRecordCreated;
+            return caughtUp || created == null ? Duration.ZERO : Duration.between(created, now);
+        }
+
+        @Override
+        public void run() {
+            try {
+                String iterator = iterator();
+                while (iterator != null && closing.getCount() > 0) {
+                    String current = iterator;
+                    GetRecordsResponse response;
+                    try {
+                        response = withRetries(() -> streamsClient.getRecords(r -> r
+                            .shardIterator(current).limit(config.recordsPerRead())));
+                    } catch (ExpiredIteratorException e) {
+                        iterator = iterator();
+                        continue;
+                    }
+                    List<Record> records = response.records();
+                    if (!records.isEmpty()) {
+                        apply(records);
+                        Record last = records.get(records.size() - 1);
+                        lastSequenceNumber = last.dynamodb().sequenceNumber();
+                        lastRecordCreated = last.dynamodb().approximateCreationDateTime();
+                        recordsApplied.addAndGet(records.size());
+                        recordsSinceCheckpoint += records.size();
+                    }
+                    iterator = response.nextShardIterator();
+                    caughtUp = records.isEmpty();
+                    if (iterator == null) {
+                        checkpoint(StreamCheckpointStore.SHARD_END);
+                        finishedShards.add(shardId);
+                        logger.info("Applied shard {} of {} to its end", shardId, streamArn);
+                    } else if (recordsSinceCheckpoint >= config.checkpointEveryRecords()
+                        || System.nanoTime() - lastCheckpointNanos >= config.checkpointInterval().toNanos()) {
+                        checkpoint(lastSequenceNumber);
+                    }
+                    if (iterator != null && records.isEmpty()) {
+                        closing.await(config.pollInterval().toNanos(), TimeUnit.NANOSECONDS);
+                    }
+                }
+                if (iterator != null) {
+                    checkpoint(lastSequenceNumber);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(AbortedException.builder().message("Interrupted while reading " + shardId).cause(e).build());
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                activeShards.remove(shardId);
+            }
+            if (finishedShards.contains(shardId) && closing.getCount() > 0) {
+                // Start the children of the shard without waiting for the next discovery.
+                scheduler.execute(StreamReplicator.this::discoverShards);
+            }
+        }
+
+        private String iterator() {
+            ShardIteratorType type = lastSequenceNumber == null
+                ? ShardIteratorType.TRIM_HORIZON : ShardIteratorType.AFTER_SEQUENCE_NUMBER;
+            return withRetries(() -> streamsClient.getShardIterator(r -> r
+                .streamArn(streamArn)
+                .shardId(shardId)
+                .shardIteratorType(type)
+                .sequenceNumber(lastSequenceNumber))).shardIterator();
+        }
+
+        private void checkpoint(String checkpoint) {
+            if (checkpoint == null || checkpoint.equals(checkpointedSequenceNumber)) {
+                return;
+            }
+            checkpointStore.save(streamArn, shardId, checkpoint);
+            checkpointedSequenceNumber = checkpoint;
+            recordsSinceCheckpoint = 0;
+            lastCheckpointNanos = System.nanoTime();
+            checkpoints.incrementAndGet();
+        }
+    }
+
+    private final class ProgressReporter implements Runnable {
+        private long lastNanos = System.nanoTime();
+        private long lastApplied;
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            long applied = recordsApplied.get();
+            recordsPerSecond = (applied - lastApplied) / ((now - lastNanos) / 1e9);
+            lastNanos = now;
+            lastApplied = applied;
+            Stats stats = stats();
+            logger.info("Replicated {} records of {} into {} ({} records/s, lag {} ms), {} shards active, {} done",
+                stats.recordsApplied(), streamArn, targetTable, Math.round(stats.recordsPerSecond()),
+                stats.lag().toMillis(), stats.activeShards(), stats.finishedShards());
+        }
+    }
+}
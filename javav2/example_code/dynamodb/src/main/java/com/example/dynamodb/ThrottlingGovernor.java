@@ -0,0 +1,407 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces the requests of every DynamoDB client in the JVM that shares it, so that
+ * clients writing to the same table back off together instead of each learning about
+ * throttling on its own.
+ *
+ * AdaptiveRetryStrategy keeps a rate limiter per client. When many clients, or many
+ * threads with their own clients, write to one table, each of them slows down only
+ * after it has been throttled itself, and together they keep exceeding the table's
+ * capacity. The governor keeps one limiter per table, or per table and partition key
+ * prefix when {@link Config#partitionKeyPrefixLength()} is set and the table's
+ * partition key is registered with {@link #registerPartitionKey(String, String)}, and
+ * every client that has {@link #interceptor()} installed draws from it.
+ *
+ * Each limiter is a lock-free token bucket (the generic cell rate algorithm): a single
+ * compare-and-set reserves the next send time, and the caller sleeps until then. The
+ * rate is learned with additive increase and multiplicative decrease. It doubles every
+ * second until the first ProvisionedThroughputExceededException or other throttling
+ * error, and after that grows by {@link Config#increasePerSecond()}. Every throttling
+ * error multiplies it by {@link Config#decreaseFactor()}, at most once per
+ * {@link Config#decreaseInterval()}, so the requests that were already in flight when
+ * the table was throttled don't cut it more than once.
+ *
+ * The interceptor takes a token before every attempt, including the SDK's retries. It
+ * reads throttling errors from the response of every attempt of a synchronous client;
+ * for an asynchronous client it only sees the error the call finally fails with.
+ * Waiting for a token blocks the thread that sends the attempt.
+ */
+public final class ThrottlingGovernor {
+
+    private static final ThrottlingGovernor SHARED = new ThrottlingGovernor(Config.defaults());
+    private static final ExecutionAttribute<Limiter> LIMITER = new ExecutionAttribute<>("ThrottlingGovernor.Limiter");
+    private static final ExecutionAttribute<Boolean> ATTEMPTS_SEEN =
+        new ExecutionAttribute<>("ThrottlingGovernor.AttemptsSeen");
+    private static final Set<String> THROTTLING_ERROR_CODES =
+        Set.of("ProvisionedThroughputExceededException", "ThrottlingException", "RequestLimitExceeded");
+
+    private final Config config;
+    private final Map<Scope, Limiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, String> partitionKeys = new ConcurrentHashMap<>();
+    private final ExecutionInterceptor interceptor = new Interceptor();
+
+    /**
+     * Settings for the limiters.
+     *
+     * @param initialRate              the requests per second a new limiter starts with
+     * @param minRate                  the rate a limiter never goes below
+     * @param maxRate                  the rate a limiter never goes above
+     * @param increasePerSecond        how much the rate grows per second of successful requests
+     *                                 once the limiter has been throttled
+     * @param decreaseFactor           what the rate is multiplied by when a request is throttled
+     * @param decreaseInterval         the time after a decrease in which further throttling
+     *                                 errors don't decrease the rate again
+     * @param burst                    how much unused rate a limiter saves up, as a duration at
+     *                                 the current rate
+     * @param partitionKeyPrefixLength the number of leading characters of a registered partition
+     *                                 key that select the limiter, or 0 for one limiter per table
+     */
+    public record Config(double initialRate, double minRate, double maxRate, double increasePerSecond,
+                         double decreaseFactor, Duration decreaseInterval, Duration burst,
+                         int partitionKeyPrefixLength) {
+
+        public Config {
+            if (!(minRate > 0) || minRate > initialRate || initialRate > maxRate) {
+                throw new IllegalArgumentException("Rates must satisfy 0 < minRate <= initialRate <= maxRate");
+            }
+            if (!(increasePerSecond > 0)) {
+                throw new IllegalArgumentException("increasePerSecond must be positive");
+            }
+            if (!(decreaseFactor > 0 && decreaseFactor < 1)) {
+                throw new IllegalArgumentException("decreaseFactor must be between 0 and 1");
+            }
+            if (decreaseInterval.isNegative() || burst.isNegative()) {
+                throw new IllegalArgumentException("Durations must not be negative");
+            }
+            if (partitionKeyPrefixLength < 0) {
+                throw new IllegalArgumentException("partitionKeyPrefixLength must not be negative");
+            }
+        }
+
+        public static Config defaults() {
+            return new Config(50, 1, 40_000, 20, 0.7, Duration.ofMillis(200), Duration.ofMillis(100), 0);
+        }
+    }
+
+    /**
+     * What a limiter is for: a table, and the partition key prefix, which is empty when
+     * the limiter covers the whole table.
+     */
+    public record Scope(String tableName, String partitionKeyPrefix) {
+    }
+
+    /**
+     * The state of one limiter.
+     *
+     * @param rate      the requests per second the limiter currently lets through
+     * @param admitted  the requests that have taken a token
+     * @param succeeded the requests that succeeded
+     * @param throttled the requests that were throttled
+     * @param waited    the total time requests waited for a token
+     */
+    public record ScopeStats(Scope scope, double rate, long admitted, long succeeded, long throttled,
+                             Duration waited) {
+    }
+
+    public ThrottlingGovernor(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Returns the governor that is shared by the whole JVM, with the default settings.
+     */
+    public static ThrottlingGovernor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns an interceptor that paces a client with this governor. Add the same
+     * interceptor, or another one of this governor, to every client that should share
+     * the limiters.
+     */
+    public ExecutionInterceptor interceptor() {
+        return interceptor;
+    }
+
+    /**
+     * Tells the governor which attribute is the partition key of a table, so its requests
+     * can be paced per partition key prefix.
+     */
+    public void registerPartitionKey(String tableName, String attributeName) {
+        partitionKeys.put(tableName, attributeName);
+    }
+
+    /**
+     * Waits until a request for the scope may be sent. Use this, together with
+     * {@link #onSuccess(Scope)} and {@link #onThrottle(Scope)}, to pace work that doesn't
+     * go through a client with {@link #interceptor()}.
+     */
+    public void acquire(Scope scope) throws InterruptedException {
+        limiter(scope).acquire();
+    }
+
+    public void onSuccess(Scope scope) {
+        limiter(scope).onSuccess();
+    }
+
+    public void onThrottle(Scope scope) {
+        limiter(scope).onThrottle();
+    }
+
+    /**
+     * Returns the rate the limiter for the scope currently lets through.
+     */
+    public double rate(Scope scope) {
+        return limiter(scope).rate();
+    }
+
+    /**
+     * Returns the state of every limiter, ordered by table and prefix.
+     */
+    public List<ScopeStats> stats() {
+        return limiters.values().stream()
+            .map(Limiter::stats)
+            .sorted(Comparator.comparing((ScopeStats stats) -> stats.scope().tableName())
+                .thenComparing(stats -> stats.scope().partitionKeyPrefix()))
+            .toList();
+    }
+
+    private Limiter limiter(Scope scope) {
+        return limiters.computeIfAbsent(scope, Limiter::new);
+    }
+
+    // Returns the limiter for a request, or null for requests that aren't paced.
+    private Limiter limiterFor(SdkRequest request) {
+        if (request instanceof GetItemRequest get) {
+            return limiter(scope(get.tableName(), get.key()));
+        } else if (request instanceof PutItemRequest put) {
+            return limiter(scope(put.tableName(), put.item()));
+        } else if (request instanceof UpdateItemRequest update) {
+            return limiter(scope(update.tableName(), update.key()));
+        } else if (request instanceof DeleteItemRequest delete) {
+            return limiter(scope(delete.tableName(), delete.key()));
+        } else if (request instanceof QueryRequest query) {
+            return limiter(scope(query.tableName(), null));
+        } else if (request instanceof ScanRequest scan) {
+            return limiter(scope(scan.tableName(), null));
+        } else if (request instanceof BatchWriteItemRequest batchWrite && batchWrite.requestItems().size() == 1) {
+            return limiter(scope(batchWrite.requestItems().keySet().iterator().next(), null));
+        } else if (request instanceof BatchGetItemRequest batchGet && batchGet.requestItems().size() == 1) {
+            return limiter(scope(batchGet.requestItems().keySet().iterator().next(), null));
+        }
+        return null;
+    }
+
+    private Scope scope(String tableName, Map<String, AttributeValue> key) {
+        String partitionKey = partitionKeys.get(tableName);
+        if (config.partitionKeyPrefixLength() == 0 || partitionKey == null || key == null) {
+            return new Scope(tableName, "");
+        }
+        AttributeValue value = key.get(partitionKey);
+        String text = value == null ? null : value.s() != null ? value.s() : value.n();
+        if (text == null) {
+            return new Scope(tableName, "");
+        }
+        return new Scope(tableName, text.substring(0, Math.min(text.length(), config.partitionKeyPrefixLength())));
+    }
+
+    static boolean isThrottlingErrorBody(String body) {
+        for (String code : THROTTLING_ERROR_CODES) {
+            if (body.contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Interceptor implements ExecutionInterceptor {
+
+        @Override
+        public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+            Limiter limiter = limiterFor(context.request());
+            if (limiter != null) {
+                executionAttributes.putAttribute(LIMITER, limiter);
+            }
+        }
+
+        @Override
+        public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+            Limiter limiter = executionAttributes.getAttribute(LIMITER);
+            if (limiter == null) {
+                return;
+            }
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while waiting to send a request").cause(e).build();
+            }
+        }
+
+        @Override
+        public Optional<InputStream> modifyHttpResponseContent(Context.ModifyHttpResponse context,
+                                                               ExecutionAttributes executionAttributes) {
+            Limiter limiter = executionAttributes.getAttribute(LIMITER);
+            if (limiter == null) {
+                return context.responseBody();
+            }
+            int status = context.httpResponse().statusCode();
+            if (status / 100 == 2) {
+                executionAttributes.putAttribute(ATTEMPTS_SEEN, true);
+                limiter.onSuccess();
+                return context.responseBody();
+            }
+            if (status != 400 || context.responseBody().isEmpty()) {
+                return context.responseBody();
+            }
+            // Error responses are small, so reading one doesn't cost much. DynamoDB puts
+            // the error code only in the body.
+            executionAttributes.putAttribute(ATTEMPTS_SEEN, true);
+            try (InputStream body = context.responseBody().get()) {
+                byte[] bytes = body.readAllBytes();
+                if (isThrottlingErrorBody(new String(bytes, StandardCharsets.UTF_8))) {
+                    limiter.onThrottle();
+                }
+                return Optional.of(new ByteArrayInputStream(bytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+            Limiter limiter = executionAttributes.getAttribute(LIMITER);
+            if (limiter != null && executionAttributes.getAttribute(ATTEMPTS_SEEN) == null) {
+                limiter.onSuccess();
+            }
+        }
+
+        @Override
+        public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+            Limiter limiter = executionAttributes.getAttribute(LIMITER);
+            if (limiter != null && executionAttributes.getAttribute(ATTEMPTS_SEEN) == null
+                && context.exception() instanceof AwsServiceException serviceException
+                && serviceException.isThrottlingException()) {
+                limiter.onThrottle();
+            }
+        }
+    }
+
+    private final class Limiter {
+        private final Scope scope;
+        // The rate is stored as the bits of a double so it can be updated with compare-and-set.
+        private final AtomicLong rateBits = new AtomicLong(Double.doubleToLongBits(config.initialRate()));
+        // The time at which the next request may be sent when no burst is saved up.
+        private final AtomicLong nextSendTime = new AtomicLong(System.nanoTime());
+        private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime() - config.decreaseInterval().toNanos());
+        private final AtomicBoolean slowStart = new AtomicBoolean(true);
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder waitedNanos = new LongAdder();
+
+        Limiter(Scope scope) {
+            this.scope = scope;
+        }
+
+        double rate() {
+            return Double.longBitsToDouble(rateBits.get());
+        }
+
+        void acquire() throws InterruptedException {
+            double rate = rate();
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long burst = (long) Math.min(config.burst().toNanos(), Long.MAX_VALUE / 4);
+            long now = System.nanoTime();
+            long sendTime;
+            while (true) {
+                long next = nextSendTime.get();
+                // A limiter that has been idle lets up to a burst's worth of requests through at once.
+                sendTime = Math.max(next, now - burst);
+                if (nextSendTime.compareAndSet(next, sendTime + interval)) {
+                    break;
+                }
+            }
+            admitted.increment();
+            long wait = sendTime - now;
+            if (wait > 0) {
+                waitedNanos.add(wait);
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        void onSuccess() {
+            succeeded.increment();
+            boolean doubling = slowStart.get();
+            while (true) {
+                long bits = rateBits.get();
+                double rate = Double.longBitsToDouble(bits);
+                // One more request per second for each success doubles the rate every second.
+                double increased = Math.min(config.maxRate(), doubling ? rate + 1 : rate + config.increasePerSecond() / rate);
+                if (increased == rate || rateBits.compareAndSet(bits, Double.doubleToLongBits(increased))) {
+                    return;
+                }
+            }
+        }
+
+        void onThrottle() {
+            throttled.increment();
+            slowStart.set(false);
+            long now = System.nanoTime();
+            long last = lastDecrease.get();
+            if (now - last < config.decreaseInterval().toNanos() || !lastDecrease.compareAndSet(last, now)) {
+                return;
+            }
+            while (true) {
+                long bits = rateBits.get();
+                double decreased = Math.max(config.minRate(), Double.longBitsToDouble(bits) * config.decreaseFactor());
+                if (rateBits.compareAndSet(bits, Double.doubleToLongBits(decreased))) {
+                    return;
+                }
+            }
+        }
+
+        ScopeStats stats() {
+            return new ScopeStats(scope, rate(), admitted.sum(), succeeded.sum(), throttled.sum(),
+                Duration.ofNanos(waitedNanos.sum()));
+        }
+    }
+}
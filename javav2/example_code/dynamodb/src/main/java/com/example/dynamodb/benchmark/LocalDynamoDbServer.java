@@ -0,0 +1,1036 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * An in-process, in-memory stand-in for Amazon DynamoDB that speaks the JSON 1.0
+ * protocol used by the AWS SDK for Java 2.x DynamoDB clients.
+ *
+ * The server supports the subset of operations that the batch and scan examples
+ * use: CreateTable, DescribeTable, DeleteTable, PutItem, GetItem, UpdateItem, DeleteItem,
+ * BatchWriteItem, BatchGetItem, and Scan (including parallel segments). Apart from the
+ * SET and REMOVE actions of an UpdateExpression, expressions aren't evaluated; requests
+ * that use them are rejected with a ValidationException instead of being answered wrongly. Items are spread over the key space by a hash of their
+ * partition key, like in DynamoDB, so scan segments split a table evenly.
+ *
+ * It is intended for repeatable local benchmarks and unit tests only. Signatures
+ * aren't validated. Consumed capacity is calculated with DynamoDB's size rules, and a
+ * table can be given a provisioned write or read rate, which is enforced with a token
+ * bucket holding one second of capacity: BatchWriteItem and BatchGetItem then return
+ * the items they have no capacity for as unprocessed, and other requests fail with
+ * ProvisionedThroughputExceededException. An optional response delay approximates a
+ * network round trip, and failures can be injected per operation or per item.
+ */
+public class LocalDynamoDbServer implements AutoCloseable {
+
+    private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+    private static final String ERROR_PREFIX = "com.amazonaws.dynamodb.v20120810#";
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_ITEM_BYTES = 400 * 1024;
+    private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_PAGE_BYTES = 1024 * 1024;
+    private static final long HASH_SPACE = 1L << 32;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonNodeFactory json = JsonNodeFactory.instance;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> injectedFailures = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> injectedThrottles = new ConcurrentHashMap<>();
+    private final AtomicInteger injectedUnprocessedItems = new AtomicInteger();
+    private final Map<String, AtomicLong> operationCounts = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile long responseDelayNanos;
+
+    private LocalDynamoDbServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     *
+     * @return the running server
+     * @throws IOException if the server socket can't be bound
+     */
+    public static LocalDynamoDbServer start() throws IOException {
+        // Without TCP_NODELAY, small responses wait on delayed ACKs and every
+        // call takes tens of milliseconds.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        LocalDynamoDbServer dynamoDbServer = new LocalDynamoDbServer(httpServer, executor);
+        httpServer.createContext("/", dynamoDbServer::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return dynamoDbServer;
+    }
+
+    /**
+     * Returns the endpoint that SDK clients should use as their endpoint override.
+     */
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Creates a DynamoDbClient that sends its requests to this server using dummy
+     * credentials.
+     */
+    public DynamoDbClient newClient() {
+        return newClient(builder -> {
+        });
+    }
+
+    /**
+     * Creates a DynamoDbClient that sends its requests to this server, after applying
+     * additional settings to its builder.
+     */
+    public DynamoDbClient newClient(Consumer<DynamoDbClientBuilder> customizer) {
+        DynamoDbClientBuilder builder = DynamoDbClient.builder()
+                .endpointOverride(endpoint())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("local", "local")));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Creates a DynamoDbAsyncClient that sends its requests to this server using dummy
+     * credentials.
+     */
+    public DynamoDbAsyncClient newAsyncClient() {
+        return newAsyncClient(builder -> {
+        });
+    }
+
+    /**
+     * Creates a DynamoDbAsyncClient that sends its requests to this server, after
+     * applying additional settings to its builder.
+     */
+    public DynamoDbAsyncClient newAsyncClient(Consumer<DynamoDbAsyncClientBuilder> customizer) {
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .endpointOverride(endpoint())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("local", "local")));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Creates an on-demand table with string key attributes if it doesn't exist yet.
+     *
+     * @param tableName    the name of the table
+     * @param partitionKey the name of the partition key attribute
+     * @param sortKey      the name of the sort key attribute, or null for a table without one
+     */
+    public void createTable(String tableName, String partitionKey, String sortKey) {
+        ObjectNode definitions = json.objectNode();
+        definitions.put(partitionKey, "S");
+        if (sortKey != null) {
+            definitions.put(sortKey, "S");
+        }
+        tables.computeIfAbsent(tableName, name -> new Table(name, partitionKey, sortKey, definitions));
+    }
+
+    /**
+     * Stores an item directly, without going through the HTTP interface or using capacity.
+     */
+    public void putItem(String tableName, Map<String, AttributeValue> item) {
+        ObjectNode node = json.objectNode();
+        item.forEach((name, value) -> node.set(name, toJson(value)));
+        Table table = table(tableName);
+        table.items.put(table.storageKey(node), node);
+    }
+
+    /**
+     * Returns an item, or null if it doesn't exist.
+     */
+    public Map<String, AttributeValue> getItem(String tableName, Map<String, AttributeValue> key) {
+        ObjectNode node = json.objectNode();
+        key.forEach((name, value) -> node.set(name, toJson(value)));
+        Table table = table(tableName);
+        ObjectNode item = table.items.get(table.storageKey(node));
+        return item == null ? null : fromJson(item);
+    }
+
+    /**
+     * Returns the number of items in the table.
+     */
+    public int itemCount(String tableName) {
+        Table table = tables.get(tableName);
+        return table == null ? 0 : table.items.size();
+    }
+
+    /**
+     * Limits the write rate of the table, like provisioned write capacity units. Requests beyond
+     * it are throttled. Pass 0 to remove the limit again.
+     */
+    public void setWriteCapacity(String tableName, long writeCapacityUnits) {
+        table(tableName).writeCapacity = writeCapacityUnits > 0 ? new TokenBucket(writeCapacityUnits) : null;
+    }
+
+    /**
+     * Limits the read rate of the table, like provisioned read capacity units. Requests beyond
+     * it are throttled. Pass 0 to remove the limit again.
+     */
+    public void setReadCapacity(String tableName, long readCapacityUnits) {
+        table(tableName).readCapacity = readCapacityUnits > 0 ? new TokenBucket(readCapacityUnits) : null;
+    }
+
+    /**
+     * Adds a delay before every response to approximate a network round trip.
+     */
+    public void setResponseDelay(Duration delay) {
+        this.responseDelayNanos = delay.toNanos();
+    }
+
+    /**
+     * Makes the next requests of the given operation fail with 500 InternalServerError.
+     *
+     * @param operation the operation name, such as "BatchWriteItem"
+     * @param count     the number of requests that fail before the operation works again
+     */
+    public void failNext(String operation, int count) {
+        injectedFailures.computeIfAbsent(operation, op -> new AtomicInteger()).set(count);
+    }
+
+    /**
+     * Makes the next requests of the given operation fail with ProvisionedThroughputExceededException.
+     *
+     * @param operation the operation name, such as "Scan"
+     * @param count     the number of requests that are throttled before the operation works again
+     */
+    public void throttleNext(String operation, int count) {
+        injectedThrottles.computeIfAbsent(operation, op -> new AtomicInteger()).set(count);
+    }
+
+    /**
+     * Makes the next items of batch requests come back as unprocessed while the request itself
+     * succeeds.
+     *
+     * @param count the number of items that are left unprocessed before batches work again
+     */
+    public void leaveUnprocessed(int count) {
+        injectedUnprocessedItems.set(count);
+    }
+
+    /**
+     * Returns the total number of API requests the server has handled.
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests of the given operation the server has handled,
+     * including the ones that failed.
+     */
+    public long operationCount(String operation) {
+        AtomicLong count = operationCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private Table table(String tableName) {
+        Table table = tableName == null ? null : tables.get(tableName);
+        if (table == null) {
+            throw new LocalDynamoDbException(400, "ResourceNotFoundException",
+                    "Requested resource not found: Table: " + tableName + " not found");
+        }
+        return table;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            int status = 200;
+            JsonNode response;
+            try {
+                if (target == null || !target.startsWith(TARGET_PREFIX)) {
+                    throw new LocalDynamoDbException(400, "UnknownOperationException", "Missing X-Amz-Target");
+                }
+                String operation = target.substring(TARGET_PREFIX.length());
+                operationCounts.computeIfAbsent(operation, op -> new AtomicLong()).incrementAndGet();
+                if (injected(injectedFailures, operation)) {
+                    throw new LocalDynamoDbException(500, "InternalServerError", "Injected failure for " + operation);
+                }
+                if (injected(injectedThrottles, operation)) {
+                    throw throughputExceeded();
+                }
+                if (body.length > MAX_REQUEST_BYTES) {
+                    throw validation("Request size exceeds " + MAX_REQUEST_BYTES + " bytes");
+                }
+                ObjectNode request = body.length == 0 ? json.objectNode() : (ObjectNode) mapper.readTree(body);
+                response = dispatch(operation, request);
+            } catch (LocalDynamoDbException e) {
+                status = e.status;
+                response = json.objectNode()
+                        .put("__type", ERROR_PREFIX + e.errorCode)
+                        .put("message", e.getMessage());
+            } catch (IOException | ClassCastException e) {
+                status = 400;
+                response = json.objectNode()
+                        .put("__type", ERROR_PREFIX + "SerializationException")
+                        .put("message", "Malformed request: " + e.getMessage());
+            }
+
+            long delay = responseDelayNanos;
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+
+            byte[] responseBody = mapper.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+            exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+            exchange.sendResponseHeaders(status, responseBody.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(responseBody);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean injected(Map<String, AtomicInteger> injections, String operation) {
+        AtomicInteger remaining = injections.get(operation);
+        return remaining != null && remaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+    }
+
+    private JsonNode dispatch(String operation, ObjectNode request) {
+        return switch (operation) {
+            case "CreateTable" -> createTable(request);
+            case "DescribeTable" -> json.objectNode().set("Table", table(text(request, "TableName")).describe());
+            case "DeleteTable" -> json.objectNode().set("TableDescription", deleteTable(request));
+            case "PutItem" -> putItem(request);
+            case "GetItem" -> getItem(request);
+            case "UpdateItem" -> updateItem(request);
+            case "DeleteItem" -> deleteItem(request);
+            case "BatchWriteItem" -> batchWriteItem(request);
+            case "BatchGetItem" -> batchGetItem(request);
+            case "Scan" -> scan(request);
+            default -> throw new LocalDynamoDbException(400, "UnknownOperationException",
+                    "The operation " + operation + " isn't supported by LocalDynamoDbServer");
+        };
+    }
+
+    private JsonNode createTable(ObjectNode request) {
+        String tableName = text(request, "TableName");
+        String partitionKey = null;
+        String sortKey = null;
+        for (JsonNode element : request.path("KeySchema")) {
+            if ("HASH".equals(element.path("KeyType").asText())) {
+                partitionKey = element.path("AttributeName").asText();
+            } else {
+                sortKey = element.path("AttributeName").asText();
+            }
+        }
+        if (partitionKey == null) {
+            throw validation("The KeySchema must contain a HASH key");
+        }
+        ObjectNode definitions = json.objectNode();
+        for (JsonNode definition : request.path("AttributeDefinitions")) {
+            definitions.put(definition.path("AttributeName").asText(), definition.path("AttributeType").asText());
+        }
+        Table table = new Table(tableName, partitionKey, sortKey, definitions);
+        if (tables.putIfAbsent(tableName, table) != null) {
+            throw new LocalDynamoDbException(400, "ResourceInUseException", "Table already exists: " + tableName);
+        }
+        JsonNode throughput = request.path("ProvisionedThroughput");
+        if (!"PAY_PER_REQUEST".equals(request.path("BillingMode").asText()) && throughput.isObject()) {
+            setWriteCapacity(tableName, throughput.path("WriteCapacityUnits").asLong());
+            setReadCapacity(tableName, throughput.path("ReadCapacityUnits").asLong());
+        }
+        return json.objectNode().set("TableDescription", table.describe());
+    }
+
+    private JsonNode deleteTable(ObjectNode request) {
+        Table table = table(text(request, "TableName"));
+        tables.remove(table.name);
+        return table.describe();
+    }
+
+    private JsonNode putItem(ObjectNode request) {
+        rejectExpressions(request, "ConditionExpression");
+        Table table = table(text(request, "TableName"));
+        ObjectNode item = (ObjectNode) request.get("Item");
+        long size = checkedItemSize(item);
+        double units = writeUnits(size);
+        table.consumeWrite(units);
+        ObjectNode previous = table.items.put(table.storageKey(item), item);
+        ObjectNode response = json.objectNode();
+        if (previous != null && "ALL_OLD".equals(request.path("ReturnValues").asText())) {
+            response.set("Attributes", previous);
+        }
+        return withCapacity(response, request, table.name, units);
+    }
+
+    private JsonNode getItem(ObjectNode request) {
+        rejectExpressions(request, "ProjectionExpression");
+        Table table = table(text(request, "TableName"));
+        ObjectNode item = table.items.get(table.storageKey((ObjectNode) request.get("Key")));
+        double units = readUnits(item == null ? 0 : itemSize(item), request.path("ConsistentRead").asBoolean());
+        table.consumeRead(units);
+        ObjectNode response = json.objectNode();
+        if (item != null) {
+            response.set("Item", item);
+        }
+        return withCapacity(response, request, table.name, units);
+    }
+
+    // Supports SET path = :value and REMOVE path actions, which is what the enhanced client sends.
+    private JsonNode updateItem(ObjectNode request) {
+        rejectExpressions(request, "ConditionExpression");
+        Table table = table(text(request, "TableName"));
+        ObjectNode key = (ObjectNode) request.get("Key");
+        String storageKey = table.storageKey(key);
+        ObjectNode previous = table.items.get(storageKey);
+        ObjectNode item = previous == null ? key.deepCopy() : previous.deepCopy();
+        String expression = request.path("UpdateExpression").asText("");
+        Set<String> updated = new HashSet<>();
+        String clause = null;
+        for (String token : expression.trim().split("\\s*,\\s*|\\s+(?=(?i:SET|REMOVE)\\s)")) {
+            String action = token.trim();
+            String[] words = action.split("\\s+", 2);
+            if (words.length == 2 && (words[0].equalsIgnoreCase("SET") || words[0].equalsIgnoreCase("REMOVE"))) {
+                clause = words[0].toUpperCase();
+                action = words[1].trim();
+            }
+            if (action.isEmpty()) {
+                continue;
+            }
+            if ("SET".equals(clause)) {
+                String[] assignment = action.split("\\s*=\\s*", 2);
+                if (assignment.length != 2 || !assignment[1].matches(":[\\w]+")) {
+                    throw validation("Only SET path = :value is supported by LocalDynamoDbServer");
+                }
+                JsonNode value = request.path("ExpressionAttributeValues").get(assignment[1]);
+                if (value == null) {
+                    throw validation("Value " + assignment[1] + " isn't defined");
+                }
+                String name = attributeName(request, assignment[0]);
+                updated.add(name);
+                item.set(name, value);
+            } else if ("REMOVE".equals(clause)) {
+                String name = attributeName(request, action);
+                updated.add(name);
+                item.remove(name);
+            } else {
+                throw validation("Only SET and REMOVE are supported by LocalDynamoDbServer");
+            }
+        }
+        if (updated.contains(table.partitionKey) || updated.contains(table.sortKey)) {
+            throw validation("Cannot update attribute " + table.partitionKey + ". This attribute is part of the key");
+        }
+        long size = checkedItemSize(item);
+        double units = writeUnits(Math.max(size, previous == null ? 0 : itemSize(previous)));
+        table.consumeWrite(units);
+        table.items.put(storageKey, item);
+        ObjectNode response = json.objectNode();
+        switch (request.path("ReturnValues").asText("NONE")) {
+            case "ALL_NEW" -> response.set("Attributes", item);
+            case "ALL_OLD" -> {
+                if (previous != null) {
+                    response.set("Attributes", previous);
+                }
+            }
+            case "NONE" -> {
+            }
+            default -> throw validation("ReturnValues " + request.path("ReturnValues").asText()
+                    + " isn't supported by LocalDynamoDbServer");
+        }
+        return withCapacity(response, request, table.name, units);
+    }
+
+    private static String attributeName(ObjectNode request, String path) {
+        if (!path.startsWith("#")) {
+            return path;
+        }
+        JsonNode name = request.path("ExpressionAttributeNames").get(path);
+        if (name == null) {
+            throw validation("Name " + path + " isn't defined");
+        }
+        return name.asText();
+    }
+
+    private JsonNode deleteItem(ObjectNode request) {
+        rejectExpressions(request, "ConditionExpression");
+        Table table = table(text(request, "TableName"));
+        String storageKey = table.storageKey((ObjectNode) request.get("Key"));
+        ObjectNode existing = table.items.get(storageKey);
+        double units = writeUnits(existing == null ? 0 : itemSize(existing));
+        table.consumeWrite(units);
+        ObjectNode previous = table.items.remove(storageKey);
+        ObjectNode response = json.objectNode();
+        if (previous != null && "ALL_OLD".equals(request.path("ReturnValues").asText())) {
+            response.set("Attributes", previous);
+        }
+        return withCapacity(response, request, table.name, units);
+    }
+
+    private JsonNode batchWriteItem(ObjectNode request) {
+        JsonNode requestItems = request.path("RequestItems");
+        int total = 0;
+        for (JsonNode writes : requestItems) {
+            total += writes.size();
+        }
+        if (total == 0 || total > MAX_BATCH_WRITE_ITEMS) {
+            throw validation("Too many items requested for the BatchWriteItem call");
+        }
+
+        // Validate the whole batch before anything is written, like DynamoDB does.
+        Map<String, Table> batchTables = new LinkedHashMap<>();
+        for (Iterator<String> names = requestItems.fieldNames(); names.hasNext(); ) {
+            String tableName = names.next();
+            Table table = table(tableName);
+            batchTables.put(tableName, table);
+            Set<String> keys = new HashSet<>();
+            for (JsonNode write : requestItems.get(tableName)) {
+                ObjectNode keyOrItem = write.has("PutRequest")
+                        ? (ObjectNode) write.path("PutRequest").get("Item")
+                        : (ObjectNode) write.path("DeleteRequest").get("Key");
+                if (keyOrItem == null) {
+                    throw validation("Every write request must contain a PutRequest or a DeleteRequest");
+                }
+                if (write.has("PutRequest")) {
+                    checkedItemSize(keyOrItem);
+                }
+                if (!keys.add(table.storageKey(keyOrItem))) {
+                    throw validation("Provided list of item keys contains duplicates");
+                }
+            }
+        }
+
+        ObjectNode unprocessed = json.objectNode();
+        ArrayNode consumed = json.arrayNode();
+        int processed = 0;
+        int throttled = 0;
+        for (Map.Entry<String, Table> entry : batchTables.entrySet()) {
+            Table table = entry.getValue();
+            double units = 0;
+            for (JsonNode write : requestItems.get(entry.getKey())) {
+                if (injectedUnprocessedItems.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    unprocessed.withArray(entry.getKey()).add(write);
+                    continue;
+                }
+                ObjectNode item = (ObjectNode) write.path("PutRequest").get("Item");
+                ObjectNode key = item != null ? item : (ObjectNode) write.path("DeleteRequest").get("Key");
+                String storageKey = table.storageKey(key);
+                ObjectNode existing = table.items.get(storageKey);
+                double itemUnits = writeUnits(Math.max(item == null ? 0 : itemSize(item),
+                        existing == null ? 0 : itemSize(existing)));
+                if (!table.tryConsumeWrite(itemUnits)) {
+                    unprocessed.withArray(entry.getKey()).add(write);
+                    throttled++;
+                    continue;
+                }
+                if (item != null) {
+                    table.items.put(storageKey, item);
+                } else {
+                    table.items.remove(storageKey);
+                }
+                units += itemUnits;
+                processed++;
+            }
+            consumed.add(json.objectNode().put("TableName", entry.getKey()).put("CapacityUnits", units));
+        }
+        if (processed == 0 && throttled == total) {
+            throw throughputExceeded();
+        }
+
+        ObjectNode response = json.objectNode();
+        response.set("UnprocessedItems", unprocessed);
+        if (wantsCapacity(request)) {
+            response.set("ConsumedCapacity", consumed);
+        }
+        return response;
+    }
+
+    private JsonNode batchGetItem(ObjectNode request) {
+        JsonNode requestItems = request.path("RequestItems");
+        int total = 0;
+        for (JsonNode keysAndAttributes : requestItems) {
+            rejectExpressions((ObjectNode) keysAndAttributes, "ProjectionExpression");
+            total += keysAndAttributes.path("Keys").size();
+        }
+        if (total == 0 || total > MAX_BATCH_GET_KEYS) {
+            throw validation("Too many items requested for the BatchGetItem call");
+        }
+
+        ObjectNode responses = json.objectNode();
+        ObjectNode unprocessed = json.objectNode();
+        ArrayNode consumed = json.arrayNode();
+        int processed = 0;
+        int throttled = 0;
+        for (Iterator<String> names = requestItems.fieldNames(); names.hasNext(); ) {
+            String tableName = names.next();
+            Table table = table(tableName);
+            JsonNode keysAndAttributes = requestItems.get(tableName);
+            boolean consistentRead = keysAndAttributes.path("ConsistentRead").asBoolean();
+            Set<String> storageKeys = new HashSet<>();
+            for (JsonNode key : keysAndAttributes.path("Keys")) {
+                if (!storageKeys.add(table.storageKey((ObjectNode) key))) {
+                    throw validation("Provided list of item keys contains duplicates");
+                }
+            }
+            ArrayNode items = responses.putArray(tableName);
+            double units = 0;
+            for (JsonNode key : keysAndAttributes.path("Keys")) {
+                ObjectNode item = table.items.get(table.storageKey((ObjectNode) key));
+                double itemUnits = readUnits(item == null ? 0 : itemSize(item), consistentRead);
+                boolean injectedUnprocessed = injectedUnprocessedItems.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+                if (injectedUnprocessed || !table.tryConsumeRead(itemUnits)) {
+                    ObjectNode unprocessedKeys = (ObjectNode) unprocessed.get(tableName);
+                    if (unprocessedKeys == null) {
+                        unprocessedKeys = unprocessed.putObject(tableName);
+                        if (consistentRead) {
+                            unprocessedKeys.put("ConsistentRead", true);
+                        }
+                    }
+                    unprocessedKeys.withArray("Keys").add(key);
+                    throttled += injectedUnprocessed ? 0 : 1;
+                    continue;
+                }
+                if (item != null) {
+                    items.add(item);
+                }
+                units += itemUnits;
+                processed++;
+            }
+            consumed.add(json.objectNode().put("TableName", tableName).put("CapacityUnits", units));
+        }
+        if (processed == 0 && throttled == total) {
+            throw throughputExceeded();
+        }
+
+        ObjectNode response = json.objectNode();
+        response.set("Responses", responses);
+        response.set("UnprocessedKeys", unprocessed);
+        if (wantsCapacity(request)) {
+            response.set("ConsumedCapacity", consumed);
+        }
+        return response;
+    }
+
+    private JsonNode scan(ObjectNode request) {
+        rejectExpressions(request, "FilterExpression", "ProjectionExpression");
+        Table table = table(text(request, "TableName"));
+        int limit = request.has("Limit") ? request.get("Limit").asInt() : Integer.MAX_VALUE;
+        if (limit < 1) {
+            throw validation("Limit must be at least 1");
+        }
+        int totalSegments = request.path("TotalSegments").asInt(1);
+        int segment = request.path("Segment").asInt(0);
+        if (totalSegments < 1 || totalSegments > 1_000_000 || segment < 0 || segment >= totalSegments) {
+            throw validation("Segment must be less than TotalSegments, which must be between 1 and 1000000");
+        }
+
+        // Segments are contiguous ranges of partition key hashes.
+        String lower = hashPrefix(segment * HASH_SPACE / totalSegments);
+        NavigableMap<String, ObjectNode> range = segment == totalSegments - 1
+                ? table.items.tailMap(lower, true)
+                : table.items.subMap(lower, true, hashPrefix((segment + 1) * HASH_SPACE / totalSegments), false);
+        if (request.has("ExclusiveStartKey")) {
+            String start = table.storageKey((ObjectNode) request.get("ExclusiveStartKey"));
+            range = range.tailMap(start, false);
+        }
+
+        ArrayNode items = json.arrayNode();
+        long bytes = 0;
+        String lastKey = null;
+        ObjectNode lastItem = null;
+        for (Map.Entry<String, ObjectNode> entry : range.entrySet()) {
+            if (items.size() == limit || bytes >= MAX_PAGE_BYTES) {
+                break;
+            }
+            items.add(entry.getValue());
+            bytes += itemSize(entry.getValue());
+            lastKey = entry.getKey();
+            lastItem = entry.getValue();
+        }
+        double units = readUnits(bytes, request.path("ConsistentRead").asBoolean());
+        table.consumeRead(units);
+
+        ObjectNode response = json.objectNode();
+        boolean countOnly = "COUNT".equals(request.path("Select").asText());
+        if (!countOnly) {
+            response.set("Items", items);
+        }
+        response.put("Count", items.size()).put("ScannedCount", items.size());
+        if (lastKey != null && range.higherKey(lastKey) != null) {
+            response.set("LastEvaluatedKey", table.keyOf(lastItem));
+        }
+        return withCapacity(response, request, table.name, units);
+    }
+
+    private static void rejectExpressions(ObjectNode request, String... names) {
+        for (String name : names) {
+            if (request.has(name)) {
+                throw validation(name + " isn't supported by LocalDynamoDbServer");
+            }
+        }
+    }
+
+    private ObjectNode withCapacity(ObjectNode response, ObjectNode request, String tableName, double units) {
+        if (wantsCapacity(request)) {
+            response.set("ConsumedCapacity", json.objectNode().put("TableName", tableName).put("CapacityUnits", units));
+        }
+        return response;
+    }
+
+    private static boolean wantsCapacity(ObjectNode request) {
+        String returnConsumedCapacity = request.path("ReturnConsumedCapacity").asText("NONE");
+        return returnConsumedCapacity.equals("TOTAL") || returnConsumedCapacity.equals("INDEXES");
+    }
+
+    private static String text(ObjectNode request, String field) {
+        JsonNode value = request.get(field);
+        if (value == null || !value.isTextual()) {
+            throw validation(field + " is required");
+        }
+        return value.asText();
+    }
+
+    private static long checkedItemSize(ObjectNode item) {
+        if (item == null) {
+            throw validation("Item is required");
+        }
+        long size = itemSize(item);
+        if (size > MAX_ITEM_BYTES) {
+            throw validation("Item size has exceeded the maximum allowed size");
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of an item by DynamoDB's rules: the UTF-8 length of every attribute name
+     * plus the size of its value.
+     */
+    static long itemSize(ObjectNode item) {
+        long size = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> fields = item.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            size += utf8Length(field.getKey()) + valueSize(field.getValue());
+        }
+        return size;
+    }
+
+    private static long valueSize(JsonNode attributeValue) {
+        Map.Entry<String, JsonNode> typed = attributeValue.fields().next();
+        JsonNode value = typed.getValue();
+        return switch (typed.getKey()) {
+            case "S" -> utf8Length(value.asText());
+            case "N" -> numberSize(value.asText());
+            case "B" -> Base64.getDecoder().decode(value.asText()).length;
+            case "BOOL", "NULL" -> 1;
+            case "SS" -> sum(value, element -> utf8Length(element.asText()));
+            case "NS" -> sum(value, element -> numberSize(element.asText()));
+            case "BS" -> sum(value, element -> Base64.getDecoder().decode(element.asText()).length);
+            case "L" -> 3 + sum(value, element -> 1 + valueSize(element));
+            case "M" -> {
+                long size = 3;
+                for (Iterator<Map.Entry<String, JsonNode>> fields = value.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    size += 1 + utf8Length(field.getKey()) + valueSize(field.getValue());
+                }
+                yield size;
+            }
+            default -> throw validation("Unknown attribute value type " + typed.getKey());
+        };
+    }
+
+    private static long sum(JsonNode elements, ToLongFunction<JsonNode> size) {
+        long total = 0;
+        for (JsonNode element : elements) {
+            total += size.applyAsLong(element);
+        }
+        return total;
+    }
+
+    // Numbers are stored with two significant digits per byte, plus one byte.
+    private static long numberSize(String number) {
+        long digits = number.chars().filter(Character::isDigit).count();
+        return (digits + 1) / 2 + 1;
+    }
+
+    private static long utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static double writeUnits(long itemBytes) {
+        return Math.max(1, Math.ceil(itemBytes / 1024.0));
+    }
+
+    private static double readUnits(long bytes, boolean consistentRead) {
+        double units = Math.max(1, Math.ceil(bytes / 4096.0));
+        return consistentRead ? units : units / 2;
+    }
+
+    private static String hashPrefix(long hash) {
+        return String.format("%08x", hash);
+    }
+
+    // The SDK sends every attribute value as a single-field object such as {"S": "text"}.
+    static JsonNode toJson(AttributeValue value) {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        switch (value.type()) {
+            case S -> node.put("S", value.s());
+            case N -> node.put("N", value.n());
+            case B -> node.put("B", Base64.getEncoder().encodeToString(value.b().asByteArray()));
+            case BOOL -> node.put("BOOL", value.bool());
+            case NUL -> node.put("NULL", true);
+            case SS -> value.ss().forEach(node.putArray("SS")::add);
+            case NS -> value.ns().forEach(node.putArray("NS")::add);
+            case BS -> value.bs().forEach(b -> node.withArray("BS").add(Base64.getEncoder().encodeToString(b.asByteArray())));
+            case L -> value.l().forEach(element -> node.withArray("L").add(toJson(element)));
+            case M -> {
+                ObjectNode map = node.putObject("M");
+                value.m().forEach((name, element) -> map.set(name, toJson(element)));
+            }
+            default -> throw new IllegalArgumentException("Unknown attribute value type " + value.type());
+        }
+        return node;
+    }
+
+    static Map<String, AttributeValue> fromJson(ObjectNode item) {
+        Map<String, AttributeValue> attributes = new LinkedHashMap<>();
+        item.fields().forEachRemaining(field -> attributes.put(field.getKey(), attributeValue(field.getValue())));
+        return attributes;
+    }
+
+    private static AttributeValue attributeValue(JsonNode node) {
+        Map.Entry<String, JsonNode> typed = node.fields().next();
+        JsonNode value = typed.getValue();
+        return switch (typed.getKey()) {
+            case "S" -> AttributeValue.fromS(value.asText());
+            case "N" -> AttributeValue.fromN(value.asText());
+            case "B" -> AttributeValue.fromB(SdkBytes.fromByteArray(Base64.getDecoder().decode(value.asText())));
+            case "BOOL" -> AttributeValue.fromBool(value.asBoolean());
+            case "NULL" -> AttributeValue.fromNul(true);
+            case "SS" -> AttributeValue.fromSs(texts(value));
+            case "NS" -> AttributeValue.fromNs(texts(value));
+            case "BS" -> AttributeValue.fromBs(texts(value).stream()
+                    .map(b -> SdkBytes.fromByteArray(Base64.getDecoder().decode(b))).toList());
+            case "L" -> {
+                List<AttributeValue> list = new ArrayList<>();
+                value.forEach(element -> list.add(attributeValue(element)));
+                yield AttributeValue.fromL(list);
+            }
+            case "M" -> AttributeValue.fromM(fromJson((ObjectNode) value));
+            default -> throw new IllegalArgumentException("Unknown attribute value type " + typed.getKey());
+        };
+    }
+
+    private static List<String> texts(JsonNode array) {
+        List<String> values = new ArrayList<>();
+        array.forEach(element -> values.add(element.asText()));
+        return values;
+    }
+
+    private static LocalDynamoDbException validation(String message) {
+        return new LocalDynamoDbException(400, "ValidationException", message);
+    }
+
+    private static LocalDynamoDbException throughputExceeded() {
+        return new LocalDynamoDbException(400, "ProvisionedThroughputExceededException",
+                "The level of configured provisioned throughput for the table was exceeded");
+    }
+
+    private final class Table {
+        final String name;
+        final String partitionKey;
+        final String sortKey;
+        final ObjectNode attributeDefinitions;
+        final Instant created = Instant.now();
+        // Keyed by the hash of the partition key, then the key values, so scans visit partitions in hash order.
+        final ConcurrentSkipListMap<String, ObjectNode> items = new ConcurrentSkipListMap<>();
+        volatile TokenBucket writeCapacity;
+        volatile TokenBucket readCapacity;
+
+        Table(String name, String partitionKey, String sortKey, ObjectNode attributeDefinitions) {
+            this.name = name;
+            this.partitionKey = partitionKey;
+            this.sortKey = sortKey;
+            this.attributeDefinitions = attributeDefinitions;
+        }
+
+        String storageKey(ObjectNode keyOrItem) {
+            JsonNode partition = keyOrItem == null ? null : keyOrItem.get(partitionKey);
+            JsonNode sort = sortKey == null || keyOrItem == null ? null : keyOrItem.get(sortKey);
+            if (partition == null || (sortKey != null && sort == null)) {
+                throw validation("One of the required keys was not given a value");
+            }
+            String partitionValue = partition.toString();
+            return hashPrefix(Integer.toUnsignedLong(mix(partitionValue.hashCode()))) + partitionValue
+                    + (sort == null ? "" : "\u0000" + sort);
+        }
+
+        ObjectNode keyOf(ObjectNode item) {
+            ObjectNode key = json.objectNode();
+            key.set(partitionKey, item.get(partitionKey));
+            if (sortKey != null) {
+                key.set(sortKey, item.get(sortKey));
+            }
+            return key;
+        }
+
+        void consumeWrite(double units) {
+            if (!tryConsumeWrite(units)) {
+                throw throughputExceeded();
+            }
+        }
+
+        boolean tryConsumeWrite(double units) {
+            TokenBucket bucket = writeCapacity;
+            return bucket == null || bucket.tryConsume(units);
+        }
+
+        void consumeRead(double units) {
+            if (!tryConsumeRead(units)) {
+                throw throughputExceeded();
+            }
+        }
+
+        boolean tryConsumeRead(double units) {
+            TokenBucket bucket = readCapacity;
+            return bucket == null || bucket.tryConsume(units);
+        }
+
+        ObjectNode describe() {
+            ObjectNode description = json.objectNode()
+                    .put("TableName", name)
+                    .put("TableStatus", "ACTIVE")
+                    .put("TableArn", "arn:aws:dynamodb:us-east-1:000000000000:table/" + name)
+                    .put("CreationDateTime", created.toEpochMilli() / 1000.0)
+                    .put("ItemCount", items.size())
+                    .put("TableSizeBytes", items.values().stream().mapToLong(LocalDynamoDbServer::itemSize).sum());
+            ArrayNode keySchema = description.putArray("KeySchema");
+            keySchema.addObject().put("AttributeName", partitionKey).put("KeyType", "HASH");
+            if (sortKey != null) {
+                keySchema.addObject().put("AttributeName", sortKey).put("KeyType", "RANGE");
+            }
+            ArrayNode definitions = description.putArray("AttributeDefinitions");
+            attributeDefinitions.fields().forEachRemaining(definition -> definitions.addObject()
+                    .put("AttributeName", definition.getKey())
+                    .put("AttributeType", definition.getValue().asText()));
+            TokenBucket write = writeCapacity;
+            TokenBucket read = readCapacity;
+            if (write == null && read == null) {
+                description.putObject("BillingModeSummary").put("BillingMode", "PAY_PER_REQUEST");
+                description.putObject("ProvisionedThroughput")
+                        .put("ReadCapacityUnits", 0).put("WriteCapacityUnits", 0);
+            } else {
+                description.putObject("BillingModeSummary").put("BillingMode", "PROVISIONED");
+                description.putObject("ProvisionedThroughput")
+                        .put("ReadCapacityUnits", read == null ? 0 : read.ratePerSecond)
+                        .put("WriteCapacityUnits", write == null ? 0 : write.ratePerSecond);
+            }
+            return description;
+        }
+
+        // Spreads similar partition keys, such as "user-1" and "user-2", over the whole hash space.
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    // Holds up to one second of capacity and refills continuously.
+    private static final class TokenBucket {
+        final long ratePerSecond;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        TokenBucket(long ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = ratePerSecond;
+        }
+
+        synchronized boolean tryConsume(double units) {
+            long now = System.nanoTime();
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefillNanos) / 1e9 * ratePerSecond);
+            lastRefillNanos = now;
+            if (tokens < units) {
+                return false;
+            }
+            tokens -= units;
+            return true;
+        }
+    }
+
+    private static final class LocalDynamoDbException extends RuntimeException {
+        final int status;
+        final String errorCode;
+
+        LocalDynamoDbException(int status, String errorCode, String message) {
+            super(message);
+            this.status = status;
+            this.errorCode = errorCode;
+        }
+    }
+}
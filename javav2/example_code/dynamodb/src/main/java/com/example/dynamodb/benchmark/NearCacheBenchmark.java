@@ -0,0 +1,187 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.benchmark;
+
+import com.example.dynamodb.CachingDynamoDbTable;
+import com.example.dynamodb.Customer;
+import com.example.dynamodb.enhanced.EnhancedGetItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark that compares reading customers with {@link EnhancedGetItem} from a
+ * plain enhanced table against reading them through a {@link CachingDynamoDbTable},
+ * with the items on the heap and off the heap, against {@link LocalDynamoDbServer}.
+ *
+ * The keys are read with a Zipf distribution, so a few customers are read far more
+ * often than the rest, which is the access pattern a near-cache is for. The cache
+ * holds only a part of the table, so its eviction policy decides the hit ratio.
+ *
+ * The benchmark runs in sample mode, so JMH reports the latency distribution of the
+ * reads, including p0.99, rather than only the average. Running {@link #main(String[])}
+ * also prints the hit ratio and evictions of each cache at the end of every trial.
+ * The p0.99 of the cached reads falls well below that of enhancedGetItem once fewer
+ * than 1% of the reads miss; with a lower hit ratio, the misses still set the tail,
+ * and the cache mostly improves the median and the mean.
+ * Use responseDelayMillis to approximate the round trip to DynamoDB, for example
+ * {@code -p responseDelayMillis=1,5 -p cacheSizeMiB=2,16 -p zipfExponent=0.8,1.2}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+public class NearCacheBenchmark {
+
+    private static final String TABLE_NAME = "Customer";
+    private static final int SAMPLES = 1 << 20;
+
+    @Param({"100000"})
+    public int itemCount;
+
+    @Param({"8"})
+    public int cacheSizeMiB;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    @Param({"2"})
+    public int responseDelayMillis;
+
+    private LocalDynamoDbServer server;
+    private DynamoDbClient dynamoDbClient;
+    private DynamoDbTable<Customer> table;
+    private CachingDynamoDbTable<Customer> heapCache;
+    private CachingDynamoDbTable<Customer> offHeapCache;
+    private Key[] keys;
+    private int[] samples;
+
+    // Each thread walks the shared sample sequence from its own starting point.
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position = new Random().nextInt(SAMPLES);
+
+        int next() {
+            position = (position + 1) & (SAMPLES - 1);
+            return position;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "id", "email");
+        keys = new Key[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            String id = "id" + i;
+            String email = "customer" + i + "@example.com";
+            server.putItem(TABLE_NAME, Map.of(
+                "id", AttributeValue.fromS(id),
+                "email", AttributeValue.fromS(email),
+                "custName", AttributeValue.fromS("Customer " + i),
+                "registrationDate", AttributeValue.fromS("2022-07-11T00:00:00Z")));
+            keys[i] = Key.builder().partitionValue(id).sortValue(email).build();
+        }
+        samples = zipfSamples(itemCount, zipfExponent, new Random(42));
+        server.setResponseDelay(Duration.ofMillis(responseDelayMillis));
+
+        dynamoDbClient = server.newClient();
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
+            .dynamoDbClient(dynamoDbClient)
+            .build();
+        table = enhancedClient.table(TABLE_NAME, TableSchema.fromBean(Customer.class));
+        long maximumWeight = cacheSizeMiB * 1024L * 1024;
+        heapCache = new CachingDynamoDbTable<>(table,
+            new CachingDynamoDbTable.Config(maximumWeight, Duration.ofMinutes(10), false, true));
+        offHeapCache = new CachingDynamoDbTable<>(table,
+            new CachingDynamoDbTable.Config(maximumWeight, Duration.ofMinutes(10), true, true));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("heap cache:     " + heapCache.stats());
+        System.out.printf("heap cache hit ratio:     %.3f%n", heapCache.stats().hitRatio());
+        System.out.println("off-heap cache: " + offHeapCache.stats());
+        System.out.printf("off-heap cache hit ratio: %.3f%n", offHeapCache.stats().hitRatio());
+        dynamoDbClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Customer enhancedGetItem(Cursor cursor) {
+        return EnhancedGetItem.getCustomer(table, keys[samples[cursor.next()]]);
+    }
+
+    @Benchmark
+    public Customer nearCache(Cursor cursor) {
+        return EnhancedGetItem.getCustomer(heapCache, keys[samples[cursor.next()]]);
+    }
+
+    @Benchmark
+    public Customer nearCacheOffHeap(Cursor cursor) {
+        return EnhancedGetItem.getCustomer(offHeapCache, keys[samples[cursor.next()]]);
+    }
+
+    // Draws item indexes where item i is read in proportion to 1 / (i + 1)^exponent.
+    private static int[] zipfSamples(int itemCount, double exponent, Random random) {
+        double[] cumulative = new double[itemCount];
+        double total = 0;
+        for (int i = 0; i < itemCount; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        int[] samples = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            samples[i] = Math.min(index < 0 ? -index - 1 : index, itemCount - 1);
+        }
+        return samples;
+    }
+
+    /**
+     * Runs the benchmark. Standard JMH command-line options are accepted; without an
+     * include pattern, only this benchmark runs.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(NearCacheBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
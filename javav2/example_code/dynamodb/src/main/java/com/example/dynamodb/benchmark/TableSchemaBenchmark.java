@@ -0,0 +1,150 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.benchmark;
+
+import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
+import com.example.dynamodb.schema.StaticTableSchemaProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark that compares the reflective {@code TableSchema.fromBean(Customer.class)}
+ * with the CustomerTableSchema that {@link StaticTableSchemaProcessor} generates at
+ * compile time.
+ *
+ * - coldStartFromBean and coldStartGenerated: the first schema and the first mapped
+ *   item in a fresh JVM, which is what a Lambda handler pays on a cold start. Each
+ *   fork measures one call, so the result is the average over the forks.
+ * - itemToMap and mapToItem: the throughput of a warmed-up schema, per item.
+ *
+ * Running {@link #main(String[])} runs both; for example, {@code -f 50} runs more
+ * cold starts for a tighter error.
+ */
+public class TableSchemaBenchmark {
+
+    // Only the throughput benchmarks use this state, so the cold start benchmarks build their schema themselves.
+    @State(Scope.Benchmark)
+    public static class Schemas {
+        TableSchema<Customer> beanSchema;
+        TableSchema<Customer> generatedSchema;
+        Customer customer;
+        Map<String, AttributeValue> item;
+
+        @Setup
+        public void setUp() {
+            beanSchema = TableSchema.fromBean(Customer.class);
+            generatedSchema = CustomerTableSchema.create();
+            customer = customer();
+            item = generatedSchema.itemToMap(customer, true);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdStart {
+        Customer customer = customer();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Map<String, AttributeValue> coldStartFromBean(ColdStart state) {
+        return TableSchema.fromBean(Customer.class).itemToMap(state.customer, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Map<String, AttributeValue> coldStartGenerated(ColdStart state) {
+        return CustomerTableSchema.create().itemToMap(state.customer, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Map<String, AttributeValue> itemToMapFromBean(Schemas state) {
+        return state.beanSchema.itemToMap(state.customer, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Map<String, AttributeValue> itemToMapGenerated(Schemas state) {
+        return state.generatedSchema.itemToMap(state.customer, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Customer mapToItemFromBean(Schemas state) {
+        return state.beanSchema.mapToItem(state.item);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Customer mapToItemGenerated(Schemas state) {
+        return state.generatedSchema.mapToItem(state.item);
+    }
+
+    private static Customer customer() {
+        Customer customer = new Customer();
+        customer.setId("id101");
+        customer.setEmail("tred@noserver.com");
+        customer.setCustName("Tom Red");
+        customer.setRegistrationDate(Instant.parse("2022-07-11T00:00:00Z"));
+        return customer;
+    }
+
+    /**
+     * Runs the benchmark. Standard JMH command-line options are accepted; without an
+     * include pattern, only this benchmark runs.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(TableSchemaBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
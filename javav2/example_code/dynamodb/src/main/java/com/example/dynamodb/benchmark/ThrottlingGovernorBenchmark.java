@@ -0,0 +1,171 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.benchmark;
+
+import com.example.dynamodb.ThrottlingGovernor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.retries.AdaptiveRetryStrategy;
+import software.amazon.awssdk.retries.StandardRetryStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH benchmark that compares the goodput of many DynamoDB clients writing to one
+ * table with limited write capacity, when every client has its own
+ * AdaptiveRetryStrategy and when all of them share a {@link ThrottlingGovernor}.
+ *
+ * The table is a {@link LocalDynamoDbServer} table with writeCapacity write units per
+ * second, which throttles the PutItem requests beyond that rate. Each benchmark thread
+ * belongs to one of the clients and writes small items in a loop. JMH reports:
+ *
+ * - succeeded: the PutItem calls that succeeded per second, which is the goodput;
+ * - failed: the calls that still failed after their retries;
+ * - the primary score: all calls per second, whatever their outcome.
+ *
+ * At the end of every trial, {@link #main(String[])} also prints the requests the
+ * server received for each successful write; every request above 1 is a throttled
+ * attempt that used up a connection and a retry. Change the load with, for example,
+ * {@code -p clients=4,16 -p writeCapacity=100,400 -t 32}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ThrottlingGovernorBenchmark {
+
+    private static final String TABLE_NAME = "Events";
+
+    @Param({"8"})
+    public int clients;
+
+    @Param({"200"})
+    public int writeCapacity;
+
+    private LocalDynamoDbServer server;
+    private DynamoDbClient[] adaptiveClients;
+    private DynamoDbClient[] governedClients;
+    private ThrottlingGovernor governor;
+    private final AtomicLong succeeded = new AtomicLong();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Calls {
+        public long succeeded;
+        public long failed;
+        private int client;
+        private long sequence;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threads) {
+            client = threads.getThreadIndex();
+            sequence = (long) threads.getThreadIndex() << 40;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            succeeded = 0;
+            failed = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "id", "seq");
+        server.setWriteCapacity(TABLE_NAME, writeCapacity);
+        governor = new ThrottlingGovernor(ThrottlingGovernor.Config.defaults());
+
+        adaptiveClients = new DynamoDbClient[clients];
+        governedClients = new DynamoDbClient[clients];
+        for (int i = 0; i < clients; i++) {
+            adaptiveClients[i] = server.newClient(b -> b.overrideConfiguration(o -> o
+                .retryStrategy(AdaptiveRetryStrategy.builder().maxAttempts(3).build())));
+            governedClients[i] = server.newClient(b -> b.overrideConfiguration(o -> o
+                .retryStrategy(StandardRetryStrategy.builder().maxAttempts(3).build())
+                .addExecutionInterceptor(governor.interceptor())));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        long requests = server.operationCount("PutItem");
+        System.out.println();
+        System.out.printf("PutItem requests per successful write: %.2f (%d requests, %d writes)%n",
+            requests / (double) Math.max(1, succeeded.get()), requests, succeeded.get());
+        if (!governor.stats().isEmpty()) {
+            System.out.println("governor: " + governor.stats());
+        }
+        for (int i = 0; i < clients; i++) {
+            adaptiveClients[i].close();
+            governedClients[i].close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public void adaptiveRetryPerClient(Calls calls) {
+        put(adaptiveClients[calls.client % clients], calls);
+    }
+
+    @Benchmark
+    public void sharedGovernor(Calls calls) {
+        put(governedClients[calls.client % clients], calls);
+    }
+
+    private void put(DynamoDbClient client, Calls calls) {
+        try {
+            client.putItem(r -> r.tableName(TABLE_NAME).item(Map.of(
+                "id", AttributeValue.fromS("device-" + calls.client),
+                "seq", AttributeValue.fromS(Long.toString(calls.sequence++)),
+                "payload", AttributeValue.fromS("temperature=21.5"))));
+            calls.succeeded++;
+            succeeded.incrementAndGet();
+        } catch (SdkException e) {
+            calls.failed++;
+        }
+    }
+
+    /**
+     * Runs the benchmark. Standard JMH command-line options are accepted; without an
+     * include pattern, only this benchmark runs.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(ThrottlingGovernorBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
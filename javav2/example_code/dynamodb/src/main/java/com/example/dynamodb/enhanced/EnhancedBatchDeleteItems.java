@@ -6,10 +6,10 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.batchdelete.main]
 // snippet-start:[dynamodb.java2.mapping.batchdelete.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
@@ -49,7 +49,7 @@ public class EnhancedBatchDeleteItems {
         public static void deleteBatchRecords(DynamoDbEnhancedClient enhancedClient) {
                 try {
                         DynamoDbTable<Customer> mappedTable = enhancedClient.table("Customer",
-                                        TableSchema.fromBean(Customer.class));
+                                        CustomerTableSchema.create());
                         Key key1 = Key.builder()
                                         .partitionValue("id110")
                                         .build();
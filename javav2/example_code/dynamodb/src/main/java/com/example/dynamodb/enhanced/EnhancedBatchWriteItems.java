@@ -5,7 +5,9 @@ package com.example.dynamodb.enhanced;
 
 // snippet-start:[dynamodb.java2.mapping.batchitems.main]
 // snippet-start:[dynamodb.java2.mapping.batchitems.import]
+import com.example.dynamodb.BulkItemWriter;
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import com.example.dynamodb.Music;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
@@ -20,6 +22,8 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
 // snippet-end:[dynamodb.java2.mapping.batchitems.import]
 
 /*
@@ -51,7 +55,7 @@ public class EnhancedBatchWriteItems {
         public static void putBatchRecords(DynamoDbEnhancedClient enhancedClient) {
                 try {
                         DynamoDbTable<Customer> customerMappedTable = enhancedClient.table("Customer",
-                                        TableSchema.fromBean(Customer.class));
+                                        CustomerTableSchema.create());
                         DynamoDbTable<Music> musicMappedTable = enhancedClient.table("Music",
                                         TableSchema.fromBean(Music.class));
                         LocalDate localDate = LocalDate.parse("2020-04-07");
@@ -106,5 +110,33 @@ public class EnhancedBatchWriteItems {
                         System.exit(1);
                 }
         }
+
+        /**
+         * Puts a stream of records of any length into the table of the mapped table resource.
+         * The records are converted with the table schema and written by a
+         * {@link BulkItemWriter}, which packs them into batches of up to 25 items, keeps
+         * several batches in flight, and sends unprocessed items again with backoff, which
+         * a single enhanced batchWriteItem call leaves to the caller.
+         *
+         * @param ddb         the client that sends the batches
+         * @param mappedTable the table the records belong to
+         * @param records     the records to put, which are consumed as batches become free
+         * @return the number of written records, the consumed write capacity, and the records that failed
+         */
+        public static <T> BulkItemWriter.Summary putRecordsInBulk(DynamoDbClient ddb, DynamoDbTable<T> mappedTable,
+                        Stream<T> records) {
+                TableSchema<T> schema = mappedTable.tableSchema();
+                List<String> keyAttributes = schema.tableMetadata().primaryKeys().stream().toList();
+                BulkItemWriter writer = new BulkItemWriter(ddb, mappedTable.tableName(), keyAttributes,
+                                BulkItemWriter.Config.defaults());
+                try (writer) {
+                        records.forEach(record -> writer.put(schema.itemToMap(record, true)));
+                }
+                BulkItemWriter.Summary summary = writer.summary();
+                System.out.printf("Wrote %d records (%.0f records/s) using %.1f WCU; %d records failed.%n",
+                                summary.itemsWritten(), summary.itemsPerSecond(),
+                                summary.consumedWriteCapacityUnits(), summary.failedItemCount());
+                return summary;
+        }
 }
 // snippet-end:[dynamodb.java2.mapping.batchitems.main]
\ No newline at end of file
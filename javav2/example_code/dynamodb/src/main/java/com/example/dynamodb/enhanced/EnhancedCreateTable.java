@@ -3,10 +3,10 @@
 package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.enhancedcreatetable.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.core.internal.waiters.ResponseOrException;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.CreateTableEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
@@ -16,7 +16,7 @@ import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
 public class EnhancedCreateTable {
     public static void createTable(DynamoDbEnhancedClient enhancedClient) {
         // Create a DynamoDbTable object
-        DynamoDbTable<Customer> customerTable = enhancedClient.table("Customer", TableSchema.fromBean(Customer.class));
+        DynamoDbTable<Customer> customerTable = enhancedClient.table("Customer", CustomerTableSchema.create());
 
         // Create the table (defaults to PAY_PER_REQUEST if no provisioned throughput is set)
         customerTable.createTable(CreateTableEnhancedRequest.builder().build());
@@ -6,10 +6,10 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.getitem.main]
 // snippet-start:[dynamodb.java2.mapping.getitem.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -49,7 +49,7 @@ public class EnhancedGetItem {
     public static String getItem(DynamoDbEnhancedClient enhancedClient) {
         Customer result = null;
         try {
-            DynamoDbTable<Customer> table = enhancedClient.table("Customer", TableSchema.fromBean(Customer.class));
+            DynamoDbTable<Customer> table = enhancedClient.table("Customer", CustomerTableSchema.create());
             Key key = Key.builder()
                     .partitionValue("id101").sortValue("tred@noserver.com")
                     .build();
@@ -65,5 +65,13 @@ public class EnhancedGetItem {
         }
         return result.getCustName();
     }
+
+    /**
+     * Gets a customer with the same request as getItem, from a table that the caller
+     * provides, such as a {@link com.example.dynamodb.CachingDynamoDbTable}.
+     */
+    public static Customer getCustomer(DynamoDbTable<Customer> table, Key key) {
+        return table.getItem((GetItemEnhancedRequest.Builder requestBuilder) -> requestBuilder.key(key));
+    }
 }
 // snippet-end:[dynamodb.java2.mapping.getitem.main]
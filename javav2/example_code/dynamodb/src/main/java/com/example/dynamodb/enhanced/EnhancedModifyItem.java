@@ -6,10 +6,10 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.moditem.main]
 // snippet-start:[dynamodb.java2.mapping.moditem.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
@@ -63,7 +63,7 @@ public class EnhancedModifyItem {
     public static String modifyItem(DynamoDbEnhancedClient enhancedClient, String keyVal, String email) {
         try {
             DynamoDbTable<Customer> mappedTable = enhancedClient.table("Customer",
-                    TableSchema.fromBean(Customer.class));
+                    CustomerTableSchema.create());
             Key key = Key.builder()
                     .partitionValue(keyVal)
                     .build();
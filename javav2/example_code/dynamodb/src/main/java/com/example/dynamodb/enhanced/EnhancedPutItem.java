@@ -6,9 +6,9 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.putitem.main]
 // snippet-start:[dynamodb.java2.mapping.putitem.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
@@ -48,7 +48,7 @@ public class EnhancedPutItem {
 
     public static void putRecord(DynamoDbEnhancedClient enhancedClient) {
         try {
-            DynamoDbTable<Customer> custTable = enhancedClient.table("Customer", TableSchema.fromBean(Customer.class));
+            DynamoDbTable<Customer> custTable = enhancedClient.table("Customer", CustomerTableSchema.create());
 
             // Create an Instant value.
             LocalDate localDate = LocalDate.parse("2020-04-07");
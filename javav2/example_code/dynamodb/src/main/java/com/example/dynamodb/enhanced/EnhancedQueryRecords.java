@@ -6,10 +6,10 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.query.main]
 // snippet-start:[dynamodb.java2.mapping.query.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -50,7 +50,7 @@ public class EnhancedQueryRecords {
     public static String queryTable(DynamoDbEnhancedClient enhancedClient) {
         try {
             DynamoDbTable<Customer> mappedTable = enhancedClient.table("Customer",
-                    TableSchema.fromBean(Customer.class));
+                    CustomerTableSchema.create());
             QueryConditional queryConditional = QueryConditional.keyEqualTo(Key.builder()
                     .partitionValue("id101")
                     .build());
@@ -6,11 +6,11 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.queryfilter.main]
 // snippet-start:[dynamodb.java2.mapping.queryfilter.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -41,7 +41,7 @@ public class EnhancedQueryRecordsWithFilter {
                 Integer countOfCustomers = 0;
                 try {
                         DynamoDbTable<Customer> mappedTable = enhancedClient.table("Customer",
-                                        TableSchema.fromBean(Customer.class));
+                                        CustomerTableSchema.create());
                         AttributeValue att = AttributeValue.builder()
                                         .s("Tom red")
                                         .build();
@@ -6,9 +6,12 @@ package com.example.dynamodb.enhanced;
 // snippet-start:[dynamodb.java2.mapping.scan.main]
 // snippet-start:[dynamodb.java2.mapping.scan.import]
 import com.example.dynamodb.Customer;
+import com.example.dynamodb.CustomerTableSchema;
+import com.example.dynamodb.ParallelScan;
+import com.example.dynamodb.ScanCheckpoint;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
@@ -46,7 +49,7 @@ public class EnhancedScanRecords {
 
     public static void scan(DynamoDbEnhancedClient enhancedClient) {
         try {
-            DynamoDbTable<Customer> custTable = enhancedClient.table("Customer", TableSchema.fromBean(Customer.class));
+            DynamoDbTable<Customer> custTable = enhancedClient.table("Customer", CustomerTableSchema.create());
             Iterator<Customer> results = custTable.scan().items().iterator();
             while (results.hasNext()) {
                 Customer rec = results.next();
@@ -60,5 +63,20 @@ public class EnhancedScanRecords {
         }
         System.out.println("Done");
     }
+
+    /**
+     * Scans the table with parallel segments, which are picked from the table size, and
+     * streams the records as they arrive. The returned checkpoint can be passed to
+     * {@link ParallelScan#scan(DynamoDbTable, ScanEnhancedRequest, ParallelScan.Config, ScanCheckpoint)}
+     * to continue a scan that was stopped early.
+     */
+    public static ScanCheckpoint parallelScan(DynamoDbTable<Customer> custTable, ScanCheckpoint resumeFrom) {
+        try (ParallelScan<Customer> scan = ParallelScan.scan(custTable, ScanEnhancedRequest.builder().build(),
+                ParallelScan.Config.defaults(), resumeFrom)) {
+            scan.stream().forEach(rec -> System.out.println("The record id is " + rec.getId()));
+            System.out.println("Scanned " + scan.itemCount() + " records");
+            return scan.checkpoint();
+        }
+    }
 }
 // snippet-end:[dynamodb.java2.mapping.scan.main]
@@ -5,6 +5,7 @@ package com.example.dynamodb.scenario;
 
 // snippet-start:[dynamodb.java2.scenario.partiql.batch.import]
 
+import com.example.dynamodb.PartiQLExecutor;
 import software.amazon.awssdk.core.waiters.WaiterResponse;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -13,6 +14,7 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementRequest;
 import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementResponse;
 import software.amazon.awssdk.services.dynamodb.model.BatchStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementResponse;
 import software.amazon.awssdk.services.dynamodb.model.BillingMode;
 import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.CreateTableResponse;
@@ -90,30 +92,21 @@ public class ScenarioPartiQLBatch {
     }
 
     public static boolean getBatch(DynamoDbClient ddb, String tableName, String title1, String title2, int year1, int year2) {
-        String getBatch = "SELECT * FROM " + tableName + " WHERE title = ? AND year = ?";
-
-        List<BatchStatementRequest> statements = new ArrayList<>();
-        statements.add(BatchStatementRequest.builder()
-            .statement(getBatch)
-            .parameters(AttributeValue.builder().s(title1).build(),
-                AttributeValue.builder().n(String.valueOf(year1)).build())
-            .build());
-        statements.add(BatchStatementRequest.builder()
-            .statement(getBatch)
-            .parameters(AttributeValue.builder().s(title2).build(),
-                AttributeValue.builder().n(String.valueOf(year2)).build())
-            .build());
-
-        BatchExecuteStatementRequest batchExecuteStatementRequest = BatchExecuteStatementRequest.builder()
-            .statements(statements)
-            .build();
-
-        try {
-            BatchExecuteStatementResponse response = ddb.batchExecuteStatement(batchExecuteStatementRequest);
-            if (!response.responses().isEmpty()) {
-                response.responses().forEach(r -> {
-                    System.out.println(r.item().get("title") + "\\t" + r.item().get("year"));
-                });
+        // The executor quotes the table name and caches the statement, so the SQL isn't built by concatenation.
+        try (PartiQLExecutor executor = new PartiQLExecutor(ddb, PartiQLExecutor.Config.defaults())) {
+            PartiQLExecutor.Statement getBatch = executor.statement(
+                "SELECT * FROM {table} WHERE title = ? AND year = ?", tableName);
+
+            List<BatchStatementRequest> statements = new ArrayList<>();
+            statements.add(getBatch.bind(AttributeValue.builder().s(title1).build(),
+                AttributeValue.builder().n(String.valueOf(year1)).build()));
+            statements.add(getBatch.bind(AttributeValue.builder().s(title2).build(),
+                AttributeValue.builder().n(String.valueOf(year2)).build()));
+
+            List<BatchStatementResponse> responses = executor.executeBatch(statements);
+            List<BatchStatementResponse> found = responses.stream().filter(BatchStatementResponse::hasItem).toList();
+            if (!found.isEmpty()) {
+                found.forEach(r -> System.out.println(r.item().get("title") + "\\t" + r.item().get("year")));
                 return true;
             } else {
                 System.out.println("Couldn't find either " + title1 + " or " + title2 + ".");
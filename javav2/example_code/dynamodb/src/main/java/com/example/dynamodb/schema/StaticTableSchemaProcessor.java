@@ -0,0 +1,459 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.dynamodb.schema;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * An annotation processor that generates a StaticTableSchema for every class annotated
+ * with {@code @DynamoDbBean}, so that the schema doesn't have to be built at run time by
+ * {@code TableSchema.fromBean}, which introspects the bean class and finds its getters
+ * and setters with reflection.
+ *
+ * For a bean named Customer, it generates a class named CustomerTableSchema in the same
+ * package, whose {@code create()} method returns the schema. (A nested bean such as
+ * Outer.Inner gets Outer_InnerTableSchema.) The generated schema maps the same
+ * attributes as the bean schema: every property with a public getter and a public
+ * void setter, named after the property unless {@code @DynamoDbAttribute} says
+ * otherwise. Getters and setters are called through method references. These still
+ * link through invokedynamic and LambdaMetafactory the first time the schema is
+ * created, but no bean introspection or reflective method lookup happens.
+ *
+ * The processor understands the key, secondary index, attribute name, ignore, update
+ * behavior, and converter annotations, and nested beans. For a bean that uses another
+ * annotation of the enhanced client, such as {@code @DynamoDbFlatten} or the extension
+ * annotations, or that isn't a public class with a public no-argument constructor, it
+ * reports a warning and generates nothing, and the bean keeps working with
+ * {@code TableSchema.fromBean}. A nested bean that gets no generated schema this way,
+ * or that comes from a library without one, is mapped with {@code TableSchema.fromBean}
+ * inside the generated schema of the bean that contains it.
+ */
+@SupportedAnnotationTypes(StaticTableSchemaProcessor.DYNAMO_DB_BEAN)
+public class StaticTableSchemaProcessor extends AbstractProcessor {
+
+    static final String DYNAMO_DB_BEAN = "software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean";
+
+    private static final String ENHANCED_PACKAGE = "software.amazon.awssdk.enhanced.dynamodb.";
+    private static final String ANNOTATIONS = ENHANCED_PACKAGE + "mapper.annotations.";
+    private static final String PARTITION_KEY = ANNOTATIONS + "DynamoDbPartitionKey";
+    private static final String SORT_KEY = ANNOTATIONS + "DynamoDbSortKey";
+    private static final String SECONDARY_PARTITION_KEY = ANNOTATIONS + "DynamoDbSecondaryPartitionKey";
+    private static final String SECONDARY_SORT_KEY = ANNOTATIONS + "DynamoDbSecondarySortKey";
+    private static final String ATTRIBUTE = ANNOTATIONS + "DynamoDbAttribute";
+    private static final String IGNORE = ANNOTATIONS + "DynamoDbIgnore";
+    private static final String CONVERTED_BY = ANNOTATIONS + "DynamoDbConvertedBy";
+    private static final String UPDATE_BEHAVIOR = ANNOTATIONS + "DynamoDbUpdateBehavior";
+    private static final Set<String> SUPPORTED_ANNOTATIONS = Set.of(PARTITION_KEY, SORT_KEY,
+        SECONDARY_PARTITION_KEY, SECONDARY_SORT_KEY, ATTRIBUTE, IGNORE, CONVERTED_BY, UPDATE_BEHAVIOR);
+    private static final String TAGS = "StaticAttributeTags.";
+
+    // The collection types that EnhancedType has a factory method for, by their factory method.
+    private static final Map<String, String> COLLECTION_FACTORIES = Map.ofEntries(
+        Map.entry("java.util.List", "listOf"),
+        Map.entry("java.util.Set", "setOf"),
+        Map.entry("java.util.SortedSet", "sortedSetOf"),
+        Map.entry("java.util.NavigableSet", "navigableSetOf"),
+        Map.entry("java.util.Deque", "dequeOf"),
+        Map.entry("java.util.Collection", "collectionOf"),
+        Map.entry("java.util.Optional", "optionalOf"),
+        Map.entry("java.util.Map", "mapOf"),
+        Map.entry("java.util.SortedMap", "sortedMapOf"),
+        Map.entry("java.util.NavigableMap", "navigableMapOf"),
+        Map.entry("java.util.concurrent.ConcurrentMap", "concurrentMapOf"));
+
+    private record Property(String attributeName, String getter, String setter, TypeToken type, List<String> tags,
+                            String converter) {
+    }
+
+    // A Class literal, or an EnhancedType expression for generic and nested bean types.
+    private record TypeToken(String expression, boolean enhancedType) {
+        String asEnhancedType() {
+            return enhancedType ? expression : "EnhancedType.of(" + expression + ")";
+        }
+    }
+
+    // Thrown when a bean can't be generated; the bean keeps using TableSchema.fromBean.
+    private static final class UnsupportedBeanException extends Exception {
+        final Element element;
+
+        UnsupportedBeanException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    // The beans of the current round, which get a generated schema unless they are unsupported.
+    private final Set<TypeElement> roundBeans = new HashSet<>();
+    // The beans whose properties are being looked at, to stop at beans that contain each other.
+    private final Set<TypeElement> beansInProgress = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement beanAnnotation = processingEnv.getElementUtils().getTypeElement(DYNAMO_DB_BEAN);
+        if (beanAnnotation == null) {
+            return false;
+        }
+        roundBeans.clear();
+        roundBeans.addAll(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(beanAnnotation)));
+        for (TypeElement bean : roundBeans) {
+            try {
+                String source = generate(bean);
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(generatedName(bean), bean);
+                try (Writer writer = file.openWriter()) {
+                    writer.write(source);
+                }
+            } catch (UnsupportedBeanException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "No StaticTableSchema generated for " + bean.getQualifiedName() + ": " + e.getMessage()
+                        + "; use TableSchema.fromBean for it", e.element);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return false;
+    }
+
+    private String generate(TypeElement bean) throws UnsupportedBeanException {
+        beansInProgress.add(bean);
+        try {
+            return source(bean);
+        } finally {
+            beansInProgress.remove(bean);
+        }
+    }
+
+    private String source(TypeElement bean) throws UnsupportedBeanException {
+        checkBean(bean);
+        String beanType = bean.getQualifiedName().toString();
+        StringBuilder source = new StringBuilder();
+        String packageName = processingEnv.getElementUtils().getPackageOf(bean).getQualifiedName().toString();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;\n")
+            .append("import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;\n")
+            .append("import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;\n\n")
+            .append("import javax.annotation.processing.Generated;\n\n")
+            .append("/**\n")
+            .append(" * The table schema of {@link ").append(beanType).append("}, generated at compile time.\n")
+            .append(" */\n")
+            .append("@Generated(\"").append(StaticTableSchemaProcessor.class.getName()).append("\")\n")
+            .append("public final class ").append(simpleName(generatedName(bean))).append(" {\n\n")
+            .append("    private static final StaticTableSchema<").append(beanType).append("> SCHEMA =\n")
+            .append("        StaticTableSchema.builder(").append(beanType).append(".class)\n")
+            .append("            .newItemSupplier(").append(beanType).append("::new)\n");
+        List<String> providers = converterProviders(bean);
+        if (!providers.isEmpty()) {
+            source.append("            .attributeConverterProviders(").append(String.join(", ", providers))
+                .append(")\n");
+        }
+        for (Property property : properties(bean)) {
+            source.append("            .addAttribute(").append(property.type().expression())
+                .append(", a -> a.name(\"").append(escape(property.attributeName())).append("\")\n")
+                .append("                .getter(").append(beanType).append("::").append(property.getter())
+                .append(")\n")
+                .append("                .setter(").append(beanType).append("::").append(property.setter())
+                .append(")");
+            if (!property.tags().isEmpty()) {
+                source.append("\n                .tags(").append(String.join(", ", property.tags())).append(")");
+            }
+            if (property.converter() != null) {
+                source.append("\n                .attributeConverter(").append(property.converter()).append(")");
+            }
+            source.append(")\n");
+        }
+        source.append("            .build();\n\n")
+            .append("    private ").append(simpleName(generatedName(bean))).append("() {\n")
+            .append("    }\n\n")
+            .append("    /**\n")
+            .append("     * Returns the schema, which is built once and can be shared.\n")
+            .append("     */\n")
+            .append("    public static StaticTableSchema<").append(beanType).append("> create() {\n")
+            .append("        return SCHEMA;\n")
+            .append("    }\n")
+            .append("}\n");
+        return source.toString();
+    }
+
+    private void checkBean(TypeElement bean) throws UnsupportedBeanException {
+        Set<Modifier> modifiers = bean.getModifiers();
+        if (bean.getKind() != ElementKind.CLASS || !modifiers.contains(Modifier.PUBLIC)
+            || modifiers.contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedBeanException(bean, "the bean must be a public, non-abstract class");
+        }
+        if (!bean.getTypeParameters().isEmpty()) {
+            throw new UnsupportedBeanException(bean, "generic beans aren't supported");
+        }
+        for (Element enclosing = bean; enclosing instanceof TypeElement type
+            && type.getNestingKind() != NestingKind.TOP_LEVEL; enclosing = enclosing.getEnclosingElement()) {
+            if (!type.getModifiers().contains(Modifier.STATIC) || !type.getModifiers().contains(Modifier.PUBLIC)) {
+                throw new UnsupportedBeanException(bean, "a nested bean must be a public static class");
+            }
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(bean.getEnclosedElements());
+        boolean hasNoArgConstructor = constructors.stream().anyMatch(constructor ->
+            constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC));
+        if (!hasNoArgConstructor) {
+            throw new UnsupportedBeanException(bean, "the bean needs a public no-argument constructor");
+        }
+    }
+
+    // Mirrors the properties that the bean introspector finds: a getter and a void setter of the same type.
+    private List<Property> properties(TypeElement bean) throws UnsupportedBeanException {
+        Map<String, ExecutableElement> getters = new TreeMap<>();
+        Map<String, ExecutableElement> setters = new TreeMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(bean))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            int parameters = method.getParameters().size();
+            TypeKind returnKind = method.getReturnType().getKind();
+            if (parameters == 0 && name.startsWith("get") && name.length() > 3 && returnKind != TypeKind.VOID
+                && !name.equals("getClass")) {
+                getters.put(Introspector.decapitalize(name.substring(3)), method);
+            } else if (parameters == 0 && name.startsWith("is") && name.length() > 2
+                && returnKind == TypeKind.BOOLEAN) {
+                getters.put(Introspector.decapitalize(name.substring(2)), method);
+            } else if (parameters == 1 && name.startsWith("set") && name.length() > 3 && returnKind == TypeKind.VOID) {
+                setters.put(Introspector.decapitalize(name.substring(3)), method);
+            }
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (Map.Entry<String, ExecutableElement> entry : getters.entrySet()) {
+            ExecutableElement getter = entry.getValue();
+            ExecutableElement setter = setters.get(entry.getKey());
+            if (setter == null || !processingEnv.getTypeUtils().isSameType(getter.getReturnType(),
+                setter.getParameters().get(0).asType())) {
+                continue;
+            }
+            if (annotation(getter, setter, IGNORE) != null) {
+                continue;
+            }
+            for (ExecutableElement method : List.of(getter, setter)) {
+                for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+                    String annotationName = typeName(mirror.getAnnotationType());
+                    if (annotationName.startsWith(ENHANCED_PACKAGE) && !SUPPORTED_ANNOTATIONS.contains(annotationName)) {
+                        throw new UnsupportedBeanException(method, "@" + mirror.getAnnotationType().asElement()
+                            .getSimpleName() + " isn't supported by the generator");
+                    }
+                }
+            }
+            AnnotationMirror attribute = annotation(getter, setter, ATTRIBUTE);
+            String attributeName = attribute == null ? entry.getKey() : (String) value(attribute, "value");
+            AnnotationMirror convertedBy = annotation(getter, setter, CONVERTED_BY);
+            String converter = convertedBy == null ? null : instance((DeclaredType) value(convertedBy, "value"));
+            properties.add(new Property(attributeName, getter.getSimpleName().toString(),
+                setter.getSimpleName().toString(), typeToken(getter.getReturnType(), getter), tags(getter, setter),
+                converter));
+        }
+        return properties;
+    }
+
+    private List<String> tags(ExecutableElement getter, ExecutableElement setter) {
+        List<String> tags = new ArrayList<>();
+        if (annotation(getter, setter, PARTITION_KEY) != null) {
+            tags.add(TAGS + "primaryPartitionKey()");
+        }
+        if (annotation(getter, setter, SORT_KEY) != null) {
+            tags.add(TAGS + "primarySortKey()");
+        }
+        AnnotationMirror secondaryPartitionKey = annotation(getter, setter, SECONDARY_PARTITION_KEY);
+        if (secondaryPartitionKey != null) {
+            tags.add(TAGS + "secondaryPartitionKey(" + stringList(secondaryPartitionKey, "indexNames") + ")");
+        }
+        AnnotationMirror secondarySortKey = annotation(getter, setter, SECONDARY_SORT_KEY);
+        if (secondarySortKey != null) {
+            tags.add(TAGS + "secondarySortKey(" + stringList(secondarySortKey, "indexNames") + ")");
+        }
+        AnnotationMirror updateBehavior = annotation(getter, setter, UPDATE_BEHAVIOR);
+        if (updateBehavior != null) {
+            tags.add(TAGS + "updateBehavior(" + ENHANCED_PACKAGE + "mapper.UpdateBehavior."
+                + value(updateBehavior, "value") + ")");
+        }
+        return tags;
+    }
+
+    private TypeToken typeToken(TypeMirror type, Element property) throws UnsupportedBeanException {
+        if (type.getKind().isPrimitive()) {
+            return new TypeToken(processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                .getQualifiedName() + ".class", false);
+        }
+        if (type instanceof ArrayType arrayType && arrayType.getComponentType().getKind().isPrimitive()) {
+            return new TypeToken(arrayType.getComponentType() + "[].class", false);
+        }
+        if (!(type instanceof DeclaredType declaredType)) {
+            throw new UnsupportedBeanException(property, "the type " + type + " isn't supported");
+        }
+        TypeElement element = (TypeElement) declaredType.asElement();
+        String name = element.getQualifiedName().toString();
+        List<? extends TypeMirror> arguments = declaredType.getTypeArguments();
+        if (arguments.isEmpty()) {
+            if (!element.getTypeParameters().isEmpty()) {
+                throw new UnsupportedBeanException(property, "the raw type " + name + " isn't supported");
+            }
+            if (annotationOf(element, DYNAMO_DB_BEAN) != null) {
+                if (element.equals(property.getEnclosingElement())) {
+                    throw new UnsupportedBeanException(property, "a bean that contains itself isn't supported");
+                }
+                String schema = hasGeneratedSchema(element) ? generatedName(element) + ".create()"
+                    : ENHANCED_PACKAGE + "TableSchema.fromBean(" + name + ".class)";
+                return new TypeToken("EnhancedType.documentOf(" + name + ".class, " + schema + ")", true);
+            }
+            return new TypeToken(name + ".class", false);
+        }
+        String factory = COLLECTION_FACTORIES.get(name);
+        if (factory == null) {
+            throw new UnsupportedBeanException(property, "the generic type " + type + " isn't supported");
+        }
+        if (factory.equals("optionalOf")) {
+            // EnhancedType only takes a Class for Optional.
+            TypeToken elementType = typeToken(arguments.get(0), property);
+            if (elementType.enhancedType()) {
+                throw new UnsupportedBeanException(property, "the type " + type + " isn't supported");
+            }
+            return new TypeToken("EnhancedType.optionalOf(" + elementType.expression() + ")", true);
+        }
+        List<String> elementTypes = new ArrayList<>();
+        for (TypeMirror argument : arguments) {
+            elementTypes.add(typeToken(argument, property).asEnhancedType());
+        }
+        return new TypeToken("EnhancedType." + factory + "(" + String.join(", ", elementTypes) + ")", true);
+    }
+
+    // A schema generated before, in an earlier round or into a library, or one this round generates.
+    private boolean hasGeneratedSchema(TypeElement bean) {
+        if (processingEnv.getElementUtils().getTypeElement(generatedName(bean)) != null) {
+            return true;
+        }
+        if (!roundBeans.contains(bean)) {
+            return false;
+        }
+        if (!beansInProgress.add(bean)) {
+            // Beans that contain each other; whether they are generated is up to the first of them.
+            return true;
+        }
+        try {
+            checkBean(bean);
+            properties(bean);
+            return true;
+        } catch (UnsupportedBeanException e) {
+            return false;
+        } finally {
+            beansInProgress.remove(bean);
+        }
+    }
+
+    private List<String> converterProviders(TypeElement bean) {
+        AnnotationMirror beanAnnotation = annotationOf(bean, DYNAMO_DB_BEAN);
+        List<String> providers = new ArrayList<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+            : beanAnnotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("converterProviders")) {
+                for (Object provider : (List<?>) entry.getValue().getValue()) {
+                    providers.add(instance((DeclaredType) ((AnnotationValue) provider).getValue()));
+                }
+            }
+        }
+        return providers;
+    }
+
+    // Converters and providers are created like the bean schema does: with create() if they have one.
+    private String instance(DeclaredType type) {
+        TypeElement element = (TypeElement) type.asElement();
+        boolean hasCreate = ElementFilter.methodsIn(element.getEnclosedElements()).stream().anyMatch(method ->
+            method.getSimpleName().contentEquals("create") && method.getParameters().isEmpty()
+                && method.getModifiers().containsAll(Set.of(Modifier.PUBLIC, Modifier.STATIC)));
+        String name = element.getQualifiedName().toString();
+        return hasCreate ? name + ".create()" : "new " + name + "()";
+    }
+
+    private static AnnotationMirror annotation(ExecutableElement getter, ExecutableElement setter, String name) {
+        AnnotationMirror mirror = annotationOf(getter, name);
+        return mirror != null ? mirror : annotationOf(setter, name);
+    }
+
+    private static AnnotationMirror annotationOf(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (typeName(mirror.getAnnotationType()).equals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object value(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+            : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String stringList(AnnotationMirror mirror, String name) {
+        Object values = value(mirror, name);
+        List<?> list = values instanceof List<?> elements ? elements : List.of();
+        return list.stream()
+            .map(element -> "\"" + escape(String.valueOf(((AnnotationValue) element).getValue())) + "\"")
+            .collect(Collectors.joining(", ", "java.util.List.of(", ")"));
+    }
+
+    private static String typeName(DeclaredType type) {
+        return ((TypeElement) type.asElement()).getQualifiedName().toString();
+    }
+
+    private String generatedName(TypeElement bean) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(bean).getQualifiedName().toString();
+        String nestedName = bean.getQualifiedName().toString().substring(packageName.isEmpty() ? 0
+            : packageName.length() + 1).replace('.', '_');
+        return (packageName.isEmpty() ? "" : packageName + ".") + nestedName + "TableSchema";
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,190 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class BatchGetLoaderTest {
+    private static final String TABLE_NAME = "Music";
+    private static final BatchGetLoader.Config CONFIG =
+        new BatchGetLoader.Config(Duration.ofMillis(5), 100, 4, 3, Duration.ofMillis(1), false);
+
+    private LocalDynamoDbServer server;
+    private DynamoDbAsyncClient asyncClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "Artist", "SongTitle");
+        for (int i = 0; i < 500; i++) {
+            server.putItem(TABLE_NAME, Map.of("Artist", AttributeValue.fromS("Artist" + i),
+                "SongTitle", AttributeValue.fromS("Song" + i), "Rating", AttributeValue.fromN(Integer.toString(i))));
+        }
+        // SDK retries are off so that the loader's own retries are what's tested.
+        asyncClient = server.newAsyncClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncClient.close();
+        server.close();
+    }
+
+    @Test
+    void coalescesConcurrentLookupsIntoFullBatches() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try (BatchGetLoader loader = BatchGetLoader.create(asyncClient, CONFIG)) {
+            List<CompletableFuture<CompletableFuture<Map<String, AttributeValue>>>> calls = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                int n = i;
+                calls.add(CompletableFuture.supplyAsync(() -> loader.load(TABLE_NAME, key(n)), callers));
+            }
+            for (int i = 0; i < 1_000; i++) {
+                Map<String, AttributeValue> item = calls.get(i).join().get(5, TimeUnit.SECONDS);
+                if (i < 500) {
+                    assertEquals(AttributeValue.fromN(Integer.toString(i)), item.get("Rating"));
+                } else {
+                    assertNull(item);
+                }
+            }
+
+            BatchGetLoader.Stats stats = loader.stats();
+            assertEquals(1_000, stats.loads());
+            assertTrue(stats.averageBatchSize() > 20, "Average batch size " + stats.averageBatchSize());
+            assertEquals(stats.batches(), server.operationCount("BatchGetItem"));
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void requestsAKeyOnlyOncePerWindow() throws Exception {
+        try (BatchGetLoader loader = BatchGetLoader.create(asyncClient, CONFIG)) {
+            CompletableFuture<Map<String, AttributeValue>> first = loader.load(TABLE_NAME, key(7));
+            CompletableFuture<Map<String, AttributeValue>> second = loader.load(TABLE_NAME, key(7));
+            CompletableFuture<Map<String, AttributeValue>> other = loader.load(TABLE_NAME, key(8));
+
+            assertSame(first, second);
+            assertEquals("Song7", first.get(5, TimeUnit.SECONDS).get("SongTitle").s());
+            assertEquals("Song8", other.get(5, TimeUnit.SECONDS).get("SongTitle").s());
+            assertEquals(1, loader.stats().deduplicatedLoads());
+            assertEquals(2, loader.stats().keysRequested());
+        }
+    }
+
+    @Test
+    void retriesUnprocessedKeysAndFailedRequests() throws Exception {
+        server.leaveUnprocessed(150);
+        server.failNext("BatchGetItem", 1);
+        try (BatchGetLoader loader = BatchGetLoader.create(asyncClient, CONFIG)) {
+            List<CompletableFuture<Map<String, AttributeValue>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                lookups.add(loader.load(TABLE_NAME, key(i)));
+            }
+            for (int i = 0; i < 300; i++) {
+                assertEquals("Song" + i, lookups.get(i).get(5, TimeUnit.SECONDS).get("SongTitle").s());
+            }
+            assertTrue(loader.stats().unprocessedKeys() >= 150);
+        }
+    }
+
+    @Test
+    void failsTheKeysThatStayUnprocessed() {
+        server.leaveUnprocessed(1_000);
+        try (BatchGetLoader loader = BatchGetLoader.create(asyncClient, CONFIG)) {
+            CompletableFuture<Map<String, AttributeValue>> lookup = loader.load(TABLE_NAME, key(1));
+
+            Throwable failure = assertThrows(Exception.class,
+                () -> lookup.get(5, TimeUnit.SECONDS)).getCause();
+            assertTrue(failure.getMessage().contains("unprocessed"));
+            assertEquals(3, server.operationCount("BatchGetItem"));
+        }
+    }
+
+    @Test
+    void worksWithTheSyncClient() throws Exception {
+        try (DynamoDbClient syncClient = server.newClient();
+             BatchGetLoader loader = BatchGetLoader.create(syncClient, CONFIG)) {
+            List<CompletableFuture<Map<String, AttributeValue>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                lookups.add(loader.load(TABLE_NAME, key(i)));
+            }
+            for (int i = 0; i < 250; i++) {
+                assertEquals("Song" + i, lookups.get(i).get(5, TimeUnit.SECONDS).get("SongTitle").s());
+            }
+            assertEquals(3, server.operationCount("BatchGetItem"));
+        }
+    }
+
+    @Test
+    void closeLetsBatchesWaitingToRetryFinish() throws Exception {
+        // One batch in flight at a time, so the second batch waits for the first one's retry.
+        BatchGetLoader.Config config =
+            new BatchGetLoader.Config(Duration.ofMillis(5), 10, 1, 3, Duration.ofMillis(300), false);
+        server.leaveUnprocessed(5);
+        List<CompletableFuture<Map<String, AttributeValue>>> lookups = new ArrayList<>();
+        try (DynamoDbClient syncClient = server.newClient()) {
+            BatchGetLoader loader = BatchGetLoader.create(syncClient, config);
+            for (int i = 0; i < 20; i++) {
+                lookups.add(loader.load(TABLE_NAME, key(i)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.operationCount("BatchGetItem") == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            loader.close();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals("Song" + i, lookups.get(i).get(5, TimeUnit.SECONDS).get("SongTitle").s());
+            }
+            assertEquals(5, loader.stats().unprocessedKeys());
+            assertThrows(IllegalStateException.class, () -> loader.load(TABLE_NAME, key(1)));
+        }
+    }
+
+    @Test
+    void failsTheBatchWhenAnItemLacksAKeyAttribute() {
+        BatchGetItemResponse response = BatchGetItemResponse.builder()
+            .responses(Map.of(TABLE_NAME, List.of(Map.of("Artist", AttributeValue.fromS("Artist1")))))
+            .build();
+        try (BatchGetLoader loader = new BatchGetLoader(
+            request -> CompletableFuture.completedFuture(response), CONFIG, null)) {
+            CompletableFuture<Map<String, AttributeValue>> lookup = loader.load(TABLE_NAME, key(1));
+
+            Throwable failure = assertThrows(Exception.class,
+                () -> lookup.get(5, TimeUnit.SECONDS)).getCause();
+            assertTrue(failure instanceof IllegalStateException);
+            assertTrue(failure.getMessage().contains("SongTitle"), failure.getMessage());
+        }
+    }
+
+    private static Map<String, AttributeValue> key(int i) {
+        return Map.of("Artist", AttributeValue.fromS("Artist" + i), "SongTitle", AttributeValue.fromS("Song" + i));
+    }
+}
@@ -0,0 +1,190 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import com.example.dynamodb.enhanced.EnhancedBatchWriteItems;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class BulkItemWriterTest {
+    private static final String TABLE_NAME = "Music";
+    private static final BulkItemWriter.Config CONFIG =
+        new BulkItemWriter.Config(4, 3, Duration.ofMillis(1), Duration.ofSeconds(1));
+
+    private LocalDynamoDbServer server;
+    private DynamoDbClient dynamoDbClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "Artist", "SongTitle");
+        // SDK retries are off so that the writer's own retries are what's tested.
+        dynamoDbClient = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dynamoDbClient.close();
+        server.close();
+    }
+
+    @Test
+    void writesAStreamInFullBatches() {
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME,
+            songs(1_010).map(BulkItemWriterTest::put), CONFIG);
+
+        assertEquals(1_010, summary.itemsWritten());
+        assertEquals(1_010, server.itemCount(TABLE_NAME));
+        assertEquals(41, server.operationCount("BatchWriteItem"));
+        assertEquals(1_010, summary.consumedWriteCapacityUnits(), 0.001);
+        assertEquals(0, summary.failedItemCount());
+    }
+
+    @Test
+    void resendsUnprocessedItemsAndFailedRequests() {
+        server.leaveUnprocessed(30);
+        server.failNext("BatchWriteItem", 2);
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME,
+            songs(200).map(BulkItemWriterTest::put), CONFIG);
+
+        assertEquals(200, summary.itemsWritten());
+        assertEquals(0, summary.failedItemCount());
+        assertEquals(200, server.itemCount(TABLE_NAME));
+    }
+
+    @Test
+    void keepsWritingWhileAThrottledTableMakesProgress() {
+        // 100 WCU per second lets only a few batches through at a time, and more items come back unprocessed.
+        server.setWriteCapacity(TABLE_NAME, 100);
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME,
+            songs(300).map(BulkItemWriterTest::put), new BulkItemWriter.Config(8, 20, Duration.ofMillis(20),
+                Duration.ofSeconds(1)));
+
+        assertEquals(300, summary.itemsWritten());
+        assertEquals(300, server.itemCount(TABLE_NAME));
+        assertTrue(summary.batches() > 12);
+    }
+
+    @Test
+    void keepsTheLastWriteOfAKeyInABatch() {
+        Map<String, AttributeValue> first = song(1);
+        Map<String, AttributeValue> second = Map.of("Artist", first.get("Artist"),
+            "SongTitle", first.get("SongTitle"), "Rating", AttributeValue.fromN("1"));
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME,
+            Stream.of(put(first), put(song(2)), put(second)), CONFIG);
+
+        assertEquals(2, summary.itemsWritten());
+        assertEquals(AttributeValue.fromN("1"), server.getItem(TABLE_NAME, Map.of("Artist", first.get("Artist"),
+            "SongTitle", first.get("SongTitle"))).get("Rating"));
+    }
+
+    @Test
+    void appliesTheWritesOfAKeyInTheirOrderAcrossBatches() {
+        // The first batch comes back unprocessed and is sent again after a backoff, while the second batch,
+        // which has a newer write of its first key, is ready to go.
+        server.leaveUnprocessed(BulkItemWriter.MAX_ITEMS_PER_BATCH);
+        Map<String, AttributeValue> first = song(0);
+        Map<String, AttributeValue> newer = Map.of("Artist", first.get("Artist"),
+            "SongTitle", first.get("SongTitle"), "Rating", AttributeValue.fromN("2"));
+        Stream<WriteRequest> writes = Stream.concat(songs(BulkItemWriter.MAX_ITEMS_PER_BATCH + 1),
+            Stream.of(newer)).map(BulkItemWriterTest::put);
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME, writes,
+            new BulkItemWriter.Config(4, 3, Duration.ofMillis(300), Duration.ofSeconds(1)));
+
+        assertEquals(BulkItemWriter.MAX_ITEMS_PER_BATCH + 2, summary.itemsWritten());
+        assertEquals(AttributeValue.fromN("2"), server.getItem(TABLE_NAME, Map.of("Artist", first.get("Artist"),
+            "SongTitle", first.get("SongTitle"))).get("Rating"));
+    }
+
+    @Test
+    void countsOnlyTheLastWriteOfAKeyTowardTheBatchSize() {
+        Map<String, AttributeValue> item = new HashMap<>(song(1));
+        item.put("Payload", AttributeValue.fromB(SdkBytes.fromByteArray(new byte[300 * 1024])));
+        // Together the 100 writes of one key are larger than a batch, but only the last one is sent.
+        Stream<WriteRequest> writes = Stream.concat(Stream.generate(() -> put(item)).limit(100),
+            Stream.of(put(song(2))));
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME, writes, CONFIG);
+
+        assertEquals(2, summary.itemsWritten());
+        assertEquals(1, server.operationCount("BatchWriteItem"));
+    }
+
+    @Test
+    void isolatesTheItemThatMakesABatchInvalid() {
+        SdkBytes payload = SdkBytes.fromByteArray(new byte[100 * 1024]);
+        Stream<WriteRequest> writes = IntStream.range(0, 30).mapToObj(i -> {
+            Map<String, AttributeValue> item = new HashMap<>(song(i));
+            // Item 7 is larger than DynamoDB's 400 KB item limit.
+            item.put("Payload", AttributeValue.fromB(i == 7 ? SdkBytes.fromByteArray(new byte[500 * 1024]) : payload));
+            return put(item);
+        });
+
+        BulkItemWriter.Summary summary = BulkItemWriter.writeAll(dynamoDbClient, TABLE_NAME, writes, CONFIG);
+
+        assertEquals(29, summary.itemsWritten());
+        assertEquals(1, summary.failedItemCount());
+        assertEquals(AttributeValue.fromS("Artist7"),
+            summary.failures().get(0).request().putRequest().item().get("Artist"));
+        assertEquals(29, server.itemCount(TABLE_NAME));
+    }
+
+    @Test
+    void writesEnhancedRecordsInBulk() {
+        server.createTable("Customer", "id", null);
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamoDbClient).build();
+        Stream<Customer> customers = IntStream.range(0, 60).mapToObj(i -> {
+            Customer customer = new Customer();
+            customer.setId("id" + i);
+            customer.setCustName("Customer " + i);
+            customer.setEmail("customer" + i + "@example.com");
+            customer.setRegistrationDate(Instant.EPOCH);
+            return customer;
+        });
+
+        BulkItemWriter.Summary summary = EnhancedBatchWriteItems.putRecordsInBulk(dynamoDbClient,
+            enhancedClient.table("Customer", TableSchema.fromBean(Customer.class)), customers);
+
+        assertEquals(60, summary.itemsWritten());
+        assertEquals(60, server.itemCount("Customer"));
+    }
+
+    private static Stream<Map<String, AttributeValue>> songs(int count) {
+        return IntStream.range(0, count).mapToObj(BulkItemWriterTest::song);
+    }
+
+    private static Map<String, AttributeValue> song(int i) {
+        return Map.of("Artist", AttributeValue.fromS("Artist" + i), "SongTitle", AttributeValue.fromS("Song" + i),
+            "Comments", AttributeValue.fromS("Comment " + i));
+    }
+
+    private static WriteRequest put(Map<String, AttributeValue> item) {
+        return WriteRequest.builder().putRequest(p -> p.item(item)).build();
+    }
+}
@@ -0,0 +1,198 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class CachingDynamoDbTableTest {
+    private static final String TABLE_NAME = "Customer";
+    private static final CachingDynamoDbTable.Config CONFIG =
+        new CachingDynamoDbTable.Config(1024 * 1024, Duration.ofMinutes(1), false, true);
+
+    private LocalDynamoDbServer server;
+    private DynamoDbClient dynamoDbClient;
+    private DynamoDbTable<Customer> table;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "id", "email");
+        dynamoDbClient = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+        table = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamoDbClient).build()
+            .table(TABLE_NAME, TableSchema.fromBean(Customer.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dynamoDbClient.close();
+        server.close();
+    }
+
+    @Test
+    void servesRepeatedReadsFromTheCache() {
+        table.putItem(customer(1, "Customer 1"));
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table, CONFIG);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Customer 1", cached.getItem(key(1)).getCustName());
+        }
+        assertNull(cached.getItem(key(2)));
+        assertNull(cached.getItem(key(2)));
+
+        assertEquals(2, server.operationCount("GetItem"));
+        CachingDynamoDbTable.Stats stats = cached.stats();
+        assertEquals(10, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.loads());
+        assertEquals(10 / 12.0, stats.hitRatio(), 0.001);
+        assertTrue(stats.p99LoadTime().compareTo(Duration.ZERO) > 0);
+    }
+
+    @Test
+    void writesThroughTheTableInvalidateTheCachedItem() {
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table, CONFIG);
+        assertNull(cached.getItem(key(1)));
+
+        cached.putItem(customer(1, "Put"));
+        assertEquals("Put", cached.getItem(key(1)).getCustName());
+
+        cached.updateItem(customer(1, "Updated"));
+        assertEquals("Updated", cached.getItem(key(1)).getCustName());
+
+        cached.deleteItem(key(1));
+        assertNull(cached.getItem(key(1)));
+
+        assertEquals(4, server.operationCount("GetItem"));
+        assertEquals(3, cached.stats().invalidations());
+    }
+
+    @Test
+    void consistentReadsBypassAndRefreshTheCache() {
+        table.putItem(customer(1, "Old"));
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table, CONFIG);
+        cached.getItem(key(1));
+        // A write that doesn't go through the cache is only seen by a consistent read.
+        table.putItem(customer(1, "New"));
+
+        assertEquals("Old", cached.getItem(key(1)).getCustName());
+        assertEquals("New", cached.getItem(r -> r.key(key(1)).consistentRead(true)).getCustName());
+        assertEquals("New", cached.getItem(key(1)).getCustName());
+        assertEquals(2, server.operationCount("GetItem"));
+    }
+
+    @Test
+    void expiresItemsAfterTheirTimeToLive() throws InterruptedException {
+        table.putItem(customer(1, "Customer 1"));
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table,
+            new CachingDynamoDbTable.Config(1024 * 1024, Duration.ofMillis(50), false, true));
+
+        cached.getItem(key(1));
+        cached.getItem(key(1));
+        Thread.sleep(100);
+        cached.getItem(key(1));
+
+        assertEquals(2, server.operationCount("GetItem"));
+        assertEquals(1, cached.stats().expirations());
+    }
+
+    @Test
+    void keepsFrequentlyReadItemsWhileManyItemsAreReadOnce() {
+        for (int i = 0; i < 500; i++) {
+            table.putItem(customer(i, "Customer " + i));
+        }
+        // Room for about 40 items.
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table,
+            new CachingDynamoDbTable.Config(10_000, Duration.ofMinutes(1), false, true));
+        for (int round = 0; round < 5; round++) {
+            for (int hot = 0; hot < 10; hot++) {
+                cached.getItem(key(hot));
+            }
+        }
+
+        for (int i = 10; i < 500; i++) {
+            cached.getItem(key(i));
+        }
+        long loadsBefore = server.operationCount("GetItem");
+        for (int hot = 0; hot < 10; hot++) {
+            cached.getItem(key(hot));
+        }
+
+        CachingDynamoDbTable.Stats stats = cached.stats();
+        assertEquals(loadsBefore, server.operationCount("GetItem"));
+        assertTrue(stats.evictions() > 400);
+        assertTrue(stats.weightBytes() <= 10_000);
+    }
+
+    @Test
+    void storesItemsOffTheHeap() {
+        table.putItem(customer(1, "Customer 1"));
+        CachingDynamoDbTable<Customer> cached = new CachingDynamoDbTable<>(table,
+            new CachingDynamoDbTable.Config(1024 * 1024, Duration.ofMinutes(1), true, true));
+
+        Customer first = cached.getItem(key(1));
+        Customer second = cached.getItem(key(1));
+
+        assertEquals(first.toString(), second.toString());
+        assertEquals(Instant.parse("2022-07-11T00:00:00Z"), second.getRegistrationDate());
+        assertEquals(1, server.operationCount("GetItem"));
+    }
+
+    @Test
+    void encodesEveryAttributeType() {
+        Map<String, AttributeValue> item = Map.ofEntries(
+            Map.entry("s", AttributeValue.fromS("text ✓")),
+            Map.entry("n", AttributeValue.fromN("-12.5e3")),
+            Map.entry("b", AttributeValue.fromB(SdkBytes.fromByteArray(new byte[] {1, 2, 3}))),
+            Map.entry("true", AttributeValue.fromBool(true)),
+            Map.entry("false", AttributeValue.fromBool(false)),
+            Map.entry("null", AttributeValue.fromNul(true)),
+            Map.entry("ss", AttributeValue.fromSs(List.of("a", "b"))),
+            Map.entry("ns", AttributeValue.fromNs(List.of("1", "2"))),
+            Map.entry("bs", AttributeValue.fromBs(List.of(SdkBytes.fromUtf8String("x")))),
+            Map.entry("l", AttributeValue.fromL(List.of(AttributeValue.fromS("a"), AttributeValue.fromN("1")))),
+            Map.entry("m", AttributeValue.fromM(Map.of("nested", AttributeValue.fromM(Map.of(
+                "deep", AttributeValue.fromBool(true)))))));
+
+        Map<String, AttributeValue> decoded = AttributeValueCodec.decode(AttributeValueCodec.encodeDirect(item));
+
+        assertEquals(item, decoded);
+        assertNotNull(decoded.get("m").m().get("nested").m().get("deep"));
+    }
+
+    private static Customer customer(int i, String name) {
+        Customer customer = new Customer();
+        customer.setId("id" + i);
+        customer.setEmail("customer" + i + "@example.com");
+        customer.setCustName(name);
+        customer.setRegistrationDate(Instant.parse("2022-07-11T00:00:00Z"));
+        return customer;
+    }
+
+    private static Key key(int i) {
+        return Key.builder().partitionValue("id" + i).sortValue("customer" + i + "@example.com").build();
+    }
+}
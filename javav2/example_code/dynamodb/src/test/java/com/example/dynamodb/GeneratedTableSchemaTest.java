@@ -0,0 +1,261 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.schema.StaticTableSchemaProcessor;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.enhanced.dynamodb.IndexMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class GeneratedTableSchemaTest {
+
+    @Test
+    void mapsCustomersLikeTheBeanSchema() {
+        Customer customer = new Customer();
+        customer.setId("id101");
+        customer.setEmail("tred@noserver.com");
+        customer.setCustName("Tom Red");
+        customer.setRegistrationDate(Instant.parse("2022-07-11T00:00:00Z"));
+
+        assertSameMapping(TableSchema.fromBean(Customer.class), CustomerTableSchema.create(), customer);
+    }
+
+    @Test
+    void mapsPrimitivesAndSecondaryIndexesLikeTheBeanSchema() {
+        Movies movie = new Movies();
+        movie.setYear(2013);
+        movie.setTitle("Rush");
+        movie.setInfo("{\"rating\": 8.3}");
+
+        assertSameMapping(TableSchema.fromBean(Movies.class), MoviesTableSchema.create(), movie);
+        assertEquals("year", MoviesTableSchema.create().tableMetadata().indexPartitionKey("year-index"));
+    }
+
+    @Test
+    void mapsListsAndPropertiesWithoutSettersLikeTheBeanSchema() {
+        Contact contact = new Contact();
+        contact.setId("contact-1");
+        contact.setPid(List.of("p1", "p2"));
+        assertSameMapping(TableSchema.fromBean(Contact.class), ContactTableSchema.create(), contact);
+
+        // Work's sort key is on getName, which has no setter, so neither schema maps it.
+        Work work = new Work();
+        work.setId("work-1");
+        work.setUsername("user");
+        work.setDate("2024-01-01");
+        assertSameMapping(TableSchema.fromBean(Work.class), WorkTableSchema.create(), work);
+        assertFalse(WorkTableSchema.create().attributeNames().contains("name"));
+    }
+
+    @Test
+    void generatesNestedBeansAndWarnsAboutUnsupportedAnnotations(@TempDir Path directory) throws IOException {
+        Path sources = Files.createDirectories(directory.resolve("src/example"));
+        Files.writeString(sources.resolve("Order.java"), """
+            package example;
+
+            import java.util.List;
+            import java.util.Map;
+            import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
+
+            @DynamoDbBean
+            public class Order {
+                private String id;
+                private boolean open;
+                private List<Line> lines;
+                private Map<String, Integer> counts;
+                private String internal;
+
+                @DynamoDbPartitionKey
+                @DynamoDbAttribute("order_id")
+                public String getId() { return id; }
+                public void setId(String id) { this.id = id; }
+                public boolean isOpen() { return open; }
+                public void setOpen(boolean open) { this.open = open; }
+                public List<Line> getLines() { return lines; }
+                public void setLines(List<Line> lines) { this.lines = lines; }
+                public Map<String, Integer> getCounts() { return counts; }
+                public void setCounts(Map<String, Integer> counts) { this.counts = counts; }
+                @DynamoDbIgnore
+                public String getInternal() { return internal; }
+                public void setInternal(String internal) { this.internal = internal; }
+
+                @DynamoDbBean
+                public static class Line {
+                    private String sku;
+                    public String getSku() { return sku; }
+                    public void setSku(String sku) { this.sku = sku; }
+                }
+            }
+            """);
+        Files.writeString(sources.resolve("Flattened.java"), """
+            package example;
+
+            import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
+
+            @DynamoDbBean
+            public class Flattened {
+                private Order.Line line;
+                @DynamoDbFlatten
+                public Order.Line getLine() { return line; }
+                public void setLine(Order.Line line) { this.line = line; }
+            }
+            """);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Path output = Files.createDirectories(directory.resolve("classes"));
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                List.of("-classpath", System.getProperty("java.class.path"), "-d", output.toString(),
+                    "-s", output.toString()),
+                null, files.getJavaFileObjects(sources.resolve("Order.java"), sources.resolve("Flattened.java")));
+            task.setProcessors(List.of(new StaticTableSchemaProcessor()));
+            assertTrue(task.call(), () -> diagnostics.getDiagnostics().toString());
+        }
+
+        String order = Files.readString(output.resolve("example/OrderTableSchema.java"));
+        assertTrue(order.contains("a.name(\"order_id\")"));
+        assertTrue(order.contains("a.name(\"open\")"));
+        assertTrue(order.contains("EnhancedType.listOf(EnhancedType.documentOf(example.Order.Line.class, "
+            + "example.Order_LineTableSchema.create()))"));
+        assertTrue(order.contains("EnhancedType.mapOf(EnhancedType.of(java.lang.String.class), "
+            + "EnhancedType.of(java.lang.Integer.class))"));
+        assertFalse(order.contains("internal"));
+        assertTrue(Files.exists(output.resolve("example/Order_LineTableSchema.java")));
+        assertFalse(Files.exists(output.resolve("example/FlattenedTableSchema.java")));
+        String warnings = diagnostics.getDiagnostics().stream()
+            .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.WARNING)
+            .map(diagnostic -> diagnostic.getMessage(null))
+            .collect(Collectors.joining("\n"));
+        assertTrue(warnings.contains("No StaticTableSchema generated for example.Flattened: "
+            + "@DynamoDbFlatten isn't supported"), warnings);
+    }
+
+    @Test
+    void mapsNestedBeansWithoutAGeneratedSchemaWithTheBeanSchema(@TempDir Path directory) throws IOException {
+        // A bean from another compilation, which has no generated schema.
+        Path librarySources = Files.createDirectories(directory.resolve("library/example"));
+        Files.writeString(librarySources.resolve("Address.java"), """
+            package example;
+
+            import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
+
+            @DynamoDbBean
+            public class Address {
+                private String city;
+                public String getCity() { return city; }
+                public void setCity(String city) { this.city = city; }
+            }
+            """);
+        Path library = Files.createDirectories(directory.resolve("library-classes"));
+        DiagnosticCollector<JavaFileObject> libraryDiagnostics = new DiagnosticCollector<>();
+        assertTrue(compile(librarySources.resolve("Address.java"), "-proc:none", System.getProperty("java.class.path"),
+            library, libraryDiagnostics), () -> libraryDiagnostics.getDiagnostics().toString());
+
+        Path sources = Files.createDirectories(directory.resolve("src/example"));
+        Files.writeString(sources.resolve("Invoice.java"), """
+            package example;
+
+            import java.util.List;
+            import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
+
+            @DynamoDbBean
+            public class Invoice {
+                private String id;
+                private Note note;
+                private Address address;
+                private com.example.dynamodb.Customer customer;
+
+                @DynamoDbPartitionKey
+                public String getId() { return id; }
+                public void setId(String id) { this.id = id; }
+                public Note getNote() { return note; }
+                public void setNote(Note note) { this.note = note; }
+                public Address getAddress() { return address; }
+                public void setAddress(Address address) { this.address = address; }
+                public com.example.dynamodb.Customer getCustomer() { return customer; }
+                public void setCustomer(com.example.dynamodb.Customer customer) { this.customer = customer; }
+
+                // Raw generic types aren't supported, so Note gets no generated schema.
+                @DynamoDbBean
+                public static class Note {
+                    private List text;
+                    public List getText() { return text; }
+                    public void setText(List text) { this.text = text; }
+                }
+            }
+            """);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Path output = Files.createDirectories(directory.resolve("classes"));
+        assertTrue(compile(sources.resolve("Invoice.java"), "-proc:full",
+            System.getProperty("java.class.path") + File.pathSeparator + library, output, diagnostics),
+            () -> diagnostics.getDiagnostics().toString());
+
+        String invoice = Files.readString(output.resolve("example/InvoiceTableSchema.java"));
+        assertTrue(invoice.contains("EnhancedType.documentOf(example.Invoice.Note.class, "
+            + "software.amazon.awssdk.enhanced.dynamodb.TableSchema.fromBean(example.Invoice.Note.class))"), invoice);
+        assertTrue(invoice.contains("EnhancedType.documentOf(example.Address.class, "
+            + "software.amazon.awssdk.enhanced.dynamodb.TableSchema.fromBean(example.Address.class))"), invoice);
+        assertTrue(invoice.contains("EnhancedType.documentOf(com.example.dynamodb.Customer.class, "
+            + "com.example.dynamodb.CustomerTableSchema.create())"), invoice);
+        assertFalse(Files.exists(output.resolve("example/Invoice_NoteTableSchema.java")));
+        String warnings = diagnostics.getDiagnostics().stream()
+            .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.WARNING)
+            .map(diagnostic -> diagnostic.getMessage(null))
+            .collect(Collectors.joining("\n"));
+        assertTrue(warnings.contains("No StaticTableSchema generated for example.Invoice.Note: "
+            + "the raw type java.util.List isn't supported"), warnings);
+    }
+
+    private static boolean compile(Path source, String processing, String classpath, Path output,
+                                   DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                List.of(processing, "-classpath", classpath, "-d", output.toString(), "-s", output.toString()),
+                null, files.getJavaFileObjects(source));
+            task.setProcessors(List.of(new StaticTableSchemaProcessor()));
+            return task.call();
+        }
+    }
+
+    private static <T> void assertSameMapping(TableSchema<T> beanSchema, TableSchema<T> generatedSchema, T item) {
+        TableMetadata expected = beanSchema.tableMetadata();
+        TableMetadata actual = generatedSchema.tableMetadata();
+        assertEquals(expected.primaryPartitionKey(), actual.primaryPartitionKey());
+        assertEquals(expected.primarySortKey(), actual.primarySortKey());
+        assertEquals(expected.indices().stream().map(IndexMetadata::name).sorted().toList(),
+            actual.indices().stream().map(IndexMetadata::name).sorted().toList());
+        assertEquals(Set.copyOf(beanSchema.attributeNames()), Set.copyOf(generatedSchema.attributeNames()));
+
+        Map<String, AttributeValue> map = generatedSchema.itemToMap(item, false);
+        assertEquals(beanSchema.itemToMap(item, false), map);
+        assertEquals(beanSchema.itemToMap(beanSchema.mapToItem(map), false),
+            generatedSchema.itemToMap(generatedSchema.mapToItem(map), false));
+    }
+}
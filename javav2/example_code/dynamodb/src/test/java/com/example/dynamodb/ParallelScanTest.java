@@ -0,0 +1,193 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class ParallelScanTest {
+    private static final String TABLE_NAME = "Customer";
+    private static final int ITEM_COUNT = 3_000;
+    private static final ScanRequest SCAN = ScanRequest.builder().tableName(TABLE_NAME).build();
+
+    private LocalDynamoDbServer server;
+    private DynamoDbClient dynamoDbClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "id", null);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            server.putItem(TABLE_NAME, Map.of("id", AttributeValue.fromS("id" + i),
+                "custName", AttributeValue.fromS("Customer " + i)));
+        }
+        // SDK retries are off so that the scan's own retries are what's tested.
+        dynamoDbClient = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dynamoDbClient.close();
+        server.close();
+    }
+
+    @Test
+    void scansEverySegmentToTheEnd() {
+        server.throttleNext("Scan", 3);
+        ParallelScan.Config config = config(8, 4, 100);
+
+        try (ParallelScan<Map<String, AttributeValue>> scan = ParallelScan.scan(dynamoDbClient, SCAN, config, null)) {
+            List<String> ids = scan.stream().map(item -> item.get("id").s()).toList();
+
+            assertEquals(ITEM_COUNT, ids.size());
+            assertEquals(ITEM_COUNT, new HashSet<>(ids).size());
+            assertTrue(scan.checkpoint().isComplete());
+            assertTrue(server.operationCount("Scan") > ITEM_COUNT / 100);
+        }
+    }
+
+    @Test
+    void derivesTheSegmentCountFromTheTableSize() {
+        long tableSize = dynamoDbClient.describeTable(b -> b.tableName(TABLE_NAME)).table().tableSizeBytes();
+        ParallelScan.Config config = new ParallelScan.Config(0, tableSize / 5, 4, 0, 1_000, 3, Duration.ofMillis(1));
+
+        try (ParallelScan<Map<String, AttributeValue>> scan = ParallelScan.scan(dynamoDbClient, SCAN, config, null)) {
+            assertEquals(ITEM_COUNT, scan.stream().count());
+            assertEquals(5, scan.checkpoint().totalSegments());
+        }
+    }
+
+    @Test
+    void resumesFromTheCheckpointWithoutSkippingItems() {
+        ParallelScan.Config config = config(6, 2, 50);
+        Set<String> seen = new HashSet<>();
+        ScanCheckpoint checkpoint;
+        try (ParallelScan<Map<String, AttributeValue>> scan = ParallelScan.scan(dynamoDbClient, SCAN, config, null)) {
+            for (int i = 0; i < 1_000; i++) {
+                seen.add(scan.next().get("id").s());
+            }
+            checkpoint = scan.checkpoint();
+        }
+        assertFalse(checkpoint.isComplete());
+
+        long resumedCount;
+        try (ParallelScan<Map<String, AttributeValue>> scan =
+                 ParallelScan.scan(dynamoDbClient, SCAN, config, checkpoint)) {
+            resumedCount = scan.stream().peek(item -> seen.add(item.get("id").s())).count();
+            assertTrue(scan.checkpoint().isComplete());
+        }
+
+        assertEquals(ITEM_COUNT, seen.size());
+        // Only the pages that were being consumed when the first scan stopped are repeated.
+        assertTrue(resumedCount <= ITEM_COUNT - 1_000 + 6 * 50, "Resumed scan returned " + resumedCount);
+    }
+
+    @Test
+    void stopsScanningWhenTheConsumerFallsBehind() throws Exception {
+        ParallelScan.Config config = new ParallelScan.Config(10, 1, 2, 10, 20, 3, Duration.ofMillis(1));
+        try (ParallelScan<Map<String, AttributeValue>> scan = ParallelScan.scan(dynamoDbClient, SCAN, config, null)) {
+            scan.next();
+            TimeUnit.MILLISECONDS.sleep(200);
+            // The buffer holds 20 entries and each of the 2 threads waits with at most one page.
+            assertTrue(server.operationCount("Scan") <= 6, "Sent " + server.operationCount("Scan") + " scans");
+        }
+    }
+
+    @Test
+    void scansMappedRecordsWithTheEnhancedClient() {
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamoDbClient).build();
+
+        try (ParallelScan<Customer> scan = ParallelScan.scan(
+            enhancedClient.table(TABLE_NAME, TableSchema.fromBean(Customer.class)),
+            ScanEnhancedRequest.builder().build(), config(4, 4, 200), null)) {
+            Set<String> names = scan.stream().map(Customer::getCustName).collect(Collectors.toSet());
+
+            assertEquals(ITEM_COUNT, names.size());
+            assertTrue(names.contains("Customer 42"));
+        }
+    }
+
+    @Test
+    void publishesItemsOnlyAsTheyAreRequested() throws Exception {
+        try (DynamoDbAsyncClient asyncClient = server.newAsyncClient()) {
+            ParallelScanPublisher publisher = new ParallelScanPublisher(asyncClient, SCAN, config(8, 3, 100), null);
+            CollectingSubscriber subscriber = new CollectingSubscriber();
+            publisher.subscribe(subscriber);
+
+            subscriber.subscription.get(5, TimeUnit.SECONDS).request(10);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (subscriber.items.size() < 10 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertEquals(10, subscriber.items.size());
+            // Only enough pages for the buffer were requested.
+            assertTrue(server.operationCount("Scan") <= 4, "Sent " + server.operationCount("Scan") + " scans");
+
+            subscriber.subscription.get().request(Long.MAX_VALUE);
+            subscriber.completed.get(10, TimeUnit.SECONDS);
+            assertEquals(ITEM_COUNT, new HashSet<>(subscriber.items).size());
+            assertTrue(publisher.checkpoint().isComplete());
+        }
+    }
+
+    private static ParallelScan.Config config(int totalSegments, int maxSegmentsInFlight, int pageSize) {
+        return new ParallelScan.Config(totalSegments, 1, maxSegmentsInFlight, pageSize, 100, 5, Duration.ofMillis(1));
+    }
+
+    private static final class CollectingSubscriber implements Subscriber<Map<String, AttributeValue>> {
+        final CompletableFuture<Subscription> subscription = new CompletableFuture<>();
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+        final List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription.complete(s);
+        }
+
+        @Override
+        public void onNext(Map<String, AttributeValue> item) {
+            items.add(item.get("id").s());
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            completed.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.complete(null);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchExecuteStatementResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementErrorCodeEnum;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchStatementResponse;
+import software.amazon.awssdk.services.dynamodb.model.ExecuteStatementRequest;
+import software.amazon.awssdk.services.dynamodb.model.ExecuteStatementResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class PartiQLExecutorTest {
+    private static final PartiQLExecutor.Config CONFIG = new PartiQLExecutor.Config(4, 5, Duration.ofMillis(1));
+
+    private final StubClient client = new StubClient();
+    private final PartiQLExecutor executor = new PartiQLExecutor(client, CONFIG);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void bindsTemplatesToQuotedTableNamesAndCachesThem() {
+        PartiQLExecutor.Statement statement = executor.statement(
+            "UPDATE {table} SET info = 'why? {table}' WHERE \"year\" = ? AND title = ?", "Movies");
+
+        assertEquals("UPDATE \"Movies\" SET info = 'why? {table}' WHERE \"year\" = ? AND title = ?", statement.text());
+        assertEquals(2, statement.parameterCount());
+        assertSame(statement, executor.statement(statement.template(), "Movies"));
+
+        assertThrows(IllegalArgumentException.class, () -> statement.bind(AttributeValue.fromN("1977")));
+        assertThrows(IllegalArgumentException.class,
+            () -> executor.statement("SELECT * FROM {table}", "Movies\" WHERE 1=1 --"));
+        assertThrows(IllegalArgumentException.class, () -> executor.statement("SELECT * FROM Movies", "Movies"));
+        assertFalse(executor.statement("SELECT * FROM {table}", "Movies").bind().hasParameters());
+    }
+
+    @Test
+    void splitsStatementsIntoConcurrentBatchesOfTwentyFive() {
+        client.delayMillis = 50;
+        List<BatchStatementRequest> statements = updates(110);
+
+        List<BatchStatementResponse> responses = executor.executeBatch(statements);
+
+        assertEquals(110, responses.size());
+        assertEquals(List.of(25, 25, 25, 25, 10), client.batchSizes.stream().sorted(Collections.reverseOrder()).toList());
+        assertTrue(client.maxConcurrentCalls.get() > 1, "calls weren't concurrent");
+        for (int i = 0; i < responses.size(); i++) {
+            assertEquals("item-" + i, responses.get(i).item().get("title").s());
+        }
+    }
+
+    @Test
+    void redrivesOnlyTheStatementsWithTransientErrors() {
+        client.throttleOnce.addAll(Set.of("item-3", "item-30"));
+        client.conditionFailures.add("item-7");
+
+        List<BatchStatementResponse> responses = executor.executeBatch(updates(40));
+
+        assertEquals("item-3", responses.get(3).item().get("title").s());
+        assertEquals("item-30", responses.get(30).item().get("title").s());
+        assertEquals(BatchStatementErrorCodeEnum.CONDITIONAL_CHECK_FAILED, responses.get(7).error().code());
+        // The two batches, and one re-drive of each throttled statement.
+        assertEquals(List.of(25, 15, 1, 1), client.batchSizes.stream().sorted(Collections.reverseOrder()).toList());
+    }
+
+    @Test
+    void streamsPagesLazilyIntoABulkUpdate() {
+        client.pageSize = 10;
+        client.selectRows = 95;
+        PartiQLExecutor.Statement select = executor.statement("SELECT * FROM {table} WHERE year = ?", "Movies");
+        PartiQLExecutor.Statement update = executor.statement("UPDATE {table} SET seen = true WHERE title = ?", "Movies");
+
+        assertEquals(3, executor.items(select.request(AttributeValue.fromN("1977"))).limit(3).count());
+        assertEquals(1, client.pagesRead.get());
+
+        client.pagesRead.set(0);
+        client.conditionFailures.add("row-50");
+        PartiQLExecutor.Summary summary = executor.executeAll(executor.items(select.request(AttributeValue.fromN("1977")))
+            .map(item -> update.bind(item.get("title"))));
+
+        assertEquals(10, client.pagesRead.get());
+        assertEquals(95, summary.statements());
+        assertEquals(1, summary.failedCount());
+        assertEquals("row-50", summary.failures().get(0).request().parameters().get(0).s());
+        assertEquals(4, summary.calls());
+        assertEquals(0, summary.redriven());
+    }
+
+    private List<BatchStatementRequest> updates(int count) {
+        PartiQLExecutor.Statement update = executor.statement("UPDATE {table} SET seen = true WHERE title = ?", "Movies");
+        return IntStream.range(0, count).mapToObj(i -> update.bind(AttributeValue.fromS("item-" + i))).toList();
+    }
+
+    // Answers every statement with its first parameter as the title, unless told to fail it.
+    private static final class StubClient implements DynamoDbClient {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final Set<String> throttleOnce = ConcurrentHashMap.newKeySet();
+        final Set<String> conditionFailures = ConcurrentHashMap.newKeySet();
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        final AtomicInteger pagesRead = new AtomicInteger();
+        volatile long delayMillis;
+        int pageSize;
+        int selectRows;
+
+        @Override
+        public BatchExecuteStatementResponse batchExecuteStatement(BatchExecuteStatementRequest request) {
+            maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+            batchSizes.add(request.statements().size());
+            List<BatchStatementResponse> responses = new ArrayList<>();
+            for (BatchStatementRequest statement : request.statements()) {
+                String title = statement.parameters().get(0).s();
+                if (throttleOnce.remove(title)) {
+                    responses.add(BatchStatementResponse.builder()
+                        .error(e -> e.code(BatchStatementErrorCodeEnum.THROTTLING_ERROR)).build());
+                } else if (conditionFailures.contains(title)) {
+                    responses.add(BatchStatementResponse.builder()
+                        .error(e -> e.code(BatchStatementErrorCodeEnum.CONDITIONAL_CHECK_FAILED)).build());
+                } else {
+                    responses.add(BatchStatementResponse.builder()
+                        .item(Map.of("title", AttributeValue.fromS(title))).build());
+                }
+            }
+            return BatchExecuteStatementResponse.builder().responses(responses).build();
+        }
+
+        @Override
+        public ExecuteStatementResponse executeStatement(ExecuteStatementRequest request) {
+            pagesRead.incrementAndGet();
+            int start = request.nextToken() == null ? 0 : Integer.parseInt(request.nextToken());
+            int end = Math.min(selectRows, start + pageSize);
+            return ExecuteStatementResponse.builder()
+                .items(IntStream.range(start, end).mapToObj(i -> Map.of("title", AttributeValue.fromS("row-" + i)))
+                    .toList())
+                .nextToken(end < selectRows ? Integer.toString(end) : null)
+                .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
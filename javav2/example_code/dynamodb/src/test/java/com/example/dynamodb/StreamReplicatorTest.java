@@ -0,0 +1,251 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.dynamodb.model.LimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class StreamReplicatorTest {
+    private static final String TABLE_NAME = "Music";
+    private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:123456789012:table/Music/stream/1";
+    private static final StreamReplicator.Config CONFIG = new StreamReplicator.Config(4, 4, 100,
+        Duration.ofMillis(10), Duration.ofMillis(50), 100, Duration.ofMillis(100), 5, Duration.ofMillis(1),
+        Duration.ofMillis(100));
+
+    private final StubStreamsClient streams = new StubStreamsClient();
+    private final StreamCheckpointStore checkpoints = StreamCheckpointStore.inMemory();
+    private LocalDynamoDbServer server;
+    private DynamoDbClient dynamoDbClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "Artist", "SongTitle");
+        // SDK retries are off so that the replicator's own retries are what's tested.
+        dynamoDbClient = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+
+        // The parent shard changes ten keys 25 times each and then removes artist-8; its child changes the
+        // first five keys once more.
+        List<Record> parent = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            parent.add(i == 248 ? remove("shard-0", i, "artist-8") : modify("shard-0", i, "artist-" + i % 10, i));
+        }
+        List<Record> child = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            child.add(modify("shard-1", i, "artist-" + i % 5, 1000 + i));
+        }
+        streams.addShard("shard-0", null, parent, true);
+        streams.addShard("shard-1", "shard-0", child, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dynamoDbClient.close();
+        server.close();
+    }
+
+    @Test
+    void appliesTheLastChangeOfEachKeyInShardOrder() throws Exception {
+        streams.limitExceededOnce = true;
+        server.throttleNext("BatchWriteItem", 2);
+        server.leaveUnprocessed(3);
+
+        try (StreamReplicator replicator = replicator()) {
+            replicator.start();
+            awaitUntil(() -> replicator.stats().recordsApplied() == 300 && replicator.stats().lag().isZero());
+
+            StreamReplicator.Stats stats = replicator.stats();
+            assertEquals(1, stats.finishedShards());
+            assertEquals(1, stats.activeShards());
+            // Ten keys per read of 100 parent records, and five per read of the child's 50.
+            assertEquals(35, stats.writes());
+            assertTrue(replicator.failure().isEmpty());
+        }
+
+        for (int artist = 0; artist < 10; artist++) {
+            Map<String, AttributeValue> item = server.getItem(TABLE_NAME, key("artist-" + artist));
+            if (artist == 8) {
+                assertNull(item, "the removal of artist-8 wasn't applied");
+            } else {
+                int expected = artist < 5 ? 1045 + artist : 240 + artist;
+                assertEquals(Integer.toString(expected), item.get("Plays").n(), "artist-" + artist);
+            }
+        }
+        // The child shard was only read once the parent was read to its end.
+        assertEquals(List.of("shard-0", "shard-0", "shard-0"), streams.reads.subList(0, 3));
+        assertEquals(Optional.of(StreamCheckpointStore.SHARD_END), checkpoints.load(STREAM_ARN, "shard-0"));
+        assertEquals(Optional.of(sequenceNumber("shard-1", 49)), checkpoints.load(STREAM_ARN, "shard-1"));
+    }
+
+    @Test
+    void continuesFromTheCheckpoints() throws Exception {
+        checkpoints.save(STREAM_ARN, "shard-0", StreamCheckpointStore.SHARD_END);
+        checkpoints.save(STREAM_ARN, "shard-1", sequenceNumber("shard-1", 19));
+
+        try (StreamReplicator replicator = replicator()) {
+            replicator.start();
+            awaitUntil(() -> replicator.stats().recordsApplied() == 30 && replicator.stats().lag().isZero());
+            assertEquals(1, replicator.stats().finishedShards());
+        }
+
+        assertFalse(streams.reads.contains("shard-0"));
+        assertEquals(5, server.itemCount(TABLE_NAME));
+        assertEquals("1045", server.getItem(TABLE_NAME, key("artist-0")).get("Plays").n());
+        assertEquals(Optional.of(sequenceNumber("shard-1", 49)), checkpoints.load(STREAM_ARN, "shard-1"));
+    }
+
+    @Test
+    void stopsAtTheFirstWriteThatKeepsFailing() throws Exception {
+        server.failNext("BatchWriteItem", 100);
+
+        try (StreamReplicator replicator = replicator()) {
+            replicator.start();
+            awaitUntil(() -> replicator.failure().isPresent());
+            awaitUntil(() -> replicator.stats().activeShards() == 0);
+            assertEquals(0, replicator.stats().recordsApplied());
+        }
+        assertTrue(checkpoints.load(STREAM_ARN, "shard-0").isEmpty());
+    }
+
+    private StreamReplicator replicator() {
+        return new StreamReplicator(streams, dynamoDbClient, STREAM_ARN, TABLE_NAME, checkpoints, CONFIG);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Map<String, AttributeValue> key(String artist) {
+        return Map.of("Artist", AttributeValue.fromS(artist), "SongTitle", AttributeValue.fromS("Song"));
+    }
+
+    private static String sequenceNumber(String shardId, int index) {
+        return shardId + "-" + String.format("%06d", index);
+    }
+
+    private static Record modify(String shardId, int index, String artist, int plays) {
+        Map<String, AttributeValue> image = new LinkedHashMap<>(key(artist));
+        image.put("Plays", AttributeValue.fromN(Integer.toString(plays)));
+        return Record.builder()
+            .eventName(index < 10 ? OperationType.INSERT : OperationType.MODIFY)
+            .dynamodb(d -> d.keys(key(artist)).newImage(image).sequenceNumber(sequenceNumber(shardId, index))
+                .approximateCreationDateTime(Instant.now().minusSeconds(60)))
+            .build();
+    }
+
+    private static Record remove(String shardId, int index, String artist) {
+        return Record.builder()
+            .eventName(OperationType.REMOVE)
+            .dynamodb(d -> d.keys(key(artist)).sequenceNumber(sequenceNumber(shardId, index))
+                .approximateCreationDateTime(Instant.now().minusSeconds(60)))
+            .build();
+    }
+
+    // Serves shards from lists of records; an iterator is the shard ID and the position of the next record.
+    private static final class StubStreamsClient implements DynamoDbStreamsClient {
+        final List<Shard> shards = new ArrayList<>();
+        final Map<String, List<Record>> records = new LinkedHashMap<>();
+        final Map<String, Boolean> closed = new LinkedHashMap<>();
+        final List<String> reads = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean limitExceededOnce;
+
+        void addShard(String shardId, String parentShardId, List<Record> shardRecords, boolean isClosed) {
+            shards.add(Shard.builder().shardId(shardId).parentShardId(parentShardId).build());
+            records.put(shardId, shardRecords);
+            closed.put(shardId, isClosed);
+        }
+
+        @Override
+        public DescribeStreamResponse describeStream(DescribeStreamRequest request) {
+            // One shard per page, to exercise the pagination.
+            int start = request.exclusiveStartShardId() == null ? 0
+                : shards.indexOf(shards.stream().filter(s -> s.shardId().equals(request.exclusiveStartShardId()))
+                    .findFirst().orElseThrow()) + 1;
+            Shard shard = shards.get(start);
+            return DescribeStreamResponse.builder()
+                .streamDescription(d -> d.streamArn(request.streamArn()).shards(shard)
+                    .lastEvaluatedShardId(start + 1 < shards.size() ? shard.shardId() : null))
+                .build();
+        }
+
+        @Override
+        public GetShardIteratorResponse getShardIterator(GetShardIteratorRequest request) {
+            List<Record> shardRecords = records.get(request.shardId());
+            int position = 0;
+            if (request.shardIteratorType() == ShardIteratorType.AFTER_SEQUENCE_NUMBER) {
+                while (!shardRecords.get(position).dynamodb().sequenceNumber().equals(request.sequenceNumber())) {
+                    position++;
+                }
+                position++;
+            }
+            return GetShardIteratorResponse.builder().shardIterator(request.shardId() + ":" + position).build();
+        }
+
+        @Override
+        public GetRecordsResponse getRecords(GetRecordsRequest request) {
+            if (limitExceededOnce) {
+                limitExceededOnce = false;
+                throw LimitExceededException.builder().message("Rate exceeded").build();
+            }
+            String[] iterator = request.shardIterator().split(":");
+            String shardId = iterator[0];
+            reads.add(shardId);
+            List<Record> shardRecords = records.get(shardId);
+            int start = Integer.parseInt(iterator[1]);
+            int end = Math.min(shardRecords.size(), start + request.limit());
+            boolean shardEnd = closed.get(shardId) && end == shardRecords.size();
+            return GetRecordsResponse.builder()
+                .records(shardRecords.subList(start, end))
+                .nextShardIterator(shardEnd ? null : shardId + ":" + end)
+                .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "streams.dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodb;
+
+import com.example.dynamodb.benchmark.LocalDynamoDbServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.retries.StandardRetryStrategy;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class ThrottlingGovernorTest {
+    private static final String TABLE_NAME = "Events";
+    private static final ThrottlingGovernor.Scope TABLE = new ThrottlingGovernor.Scope(TABLE_NAME, "");
+
+    private LocalDynamoDbServer server;
+    private final List<DynamoDbClient> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = LocalDynamoDbServer.start();
+        server.createTable(TABLE_NAME, "id", "seq");
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(DynamoDbClient::close);
+        server.close();
+    }
+
+    @Test
+    void decreasesTheRateOnThrottlingAndGrowsItBackOnSuccess() {
+        ThrottlingGovernor governor = new ThrottlingGovernor(
+            new ThrottlingGovernor.Config(100, 1, 1000, 50, 0.5, Duration.ofMinutes(1), Duration.ZERO, 0));
+
+        // Before the first throttling error, every success adds one request per second.
+        for (int i = 0; i < 100; i++) {
+            governor.onSuccess(TABLE);
+        }
+        assertEquals(200, governor.rate(TABLE), 0.001);
+
+        governor.onThrottle(TABLE);
+        // Errors within the decrease interval were caused by the same overload, so they don't count again.
+        governor.onThrottle(TABLE);
+        assertEquals(100, governor.rate(TABLE), 0.001);
+
+        // After it, each success adds increasePerSecond / rate, so growth slows down as the rate grows.
+        for (int i = 0; i < 100; i++) {
+            governor.onSuccess(TABLE);
+        }
+        assertEquals(Math.sqrt(100 * 100 + 100 * 2 * 50), governor.rate(TABLE), 1);
+        assertEquals(2, governor.stats().get(0).throttled());
+    }
+
+    @Test
+    void pacesRequestsToTheRate() throws InterruptedException {
+        ThrottlingGovernor governor = new ThrottlingGovernor(
+            new ThrottlingGovernor.Config(200, 1, 200, 1, 0.5, Duration.ZERO, Duration.ZERO, 0));
+
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 25; i++) {
+                    try {
+                        governor.acquire(TABLE);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 100 requests at 200 per second take half a second, less the first interval.
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(490).toNanos());
+        assertEquals(100, governor.stats().get(0).admitted());
+    }
+
+    @Test
+    void clientsShareWhatOneOfThemLearnsFromThrottling() {
+        ThrottlingGovernor governor = new ThrottlingGovernor(
+            new ThrottlingGovernor.Config(100, 1, 1000, 10, 0.5, Duration.ZERO, Duration.ZERO, 0));
+        DynamoDbClient retrying = newClient(governor, true);
+        DynamoDbClient other = newClient(governor, false);
+
+        server.throttleNext("PutItem", 2);
+        put(retrying, "device-1", 1);
+
+        // The SDK retried twice; the governor saw both throttled attempts and the success.
+        ThrottlingGovernor.ScopeStats stats = governor.stats().get(0);
+        assertEquals(3, stats.admitted());
+        assertEquals(2, stats.throttled());
+        assertEquals(1, stats.succeeded());
+        double learned = governor.rate(TABLE);
+        assertTrue(learned < 30, "rate was " + learned);
+
+        server.throttleNext("PutItem", 1);
+        assertThrows(ProvisionedThroughputExceededException.class, () -> put(other, "device-2", 1));
+        assertTrue(governor.rate(TABLE) < learned);
+        assertEquals(1, governor.stats().size());
+    }
+
+    @Test
+    void keepsOneLimiterPerPartitionKeyPrefix() {
+        ThrottlingGovernor governor = new ThrottlingGovernor(
+            new ThrottlingGovernor.Config(100, 1, 1000, 10, 0.5, Duration.ZERO, Duration.ZERO, 7));
+        governor.registerPartitionKey(TABLE_NAME, "id");
+        DynamoDbClient client = newClient(governor, false);
+
+        put(client, "tenantA-device-1", 1);
+        put(client, "tenantA-device-2", 1);
+        server.throttleNext("PutItem", 1);
+        assertThrows(ProvisionedThroughputExceededException.class, () -> put(client, "tenantB-device-1", 1));
+
+        List<ThrottlingGovernor.ScopeStats> stats = governor.stats();
+        assertEquals(List.of(new ThrottlingGovernor.Scope(TABLE_NAME, "tenantA"),
+                new ThrottlingGovernor.Scope(TABLE_NAME, "tenantB")),
+            stats.stream().map(ThrottlingGovernor.ScopeStats::scope).toList());
+        assertEquals(2, stats.get(0).succeeded());
+        assertEquals(0, stats.get(0).throttled());
+        assertEquals(1, stats.get(1).throttled());
+        assertEquals(50, stats.get(1).rate(), 0.001);
+    }
+
+    private DynamoDbClient newClient(ThrottlingGovernor governor, boolean retry) {
+        DynamoDbClient client = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(retry
+                ? StandardRetryStrategy.builder().maxAttempts(3)
+                    .backoffStrategy(BackoffStrategy.retryImmediately())
+                    .throttlingBackoffStrategy(BackoffStrategy.retryImmediately())
+                    .build()
+                : AwsRetryStrategy.doNotRetry())
+            .addExecutionInterceptor(governor.interceptor())));
+        clients.add(client);
+        return client;
+    }
+
+    private static void put(DynamoDbClient client, String id, long seq) {
+        client.putItem(r -> r.tableName(TABLE_NAME).item(Map.of(
+            "id", AttributeValue.fromS(id),
+            "seq", AttributeValue.fromS(Long.toString(seq)))));
+    }
+}
@@ -12,6 +12,7 @@ import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.ListTablesRequest;
 import software.amazon.awssdk.services.dynamodb.model.ListTablesResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.paginators.ListTablesPublisher;
 
 import java.util.List;
@@ -26,9 +27,10 @@ public class AsyncPagination {
 
         final String USAGE = "\n" +
                 "Usage:\n" +
-                "    AsynPagination <type>\n\n" +
+                "    AsynPagination <type> [tableName]\n\n" +
                 "Where:\n" +
-                "    type - the type of pagination. (auto, manual or default) \n\n" +
+                "    type - the type of pagination. (auto, manual, prefetch or default) \n" +
+                "    tableName - the table that prefetch scans. \n\n" +
                 "Example:\n" +
                 "    AsynPagination auto\n";
 
@@ -43,6 +45,13 @@ public class AsyncPagination {
             case "manual":
                 ManualPagination();
                 break;
+            case "prefetch":
+                if (args.length < 2) {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+                prefetchingScan(args[1]);
+                break;
             case "auto":
                 AutoPagination();
                 AutoPaginationOnCollection();
@@ -227,6 +236,29 @@ public class AsyncPagination {
                 .block();
         System.out.println(tables);
     }
+
+    private static void prefetchingScan(String tableName) {
+        System.out.println("running a prefetching scan of " + tableName + "...\n");
+
+        // snippet-start:[dynamodb.java2.async_pagination.prefetch]
+        DynamoDbAsyncClient asyncClient = DynamoDbAsyncClient.create();
+
+        // The paginators above fetch a page only after the previous one has been
+        // processed. This publisher reads four segments of the table in parallel and
+        // keeps up to eight pages fetched or being fetched, while the subscriber still
+        // asks for items at its own pace.
+        PrefetchingPaginator publisher = PrefetchingPaginator.scan(asyncClient,
+                ScanRequest.builder().tableName(tableName).build(), 4, 8);
+        Long items = Flux.from(publisher)
+                .limitRate(100)
+                .count()
+                .block();
+        System.out.println(items + " items");
+
+        // Fetch latency and buffer occupancy show whether more pages in flight would help.
+        System.out.println(publisher.metrics());
+        // snippet-end:[dynamodb.java2.async_pagination.prefetch]
+    }
 }
 // snippet-end:[dynamodb.java2.async_pagination.main]
 // snippet-end:[dynamodb.java2.async_pagination.complete]
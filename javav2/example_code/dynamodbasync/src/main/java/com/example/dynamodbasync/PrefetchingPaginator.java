@@ -0,0 +1,335 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodbasync;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * A publisher of the items of a query or scan that fetches pages ahead of the subscriber.
+ *
+ * The paginators of the SDK fetch the next page only when the subscriber asks for it, so
+ * the subscriber waits for the network after every page. This publisher keeps up to
+ * {@code maxPagesInFlight} pages either being fetched or buffered, and fetches the next
+ * page as soon as there is room, so that processing a page overlaps with fetching the
+ * following ones. A query or a single scan segment is read one page after another,
+ * because every page starts at the LastEvaluatedKey of the one before it, so it can
+ * fetch at most one page at a time; a scan split into segments fetches pages of several
+ * segments at the same time.
+ *
+ * Demand is counted in items, not pages, and the buffer never grows beyond
+ * {@code maxPagesInFlight} pages however slowly the subscriber asks for items. Nothing is
+ * fetched before the subscriber's first request. Each subscription reads the table anew.
+ *
+ * {@link #metrics()} reports the fetch latency of the pages and how full the buffer was,
+ * summed over all subscriptions. A buffer that is usually empty means that the subscriber
+ * is faster than the table and more pages, or more segments, would help.
+ */
+public class PrefetchingPaginator implements SdkPublisher<Map<String, AttributeValue>> {
+
+    /**
+     * What the paginator has done so far.
+     *
+     * @param pagesFetched      the pages that were received
+     * @param itemsEmitted      the items that were delivered to subscribers
+     * @param meanFetchLatency  the mean time between sending a request and receiving its page
+     * @param maxFetchLatency   the longest time a page took
+     * @param bufferedPages     the pages that are waiting for the subscribers now
+     * @param meanBufferedPages the mean number of pages that were waiting when a page arrived
+     * @param stalls            the times a subscriber had outstanding demand and no buffered item
+     */
+    public record Metrics(long pagesFetched, long itemsEmitted, Duration meanFetchLatency, Duration maxFetchLatency,
+                          int bufferedPages, double meanBufferedPages, long stalls) {
+    }
+
+    private record Page(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+    }
+
+    // A query, or one segment of a scan, and where its next page starts.
+    private static final class Cursor {
+        private final Function<Map<String, AttributeValue>, CompletableFuture<Page>> fetcher;
+        private Map<String, AttributeValue> startKey;
+
+        Cursor(Function<Map<String, AttributeValue>, CompletableFuture<Page>> fetcher,
+               Map<String, AttributeValue> startKey) {
+            this.fetcher = fetcher;
+            this.startKey = startKey;
+        }
+    }
+
+    private record Arrival(Cursor cursor, Page page) {
+    }
+
+    private final List<Function<Map<String, AttributeValue>, CompletableFuture<Page>>> fetchers;
+    private final Map<String, AttributeValue> startKey;
+    private final int maxPagesInFlight;
+    private final AtomicLong pagesFetched = new AtomicLong();
+    private final AtomicLong itemsEmitted = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong maxFetchNanos = new AtomicLong();
+    private final AtomicInteger bufferedPages = new AtomicInteger();
+    private final AtomicLong bufferedPagesAtArrival = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+
+    private PrefetchingPaginator(List<Function<Map<String, AttributeValue>, CompletableFuture<Page>>> fetchers,
+                                 Map<String, AttributeValue> startKey, int maxPagesInFlight) {
+        if (maxPagesInFlight < 1) {
+            throw new IllegalArgumentException("maxPagesInFlight must be positive");
+        }
+        this.fetchers = fetchers;
+        this.startKey = startKey;
+        this.maxPagesInFlight = maxPagesInFlight;
+    }
+
+    /**
+     * Returns a publisher of the items that match the query.
+     *
+     * @param client           the client that sends the requests
+     * @param request          the query; its ExclusiveStartKey, if any, is where the first page starts
+     * @param maxPagesInFlight the number of pages that are fetched ahead of the subscriber
+     */
+    public static PrefetchingPaginator query(DynamoDbAsyncClient client, QueryRequest request, int maxPagesInFlight) {
+        return new PrefetchingPaginator(List.of(startKey -> page(
+            client.query(request.toBuilder().exclusiveStartKey(startKey).build()),
+            response -> new Page(response.items(), response.lastEvaluatedKey()))),
+            request.hasExclusiveStartKey() ? request.exclusiveStartKey() : null, maxPagesInFlight);
+    }
+
+    /**
+     * Returns a publisher of the items of a scan. With more than one segment, the segments
+     * are read in parallel and their items are interleaved.
+     *
+     * @param client           the client that sends the requests
+     * @param request          the scan, without Segment and TotalSegments; its ExclusiveStartKey, if
+     *                         any, is where the first page starts, which only works with one segment
+     * @param segments         the number of segments the scan is split into
+     * @param maxPagesInFlight the number of pages that are fetched ahead of the subscriber, across all
+     *                         segments
+     */
+    public static PrefetchingPaginator scan(DynamoDbAsyncClient client, ScanRequest request, int segments,
+                                            int maxPagesInFlight) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be positive");
+        }
+        if (segments > 1 && request.hasExclusiveStartKey()) {
+            throw new IllegalArgumentException("A scan split into segments can't start at an ExclusiveStartKey");
+        }
+        List<Function<Map<String, AttributeValue>, CompletableFuture<Page>>> fetchers = new ArrayList<>();
+        for (int segment = 0; segment < segments; segment++) {
+            ScanRequest segmentRequest = segments == 1 ? request
+                : request.toBuilder().segment(segment).totalSegments(segments).build();
+            fetchers.add(startKey -> page(client.scan(segmentRequest.toBuilder().exclusiveStartKey(startKey).build()),
+                response -> new Page(response.items(), response.lastEvaluatedKey())));
+        }
+        return new PrefetchingPaginator(fetchers,
+            request.hasExclusiveStartKey() ? request.exclusiveStartKey() : null, maxPagesInFlight);
+    }
+
+    // Cancelling a derived future doesn't cancel the one it came from, so the page passes its cancellation on to
+    // the request.
+    private static <T> CompletableFuture<Page> page(CompletableFuture<T> request, Function<T, Page> toPage) {
+        CompletableFuture<Page> page = request.thenApply(toPage);
+        page.whenComplete((result, e) -> {
+            if (page.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return page;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Map<String, AttributeValue>> subscriber) {
+        PrefetchSubscription subscription = new PrefetchSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Returns what the paginator has done so far.
+     */
+    public Metrics metrics() {
+        long pages = pagesFetched.get();
+        return new Metrics(pages, itemsEmitted.get(),
+            Duration.ofNanos(pages == 0 ? 0 : fetchNanos.get() / pages), Duration.ofNanos(maxFetchNanos.get()),
+            bufferedPages.get(), pages == 0 ? 0 : (double) bufferedPagesAtArrival.get() / pages, stalls.get());
+    }
+
+    // Delivers the buffered items and starts fetches from a drain loop that runs on one thread at a time:
+    // whichever of request(), cancel() or a completed fetch finds the loop idle runs it, and the others
+    // leave their work for it.
+    private final class PrefetchSubscription implements Subscription {
+        private final Subscriber<? super Map<String, AttributeValue>> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private final Queue<Arrival> arrivals = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final Set<CompletableFuture<Page>> fetches = ConcurrentHashMap.newKeySet();
+        private volatile boolean requested;
+        private volatile boolean cancelled;
+
+        // Only touched by the drain loop.
+        private final ArrayDeque<Cursor> idle = new ArrayDeque<>();
+        private final ArrayDeque<Iterator<Map<String, AttributeValue>>> buffer = new ArrayDeque<>();
+        private int fetching;
+        private boolean done;
+        // The pages of this subscription that are counted in bufferedPages.
+        private volatile int lastBuffered;
+
+        PrefetchSubscription(Subscriber<? super Map<String, AttributeValue>> subscriber) {
+            this.subscriber = subscriber;
+            fetchers.forEach(fetcher -> idle.add(new Cursor(fetcher, startKey)));
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error.compareAndSet(null, new IllegalArgumentException(
+                    "A subscriber must request a positive number of items, not " + n));
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                requested = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done) {
+                    step();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void step() {
+            if (cancelled) {
+                terminate();
+                return;
+            }
+            Throwable failure = error.get();
+            if (failure != null) {
+                terminate();
+                subscriber.onError(failure);
+                return;
+            }
+            for (Arrival arrival; (arrival = arrivals.poll()) != null; ) {
+                fetching--;
+                Page page = arrival.page();
+                if (!page.items().isEmpty()) {
+                    buffer.add(page.items().iterator());
+                }
+                // The SDK returns an empty map, not null, when there are no more pages.
+                Map<String, AttributeValue> next = page.lastEvaluatedKey();
+                if (next != null && !next.isEmpty()) {
+                    arrival.cursor().startKey = next;
+                    idle.add(arrival.cursor());
+                }
+            }
+
+            long wanted = demand.get();
+            long emitted = 0;
+            while (emitted < wanted && !cancelled) {
+                Iterator<Map<String, AttributeValue>> page = buffer.peek();
+                if (page == null) {
+                    if (fetching > 0) {
+                        stalls.incrementAndGet();
+                    }
+                    break;
+                }
+                subscriber.onNext(page.next());
+                emitted++;
+                if (!page.hasNext()) {
+                    buffer.poll();
+                }
+            }
+            if (emitted > 0) {
+                itemsEmitted.addAndGet(emitted);
+                if (wanted != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+            }
+            if (cancelled) {
+                terminate();
+                return;
+            }
+
+            while (requested && !idle.isEmpty() && fetching + buffer.size() < maxPagesInFlight) {
+                fetch(idle.poll());
+            }
+            bufferedPages.addAndGet(buffer.size() - lastBuffered);
+            lastBuffered = buffer.size();
+            if (idle.isEmpty() && fetching == 0 && buffer.isEmpty()) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void fetch(Cursor cursor) {
+            fetching++;
+            long start = System.nanoTime();
+            CompletableFuture<Page> future;
+            try {
+                future = cursor.fetcher.apply(cursor.startKey);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<Page> fetch = future;
+            fetches.add(fetch);
+            fetch.whenComplete((page, e) -> {
+                fetches.remove(fetch);
+                if (e != null) {
+                    error.compareAndSet(null, e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+                } else {
+                    long nanos = System.nanoTime() - start;
+                    fetchNanos.addAndGet(nanos);
+                    maxFetchNanos.accumulateAndGet(nanos, Math::max);
+                    bufferedPagesAtArrival.addAndGet(lastBuffered);
+                    pagesFetched.incrementAndGet();
+                    arrivals.add(new Arrival(cursor, page));
+                }
+                drain();
+            });
+        }
+
+        private void terminate() {
+            done = true;
+            fetches.forEach(fetch -> fetch.cancel(false));
+            bufferedPages.addAndGet(-lastBuffered);
+            lastBuffered = 0;
+            buffer.clear();
+            idle.clear();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.dynamodbasync;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.InternalServerErrorException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class PrefetchingPaginatorTest {
+
+    @Test
+    void fetchesNoMorePagesAheadThanAllowed() {
+        FakeTable table = new FakeTable(4, 5, 2);
+        PrefetchingPaginator paginator = PrefetchingPaginator.scan(table, ScanRequest.builder().tableName("t").build(),
+            4, 3);
+        TestSubscriber subscriber = new TestSubscriber();
+        paginator.subscribe(subscriber);
+        assertEquals(0, table.pending().size(), "Nothing is fetched before the first request");
+
+        subscriber.request(1);
+        assertEquals(3, table.pending().size());
+        table.completeAll();
+
+        // One item was delivered, and the three pages fill the buffer, so nothing else is fetched.
+        assertEquals(1, subscriber.items().size());
+        assertEquals(0, table.pending().size());
+        assertEquals(3, paginator.metrics().bufferedPages());
+
+        // The second item empties the first page, which makes room for one more.
+        subscriber.request(1);
+        assertEquals(2, subscriber.items().size());
+        assertEquals(1, table.pending().size());
+        assertEquals(2, paginator.metrics().bufferedPages());
+        subscriber.request(1);
+        assertEquals(3, subscriber.items().size());
+        assertEquals(1, table.pending().size());
+
+        subscriber.request(Long.MAX_VALUE);
+        while (!table.pending().isEmpty()) {
+            table.completeAll();
+        }
+        assertTrue(subscriber.completed());
+        assertEquals(40, subscriber.items().size());
+        assertEquals(20, paginator.metrics().pagesFetched());
+        assertEquals(40, paginator.metrics().itemsEmitted());
+        assertEquals(0, paginator.metrics().bufferedPages());
+        assertTrue(table.maxPending() <= 3, String.valueOf(table.maxPending()));
+    }
+
+    @Test
+    void deliversTheItemsOfAQueryInOrderFromItsStartKey() {
+        FakeTable table = new FakeTable(1, 4, 3);
+        table.completeImmediately = true;
+        QueryRequest request = QueryRequest.builder()
+            .tableName("t")
+            .exclusiveStartKey(FakeTable.key(0, 1))
+            .build();
+        TestSubscriber subscriber = new TestSubscriber();
+
+        PrefetchingPaginator.query(table, request, 2).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        assertTrue(subscriber.completed());
+        assertEquals(List.of("0-1-0", "0-1-1", "0-1-2", "0-2-0", "0-2-1", "0-2-2", "0-3-0", "0-3-1", "0-3-2"),
+            subscriber.items());
+        // Each page started where the one before it ended.
+        assertEquals(List.of(FakeTable.key(0, 1), FakeTable.key(0, 2), FakeTable.key(0, 3)), table.startKeys());
+    }
+
+    @Test
+    void deliversEveryItemOfEverySegmentOnce() throws Exception {
+        FakeTable table = new FakeTable(3, 4, 5);
+        table.completeAsynchronously = true;
+        TestSubscriber subscriber = new TestSubscriber();
+        subscriber.batch = 7;
+
+        PrefetchingPaginator.scan(table, ScanRequest.builder().tableName("t").build(), 3, 4).subscribe(subscriber);
+        subscriber.request(7);
+
+        assertTrue(subscriber.awaitTermination());
+        assertTrue(subscriber.completed());
+        List<String> items = subscriber.items();
+        assertEquals(60, items.size());
+        assertEquals(60, items.stream().distinct().count());
+        // Within a segment, the items are in the order of its pages.
+        for (int segment = 0; segment < 3; segment++) {
+            String prefix = segment + "-";
+            List<String> ofSegment = items.stream().filter(item -> item.startsWith(prefix)).toList();
+            assertEquals(ofSegment.stream().sorted().toList(), ofSegment);
+        }
+    }
+
+    @Test
+    void cancelsTheFetchesInFlightWhenTheSubscriptionIsCancelled() {
+        FakeTable table = new FakeTable(2, 5, 2);
+        PrefetchingPaginator paginator = PrefetchingPaginator.scan(table, ScanRequest.builder().tableName("t").build(),
+            2, 4);
+        TestSubscriber subscriber = new TestSubscriber();
+        paginator.subscribe(subscriber);
+        subscriber.request(1);
+        table.complete(0);
+        List<CompletableFuture<?>> inFlight = table.pending();
+        assertEquals(2, inFlight.size());
+
+        subscriber.cancel();
+
+        inFlight.forEach(future -> assertTrue(future.isCancelled()));
+        subscriber.request(10);
+        assertEquals(1, subscriber.items().size());
+        assertFalse(subscriber.completed());
+        assertNull(subscriber.error());
+        assertEquals(0, paginator.metrics().bufferedPages());
+        assertEquals(0, table.pending().size());
+    }
+
+    @Test
+    void signalsTheErrorOfAFailedFetch() {
+        FakeTable table = new FakeTable(2, 5, 2);
+        TestSubscriber subscriber = new TestSubscriber();
+        PrefetchingPaginator.scan(table, ScanRequest.builder().tableName("t").build(), 2, 4).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+        List<CompletableFuture<?>> inFlight = table.pending();
+        InternalServerErrorException failure = InternalServerErrorException.builder().message("boom").build();
+
+        table.fail(0, failure);
+
+        assertSame(failure, subscriber.error());
+        assertFalse(subscriber.completed());
+        assertTrue(inFlight.get(1).isCancelled());
+        table.completeAll();
+        assertEquals(0, subscriber.items().size());
+    }
+
+    @Test
+    void signalsAnErrorForANonPositiveRequest() {
+        FakeTable table = new FakeTable(1, 1, 1);
+        TestSubscriber subscriber = new TestSubscriber();
+        PrefetchingPaginator.scan(table, ScanRequest.builder().tableName("t").build(), 1, 1).subscribe(subscriber);
+
+        subscriber.request(0);
+
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error());
+        assertEquals(0, table.pending().size());
+    }
+
+    /**
+     * A table of segments with the same number of pages and items per page. Item "s-p-i" is
+     * item i of page p of segment s, and the key after page p is {segment: s, page: p + 1}.
+     * Requests wait until the test completes them, unless completeImmediately or
+     * completeAsynchronously is set.
+     */
+    private static final class FakeTable implements DynamoDbAsyncClient {
+        private final int segments;
+        private final int pages;
+        private final int itemsPerPage;
+        private final List<Call> pending = new ArrayList<>();
+        private final List<Map<String, AttributeValue>> startKeys = Collections.synchronizedList(new ArrayList<>());
+        private int maxPending;
+        volatile boolean completeImmediately;
+        volatile boolean completeAsynchronously;
+
+        // A request; the paginator holds the future of the response, which is derived from the future of the page.
+        private static final class Call {
+            private final CompletableFuture<Page> page = new CompletableFuture<>();
+            private final int segment;
+            private final int pageNumber;
+            private CompletableFuture<?> response;
+
+            Call(int segment, int pageNumber) {
+                this.segment = segment;
+                this.pageNumber = pageNumber;
+            }
+        }
+
+        private record Page(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+        }
+
+        FakeTable(int segments, int pages, int itemsPerPage) {
+            this.segments = segments;
+            this.pages = pages;
+            this.itemsPerPage = itemsPerPage;
+        }
+
+        static Map<String, AttributeValue> key(int segment, int page) {
+            return Map.of("segment", AttributeValue.fromN(String.valueOf(segment)),
+                "page", AttributeValue.fromN(String.valueOf(page)));
+        }
+
+        @Override
+        public CompletableFuture<QueryResponse> query(QueryRequest request) {
+            Call call = call(0, request.hasExclusiveStartKey() ? request.exclusiveStartKey() : null);
+            CompletableFuture<QueryResponse> response = call.page.thenApply(page -> QueryResponse.builder()
+                .items(page.items())
+                .lastEvaluatedKey(page.lastEvaluatedKey())
+                .build());
+            return start(call, response);
+        }
+
+        @Override
+        public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+            int segment = request.segment() == null ? 0 : request.segment();
+            assertEquals(segments == 1 ? null : segments, request.totalSegments());
+            Call call = call(segment, request.hasExclusiveStartKey() ? request.exclusiveStartKey() : null);
+            CompletableFuture<ScanResponse> response = call.page.thenApply(page -> ScanResponse.builder()
+                .items(page.items())
+                .lastEvaluatedKey(page.lastEvaluatedKey())
+                .build());
+            return start(call, response);
+        }
+
+        private Call call(int segment, Map<String, AttributeValue> startKey) {
+            int page = 0;
+            if (startKey != null) {
+                startKeys.add(startKey);
+                page = Integer.parseInt(startKey.get("page").n());
+            }
+            return new Call(segment, page);
+        }
+
+        private <T> CompletableFuture<T> start(Call call, CompletableFuture<T> response) {
+            call.response = response;
+            if (completeImmediately) {
+                call.page.complete(page(call));
+            } else if (completeAsynchronously) {
+                call.page.completeAsync(() -> page(call));
+            } else {
+                synchronized (this) {
+                    pending.add(call);
+                    maxPending = Math.max(maxPending, pending.size());
+                }
+            }
+            return response;
+        }
+
+        private Page page(Call call) {
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (int i = 0; i < itemsPerPage; i++) {
+                items.add(Map.of("id", AttributeValue.fromS(call.segment + "-" + call.pageNumber + "-" + i)));
+            }
+            // The SDK returns an empty map, not null, after the last page.
+            return new Page(items, call.pageNumber + 1 < pages ? key(call.segment, call.pageNumber + 1) : Map.of());
+        }
+
+        // The responses the paginator is still waiting for.
+        synchronized List<CompletableFuture<?>> pending() {
+            pending.removeIf(call -> call.response.isDone());
+            return pending.stream().<CompletableFuture<?>>map(call -> call.response).toList();
+        }
+
+        synchronized int maxPending() {
+            return maxPending;
+        }
+
+        List<Map<String, AttributeValue>> startKeys() {
+            return List.copyOf(startKeys);
+        }
+
+        void complete(int index) {
+            Call call;
+            synchronized (this) {
+                call = pending.remove(index);
+            }
+            call.page.complete(page(call));
+        }
+
+        void fail(int index, Throwable error) {
+            Call call;
+            synchronized (this) {
+                call = pending.remove(index);
+            }
+            call.page.completeExceptionally(error);
+        }
+
+        void completeAll() {
+            List<Call> calls;
+            synchronized (this) {
+                calls = new ArrayList<>(pending);
+                pending.clear();
+            }
+            calls.forEach(call -> call.page.complete(page(call)));
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Records what it receives; with a batch, it requests that many more items after every batch it received.
+    private static final class TestSubscriber implements Subscriber<Map<String, AttributeValue>> {
+        private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private volatile Subscription subscription;
+        private volatile boolean completed;
+        int batch;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Map<String, AttributeValue> item) {
+            items.add(item.get("id").s());
+            if (batch > 0 && items.size() % batch == 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        void request(long n) {
+            subscription.request(n);
+        }
+
+        void cancel() {
+            subscription.cancel();
+        }
+
+        List<String> items() {
+            return List.copyOf(items);
+        }
+
+        Throwable error() {
+            return error.get();
+        }
+
+        boolean completed() {
+            return completed;
+        }
+
+        boolean awaitTermination() throws InterruptedException {
+            return terminated.await(10, TimeUnit.SECONDS);
+        }
+    }
+}
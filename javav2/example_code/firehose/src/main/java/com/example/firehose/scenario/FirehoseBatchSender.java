@@ -0,0 +1,343 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.firehose.scenario;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.firehose.FirehoseAsyncClient;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchRequest;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchResponse;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchResponseEntry;
+import software.amazon.awssdk.services.firehose.model.Record;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes records to a Firehose delivery stream in PutRecordBatch calls on the
+ * asynchronous client, with several calls in flight at a time.
+ *
+ * {@link #add(byte[])} collects records into a batch, which is sent as soon as the next
+ * record would take it over {@link Config#maxRecordsPerBatch()} records or
+ * {@link Config#maxBatchBytes()} bytes; Firehose takes at most 500 records and 4 MiB
+ * per call. Up to {@link Config#maxBatchesInFlight()} batches are sent at the same time,
+ * so the throughput grows with the number of batches in flight instead of being bound by
+ * one round trip per batch, and {@code add} blocks while that many are outstanding.
+ *
+ * A PutRecordBatch call can partly fail. Only the entries of a response that have an
+ * error code are sent again, after an exponential backoff with full jitter, until they
+ * succeed or {@link Config#maxAttempts()} is reached; calls that fail as a whole are
+ * retried the same way if the error is a throttling or server error.
+ */
+public class FirehoseBatchSender implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirehoseBatchSender.class);
+
+    static final int MAX_RECORDS_PER_BATCH = 500;
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+    static final int MAX_RECORD_BYTES = 1000 * 1024;
+
+    /**
+     * Settings for the sender.
+     *
+     * @param maxBatchesInFlight the number of PutRecordBatch calls that are sent at the same time
+     * @param maxRecordsPerBatch the records in one call, at most 500
+     * @param maxBatchBytes      the bytes in one call, at most 4 MiB
+     * @param maxAttempts        the number of times a record is sent before it counts as failed
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     */
+    public record Config(int maxBatchesInFlight, int maxRecordsPerBatch, int maxBatchBytes, int maxAttempts,
+                         Duration retryBaseDelay) {
+
+        public Config {
+            if (maxBatchesInFlight < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("maxBatchesInFlight and maxAttempts must be positive");
+            }
+            if (maxRecordsPerBatch < 1 || maxRecordsPerBatch > MAX_RECORDS_PER_BATCH) {
+                throw new IllegalArgumentException("maxRecordsPerBatch must be between 1 and " + MAX_RECORDS_PER_BATCH);
+            }
+            if (maxBatchBytes < MAX_RECORD_BYTES || maxBatchBytes > MAX_BATCH_BYTES) {
+                throw new IllegalArgumentException("maxBatchBytes must be between " + MAX_RECORD_BYTES + " and "
+                    + MAX_BATCH_BYTES);
+            }
+        }
+
+        /**
+         * Returns 8 batches in flight of up to 500 records and 4 MiB, and 10 attempts
+         * starting with a 100 ms backoff.
+         */
+        public static Config defaults() {
+            return new Config(8, MAX_RECORDS_PER_BATCH, MAX_BATCH_BYTES, 10, Duration.ofMillis(100));
+        }
+    }
+
+    /**
+     * What the sender has done so far.
+     *
+     * @param recordsPut     the records that were written
+     * @param bytesPut       the bytes of the records that were written
+     * @param calls          the PutRecordBatch calls that were sent, including retries
+     * @param retriedRecords the records that were sent again after they failed
+     * @param failedRecords  the records that couldn't be written within maxAttempts
+     */
+    public record Stats(long recordsPut, long bytesPut, long calls, long retriedRecords, long failedRecords) {
+    }
+
+    private final FirehoseAsyncClient firehoseClient;
+    private final String deliveryStreamName;
+    private final Config config;
+    private final Semaphore batchesInFlight;
+    private final ScheduledExecutorService retries;
+    private final AtomicLong recordsPut = new AtomicLong();
+    private final AtomicLong bytesPut = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retriedRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Set<Retry> scheduledRetries = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this sender.
+    private List<Record> batch = new ArrayList<>();
+    private int batchBytes;
+
+    /**
+     * @param firehoseClient     the client that sends the records; the sender doesn't close it
+     * @param deliveryStreamName the delivery stream to write to
+     * @param config             the sender settings
+     */
+    public FirehoseBatchSender(FirehoseAsyncClient firehoseClient, String deliveryStreamName, Config config) {
+        this.firehoseClient = firehoseClient;
+        this.deliveryStreamName = deliveryStreamName;
+        this.config = config;
+        this.batchesInFlight = new Semaphore(config.maxBatchesInFlight());
+        this.retries = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("firehose-retries").factory());
+    }
+
+    /**
+     * Adds a record to the current batch, sending the batch first if the record doesn't
+     * fit in it. Blocks while {@link Config#maxBatchesInFlight()} batches are outstanding.
+     *
+     * @throws IllegalArgumentException if the record is larger than the 1,000 KiB Firehose allows
+     */
+    public synchronized void add(byte[] data) throws InterruptedException {
+        if (data.length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("A record can't be larger than " + MAX_RECORD_BYTES + " bytes");
+        }
+        if (batch.size() == config.maxRecordsPerBatch() || batchBytes + data.length > config.maxBatchBytes()) {
+            sendBatch();
+        }
+        // The producer doesn't touch the array again, so it is wrapped rather than copied.
+        batch.add(Record.builder().data(SdkBytes.fromByteArrayUnsafe(data)).build());
+        batchBytes += data.length;
+    }
+
+    /**
+     * Sends the current batch and waits until every record added so far was written or
+     * counted as failed.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (this) {
+            if (!batch.isEmpty()) {
+                sendBatch();
+            }
+        }
+        batchesInFlight.acquire(config.maxBatchesInFlight());
+        batchesInFlight.release(config.maxBatchesInFlight());
+    }
+
+    /**
+     * Returns what the sender has done so far.
+     */
+    public Stats stats() {
+        return new Stats(recordsPut.get(), bytesPut.get(), calls.get(), retriedRecords.get(), failedRecords.get());
+    }
+
+    /**
+     * Returns the first error that made records fail, if any did.
+     */
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure.get());
+    }
+
+    /**
+     * Sends the records that were added and waits for them, then stops. If the wait is
+     * interrupted, the records that weren't sent yet or were waiting for a retry count as
+     * failed.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            retries.shutdownNow();
+            synchronized (this) {
+                if (!batch.isEmpty()) {
+                    dropped(batch.size(), new IllegalStateException(
+                        "The sender was closed before " + batch.size() + " records were sent"));
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+            }
+            for (Retry retry : scheduledRetries) {
+                if (scheduledRetries.remove(retry)) {
+                    giveUp(retry.records, new IllegalStateException(
+                        "The sender was closed before " + retry.records.size() + " records were sent again"));
+                }
+            }
+        }
+    }
+
+    // Called with the lock held; the permit is released once every record of the batch is settled.
+    private void sendBatch() throws InterruptedException {
+        batchesInFlight.acquire();
+        List<Record> records = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        send(records, 1);
+    }
+
+    private void send(List<Record> records, int attempt) {
+        calls.incrementAndGet();
+        CompletableFuture<PutRecordBatchResponse> call;
+        try {
+            call = firehoseClient.putRecordBatch(PutRecordBatchRequest.builder()
+                .deliveryStreamName(deliveryStreamName)
+                .records(records)
+                .build());
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                    retryOrFail(records, attempt, cause);
+                } else {
+                    settle(records, response, attempt);
+                }
+            } catch (RuntimeException e) {
+                giveUp(records, e);
+            }
+        });
+    }
+
+    private void settle(List<Record> records, PutRecordBatchResponse response, int attempt) {
+        if (response.failedPutCount() == null || response.failedPutCount() == 0) {
+            written(records);
+            batchesInFlight.release();
+            return;
+        }
+        // The entries of the response are in the order of the records of the request.
+        List<PutRecordBatchResponseEntry> entries = response.requestResponses();
+        List<Record> succeeded = new ArrayList<>();
+        List<Record> failed = new ArrayList<>();
+        String errorCode = null;
+        for (int i = 0; i < records.size(); i++) {
+            PutRecordBatchResponseEntry entry = entries.get(i);
+            if (entry.errorCode() == null) {
+                succeeded.add(records.get(i));
+            } else {
+                failed.add(records.get(i));
+                errorCode = entry.errorCode() + ": " + entry.errorMessage();
+            }
+        }
+        written(succeeded);
+        if (failed.isEmpty()) {
+            batchesInFlight.release();
+            return;
+        }
+        retryOrFail(failed, attempt, new IllegalStateException(
+            failed.size() + " records of a batch failed, the last with " + errorCode));
+    }
+
+    private void retryOrFail(List<Record> records, int attempt, Throwable error) {
+        if (attempt >= config.maxAttempts() || !isRetryable(error)) {
+            giveUp(records, error);
+            return;
+        }
+        retriedRecords.addAndGet(records.size());
+        long base = config.retryBaseDelay().toNanos() << Math.min(attempt - 1, 10);
+        Retry retry = new Retry(records, attempt + 1);
+        scheduledRetries.add(retry);
+        try {
+            retries.schedule(retry, ThreadLocalRandom.current().nextLong(base + 1), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The sender was closed while the batch waited for its retry.
+            if (scheduledRetries.remove(retry)) {
+                giveUp(records, error);
+            }
+        }
+    }
+
+    // Whoever removes a retry from scheduledRetries first either sends its records or counts them as failed.
+    private final class Retry implements Runnable {
+        private final List<Record> records;
+        private final int attempt;
+
+        Retry(List<Record> records, int attempt) {
+            this.records = records;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            if (scheduledRetries.remove(this)) {
+                send(records, attempt);
+            }
+        }
+    }
+
+    private void giveUp(List<Record> records, Throwable error) {
+        dropped(records.size(), error);
+        batchesInFlight.release();
+    }
+
+    private void dropped(int records, Throwable error) {
+        failedRecords.addAndGet(records);
+        if (failure.compareAndSet(null, error)) {
+            logger.error("Couldn't write {} records to {}", records, deliveryStreamName, error);
+        }
+    }
+
+    private void written(List<Record> records) {
+        recordsPut.addAndGet(records.size());
+        bytesPut.addAndGet(records.stream().mapToLong(record -> record.data().asByteArrayUnsafe().length).sum());
+    }
+
+    // Failed entries carry an error code rather than an exception; they are throttling or internal errors.
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof IllegalStateException) {
+            return true;
+        }
+        if (e instanceof AbortedException) {
+            return false;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkException;
+    }
+}
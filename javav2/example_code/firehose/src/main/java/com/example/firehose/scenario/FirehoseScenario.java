@@ -5,10 +5,12 @@ package com.example.firehose.scenario;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.*;
+import software.amazon.awssdk.services.firehose.FirehoseAsyncClient;
 import software.amazon.awssdk.services.firehose.FirehoseClient;
 import software.amazon.awssdk.services.firehose.model.*;
 import software.amazon.awssdk.services.firehose.model.Record;
@@ -18,7 +20,6 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 // snippet-start:[firehose.java2.scenario.main]
 /**
  * Amazon Firehose Scenario example using Java V2 SDK.
@@ -28,7 +29,11 @@ import java.util.stream.Collectors;
  */
 public class FirehoseScenario {
 
+    // Jackson's writers are thread-safe, so one is shared by every record of the scenario.
+    private static final ObjectWriter recordWriter = new ObjectMapper().writer();
+
     private static FirehoseClient firehoseClient;
+    private static FirehoseAsyncClient firehoseAsyncClient;
     private static CloudWatchClient cloudWatchClient;
 
     public static void main(String[] args) {
@@ -86,6 +91,15 @@ public class FirehoseScenario {
         return firehoseClient;
     }
 
+    private static FirehoseAsyncClient getFirehoseAsyncClient() {
+        if (firehoseAsyncClient == null) {
+            firehoseAsyncClient = FirehoseAsyncClient.builder()
+                    .region(Region.US_EAST_1)
+                    .build();
+        }
+        return firehoseAsyncClient;
+    }
+
     private static CloudWatchClient getCloudWatchClient() {
         if (cloudWatchClient == null) {
             cloudWatchClient = CloudWatchClient.builder()
@@ -109,9 +123,9 @@ public class FirehoseScenario {
             throw new IllegalArgumentException("Invalid input: record or delivery stream name cannot be null/empty");
         }
         try {
-            String jsonRecord = new ObjectMapper().writeValueAsString(record);
+            byte[] jsonRecord = recordWriter.writeValueAsBytes(record);
             Record firehoseRecord = Record.builder()
-                .data(SdkBytes.fromByteArray(jsonRecord.getBytes(StandardCharsets.UTF_8)))
+                .data(SdkBytes.fromByteArrayUnsafe(jsonRecord))
                 .build();
 
             PutRecordRequest putRecordRequest = PutRecordRequest.builder()
@@ -120,7 +134,7 @@ public class FirehoseScenario {
                 .build();
 
             getFirehoseClient().putRecord(putRecordRequest);
-            System.out.println("Record sent: " + jsonRecord);
+            System.out.println("Record sent: " + new String(jsonRecord, StandardCharsets.UTF_8));
         } catch (Exception e) {
             throw new RuntimeException("Failed to put record: " + e.getMessage(), e);
         }
@@ -132,8 +146,13 @@ public class FirehoseScenario {
     /**
      * Puts a batch of records to an Amazon Kinesis Data Firehose delivery stream.
      *
+     * The records are sent with a {@link FirehoseBatchSender} on the asynchronous client,
+     * which keeps several PutRecordBatch calls in flight, starts a new batch when the next
+     * record would take it over batchSize records or 4 MiB, and sends again only the
+     * records that a call reported as failed.
+     *
      * @param records           a list of maps representing the records to be sent
-     * @param batchSize         the maximum number of records to include in each batch
+     * @param batchSize         the maximum number of records to include in each batch, at most 500
      * @param deliveryStreamName the name of the Kinesis Data Firehose delivery stream
      * @throws IllegalArgumentException if the input parameters are invalid (null or empty)
      * @throws RuntimeException         if there is an error putting the record batch
@@ -142,40 +161,26 @@ public class FirehoseScenario {
         if (records == null || records.isEmpty() || deliveryStreamName == null || deliveryStreamName.isEmpty()) {
             throw new IllegalArgumentException("Invalid input: records or delivery stream name cannot be null/empty");
         }
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        try {
-            for (int i = 0; i < records.size(); i += batchSize) {
-                List<Map<String, Object>> batch = records.subList(i, Math.min(i + batchSize, records.size()));
-
-                List<Record> batchRecords = batch.stream().map(record -> {
-                    try {
-                        String jsonRecord = objectMapper.writeValueAsString(record);
-                        return Record.builder()
-                            .data(SdkBytes.fromByteArray(jsonRecord.getBytes(StandardCharsets.UTF_8)))
-                            .build();
-                    } catch (Exception e) {
-                        throw new RuntimeException("Error creating Firehose record", e);
-                    }
-                }).collect(Collectors.toList());
-
-                PutRecordBatchRequest request = PutRecordBatchRequest.builder()
-                    .deliveryStreamName(deliveryStreamName)
-                    .records(batchRecords)
-                    .build();
-
-                PutRecordBatchResponse response = getFirehoseClient().putRecordBatch(request);
-
-                if (response.failedPutCount() > 0) {
-                    response.requestResponses().stream()
-                        .filter(r -> r.errorCode() != null)
-                        .forEach(r -> System.err.println("Failed record: " + r.errorMessage()));
-                }
-                System.out.println("Batch sent with size: " + batchRecords.size());
+        FirehoseBatchSender.Config defaults = FirehoseBatchSender.Config.defaults();
+        FirehoseBatchSender.Config config = new FirehoseBatchSender.Config(defaults.maxBatchesInFlight(), batchSize,
+            defaults.maxBatchBytes(), defaults.maxAttempts(), defaults.retryBaseDelay());
+
+        FirehoseBatchSender.Stats stats;
+        try (FirehoseBatchSender sender = new FirehoseBatchSender(getFirehoseAsyncClient(), deliveryStreamName, config)) {
+            for (Map<String, Object> record : records) {
+                sender.add(recordWriter.writeValueAsBytes(record));
             }
+            sender.flush();
+            stats = sender.stats();
+            sender.failure().ifPresent(e -> System.err.println("Failed records: " + e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while putting the record batch", e);
         } catch (Exception e) {
             throw new RuntimeException("Failed to put record batch: " + e.getMessage(), e);
         }
+        System.out.printf("Records sent: %d in %d calls, %d retried, %d failed%n",
+            stats.recordsPut(), stats.calls(), stats.retriedRecords(), stats.failedRecords());
     }
     // snippet-end:[firehose.java2.put_batch_records.main]
 
@@ -219,6 +224,7 @@ public class FirehoseScenario {
     private static void closeClients() {
         try {
             if (firehoseClient != null) firehoseClient.close();
+            if (firehoseAsyncClient != null) firehoseAsyncClient.close();
             if (cloudWatchClient != null) cloudWatchClient.close();
         } catch (Exception e) {
             System.err.println("Error closing clients: " + e.getMessage());
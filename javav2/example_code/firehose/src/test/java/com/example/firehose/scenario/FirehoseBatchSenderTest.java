@@ -0,0 +1,239 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.firehose.scenario;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.firehose.FirehoseAsyncClient;
+import software.amazon.awssdk.services.firehose.model.FirehoseException;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchRequest;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchResponse;
+import software.amazon.awssdk.services.firehose.model.PutRecordBatchResponseEntry;
+import software.amazon.awssdk.services.firehose.model.Record;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class FirehoseBatchSenderTest {
+    private static final String STREAM_NAME = "stream";
+
+    private final FakeFirehose firehose = new FakeFirehose();
+
+    @AfterEach
+    void tearDown() {
+        firehose.close();
+    }
+
+    @Test
+    void sendsOnlyTheFailedEntriesAgain() throws Exception {
+        firehose.failEntries = index -> index % 4 == 0;
+        try (FirehoseBatchSender sender = new FirehoseBatchSender(firehose, STREAM_NAME, config(Duration.ofMillis(1)))) {
+            for (int i = 0; i < 100; i++) {
+                sender.add(record(i, 10));
+            }
+            sender.flush();
+
+            FirehoseBatchSender.Stats stats = sender.stats();
+            assertEquals(100, stats.recordsPut());
+            assertEquals(1000, stats.bytesPut());
+            assertEquals(2, stats.calls());
+            assertEquals(25, stats.retriedRecords());
+            assertEquals(0, stats.failedRecords());
+            assertTrue(sender.failure().isEmpty());
+        }
+        List<List<Integer>> calls = firehose.calls();
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < 100; i += 4) {
+            failed.add(i);
+        }
+        assertEquals(failed, calls.get(1));
+    }
+
+    @Test
+    void splitsBatchesAt500RecordsAnd4MiB() throws Exception {
+        try (FirehoseBatchSender sender = new FirehoseBatchSender(firehose, STREAM_NAME,
+            FirehoseBatchSender.Config.defaults())) {
+            for (int i = 0; i < 1200; i++) {
+                sender.add(record(i, 100));
+            }
+            sender.flush();
+            for (int i = 0; i < 10; i++) {
+                sender.add(record(1200 + i, 900_000));
+            }
+            sender.flush();
+
+            assertEquals(1210, sender.stats().recordsPut());
+        }
+        assertEquals(List.of(500, 500, 200, 4, 4, 2), firehose.calls().stream().map(List::size).toList());
+        for (long bytes : firehose.callBytes()) {
+            assertTrue(bytes <= FirehoseBatchSender.MAX_BATCH_BYTES, String.valueOf(bytes));
+        }
+    }
+
+    @Test
+    void retriesCallsThatAreThrottled() throws Exception {
+        firehose.failCalls = 2;
+        try (FirehoseBatchSender sender = new FirehoseBatchSender(firehose, STREAM_NAME, config(Duration.ofMillis(1)))) {
+            for (int i = 0; i < 10; i++) {
+                sender.add(record(i, 10));
+            }
+            sender.flush();
+
+            FirehoseBatchSender.Stats stats = sender.stats();
+            assertEquals(10, stats.recordsPut());
+            assertEquals(3, stats.calls());
+            assertEquals(20, stats.retriedRecords());
+            assertEquals(0, stats.failedRecords());
+        }
+    }
+
+    @Test
+    void doesntRetryCallsThatAreRejected() throws Exception {
+        firehose.failCalls = 1;
+        firehose.failure = FirehoseException.builder()
+            .statusCode(400)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("InvalidArgumentException").build())
+            .build();
+        try (FirehoseBatchSender sender = new FirehoseBatchSender(firehose, STREAM_NAME, config(Duration.ofMillis(1)))) {
+            for (int i = 0; i < 10; i++) {
+                sender.add(record(i, 10));
+            }
+            sender.flush();
+
+            FirehoseBatchSender.Stats stats = sender.stats();
+            assertEquals(0, stats.recordsPut());
+            assertEquals(1, stats.calls());
+            assertEquals(10, stats.failedRecords());
+            assertEquals(firehose.failure, sender.failure().orElseThrow());
+        }
+    }
+
+    @Test
+    void countsTheRetriesThatAnInterruptedCloseDrops() throws Exception {
+        firehose.failCalls = 1;
+        FirehoseBatchSender sender = new FirehoseBatchSender(firehose, STREAM_NAME,
+            new FirehoseBatchSender.Config(4, 10, FirehoseBatchSender.MAX_BATCH_BYTES, 5, Duration.ofMinutes(10)));
+        // The eleventh record sends the first ten and starts the next batch.
+        for (int i = 0; i < 11; i++) {
+            sender.add(record(i, 10));
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (sender.stats().retriedRecords() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, sender.stats().retriedRecords());
+        // The first batch waits ten minutes for its retry, so close is interrupted before the second is sent.
+        Thread.currentThread().interrupt();
+        try {
+            sender.close();
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        FirehoseBatchSender.Stats stats = sender.stats();
+        assertEquals(0, stats.recordsPut());
+        assertEquals(1, stats.calls());
+        assertEquals(11, stats.failedRecords());
+        assertInstanceOf(IllegalStateException.class, sender.failure().orElseThrow());
+    }
+
+    private static FirehoseBatchSender.Config config(Duration retryBaseDelay) {
+        return new FirehoseBatchSender.Config(4, FirehoseBatchSender.MAX_RECORDS_PER_BATCH,
+            FirehoseBatchSender.MAX_BATCH_BYTES, 5, retryBaseDelay);
+    }
+
+    // A record of the given size that starts with its number.
+    private static byte[] record(int number, int size) {
+        return ByteBuffer.allocate(size).putInt(number).array();
+    }
+
+    /**
+     * Answers PutRecordBatch calls on another thread. It fails the first failCalls calls as a
+     * whole, and in the first call that gets through, the entries that failEntries picks.
+     */
+    private static final class FakeFirehose implements FirehoseAsyncClient {
+        private final ExecutorService executor = Executors.newCachedThreadPool(
+            Thread.ofPlatform().daemon().factory());
+        private final List<PutRecordBatchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger answered = new AtomicInteger();
+        volatile int failCalls;
+        volatile AwsServiceException failure = FirehoseException.builder()
+            .statusCode(400)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+            .build();
+        volatile IntPredicate failEntries = index -> false;
+
+        @Override
+        public CompletableFuture<PutRecordBatchResponse> putRecordBatch(PutRecordBatchRequest request) {
+            requests.add(request);
+            return CompletableFuture.supplyAsync(() -> {
+                int call = answered.getAndIncrement();
+                if (call < failCalls) {
+                    throw failure;
+                }
+                boolean partial = call == failCalls;
+                List<PutRecordBatchResponseEntry> entries = new ArrayList<>();
+                int failed = 0;
+                for (int i = 0; i < request.records().size(); i++) {
+                    if (partial && failEntries.test(i)) {
+                        failed++;
+                        entries.add(PutRecordBatchResponseEntry.builder()
+                            .errorCode("ServiceUnavailableException")
+                            .errorMessage("Slow down.")
+                            .build());
+                    } else {
+                        entries.add(PutRecordBatchResponseEntry.builder().recordId("record-" + i).build());
+                    }
+                }
+                return PutRecordBatchResponse.builder().failedPutCount(failed).requestResponses(entries).build();
+            }, executor);
+        }
+
+        // The numbers of the records of each call, in the order the calls were made.
+        List<List<Integer>> calls() {
+            synchronized (requests) {
+                return requests.stream()
+                    .map(request -> request.records().stream()
+                        .map(record -> record.data().asByteBuffer().getInt())
+                        .toList())
+                    .toList();
+            }
+        }
+
+        List<Long> callBytes() {
+            synchronized (requests) {
+                return requests.stream()
+                    .map(request -> request.records().stream()
+                        .mapToLong(record -> record.data().asByteArrayUnsafe().length)
+                        .sum())
+                    .toList();
+            }
+        }
+
+        @Override
+        public String serviceName() {
+            return "firehose";
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link StockTradeCodec} with a fixed binary layout, in big-endian byte order:
+ *
+ * <pre>
+ *  0  format version, 1
+ *  1  id, 8 bytes
+ *  9  quantity, 8 bytes
+ * 17  price, an 8 byte IEEE 754 double
+ * 25  trade type, 0 for BUY and 1 for SELL
+ * 26  length of the ticker symbol in bytes, 0 to 255
+ * 27  ticker symbol, UTF-8
+ * </pre>
+ *
+ * Every field is at a known offset, so a trade is decoded with a handful of absolute
+ * reads, allocating only the ticker symbol and the trade itself, and encoded straight
+ * into the target buffer. A trade takes 27 bytes plus its ticker symbol, against about
+ * 80 as JSON.
+ */
+public final class BinaryStockTradeCodec implements StockTradeCodec {
+
+    static final BinaryStockTradeCodec INSTANCE = new BinaryStockTradeCodec();
+
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 27;
+    private static final int ID = 1;
+    private static final int QUANTITY = 9;
+    private static final int PRICE = 17;
+    private static final int TRADE_TYPE = 25;
+    private static final int TICKER_LENGTH = 26;
+    private static final int MAX_TICKER_LENGTH = 255;
+    private static final StockTrade.TradeType[] TRADE_TYPES = StockTrade.TradeType.values();
+
+    private BinaryStockTradeCodec() {
+    }
+
+    /**
+     * Returns the number of bytes the trade takes when it is encoded.
+     */
+    public int encodedSize(StockTrade trade) {
+        return HEADER_SIZE + ticker(trade).length;
+    }
+
+    @Override
+    public byte[] encode(StockTrade trade) {
+        byte[] ticker = ticker(trade);
+        byte[] data = new byte[HEADER_SIZE + ticker.length];
+        write(trade, ticker, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    @Override
+    public int encode(StockTrade trade, ByteBuffer buffer) {
+        byte[] ticker = ticker(trade);
+        int size = HEADER_SIZE + ticker.length;
+        if (size > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        if (buffer.order() == ByteOrder.BIG_ENDIAN) {
+            write(trade, ticker, buffer);
+        } else {
+            write(trade, ticker, buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+            buffer.position(buffer.position() + size);
+        }
+        return size;
+    }
+
+    @Override
+    public StockTrade decode(ByteBuffer buffer) {
+        ByteBuffer data = buffer.order() == ByteOrder.BIG_ENDIAN ? buffer
+            : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = data.position();
+        int length = data.remaining();
+        if (length < HEADER_SIZE || data.get(start) != VERSION) {
+            throw new IllegalArgumentException("The data isn't a binary stock trade");
+        }
+        int tickerLength = data.get(start + TICKER_LENGTH) & 0xFF;
+        int tradeType = data.get(start + TRADE_TYPE);
+        if (length != HEADER_SIZE + tickerLength || tradeType < 0 || tradeType >= TRADE_TYPES.length) {
+            throw new IllegalArgumentException("The binary stock trade is malformed");
+        }
+        String tickerSymbol;
+        if (data.hasArray()) {
+            tickerSymbol = new String(data.array(), data.arrayOffset() + start + HEADER_SIZE, tickerLength,
+                StandardCharsets.UTF_8);
+        } else {
+            // Read-only and direct buffers don't expose their array; the symbol is copied, not the record.
+            byte[] ticker = new byte[tickerLength];
+            data.get(start + HEADER_SIZE, ticker);
+            tickerSymbol = new String(ticker, StandardCharsets.UTF_8);
+        }
+        return new StockTrade(tickerSymbol, TRADE_TYPES[tradeType], data.getDouble(start + PRICE),
+            data.getLong(start + QUANTITY), data.getLong(start + ID));
+    }
+
+    private static void write(StockTrade trade, byte[] ticker, ByteBuffer buffer) {
+        buffer.put(VERSION)
+            .putLong(trade.getId())
+            .putLong(trade.getQuantity())
+            .putDouble(trade.getPrice())
+            .put((byte) trade.getTradeType().ordinal())
+            .put((byte) ticker.length)
+            .put(ticker);
+    }
+
+    private static byte[] ticker(StockTrade trade) {
+        byte[] ticker = trade.getTickerSymbol().getBytes(StandardCharsets.UTF_8);
+        if (ticker.length > MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException("The ticker symbol is longer than " + MAX_TICKER_LENGTH + " bytes");
+        }
+        return ticker;
+    }
+}
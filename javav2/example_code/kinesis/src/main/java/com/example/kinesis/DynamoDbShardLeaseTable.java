@@ -0,0 +1,110 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ShardLeaseTable} in a DynamoDB table, for workers that run on different hosts.
+ *
+ * The table needs a string partition key and holds the leases of one consumer
+ * application; each shard is one item, keyed by the shard ID. Leases are added with a
+ * condition that the shard has no item yet, and replaced with a condition on their
+ * version, so concurrent workers never overwrite each other's changes. The table is read
+ * with strongly consistent scans.
+ */
+public class DynamoDbShardLeaseTable implements ShardLeaseTable {
+
+    private static final String PARENT_SHARD_IDS = "parentShardIds";
+    private static final String OWNER = "owner";
+    private static final String EXPIRES_AT = "expiresAt";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String VERSION = "version";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final String partitionKey;
+
+    /**
+     * @param dynamoDbClient the client for the lease table
+     * @param tableName      the lease table
+     * @param partitionKey   the name of the table's string partition key
+     */
+    public DynamoDbShardLeaseTable(DynamoDbClient dynamoDbClient, String tableName, String partitionKey) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+        this.partitionKey = partitionKey;
+    }
+
+    @Override
+    public List<Lease> list() {
+        List<Lease> leases = new ArrayList<>();
+        ScanRequest request = ScanRequest.builder().tableName(tableName).consistentRead(true).build();
+        dynamoDbClient.scanPaginator(request).items().forEach(item -> leases.add(lease(item)));
+        return leases;
+    }
+
+    @Override
+    public boolean create(Lease lease) {
+        try {
+            dynamoDbClient.putItem(r -> r
+                .tableName(tableName)
+                .item(item(lease))
+                .conditionExpression("attribute_not_exists(#key)")
+                .expressionAttributeNames(Map.of("#key", partitionKey)));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean replace(Lease current, Lease next) {
+        try {
+            dynamoDbClient.putItem(r -> r
+                .tableName(tableName)
+                .item(item(next))
+                .conditionExpression("#version = :version")
+                .expressionAttributeNames(Map.of("#version", VERSION))
+                .expressionAttributeValues(Map.of(":version",
+                    AttributeValue.fromN(Long.toString(current.version())))));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private Map<String, AttributeValue> item(Lease lease) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(partitionKey, AttributeValue.fromS(lease.shardId()));
+        item.put(PARENT_SHARD_IDS, AttributeValue.fromL(lease.parentShardIds().stream()
+            .map(AttributeValue::fromS).toList()));
+        if (lease.owner() != null) {
+            item.put(OWNER, AttributeValue.fromS(lease.owner()));
+        }
+        item.put(EXPIRES_AT, AttributeValue.fromN(Long.toString(lease.expiresAtMillis())));
+        if (lease.checkpoint() != null) {
+            item.put(CHECKPOINT, AttributeValue.fromS(lease.checkpoint()));
+        }
+        item.put(VERSION, AttributeValue.fromN(Long.toString(lease.version())));
+        return item;
+    }
+
+    private Lease lease(Map<String, AttributeValue> item) {
+        return new Lease(item.get(partitionKey).s(),
+            item.get(PARENT_SHARD_IDS).l().stream().map(AttributeValue::s).toList(),
+            item.containsKey(OWNER) ? item.get(OWNER).s() : null,
+            Long.parseLong(item.get(EXPIRES_AT).n()),
+            item.containsKey(CHECKPOINT) ? item.get(CHECKPOINT).s() : null,
+            Long.parseLong(item.get(VERSION).n()));
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A {@link ShardLeaseTable} in a JSON file, for workers that run on the same host, such
+ * as several processes started side by side while developing.
+ *
+ * Every operation reads the whole file and writes it back while holding an exclusive
+ * lock on a second file next to it, {@code <file>.lock}, so that the workers of
+ * different processes change the leases one at a time. The new contents are written to
+ * a temporary file that then replaces the old one, so a worker that dies halfway leaves
+ * the previous leases intact.
+ */
+public class FileShardLeaseTable implements ShardLeaseTable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Lease>> LEASES = new TypeReference<>() {
+    };
+    // A JVM can't hold two locks on one file, so the workers of one process take turns first.
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Path file;
+    private final Path lockFile;
+
+    /**
+     * @param file the lease file; it is created when the first lease is added
+     */
+    public FileShardLeaseTable(Path file) {
+        this.file = file.toAbsolutePath();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+    }
+
+    @Override
+    public List<Lease> list() {
+        return locked(List::copyOf);
+    }
+
+    @Override
+    public boolean create(Lease lease) {
+        return locked(leases -> {
+            if (leases.stream().anyMatch(l -> l.shardId().equals(lease.shardId()))) {
+                return false;
+            }
+            leases.add(lease);
+            write(leases);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean replace(Lease current, Lease next) {
+        return locked(leases -> {
+            for (int i = 0; i < leases.size(); i++) {
+                Lease stored = leases.get(i);
+                if (stored.shardId().equals(current.shardId())) {
+                    if (stored.version() != current.version()) {
+                        return false;
+                    }
+                    leases.set(i, next);
+                    write(leases);
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private <T> T locked(Function<List<Lease>, T> operation) {
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE); FileLock ignored = channel.lock()) {
+                List<Lease> leases = Files.exists(file) ? MAPPER.readValue(file.toFile(), LEASES) : List.of();
+                return operation.apply(new ArrayList<>(leases));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't read the leases in " + file, e);
+            }
+        }
+    }
+
+    private void write(List<Lease> leases) {
+        try {
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(temporary.toFile(), leases);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write the leases to " + file, e);
+        }
+    }
+}
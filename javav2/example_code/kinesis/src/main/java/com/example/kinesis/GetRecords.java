@@ -8,15 +8,9 @@ package com.example.kinesis;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
-import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
-import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
-import software.amazon.awssdk.services.kinesis.model.Shard;
-import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
-import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
 import software.amazon.awssdk.services.kinesis.model.Record;
-import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
-import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
-import java.util.ArrayList;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import java.time.Duration;
 import java.util.List;
 // snippet-end:[kinesis.java2.getrecord.import]
 
@@ -33,73 +27,73 @@ public class GetRecords {
         final String usage = """
 
                 Usage:
-                    <streamName>
+                    <streamName> [codec]
 
                 Where:
                     streamName - The Amazon Kinesis data stream to read from (for example, StockTradeStream).
+                    codec - How the trades were encoded by StockTradesWriter, json (the default) or binary.
                 """;
 
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 2) {
             System.out.println(usage);
             System.exit(1);
         }
 
         String streamName = args[0];
+        StockTradeCodec codec = StockTradeCodec.named(args.length > 1 ? args[1] : "json");
         Region region = Region.US_EAST_1;
         KinesisClient kinesisClient = KinesisClient.builder()
                 .region(region)
                 .build();
 
-        getStockTrades(kinesisClient, streamName);
+        getStockTrades(kinesisClient, streamName, codec);
         kinesisClient.close();
     }
 
     public static void getStockTrades(KinesisClient kinesisClient, String streamName) {
-        String shardIterator;
-        String lastShardId = null;
-        DescribeStreamRequest describeStreamRequest = DescribeStreamRequest.builder()
-                .streamName(streamName)
-                .build();
-
-        List<Shard> shards = new ArrayList<>();
-        DescribeStreamResponse streamRes;
-        do {
-            streamRes = kinesisClient.describeStream(describeStreamRequest);
-            shards.addAll(streamRes.streamDescription().shards());
-
-            if (shards.size() > 0) {
-                lastShardId = shards.get(shards.size() - 1).shardId();
-            }
-        } while (streamRes.streamDescription().hasMoreShards());
-
-        GetShardIteratorRequest itReq = GetShardIteratorRequest.builder()
-                .streamName(streamName)
-                .shardIteratorType("TRIM_HORIZON")
-                .shardId(lastShardId)
-                .build();
-
-        GetShardIteratorResponse shardIteratorResult = kinesisClient.getShardIterator(itReq);
-        shardIterator = shardIteratorResult.shardIterator();
-
-        // Continuously read data records from shard.
-        List<Record> records;
-
-        // Create new GetRecordsRequest with existing shardIterator.
-        // Set maximum records to return to 1000.
-        GetRecordsRequest recordsRequest = GetRecordsRequest.builder()
-                .shardIterator(shardIterator)
-                .limit(1000)
-                .build();
-
-        GetRecordsResponse result = kinesisClient.getRecords(recordsRequest);
+        getStockTrades(kinesisClient, streamName, StockTradeCodec.json());
+    }
 
-        // Put result into record list. Result may be empty.
-        records = result.records();
+    public static void getStockTrades(KinesisClient kinesisClient, String streamName, StockTradeCodec codec) {
+        // Read every shard of the stream from its beginning, following splits and merges,
+        // with at most five GetRecords calls per second per shard.
+        KinesisPollingConsumer.Config config = new KinesisPollingConsumer.Config(
+                ShardIteratorType.TRIM_HORIZON, 1000, 5, Duration.ofSeconds(1), Duration.ofSeconds(30),
+                10, Duration.ofMillis(100), Duration.ofSeconds(5));
+
+        try (KinesisPollingConsumer consumer = new KinesisPollingConsumer(kinesisClient, streamName,
+                (shardId, records) -> printRecords(codec, records), config)) {
+            consumer.start();
+
+            // Read for ten seconds for this example.
+            Thread.sleep(10_000);
+            KinesisPollingConsumer.Stats stats = consumer.stats();
+            System.out.printf("Read %d records from %d shards; %d ms behind the tip of the stream%n",
+                    stats.recordsRead(), stats.activeShards() + stats.finishedShards(),
+                    stats.millisBehindLatest());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        // Print records
+    private static void printRecords(StockTradeCodec codec, List<Record> records) {
         for (Record record : records) {
-            SdkBytes byteBuffer = record.data();
-            System.out.printf("Seq No: %s - %s%n", record.sequenceNumber(), new String(byteBuffer.asByteArray()));
+            SdkBytes data = record.data();
+            try {
+                // StockTradesWriter packs many trades into one aggregated record; a plain record
+                // is decoded where the SDK received it, without copying it first.
+                if (RecordAggregator.isAggregated(data.asByteArrayUnsafe())) {
+                    for (RecordAggregator.UserRecord trade : RecordAggregator.deaggregate(record.partitionKey(),
+                            data.asByteArrayUnsafe())) {
+                        System.out.printf("Seq No: %s - %s%n", record.sequenceNumber(), codec.decode(trade.data()));
+                    }
+                } else {
+                    System.out.printf("Seq No: %s - %s%n", record.sequenceNumber(), codec.decode(data));
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.printf("Seq No: %s - not a stock trade: %s%n", record.sequenceNumber(), e.getMessage());
+            }
         }
     }
 }
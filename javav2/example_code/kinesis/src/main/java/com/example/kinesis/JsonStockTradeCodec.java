@@ -0,0 +1,66 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link StockTradeCodec} that writes trades as JSON objects with Jackson, ignoring
+ * unknown properties when it reads them. The reader and writer are built once and
+ * shared, since Jackson's are thread-safe.
+ */
+final class JsonStockTradeCodec implements StockTradeCodec {
+
+    static final JsonStockTradeCodec INSTANCE = new JsonStockTradeCodec();
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    private JsonStockTradeCodec() {
+        ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        writer = mapper.writerFor(StockTrade.class);
+        reader = mapper.readerFor(StockTrade.class);
+    }
+
+    @Override
+    public byte[] encode(StockTrade trade) {
+        try {
+            return writer.writeValueAsBytes(trade);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write the trade as JSON", e);
+        }
+    }
+
+    @Override
+    public int encode(StockTrade trade, ByteBuffer buffer) {
+        byte[] json = encode(trade);
+        if (json.length > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(json);
+        return json.length;
+    }
+
+    @Override
+    public StockTrade decode(ByteBuffer data) {
+        try {
+            if (data.hasArray()) {
+                return reader.readValue(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+            return reader.readValue(new ByteBufferBackedInputStream(data.duplicate()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The data isn't a JSON stock trade", e);
+        }
+    }
+}
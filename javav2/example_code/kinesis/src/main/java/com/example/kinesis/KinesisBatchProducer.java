@@ -0,0 +1,624 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardFilterType;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes records to a Kinesis data stream in PutRecords batches instead of one PutRecord
+ * call per record.
+ *
+ * Records are buffered per shard, by the hash of their partition key and the hash key
+ * ranges of the open shards. A background thread sends the buffered records every
+ * {@link Config#maxBufferTime()}, or as soon as a full request of 500 records is
+ * buffered, in PutRecords requests of at most 500 records and 5 MiB, with up to
+ * {@link Config#maxRequestsInFlight()} requests at a time.
+ *
+ * With {@link Config#aggregate()} on, the small records of each shard are packed into
+ * aggregated records of up to {@link Config#maxAggregatedRecordBytes()} with a
+ * {@link RecordAggregator}, in the format of the Kinesis Producer Library, which
+ * consumers unpack with {@link RecordAggregator#deaggregate(String, byte[])} or the KCL.
+ *
+ * Every shard has a token bucket for its write limits of 1,000 records and 1 MiB per
+ * second, so the producer holds records back instead of sending requests that are
+ * throttled. A PutRecords request can partly fail; only the failed entries are sent
+ * again, at the front of their shard's buffer, after an exponential backoff with full
+ * jitter. When a record lands on a different shard than the producer expected, the
+ * stream was resharded and the shard map is listed again.
+ *
+ * {@link #add(String, byte[])} blocks while {@link Config#maxBufferedRecords()} records
+ * are waiting, which pushes back on a feed that is faster than the stream.
+ */
+public class KinesisBatchProducer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KinesisBatchProducer.class);
+
+    static final int MAX_RECORDS_PER_REQUEST = 500;
+    static final int MAX_BYTES_PER_REQUEST = 5 * 1024 * 1024;
+    static final int MAX_RECORD_BYTES = 1024 * 1024;
+    static final int MAX_PARTITION_KEY_LENGTH = 256;
+    private static final String THROUGHPUT_EXCEEDED = "ProvisionedThroughputExceededException";
+
+    /**
+     * Settings for the producer.
+     *
+     * @param aggregate                whether small records are packed into aggregated records
+     * @param maxAggregatedRecordBytes the size at which an aggregated record is closed
+     * @param maxBufferTime            how long a record waits for a fuller request before it is sent
+     * @param maxRequestsInFlight      the number of PutRecords requests that are sent at the same time
+     * @param maxBufferedRecords       the number of records that can wait before {@code add} blocks
+     * @param maxAttempts              the number of times a record is sent before it counts as failed
+     * @param retryBaseDelay           the backoff before the second attempt; it doubles for every further attempt
+     * @param shardRecordsPerSecond    the records a shard takes per second
+     * @param shardBytesPerSecond      the bytes a shard takes per second
+     */
+    public record Config(boolean aggregate, int maxAggregatedRecordBytes, Duration maxBufferTime,
+                         int maxRequestsInFlight, int maxBufferedRecords, int maxAttempts, Duration retryBaseDelay,
+                         int shardRecordsPerSecond, int shardBytesPerSecond) {
+
+        public Config {
+            if (maxRequestsInFlight < 1 || maxBufferedRecords < 1 || maxAttempts < 1
+                || shardRecordsPerSecond < 1 || shardBytesPerSecond < MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("maxRequestsInFlight, maxBufferedRecords, maxAttempts and "
+                    + "shardRecordsPerSecond must be positive, and shardBytesPerSecond at least 1 MiB");
+            }
+            if (maxAggregatedRecordBytes < 1 || maxAggregatedRecordBytes > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("maxAggregatedRecordBytes must be between 1 and " + MAX_RECORD_BYTES);
+            }
+        }
+
+        /**
+         * Returns aggregation into records of up to 50 KiB, the default of the KPL, a buffer
+         * time of 100 ms, 8 requests in flight, 100,000 buffered records, 10 attempts starting
+         * with a 100 ms backoff, and the shard limits of 1,000 records and 1 MiB per second.
+         */
+        public static Config defaults() {
+            return new Config(true, 51_200, Duration.ofMillis(100), 8, 100_000, 10, Duration.ofMillis(100),
+                1000, 1024 * 1024);
+        }
+    }
+
+    /**
+     * What the producer has done so far.
+     *
+     * @param userRecordsPut    the records passed to {@code add} that were written
+     * @param kinesisRecordsPut the Kinesis records that were written; aggregation makes this lower than
+     *                          userRecordsPut
+     * @param requests          the PutRecords requests that were sent
+     * @param retriedEntries    the entries that were sent again after they failed
+     * @param throttledEntries  the entries that failed because their shard was over its limits
+     * @param failedUserRecords the records that couldn't be written within maxAttempts
+     * @param bufferedRecords   the records that are waiting to be written
+     */
+    public record Stats(long userRecordsPut, long kinesisRecordsPut, long requests, long retriedEntries,
+                        long throttledEntries, long failedUserRecords, long bufferedRecords) {
+    }
+
+    // A Kinesis record, either a single user record or an aggregated one.
+    private static final class Entry {
+        private final String partitionKey;
+        private final BigInteger hashKey;
+        private final byte[] data;
+        private final int userRecords;
+        private final int size;
+        private int attempts;
+
+        Entry(String partitionKey, BigInteger hashKey, byte[] data, int userRecords) {
+            this.partitionKey = partitionKey;
+            this.hashKey = hashKey;
+            this.data = data;
+            this.userRecords = userRecords;
+            this.size = data.length + partitionKey.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    // The buffer and the write limits of one open shard. Guarded by the producer's lock.
+    private final class ShardBuffer {
+        private final String shardId;
+        private final BigInteger startingHashKey;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private final RecordAggregator aggregator = new RecordAggregator();
+        private long aggregationStartedNanos;
+        private double recordTokens = config.shardRecordsPerSecond();
+        private double byteTokens = config.shardBytesPerSecond();
+        private long refilledNanos = System.nanoTime();
+        private long notBeforeNanos;
+
+        ShardBuffer(String shardId, BigInteger startingHashKey) {
+            this.shardId = shardId;
+            this.startingHashKey = startingHashKey;
+        }
+
+        void sealAggregate() {
+            if (!aggregator.isEmpty()) {
+                String partitionKey = aggregator.partitionKey();
+                int count = aggregator.count();
+                entries.add(new Entry(partitionKey, hash(partitionKey), aggregator.build(), count));
+            }
+        }
+
+        boolean tryTake(Entry entry, long now) {
+            double seconds = (now - refilledNanos) / 1e9;
+            refilledNanos = now;
+            recordTokens = Math.min(config.shardRecordsPerSecond(), recordTokens + seconds * config.shardRecordsPerSecond());
+            byteTokens = Math.min(config.shardBytesPerSecond(), byteTokens + seconds * config.shardBytesPerSecond());
+            if (recordTokens < 1 || byteTokens < entry.size) {
+                return false;
+            }
+            recordTokens--;
+            byteTokens -= entry.size;
+            return true;
+        }
+    }
+
+    private record Sent(Entry entry, String shardId) {
+    }
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final Config config;
+    private final ExecutorService senders;
+    private final Thread flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final AtomicLong userRecordsPut = new AtomicLong();
+    private final AtomicLong kinesisRecordsPut = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retriedEntries = new AtomicLong();
+    private final AtomicLong throttledEntries = new AtomicLong();
+    private final AtomicLong failedUserRecords = new AtomicLong();
+
+    // Guarded by lock.
+    private ShardBuffer[] shards;
+    private int nextShard;
+    private long bufferedRecords;
+    private int queuedEntries;
+    private int requestsInFlight;
+    private int flushesWaiting;
+    private boolean shardMapStale;
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * Lists the open shards of the stream and starts the background sender.
+     *
+     * @param kinesisClient the client that writes to the stream; the producer doesn't close it
+     * @param streamName    the stream the records are written to
+     * @param config        the producer settings
+     */
+    public KinesisBatchProducer(KinesisClient kinesisClient, String streamName, Config config) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.config = config;
+        this.shards = listShards();
+        this.senders = Executors.newFixedThreadPool(config.maxRequestsInFlight(),
+            Thread.ofPlatform().daemon().name("kinesis-put-", 0).factory());
+        this.flusher = Thread.ofPlatform().daemon().name("kinesis-producer").start(this::runFlusher);
+    }
+
+    /**
+     * Buffers a record for the stream. Blocks while the buffer is full.
+     *
+     * @param partitionKey the partition key, which decides the shard of the record
+     * @param data         the data of the record
+     * @throws InterruptedException if the thread is interrupted while the buffer is full
+     */
+    public void add(String partitionKey, byte[] data) throws InterruptedException {
+        if (partitionKey == null || partitionKey.isEmpty() || partitionKey.length() > MAX_PARTITION_KEY_LENGTH) {
+            throw new IllegalArgumentException("A partition key must have between 1 and "
+                + MAX_PARTITION_KEY_LENGTH + " characters");
+        }
+        BigInteger hashKey = hash(partitionKey);
+        Entry record = new Entry(partitionKey, hashKey, data, 1);
+        if (record.size > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("A record can't be larger than " + MAX_RECORD_BYTES + " bytes");
+        }
+        lock.lock();
+        try {
+            while (bufferedRecords >= config.maxBufferedRecords() && !closed && failure == null) {
+                spaceAvailable.await();
+            }
+            if (closed) {
+                throw new IllegalStateException("The producer is closed");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("The producer stopped", failure);
+            }
+            ShardBuffer shard = shardFor(hashKey);
+            RecordAggregator aggregator = shard.aggregator;
+            if (config.aggregate() && aggregator.sizeWith(partitionKey, data) <= config.maxAggregatedRecordBytes()) {
+                if (aggregator.isEmpty()) {
+                    shard.aggregationStartedNanos = System.nanoTime();
+                }
+                aggregator.add(partitionKey, data);
+            } else if (config.aggregate() && !aggregator.isEmpty()) {
+                shard.sealAggregate();
+                queuedEntries++;
+                if (record.size <= config.maxAggregatedRecordBytes()) {
+                    shard.aggregationStartedNanos = System.nanoTime();
+                    aggregator.add(partitionKey, data);
+                } else {
+                    shard.entries.add(record);
+                    queuedEntries++;
+                }
+            } else {
+                shard.entries.add(record);
+                queuedEntries++;
+            }
+            bufferedRecords++;
+            if (queuedEntries >= MAX_RECORDS_PER_REQUEST) {
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends every buffered record and waits until each one is written or has failed.
+     *
+     * @throws InterruptedException if the thread is interrupted while it waits
+     */
+    public void flush() throws InterruptedException {
+        lock.lock();
+        try {
+            flushesWaiting++;
+            workAvailable.signal();
+            while (bufferedRecords > 0) {
+                drained.await();
+            }
+        } finally {
+            flushesWaiting--;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns what the producer has done so far.
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(userRecordsPut.get(), kinesisRecordsPut.get(), requests.get(), retriedEntries.get(),
+                throttledEntries.get(), failedUserRecords.get(), bufferedRecords);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the error that stopped the background sender, if it stopped. The records that
+     * were buffered then count as failed.
+     */
+    public Optional<Throwable> failure() {
+        lock.lock();
+        try {
+            return Optional.ofNullable(failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the buffered records, waits for them, and stops the background threads.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signal();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flusher.interrupt();
+        } finally {
+            senders.shutdownNow();
+        }
+    }
+
+    private void runFlusher() {
+        long bufferNanos = config.maxBufferTime().toNanos();
+        lock.lock();
+        try {
+            while (!closed || bufferedRecords > 0) {
+                if (shardMapStale) {
+                    shardMapStale = false;
+                    lock.unlock();
+                    ShardBuffer[] listed = null;
+                    try {
+                        listed = listShards();
+                    } catch (SdkException e) {
+                        // The old map still works; records that land elsewhere trigger another listing.
+                        logger.warn("Couldn't list the shards of {}", streamName, e);
+                    } finally {
+                        lock.lock();
+                    }
+                    if (listed != null) {
+                        reshard(listed);
+                    }
+                }
+                long now = System.nanoTime();
+                boolean force = closed || flushesWaiting > 0;
+                for (ShardBuffer shard : shards) {
+                    if (!shard.aggregator.isEmpty() && (force || now - shard.aggregationStartedNanos >= bufferNanos)) {
+                        shard.sealAggregate();
+                        queuedEntries++;
+                    }
+                }
+                boolean held = false;
+                while (requestsInFlight < config.maxRequestsInFlight() && queuedEntries > 0) {
+                    List<Sent> batch = takeBatch(now);
+                    if (batch.isEmpty()) {
+                        held = true;
+                        break;
+                    }
+                    requestsInFlight++;
+                    try {
+                        senders.execute(() -> send(batch));
+                    } catch (RejectedExecutionException e) {
+                        requestsInFlight--;
+                        for (Sent sent : batch) {
+                            giveUp(sent.entry(), e.toString());
+                        }
+                        throw e;
+                    }
+                }
+                // Records held back by a shard's limits or backoff are looked at again soon; the rest wait for
+                // the buffer time, a full request, or a finished request.
+                workAvailable.awaitNanos(held ? Math.min(bufferNanos, TimeUnit.MILLISECONDS.toNanos(10)) : bufferNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(e);
+        } catch (RuntimeException e) {
+            logger.error("The producer for {} stopped", streamName, e);
+            stop(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Fails the records that nothing will send any more, so that add and flush don't wait for them.
+    private void stop(Throwable error) {
+        failure = error;
+        for (ShardBuffer shard : shards) {
+            shard.sealAggregate();
+            for (Entry entry : shard.entries) {
+                giveUp(entry, error.toString());
+            }
+            shard.entries.clear();
+        }
+        queuedEntries = 0;
+        spaceAvailable.signalAll();
+        if (bufferedRecords == 0) {
+            drained.signalAll();
+        }
+    }
+
+    // Takes the records that the shard limits allow into one request, visiting the shards round-robin.
+    private List<Sent> takeBatch(long now) {
+        List<Sent> batch = new ArrayList<>();
+        long bytes = 0;
+        for (int visited = 0; visited < shards.length && batch.size() < MAX_RECORDS_PER_REQUEST; visited++) {
+            ShardBuffer shard = shards[nextShard];
+            nextShard = (nextShard + 1) % shards.length;
+            if (now - shard.notBeforeNanos < 0) {
+                continue;
+            }
+            for (Entry entry; (entry = shard.entries.peek()) != null; ) {
+                if (batch.size() == MAX_RECORDS_PER_REQUEST || bytes + entry.size > MAX_BYTES_PER_REQUEST
+                    || !shard.tryTake(entry, now)) {
+                    break;
+                }
+                shard.entries.poll();
+                queuedEntries--;
+                bytes += entry.size;
+                batch.add(new Sent(entry, shard.shardId));
+            }
+        }
+        return batch;
+    }
+
+    private void send(List<Sent> batch) {
+        List<PutRecordsRequestEntry> entries = batch.stream()
+            .map(sent -> PutRecordsRequestEntry.builder()
+                .partitionKey(sent.entry().partitionKey)
+                .data(SdkBytes.fromByteArrayUnsafe(sent.entry().data))
+                .build())
+            .toList();
+        PutRecordsResponse response = null;
+        RuntimeException error = null;
+        try {
+            requests.incrementAndGet();
+            response = kinesisClient.putRecords(r -> r.streamName(streamName).records(entries));
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        lock.lock();
+        try {
+            List<Sent> failed = new ArrayList<>();
+            if (error != null) {
+                if (isRetryable(error)) {
+                    failed.addAll(batch);
+                } else {
+                    for (Sent sent : batch) {
+                        giveUp(sent.entry(), error.toString());
+                    }
+                }
+            } else {
+                List<PutRecordsResultEntry> results = response.records();
+                for (int i = 0; i < batch.size(); i++) {
+                    Sent sent = batch.get(i);
+                    PutRecordsResultEntry result = results.get(i);
+                    if (result.errorCode() == null) {
+                        userRecordsPut.addAndGet(sent.entry().userRecords);
+                        kinesisRecordsPut.incrementAndGet();
+                        bufferedRecords -= sent.entry().userRecords;
+                        if (!sent.shardId().equals(result.shardId())) {
+                            shardMapStale = true;
+                        }
+                    } else {
+                        if (THROUGHPUT_EXCEEDED.equals(result.errorCode())) {
+                            throttledEntries.incrementAndGet();
+                        }
+                        failed.add(sent);
+                    }
+                }
+            }
+            // In reverse, so that the entries are back at the front of their shards in their original order.
+            for (int i = failed.size() - 1; i >= 0; i--) {
+                retry(failed.get(i).entry());
+            }
+            requestsInFlight--;
+            workAvailable.signal();
+            spaceAvailable.signalAll();
+            if (bufferedRecords == 0) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void retry(Entry entry) {
+        entry.attempts++;
+        if (entry.attempts >= config.maxAttempts()) {
+            giveUp(entry, "still failing after " + entry.attempts + " attempts");
+            return;
+        }
+        if (failure != null) {
+            giveUp(entry, "the producer stopped");
+            return;
+        }
+        retriedEntries.incrementAndGet();
+        ShardBuffer shard = shardFor(entry.hashKey);
+        shard.entries.addFirst(entry);
+        queuedEntries++;
+        long base = config.retryBaseDelay().toNanos() << Math.min(entry.attempts - 1, 10);
+        long notBefore = System.nanoTime() + ThreadLocalRandom.current().nextLong(base + 1);
+        // nanoTime values are compared by their difference, which stays right when they overflow.
+        if (notBefore - shard.notBeforeNanos > 0) {
+            shard.notBeforeNanos = notBefore;
+        }
+    }
+
+    private void giveUp(Entry entry, String reason) {
+        if (failedUserRecords.getAndAdd(entry.userRecords) == 0) {
+            logger.warn("Couldn't write records to {}: {}", streamName, reason);
+        }
+        bufferedRecords -= entry.userRecords;
+    }
+
+    // Moves the buffered records onto the shards of a new shard map.
+    private void reshard(ShardBuffer[] listed) {
+        ShardBuffer[] previous = shards;
+        shards = listed;
+        nextShard = 0;
+        for (ShardBuffer shard : previous) {
+            shard.sealAggregate();
+            for (Entry entry : shard.entries) {
+                shardFor(entry.hashKey).entries.add(entry);
+            }
+        }
+        queuedEntries = Arrays.stream(shards).mapToInt(shard -> shard.entries.size()).sum();
+        logger.info("The shard map of {} changed; it has {} open shards", streamName, shards.length);
+    }
+
+    private ShardBuffer[] listShards() {
+        List<ShardBuffer> listed = new ArrayList<>();
+        ListShardsRequest request = ListShardsRequest.builder()
+            .streamName(streamName)
+            .shardFilter(f -> f.type(ShardFilterType.AT_LATEST))
+            .build();
+        while (request != null) {
+            ListShardsResponse response = kinesisClient.listShards(request);
+            for (Shard shard : response.shards()) {
+                listed.add(new ShardBuffer(shard.shardId(), new BigInteger(shard.hashKeyRange().startingHashKey())));
+            }
+            // A request with a NextToken can't name the stream.
+            request = response.nextToken() == null ? null
+                : ListShardsRequest.builder().nextToken(response.nextToken()).build();
+        }
+        if (listed.isEmpty()) {
+            throw new IllegalStateException("The stream " + streamName + " has no open shards");
+        }
+        listed.sort(Comparator.comparing(shard -> shard.startingHashKey));
+        return listed.toArray(ShardBuffer[]::new);
+    }
+
+    // The open shard whose hash key range holds the hash key.
+    private ShardBuffer shardFor(BigInteger hashKey) {
+        int low = 0;
+        int high = shards.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (shards[middle].startingHashKey.compareTo(hashKey) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return shards[low];
+    }
+
+    // Kinesis maps a partition key to a shard by the MD5 hash of the key, as an unsigned 128-bit number.
+    static BigInteger hash(String partitionKey) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return new BigInteger(1, md5.digest(partitionKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 isn't available", e);
+        }
+    }
+
+    // The SDK counts ProvisionedThroughputExceededException as throttling.
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkException && !(e instanceof AbortedException);
+    }
+}
@@ -0,0 +1,751 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.LimitExceededException;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ResourceInUseException;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import software.amazon.awssdk.services.kinesis.model.StartingPosition;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEventStream;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardRequest;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardResponseHandler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads a Kinesis data stream through an enhanced fan-out consumer, sharing its shards
+ * with the other workers of the same consumer application, and publishes the records
+ * as a {@link Publisher} of {@link ShardBatch} that honors the subscriber's demand.
+ *
+ * SubscribeToShard pushes the records of one shard for at most five minutes, after
+ * which the subscription completes. The consumer keeps one subscription open for every
+ * shard it holds, and subscribes again when a subscription completes or fails, after
+ * the last event it received, so no records are skipped. Failed subscriptions, such as
+ * one that is still open on the service side, are retried with exponential backoff and
+ * full jitter.
+ *
+ * Which worker reads which shard is decided by a {@link ShardLeaseTable}. Every
+ * {@link Config#leaseRenewInterval()} a worker renews its leases, together with the
+ * checkpoints its subscriber made, and then takes free or expired leases until it holds
+ * its share of the shards that are ready to be read; a worker with less than its share
+ * and no free lease takes one lease from the worker that holds the most. A shard is
+ * ready when its parents, after a split or a merge, have been processed to their end, so
+ * the records of each partition key are handed over in order across a reshard. The
+ * shards are listed every {@link Config#shardSyncInterval()}, and leases are added for
+ * the new ones.
+ *
+ * Every shard buffers at most {@link Config#batchesPerShard()} batches that the
+ * subscriber hasn't requested yet, and asks SubscribeToShard for more events only when
+ * there is room, so a slow subscriber slows the stream down instead of filling the heap.
+ *
+ * Records are delivered at least once: a worker that takes a lease over, after a crash
+ * or a rebalance, starts after the last checkpoint of the shard. A batch is checkpointed
+ * by calling {@link ShardBatch#checkpoint()} once its records are processed. The
+ * publisher takes one subscriber, which gets onComplete when the consumer is closed and
+ * onError when it fails. A consumer that fails stops reading and releases its leases,
+ * as {@link #close()} does, so that the other workers take its shards over.
+ */
+public class KinesisEfoConsumer implements Publisher<KinesisEfoConsumer.ShardBatch>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KinesisEfoConsumer.class);
+
+    // SubscribeToShard may be called once per second per shard and consumer.
+    private static final long MIN_SUBSCRIBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Settings for the consumer.
+     *
+     * @param initialPosition    where shards without a checkpoint and without parents are read from,
+     *                           TRIM_HORIZON or LATEST; children of other shards are always read from
+     *                           their beginning
+     * @param leaseDuration      how long a lease stays with its owner without being renewed
+     * @param leaseRenewInterval how often leases are renewed, checkpointed and balanced; well below the
+     *                           lease duration
+     * @param shardSyncInterval  how often the shards are listed
+     * @param batchesPerShard    the batches a shard buffers ahead of the subscriber
+     * @param maxAttempts        the number of times in a row a subscription may fail before the consumer fails
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     * @param progressInterval   how often progress is logged
+     */
+    public record Config(ShardIteratorType initialPosition, Duration leaseDuration, Duration leaseRenewInterval,
+                         Duration shardSyncInterval, int batchesPerShard, int maxAttempts, Duration retryBaseDelay,
+                         Duration progressInterval) {
+
+        public Config {
+            if (initialPosition != ShardIteratorType.TRIM_HORIZON && initialPosition != ShardIteratorType.LATEST) {
+                throw new IllegalArgumentException("initialPosition must be TRIM_HORIZON or LATEST");
+            }
+            if (leaseRenewInterval.compareTo(leaseDuration) >= 0) {
+                throw new IllegalArgumentException("leaseRenewInterval must be shorter than leaseDuration");
+            }
+            if (batchesPerShard < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("batchesPerShard and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns reading from LATEST, 30 second leases renewed every 10 seconds, shard
+         * listing every minute, 2 batches per shard, 10 attempts starting with a 1 second
+         * backoff, and progress every 30 seconds.
+         */
+        public static Config defaults() {
+            return new Config(ShardIteratorType.LATEST, Duration.ofSeconds(30), Duration.ofSeconds(10),
+                Duration.ofMinutes(1), 2, 10, Duration.ofSeconds(1), Duration.ofSeconds(30));
+        }
+    }
+
+    /**
+     * The progress of the consumer.
+     *
+     * @param recordsDelivered   the records that were delivered to the subscriber
+     * @param millisBehindLatest the MillisBehindLatest of the held shard that is furthest behind
+     * @param leasesHeld         the leases this worker holds now
+     * @param leasesTaken        the leases this worker took, including ones taken from other workers
+     * @param leasesLost         the leases that other workers took from this one
+     * @param subscriptions      the SubscribeToShard calls
+     * @param checkpoints        the checkpoints that were written to the lease table
+     */
+    public record Stats(long recordsDelivered, long millisBehindLatest, int leasesHeld, long leasesTaken,
+                        long leasesLost, long subscriptions, long checkpoints) {
+    }
+
+    /**
+     * The records of one SubscribeToShard event.
+     */
+    public static final class ShardBatch {
+        private final ShardSession session;
+        private final List<Record> records;
+        private final String continuationSequenceNumber;
+        private final boolean shardEnd;
+        private final long millisBehindLatest;
+
+        private ShardBatch(ShardSession session, List<Record> records, String continuationSequenceNumber,
+                           boolean shardEnd, long millisBehindLatest) {
+            this.session = session;
+            this.records = records;
+            this.continuationSequenceNumber = continuationSequenceNumber;
+            this.shardEnd = shardEnd;
+            this.millisBehindLatest = millisBehindLatest;
+        }
+
+        public String shardId() {
+            return session.shardId;
+        }
+
+        public List<Record> records() {
+            return records;
+        }
+
+        public long millisBehindLatest() {
+            return millisBehindLatest;
+        }
+
+        /**
+         * Returns whether this is the last batch of a closed shard; it may have no records.
+         */
+        public boolean shardEnd() {
+            return shardEnd;
+        }
+
+        /**
+         * Records that this batch, and every batch of the shard before it, was processed.
+         * The checkpoint is written to the lease table at the next renewal, and a shard
+         * whose last batch is checkpointed lets its children be read.
+         */
+        public void checkpoint() {
+            session.pendingCheckpoint = shardEnd ? ShardLeaseTable.SHARD_END : continuationSequenceNumber;
+        }
+    }
+
+    private final KinesisAsyncClient kinesisClient;
+    private final String streamName;
+    private final String consumerArn;
+    private final String workerId;
+    private final ShardLeaseTable leaseTable;
+    private final Config config;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, ShardSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong recordsDelivered = new AtomicLong();
+    private final AtomicLong leasesTaken = new AtomicLong();
+    private final AtomicLong leasesLost = new AtomicLong();
+    private final AtomicLong subscriptions = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+
+    // Delivery to the subscriber, from a drain loop that runs on one thread at a time.
+    private final Queue<ShardBatch> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private final AtomicReference<Subscriber<? super ShardBatch>> subscriber = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private volatile boolean closed;
+    private boolean terminated;
+
+    // Only touched by the scheduler thread.
+    private long nextShardSyncNanos;
+
+    /**
+     * @param kinesisClient the client that reads the stream; the consumer doesn't close it
+     * @param streamName    the stream to read
+     * @param consumerArn   the ARN of the enhanced fan-out consumer registered for the stream
+     * @param workerId      the name of this worker, unique among the workers that share the lease table
+     * @param leaseTable    the leases of the consumer application
+     * @param config        the consumer settings
+     */
+    public KinesisEfoConsumer(KinesisAsyncClient kinesisClient, String streamName, String consumerArn,
+                              String workerId, ShardLeaseTable leaseTable, Config config) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.consumerArn = consumerArn;
+        this.workerId = workerId;
+        this.leaseTable = leaseTable;
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("kinesis-efo-" + workerId).factory());
+    }
+
+    /**
+     * Starts taking leases and reading their shards for the subscriber. Reading continues
+     * until {@link #close()} is called or the consumer fails.
+     */
+    @Override
+    public void subscribe(Subscriber<? super ShardBatch> s) {
+        if (!subscriber.compareAndSet(null, s)) {
+            s.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            s.onError(new IllegalStateException("The consumer takes only one subscriber"));
+            return;
+        }
+        s.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException(
+                        "A subscriber must request a positive number of batches, not " + n));
+                    return;
+                }
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                // Reading stops when the consumer is closed; until then the shards fill their buffers.
+                cancelled = true;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(this::coordinate, 0, config.leaseRenewInterval().toNanos(),
+            TimeUnit.NANOSECONDS);
+        long intervalNanos = config.progressInterval().toNanos();
+        scheduler.scheduleAtFixedRate(() -> {
+            Stats stats = stats();
+            logger.info("Worker {} delivered {} records from {}, {} ms behind, {} leases held", workerId,
+                stats.recordsDelivered(), streamName, stats.millisBehindLatest(), stats.leasesHeld());
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the progress of the consumer.
+     */
+    public Stats stats() {
+        long behind = sessions.values().stream().mapToLong(session -> session.millisBehindLatest).max().orElse(0);
+        return new Stats(recordsDelivered.get(), behind, sessions.size(), leasesTaken.get(), leasesLost.get(),
+            subscriptions.get(), checkpoints.get());
+    }
+
+    /**
+     * Returns the error that stopped the consumer, if it failed.
+     */
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure.get());
+    }
+
+    /**
+     * Stops reading, writes the checkpoints that are pending and releases the leases of
+     * this worker, so that other workers can take them over without waiting for them to
+     * expire, and completes the subscriber.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdownNow();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("The lease coordinator of {} didn't stop within a minute", workerId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseLeases();
+        drain();
+    }
+
+    // Stops the sessions and hands their leases back with their checkpoints.
+    private void releaseLeases() {
+        for (ShardSession session : sessions.values()) {
+            session.stop();
+            String checkpoint = session.checkpoint();
+            boolean changed = checkpoint != null && !checkpoint.equals(session.lease.checkpoint());
+            try {
+                if (leaseTable.replace(session.lease, session.lease.next(null, 0, checkpoint)) && changed) {
+                    checkpoints.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Couldn't release the lease of shard {}", session.shardId, e);
+            }
+        }
+        sessions.clear();
+    }
+
+    // Renews, checkpoints and takes leases. Runs on the scheduler thread only.
+    private void coordinate() {
+        if (failure.get() != null) {
+            return;
+        }
+        try {
+            if (System.nanoTime() - nextShardSyncNanos >= 0) {
+                syncShards();
+                nextShardSyncNanos = System.nanoTime() + config.shardSyncInterval().toNanos();
+            }
+            renewLeases();
+            takeLeases();
+        } catch (RuntimeException e) {
+            // The leases are tried again at the next interval; leases that expire meanwhile are lost.
+            logger.warn("Couldn't update the leases of worker {}", workerId, unwrap(e));
+        }
+    }
+
+    private void syncShards() {
+        Set<String> known = new HashSet<>();
+        leaseTable.list().forEach(lease -> known.add(lease.shardId()));
+        for (Shard shard : listShards()) {
+            if (known.contains(shard.shardId())) {
+                continue;
+            }
+            List<String> parents = new ArrayList<>();
+            if (shard.parentShardId() != null) {
+                parents.add(shard.parentShardId());
+            }
+            if (shard.adjacentParentShardId() != null) {
+                parents.add(shard.adjacentParentShardId());
+            }
+            if (leaseTable.create(ShardLeaseTable.Lease.of(shard.shardId(), parents))) {
+                logger.info("Added a lease for shard {} of {}", shard.shardId(), streamName);
+            }
+        }
+    }
+
+    private List<Shard> listShards() {
+        List<Shard> shards = new ArrayList<>();
+        ListShardsRequest request = ListShardsRequest.builder().streamName(streamName).build();
+        while (request != null) {
+            ListShardsResponse response = kinesisClient.listShards(request).join();
+            shards.addAll(response.shards());
+            // A request with a NextToken can't name the stream.
+            request = response.nextToken() == null ? null
+                : ListShardsRequest.builder().nextToken(response.nextToken()).build();
+        }
+        return shards;
+    }
+
+    private void renewLeases() {
+        long now = System.currentTimeMillis();
+        for (ShardSession session : sessions.values()) {
+            String checkpoint = session.checkpoint();
+            boolean finished = ShardLeaseTable.SHARD_END.equals(checkpoint);
+            ShardLeaseTable.Lease next = finished ? session.lease.next(null, 0, checkpoint)
+                : session.lease.next(workerId, now + config.leaseDuration().toMillis(), checkpoint);
+            if (!leaseTable.replace(session.lease, next)) {
+                leasesLost.incrementAndGet();
+                session.stop();
+                sessions.remove(session.shardId);
+                logger.info("Worker {} lost the lease of shard {}", workerId, session.shardId);
+                continue;
+            }
+            if (checkpoint != null && !checkpoint.equals(session.lease.checkpoint())) {
+                checkpoints.incrementAndGet();
+            }
+            session.lease = next;
+            if (finished) {
+                session.stop();
+                sessions.remove(session.shardId);
+                logger.info("Processed shard {} of {} to its end", session.shardId, streamName);
+                // Add the leases of the children without waiting for the next listing.
+                nextShardSyncNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private void takeLeases() {
+        long now = System.currentTimeMillis();
+        List<ShardLeaseTable.Lease> leases = leaseTable.list();
+        Map<String, ShardLeaseTable.Lease> byId = new HashMap<>();
+        leases.forEach(lease -> byId.put(lease.shardId(), lease));
+
+        List<ShardLeaseTable.Lease> readyLeases = new ArrayList<>();
+        for (ShardLeaseTable.Lease lease : leases) {
+            // A parent that has expired from the stream no longer holds back its children.
+            if (!lease.finished() && lease.parentShardIds().stream()
+                .allMatch(parent -> !byId.containsKey(parent) || byId.get(parent).finished())) {
+                readyLeases.add(lease);
+            }
+        }
+        Map<String, List<ShardLeaseTable.Lease>> byOwner = new HashMap<>();
+        List<ShardLeaseTable.Lease> available = new ArrayList<>();
+        for (ShardLeaseTable.Lease lease : readyLeases) {
+            if (lease.availableAt(now)) {
+                available.add(lease);
+            } else if (!workerId.equals(lease.owner())) {
+                byOwner.computeIfAbsent(lease.owner(), owner -> new ArrayList<>()).add(lease);
+            }
+        }
+        int target = (readyLeases.size() + byOwner.size()) / (byOwner.size() + 1);
+        int wanted = target - sessions.size();
+        if (wanted <= 0) {
+            return;
+        }
+
+        List<ShardLeaseTable.Lease> toTake = new ArrayList<>();
+        Collections.shuffle(available);
+        available.stream().filter(lease -> !sessions.containsKey(lease.shardId())).limit(wanted)
+            .forEach(toTake::add);
+        if (toTake.isEmpty()) {
+            // Take one lease from the worker with the most, if it has more than its share.
+            byOwner.values().stream().max((a, b) -> Integer.compare(a.size(), b.size()))
+                .filter(owned -> owned.size() > target)
+                .ifPresent(owned -> toTake.add(owned.get(ThreadLocalRandom.current().nextInt(owned.size()))));
+        }
+        for (ShardLeaseTable.Lease lease : toTake) {
+            ShardLeaseTable.Lease next = lease.next(workerId, now + config.leaseDuration().toMillis(),
+                lease.checkpoint());
+            if (leaseTable.replace(lease, next)) {
+                leasesTaken.incrementAndGet();
+                logger.info("Worker {} took the lease of shard {} from {}", workerId, lease.shardId(),
+                    lease.owner() == null ? "nobody" : lease.owner());
+                ShardSession session = new ShardSession(next);
+                sessions.put(session.shardId, session);
+                session.subscribe();
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            logger.error("Reading {} failed", streamName, e);
+            try {
+                // On the scheduler thread, so that no renewal runs at the same time.
+                scheduler.execute(() -> {
+                    releaseLeases();
+                    scheduler.shutdown();
+                });
+            } catch (RejectedExecutionException rejected) {
+                // The consumer was closed, which released the leases.
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Subscriber<? super ShardBatch> s = subscriber.get();
+            if (s != null && !terminated) {
+                deliver(s);
+            }
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void deliver(Subscriber<? super ShardBatch> s) {
+        Throwable error = failure.get();
+        if (error != null) {
+            terminated = true;
+            ready.clear();
+            s.onError(error);
+            return;
+        }
+        long wanted = demand.get();
+        long emitted = 0;
+        while (emitted < wanted && !cancelled) {
+            ShardBatch batch = ready.poll();
+            if (batch == null) {
+                break;
+            }
+            // The batches of a lease that was lost or released belong to another worker now.
+            if (!batch.session.active) {
+                continue;
+            }
+            s.onNext(batch);
+            emitted++;
+            recordsDelivered.addAndGet(batch.records.size());
+            batch.session.delivered();
+        }
+        if (emitted > 0 && wanted != Long.MAX_VALUE) {
+            demand.addAndGet(-emitted);
+        }
+        if (closed && sessions.isEmpty() && !cancelled) {
+            terminated = true;
+            ready.clear();
+            s.onComplete();
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    // SubscribeToShard fails with ResourceInUseException while the previous subscription of the shard
+    // is still open, and with LimitExceededException when it is called too often.
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof ResourceInUseException || e instanceof LimitExceededException) {
+            return true;
+        }
+        if (e instanceof AbortedException) {
+            return false;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkException;
+    }
+
+    // The subscriptions of one leased shard, one after another.
+    private final class ShardSession {
+        private final String shardId;
+        private final boolean hasParents;
+        private volatile ShardLeaseTable.Lease lease;
+        private volatile boolean active = true;
+        // Where the next subscription starts: after this sequence number, or at the initial position if null.
+        private volatile String position;
+        private volatile String pendingCheckpoint;
+        private volatile long millisBehindLatest;
+        private volatile boolean ended;
+        private volatile int attempts;
+        private volatile long lastSubscribeNanos;
+        // Guarded by this session.
+        private int buffered;
+        private EventSubscriber current;
+
+        ShardSession(ShardLeaseTable.Lease lease) {
+            this.shardId = lease.shardId();
+            this.hasParents = !lease.parentShardIds().isEmpty();
+            this.lease = lease;
+            this.position = lease.checkpoint();
+        }
+
+        // The checkpoint to write at the next renewal.
+        String checkpoint() {
+            return pendingCheckpoint != null ? pendingCheckpoint : lease.checkpoint();
+        }
+
+        void subscribe() {
+            if (!active) {
+                return;
+            }
+            StartingPosition startingPosition = position != null
+                ? StartingPosition.builder().type(ShardIteratorType.AFTER_SEQUENCE_NUMBER).sequenceNumber(position)
+                    .build()
+                : StartingPosition.builder()
+                    .type(hasParents ? ShardIteratorType.TRIM_HORIZON : config.initialPosition()).build();
+            SubscribeToShardRequest request = SubscribeToShardRequest.builder()
+                .consumerARN(consumerArn)
+                .shardId(shardId)
+                .startingPosition(startingPosition)
+                .build();
+            EventSubscriber events = new EventSubscriber();
+            synchronized (this) {
+                current = events;
+            }
+            SubscribeToShardResponseHandler handler = SubscribeToShardResponseHandler.builder()
+                .onEventStream(publisher -> publisher.subscribe(events))
+                .build();
+            lastSubscribeNanos = System.nanoTime();
+            subscriptions.incrementAndGet();
+            CompletableFuture<Void> future;
+            try {
+                future = kinesisClient.subscribeToShard(request, handler);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((ignored, e) -> ended(e == null ? null : unwrap(e)));
+        }
+
+        // Subscribes again after a subscription completed or failed.
+        private void ended(Throwable error) {
+            if (!active || ended) {
+                return;
+            }
+            long delay = lastSubscribeNanos + MIN_SUBSCRIBE_INTERVAL_NANOS - System.nanoTime();
+            if (error != null) {
+                attempts++;
+                if (!isRetryable(error) || attempts >= config.maxAttempts()) {
+                    fail(error);
+                    return;
+                }
+                long base = config.retryBaseDelay().toNanos() << Math.min(attempts - 1, 10);
+                delay = Math.max(delay, ThreadLocalRandom.current().nextLong(base + 1));
+                logger.debug("Subscription to shard {} failed, subscribing again", shardId, error);
+            }
+            try {
+                scheduler.schedule(this::subscribe, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // The consumer closed in the meantime.
+            }
+        }
+
+        void received(SubscribeToShardEvent event) {
+            attempts = 0;
+            if (event.millisBehindLatest() != null) {
+                millisBehindLatest = event.millisBehindLatest();
+            }
+            // The last event of a closed shard names its children and has no continuation.
+            String continuation = event.continuationSequenceNumber();
+            boolean shardEnd = continuation == null && !event.childShards().isEmpty();
+            if (continuation != null) {
+                position = continuation;
+            }
+            if (shardEnd) {
+                ended = true;
+            }
+            if (!event.records().isEmpty() || shardEnd) {
+                synchronized (this) {
+                    buffered++;
+                }
+                ready.add(new ShardBatch(this, event.records(), continuation, shardEnd, millisBehindLatest));
+                drain();
+            }
+        }
+
+        void delivered() {
+            EventSubscriber events;
+            synchronized (this) {
+                buffered--;
+                events = current;
+            }
+            if (events != null) {
+                events.requestMore();
+            }
+        }
+
+        void stop() {
+            active = false;
+            EventSubscriber events;
+            synchronized (this) {
+                events = current;
+                current = null;
+            }
+            if (events != null) {
+                events.cancel();
+            }
+        }
+
+        // Receives the events of one subscription and requests them as the buffer has room.
+        private final class EventSubscriber implements Subscriber<SubscribeToShardEventStream> {
+            private Subscription subscription;
+            private int outstanding;
+            private boolean cancelled;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                synchronized (ShardSession.this) {
+                    subscription = s;
+                }
+                requestMore();
+            }
+
+            @Override
+            public void onNext(SubscribeToShardEventStream event) {
+                synchronized (ShardSession.this) {
+                    outstanding--;
+                }
+                if (event instanceof SubscribeToShardEvent shardEvent && active) {
+                    received(shardEvent);
+                }
+                requestMore();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The future of the subscription fails as well, which is where it is handled.
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            void requestMore() {
+                Subscription s;
+                int n;
+                synchronized (ShardSession.this) {
+                    n = config.batchesPerShard() - buffered - outstanding;
+                    if (cancelled || subscription == null || !active || n <= 0) {
+                        return;
+                    }
+                    outstanding += n;
+                    s = subscription;
+                }
+                s.request(n);
+            }
+
+            void cancel() {
+                Subscription s;
+                synchronized (ShardSession.this) {
+                    cancelled = true;
+                    s = subscription;
+                }
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Reads every shard of a Kinesis data stream with GetRecords, for accounts or streams
+ * where enhanced fan-out isn't available.
+ *
+ * The shards are listed with ListShards every {@link Config#shardDiscoveryInterval()}.
+ * Each shard that is ready is read by its own thread, which follows the NextShardIterator
+ * of each response and sleeps between calls. The threads are virtual threads, so a stream
+ * of hundreds of shards doesn't need hundreds of platform threads that mostly wait for a
+ * response or sleep. A shard is ready when its parents, after a split or a merge, have
+ * been read to their end; a child is then read from its beginning, so the records of each
+ * partition key are handed over in order across a reshard. A shard whose parent has expired from the stream is ready at once.
+ *
+ * Kinesis allows five GetRecords calls per second per shard, shared by all the consumers
+ * of the shard, so every reader waits for {@code 1 / readsPerSecondPerShard} between its
+ * calls, and for {@link Config#idleInterval()} after a call that returned nothing.
+ * Throttled calls are retried with exponential backoff and full jitter, and an expired
+ * iterator is replaced by one after the last record that was handled.
+ *
+ * {@link #stats()} reports the MillisBehindLatest of every shard from its last
+ * GetRecords response, which is how far the consumer is behind the tip of the stream.
+ *
+ * The consumer keeps its position in memory only, so a restarted consumer starts again
+ * at {@link Config#initialPosition()}.
+ */
+public class KinesisPollingConsumer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KinesisPollingConsumer.class);
+
+    static final int MAX_RECORDS_PER_CALL = 10_000;
+
+    /**
+     * Handles the records of one GetRecords call. Calls for the same shard are made one
+     * after another, in the order of the shard; calls for different shards run in
+     * parallel. A handler that throws stops the consumer.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(String shardId, List<Record> records);
+    }
+
+    /**
+     * Settings for the consumer.
+     *
+     * @param initialPosition        where the shards that are open at the start are read from, TRIM_HORIZON
+     *                               or LATEST; shards that appear later are always read from their beginning
+     * @param recordsPerCall         the Limit of each GetRecords call, at most 10,000
+     * @param readsPerSecondPerShard the GetRecords calls per second a reader makes at most
+     * @param idleInterval           how long a reader waits after a call that returned no records
+     * @param shardDiscoveryInterval how often the shards are listed
+     * @param maxAttempts            the number of times a call is sent before the consumer fails
+     * @param retryBaseDelay         the backoff before the second attempt; it doubles for every further attempt
+     * @param progressInterval       how often progress is logged
+     */
+    public record Config(ShardIteratorType initialPosition, int recordsPerCall, double readsPerSecondPerShard,
+                         Duration idleInterval, Duration shardDiscoveryInterval, int maxAttempts,
+                         Duration retryBaseDelay, Duration progressInterval) {
+
+        public Config {
+            if (initialPosition != ShardIteratorType.TRIM_HORIZON && initialPosition != ShardIteratorType.LATEST) {
+                throw new IllegalArgumentException("initialPosition must be TRIM_HORIZON or LATEST");
+            }
+            if (recordsPerCall < 1 || recordsPerCall > MAX_RECORDS_PER_CALL) {
+                throw new IllegalArgumentException("recordsPerCall must be between 1 and " + MAX_RECORDS_PER_CALL);
+            }
+            if (readsPerSecondPerShard <= 0 || maxAttempts < 1) {
+                throw new IllegalArgumentException("readsPerSecondPerShard and maxAttempts must be positive");
+            }
+        }
+
+        /**
+         * Returns reading from LATEST, 10,000 records and at most 5 calls per second per
+         * shard, a 1 second idle interval, shard discovery every 30 seconds, 10 attempts
+         * starting with a 100 ms backoff, and progress every 10 seconds.
+         */
+        public static Config defaults() {
+            return new Config(ShardIteratorType.LATEST, MAX_RECORDS_PER_CALL, 5, Duration.ofSeconds(1),
+                Duration.ofSeconds(30), 10, Duration.ofMillis(100), Duration.ofSeconds(10));
+        }
+    }
+
+    /**
+     * The progress of the consumer.
+     *
+     * @param recordsRead               the records that were handled
+     * @param millisBehindLatest        the MillisBehindLatest of the shard that is furthest behind
+     * @param millisBehindLatestByShard the MillisBehindLatest of each shard that is being read
+     * @param activeShards              the shards that are being read
+     * @param finishedShards            the closed shards that were read to their end
+     */
+    public record Stats(long recordsRead, long millisBehindLatest, Map<String, Long> millisBehindLatestByShard,
+                        int activeShards, int finishedShards) {
+    }
+
+    private final KinesisClient kinesisClient;
+    private final String streamName;
+    private final RecordHandler handler;
+    private final Config config;
+    private final ExecutorService readers;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, ShardReader> activeShards = new ConcurrentHashMap<>();
+    private final Set<String> finishedShards = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch closing = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong recordsRead = new AtomicLong();
+    private boolean started;
+    // Whether the shards that existed at the start have been looked at; only those use initialPosition.
+    private boolean discovered;
+
+    /**
+     * @param kinesisClient the client that reads the stream; the consumer doesn't close it
+     * @param streamName    the stream to read
+     * @param handler       what is done with the records
+     * @param config        the consumer settings
+     */
+    public KinesisPollingConsumer(KinesisClient kinesisClient, String streamName, RecordHandler handler,
+                                  Config config) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.handler = handler;
+        this.config = config;
+        this.readers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kinesis-shard-", 0).factory());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("kinesis-consumer").factory());
+    }
+
+    /**
+     * Starts reading the stream in the background, until {@link #close()} is called or a
+     * read or the handler fails; see {@link #failure()}.
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("The consumer was already started");
+        }
+        started = true;
+        scheduler.scheduleWithFixedDelay(this::discoverShards, 0, config.shardDiscoveryInterval().toNanos(),
+            TimeUnit.NANOSECONDS);
+        long intervalNanos = config.progressInterval().toNanos();
+        scheduler.scheduleAtFixedRate(() -> {
+            Stats stats = stats();
+            logger.info("Read {} records from {}, {} ms behind, {} shards active, {} done", stats.recordsRead(),
+                streamName, stats.millisBehindLatest(), stats.activeShards(), stats.finishedShards());
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the progress of the consumer.
+     */
+    public Stats stats() {
+        Map<String, Long> behind = new HashMap<>();
+        activeShards.forEach((shardId, reader) -> behind.put(shardId, reader.millisBehindLatest));
+        long max = behind.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        return new Stats(recordsRead.get(), max, Map.copyOf(behind), activeShards.size(), finishedShards.size());
+    }
+
+    /**
+     * Returns the error that stopped the consumer, if it failed.
+     */
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure.get());
+    }
+
+    /**
+     * Stops reading and waits for the handlers that are running.
+     */
+    @Override
+    public void close() {
+        closing.countDown();
+        scheduler.shutdownNow();
+        readers.shutdown();
+        try {
+            if (!readers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Shard readers of {} didn't stop within a minute", streamName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    // Starts a reader for every shard whose parents are done. Runs on the scheduler thread only.
+    private void discoverShards() {
+        try {
+            List<Shard> shards = listShards();
+            Map<String, Shard> byId = new HashMap<>();
+            shards.forEach(shard -> byId.put(shard.shardId(), shard));
+            boolean initial = !discovered;
+            discovered = true;
+            for (Shard shard : shards) {
+                String shardId = shard.shardId();
+                if (finishedShards.contains(shardId) || activeShards.containsKey(shardId)) {
+                    continue;
+                }
+                boolean closed = shard.sequenceNumberRange().endingSequenceNumber() != null;
+                if (initial && config.initialPosition() == ShardIteratorType.LATEST && closed) {
+                    // Starting at the tip of the stream skips the closed shards and starts their open descendants.
+                    finishedShards.add(shardId);
+                    continue;
+                }
+                if (!isDone(shard.parentShardId(), byId) || !isDone(shard.adjacentParentShardId(), byId)) {
+                    continue;
+                }
+                if (closing.getCount() == 0) {
+                    return;
+                }
+                ShardIteratorType position = initial ? config.initialPosition() : ShardIteratorType.TRIM_HORIZON;
+                ShardReader reader = new ShardReader(shardId, position);
+                activeShards.put(shardId, reader);
+                readers.execute(reader);
+            }
+        } catch (RuntimeException e) {
+            // A failed listing is tried again at the next interval; readers that are running carry on.
+            logger.warn("Couldn't list the shards of {}", streamName, e);
+        }
+    }
+
+    // A parent that is finished, or that has expired from the stream, no longer holds back its children.
+    private boolean isDone(String parentShardId, Map<String, Shard> shards) {
+        return parentShardId == null || !shards.containsKey(parentShardId) || finishedShards.contains(parentShardId);
+    }
+
+    private List<Shard> listShards() {
+        List<Shard> shards = new ArrayList<>();
+        ListShardsRequest request = ListShardsRequest.builder().streamName(streamName).build();
+        while (request != null) {
+            ListShardsRequest current = request;
+            ListShardsResponse response = withRetries(() -> kinesisClient.listShards(current));
+            shards.addAll(response.shards());
+            // A request with a NextToken can't name the stream.
+            request = response.nextToken() == null ? null
+                : ListShardsRequest.builder().nextToken(response.nextToken()).build();
+        }
+        return shards;
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            logger.error("Reading {} failed", streamName, e);
+        }
+        closing.countDown();
+    }
+
+    private <T> T withRetries(Supplier<T> call) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (SdkException e) {
+                if (!isRetryable(e) || attempt >= config.maxAttempts()) {
+                    throw e;
+                }
+            }
+            long base = config.retryBaseDelay().toNanos() << Math.min(attempt - 1, 10);
+            try {
+                TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(base + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while retrying").cause(e).build();
+            }
+        }
+    }
+
+    // The SDK counts ProvisionedThroughputExceededException as throttling.
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof ExpiredIteratorException || e instanceof AbortedException) {
+            return false;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return true;
+    }
+
+    // Reads one shard until its end, or until the consumer closes.
+    private final class ShardReader implements Runnable {
+        private final String shardId;
+        private final ShardIteratorType initialPosition;
+        private String lastSequenceNumber;
+        private volatile long millisBehindLatest;
+
+        ShardReader(String shardId, ShardIteratorType initialPosition) {
+            this.shardId = shardId;
+            this.initialPosition = initialPosition;
+        }
+
+        @Override
+        public void run() {
+            long readIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.readsPerSecondPerShard());
+            try {
+                String iterator = iterator();
+                long nextReadNanos = System.nanoTime();
+                while (iterator != null && closing.getCount() > 0) {
+                    long wait = nextReadNanos - System.nanoTime();
+                    if (wait > 0 && closing.await(wait, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                    nextReadNanos = System.nanoTime() + readIntervalNanos;
+                    String current = iterator;
+                    GetRecordsResponse response;
+                    try {
+                        response = withRetries(() -> kinesisClient.getRecords(r -> r
+                            .shardIterator(current)
+                            .limit(config.recordsPerCall())));
+                    } catch (ExpiredIteratorException e) {
+                        iterator = iterator();
+                        continue;
+                    }
+                    List<Record> records = response.records();
+                    if (response.millisBehindLatest() != null) {
+                        millisBehindLatest = response.millisBehindLatest();
+                    }
+                    if (!records.isEmpty()) {
+                        handler.handle(shardId, records);
+                        lastSequenceNumber = records.get(records.size() - 1).sequenceNumber();
+                        recordsRead.addAndGet(records.size());
+                    } else {
+                        nextReadNanos = Math.max(nextReadNanos, System.nanoTime() + config.idleInterval().toNanos());
+                    }
+                    iterator = response.nextShardIterator();
+                }
+                if (iterator == null) {
+                    finishedShards.add(shardId);
+                    logger.info("Read shard {} of {} to its end", shardId, streamName);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                activeShards.remove(shardId);
+            }
+            if (finishedShards.contains(shardId) && closing.getCount() > 0) {
+                // Start the children of the shard without waiting for the next listing.
+                try {
+                    scheduler.execute(KinesisPollingConsumer.this::discoverShards);
+                } catch (RejectedExecutionException e) {
+                    // The consumer closed in the meantime.
+                }
+            }
+        }
+
+        private String iterator() {
+            return withRetries(() -> kinesisClient.getShardIterator(r -> {
+                r.streamName(streamName).shardId(shardId);
+                if (lastSequenceNumber == null) {
+                    r.shardIteratorType(initialPosition);
+                } else {
+                    r.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+                        .startingSequenceNumber(lastSequenceNumber);
+                }
+            })).shardIterator();
+        }
+    }
+}
@@ -6,6 +6,9 @@ package com.example.kinesis;
 
 // snippet-start:[kinesis.java2.stream_example.import]
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.reactivestreams.Subscriber;
@@ -13,7 +16,6 @@ import org.reactivestreams.Subscription;
 import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
-import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
 import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
 import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEventStream;
 import software.amazon.awssdk.services.kinesis.model.SubscribeToShardRequest;
@@ -39,8 +41,9 @@ public class KinesisStreamEx {
 
     // Update to include a value CONSUMER_ARN - replace the following value
     private static final String CONSUMER_ARN = "arn:aws:kinesis:us-east-1:111122223333:stream/StockTradeStream/consumer/StockApp:111122223333";
+    private static final String STREAM_NAME = "StockTradeStream";
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
 
         // snippet-start:[kinesis.java2.stream_example.setup]
         Region region = Region.US_EAST_1;
@@ -48,22 +51,57 @@ public class KinesisStreamEx {
                 .region(region)
                 .build();
 
-        SubscribeToShardRequest request = SubscribeToShardRequest.builder()
-                .consumerARN(CONSUMER_ARN)
-                .shardId("arn:aws:kinesis:us-east-1:111122223333:stream/StockTradeStream")
-                .startingPosition(s -> s.type(ShardIteratorType.LATEST)).build();
-
         // snippet-end:[kinesis.java2.stream_example.setup]
-        SubscribeToShardResponseHandler responseHandler = SubscribeToShardResponseHandler
-                .builder()
-                .onError(t -> System.err.println("Error during stream - " + t.getMessage()))
-                .subscriber(MySubscriber::new)
-                .build();
-
-        client.subscribeToShard(request, responseHandler);
+        // A single SubscribeToShard call reads one shard and ends after five minutes, so
+        // read every shard with a consumer that subscribes again as needed.
+        consumeAllShards(client, STREAM_NAME, Duration.ofMinutes(10));
         client.close();
     }
 
+    // snippet-start:[kinesis.java2.stream_example.all_shards]
+    /**
+     * Reads every shard of the stream with a KinesisEfoConsumer, which keeps one
+     * subscription open per shard, subscribes again from the last event when a
+     * subscription expires, and shares the shards with the other workers that use the
+     * same lease file. Each batch is requested only after the previous one was
+     * processed, so the shards are read no faster than that.
+     */
+    private static void consumeAllShards(KinesisAsyncClient client, String streamName, Duration duration)
+            throws InterruptedException {
+        ShardLeaseTable leases = new FileShardLeaseTable(Path.of("stock-app-leases.json"));
+        try (KinesisEfoConsumer consumer = new KinesisEfoConsumer(client, streamName, CONSUMER_ARN,
+                UUID.randomUUID().toString(), leases, KinesisEfoConsumer.Config.defaults())) {
+            consumer.subscribe(new Subscriber<>() {
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(KinesisEfoConsumer.ShardBatch batch) {
+                    System.out.println("Received " + batch.records().size() + " records from " + batch.shardId());
+                    batch.checkpoint();
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    System.err.println("Error while reading the stream - " + throwable.getMessage());
+                }
+
+                @Override
+                public void onComplete() {
+                    System.out.println("Stopped reading the stream");
+                }
+            });
+            Thread.sleep(duration.toMillis());
+        }
+    }
+    // snippet-end:[kinesis.java2.stream_example.all_shards]
+
     // snippet-start:[kinesis.java2.stream_example.lifecycle_callback]
     private static CompletableFuture<Void> responseHandlerBuilder(KinesisAsyncClient client,
             SubscribeToShardRequest request) {
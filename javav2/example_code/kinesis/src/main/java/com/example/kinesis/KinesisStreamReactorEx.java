@@ -13,6 +13,9 @@ import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
 import software.amazon.awssdk.services.kinesis.model.SubscribeToShardRequest;
 import software.amazon.awssdk.services.kinesis.model.SubscribeToShardResponseHandler;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 // snippet-end:[kinesis.java2.stream_reactor_example.import]
 
@@ -24,6 +27,7 @@ import java.util.concurrent.CompletableFuture;
 public class KinesisStreamReactorEx {
 
         private static final String CONSUMER_ARN = "arn:aws:kinesis:us-east-1:1234567890:stream/stream-name/consumer/consumer-name:1234567890";
+        private static final String STREAM_NAME = "stream-name";
 
         /**
          * Uses Reactor via the onEventStream lifecycle method. This gives you full
@@ -62,6 +66,29 @@ public class KinesisStreamReactorEx {
                 return client.subscribeToShard(request, responseHandler);
         }
 
+        /**
+         * Reads every shard of the stream, not just one, for as long as needed. The
+         * KinesisEfoConsumer subscribes to each shard again when its subscription expires
+         * and is itself a publisher, so Flux requests batches only as fast as they are
+         * processed and the shards are read no faster than that.
+         */
+        private static void consumeAllShards_Reactor(KinesisAsyncClient client, String streamName,
+                        Duration duration) {
+                ShardLeaseTable leases = new FileShardLeaseTable(Path.of("consumer-name-leases.json"));
+                try (KinesisEfoConsumer consumer = new KinesisEfoConsumer(client, streamName, CONSUMER_ARN,
+                                UUID.randomUUID().toString(), leases, KinesisEfoConsumer.Config.defaults())) {
+                        Flux.from(consumer)
+                                        .limitRate(10)
+                                        .take(duration)
+                                        .doOnNext(batch -> {
+                                                System.out.println("Record batch of " + batch.shardId() + " = "
+                                                                + batch.records());
+                                                batch.checkpoint();
+                                        })
+                                        .blockLast();
+                }
+        }
+
         public static void main(String[] args) {
 
                 KinesisAsyncClient client = KinesisAsyncClient.create();
@@ -72,8 +99,11 @@ public class KinesisStreamReactorEx {
                                 .startingPosition(StartingPosition.builder().type(ShardIteratorType.LATEST).build())
                                 .build();
 
+                // One subscription reads one shard for at most five minutes.
                 responseHandlerBuilder_Reactor(client, request).join();
 
+                consumeAllShards_Reactor(client, STREAM_NAME, Duration.ofMinutes(10));
+
                 client.close();
         }
 }
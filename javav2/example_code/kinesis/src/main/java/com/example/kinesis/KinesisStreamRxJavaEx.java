@@ -5,7 +5,11 @@ package com.example.kinesis;
 // snippet-start:[kinesis.java2.stream_rx_example.import]
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Flowable;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
@@ -26,6 +30,7 @@ import software.amazon.awssdk.utils.AttributeMap;
 public class KinesisStreamRxJavaEx {
 
         private static final String CONSUMER_ARN = "arn:aws:kinesis:us-east-1:1234567890:stream/stream-name/consumer/consumer-name:1234567890";
+        private static final String STREAM_NAME = "stream-name";
 
         /**
          * Uses RxJava via the onEventStream lifecycle method. This gives you full
@@ -68,6 +73,31 @@ public class KinesisStreamRxJavaEx {
                 return client.subscribeToShard(request, responseHandler);
         }
 
+        /**
+         * Reads every shard of the stream, not just one, for as long as needed. The
+         * KinesisEfoConsumer subscribes to each shard again when its subscription expires
+         * and is itself a publisher, so a Flowable requests batches only as fast as they
+         * are processed and the shards are read no faster than that.
+         */
+        private static void consumeAllShards_RxJava(KinesisAsyncClient client, String streamName,
+                        Duration duration) {
+                // snippet-start:[kinesis.java2.stream_rx_example.all_shards]
+                ShardLeaseTable leases = new FileShardLeaseTable(Path.of("consumer-name-leases.json"));
+                try (KinesisEfoConsumer consumer = new KinesisEfoConsumer(client, streamName, CONSUMER_ARN,
+                                UUID.randomUUID().toString(), leases, KinesisEfoConsumer.Config.defaults())) {
+                        Flowable.fromPublisher(consumer)
+                                        .rebatchRequests(10)
+                                        .take(duration.toMillis(), TimeUnit.MILLISECONDS)
+                                        .doOnNext(batch -> {
+                                                System.out.println("Record batch of " + batch.shardId() + " = "
+                                                                + batch.records());
+                                                batch.checkpoint();
+                                        })
+                                        .blockingSubscribe();
+                }
+                // snippet-end:[kinesis.java2.stream_rx_example.all_shards]
+        }
+
         public static void main(String[] args) {
 
                 KinesisAsyncClient client = KinesisAsyncClient.create();
@@ -78,8 +108,11 @@ public class KinesisStreamRxJavaEx {
                                 .startingPosition(StartingPosition.builder().type(ShardIteratorType.LATEST).build())
                                 .build();
 
+                // One subscription reads one shard for at most five minutes.
                 responseHandlerBuilder_RxJava(client, request).join();
 
+                consumeAllShards_RxJava(client, STREAM_NAME, Duration.ofMinutes(10));
+
                 client.close();
         }
 }
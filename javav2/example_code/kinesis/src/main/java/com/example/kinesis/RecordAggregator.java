@@ -0,0 +1,242 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs many small user records into one Kinesis record in the aggregation format of the
+ * Kinesis Producer Library (KPL), which the Kinesis Client Library and the KPL
+ * deaggregation modules unpack again.
+ *
+ * An aggregated record is the magic bytes F3 89 9A C2, an AggregatedRecord protocol
+ * buffer message that holds a table of partition keys and the user records, and the MD5
+ * digest of that message. Kinesis bills and throttles by record and by byte, so a shard
+ * that takes 1,000 records per second takes many more user records once they are
+ * aggregated.
+ */
+public final class RecordAggregator {
+
+    static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+    private static final int DIGEST_LENGTH = 16;
+
+    // Field tags of AggregatedRecord and of its nested Record message.
+    private static final int PARTITION_KEY_TABLE = 1 << 3 | 2;
+    private static final int RECORDS = 3 << 3 | 2;
+    private static final int PARTITION_KEY_INDEX = 1 << 3;
+    private static final int DATA = 3 << 3 | 2;
+
+    /**
+     * A user record inside an aggregated record.
+     */
+    public record UserRecord(String partitionKey, byte[] data) {
+    }
+
+    private final Map<String, Integer> partitionKeyIndexes = new HashMap<>();
+    private final List<byte[]> partitionKeys = new ArrayList<>();
+    private final List<UserRecord> records = new ArrayList<>();
+    private int messageSize;
+
+    /**
+     * Returns the size of the aggregated record if the user record were added to it,
+     * including its partition key, which Kinesis counts towards the record size.
+     */
+    public int sizeWith(String partitionKey, byte[] data) {
+        int size = messageSize + recordSize(partitionKeyIndexes.getOrDefault(partitionKey, partitionKeys.size()),
+            data.length);
+        if (!partitionKeyIndexes.containsKey(partitionKey)) {
+            size += fieldSize(partitionKey.getBytes(StandardCharsets.UTF_8).length);
+        }
+        return MAGIC.length + size + DIGEST_LENGTH + firstPartitionKeyLength(partitionKey);
+    }
+
+    /**
+     * Returns the size of the aggregated record, including its partition key.
+     */
+    public int size() {
+        return records.isEmpty() ? 0 : MAGIC.length + messageSize + DIGEST_LENGTH + partitionKeys.get(0).length;
+    }
+
+    public void add(String partitionKey, byte[] data) {
+        Integer index = partitionKeyIndexes.get(partitionKey);
+        if (index == null) {
+            byte[] key = partitionKey.getBytes(StandardCharsets.UTF_8);
+            index = partitionKeys.size();
+            partitionKeyIndexes.put(partitionKey, index);
+            partitionKeys.add(key);
+            messageSize += fieldSize(key.length);
+        }
+        messageSize += recordSize(index, data.length);
+        records.add(new UserRecord(partitionKey, data));
+    }
+
+    public int count() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Returns the partition key of the aggregated record, which is the key of its first
+     * user record, so the aggregated record goes to the shard of that record.
+     */
+    public String partitionKey() {
+        return records.get(0).partitionKey();
+    }
+
+    /**
+     * Returns the aggregated record and empties the aggregator.
+     */
+    public byte[] build() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAGIC.length + messageSize + DIGEST_LENGTH);
+        out.writeBytes(MAGIC);
+        for (byte[] key : partitionKeys) {
+            writeVarint(out, PARTITION_KEY_TABLE);
+            writeVarint(out, key.length);
+            out.writeBytes(key);
+        }
+        for (UserRecord record : records) {
+            int index = partitionKeyIndexes.get(record.partitionKey());
+            writeVarint(out, RECORDS);
+            writeVarint(out, recordMessageSize(index, record.data().length));
+            writeVarint(out, PARTITION_KEY_INDEX);
+            writeVarint(out, index);
+            writeVarint(out, DATA);
+            writeVarint(out, record.data().length);
+            out.writeBytes(record.data());
+        }
+        byte[] message = out.toByteArray();
+        out.writeBytes(md5(message, MAGIC.length, message.length - MAGIC.length));
+
+        partitionKeyIndexes.clear();
+        partitionKeys.clear();
+        records.clear();
+        messageSize = 0;
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns whether the data of a Kinesis record is an aggregated record.
+     */
+    public static boolean isAggregated(byte[] data) {
+        return data.length >= MAGIC.length + DIGEST_LENGTH
+            && Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Returns the user records of a Kinesis record: the records packed into it if it is an
+     * aggregated record, or the record itself if it isn't.
+     *
+     * @throws IllegalArgumentException if the record looks aggregated but its digest doesn't match
+     */
+    public static List<UserRecord> deaggregate(String partitionKey, byte[] data) {
+        if (!isAggregated(data)) {
+            return List.of(new UserRecord(partitionKey, data));
+        }
+        int end = data.length - DIGEST_LENGTH;
+        byte[] digest = md5(data, MAGIC.length, end - MAGIC.length);
+        if (!Arrays.equals(digest, 0, DIGEST_LENGTH, data, end, data.length)) {
+            throw new IllegalArgumentException("The digest of the aggregated record doesn't match");
+        }
+        List<String> keys = new ArrayList<>();
+        List<UserRecord> records = new ArrayList<>();
+        int[] position = {MAGIC.length};
+        while (position[0] < end) {
+            int tag = (int) readVarint(data, position);
+            int length = (int) readVarint(data, position);
+            int fieldEnd = position[0] + length;
+            if (tag == PARTITION_KEY_TABLE) {
+                keys.add(new String(data, position[0], length, StandardCharsets.UTF_8));
+            } else if (tag == RECORDS) {
+                int keyIndex = 0;
+                byte[] recordData = null;
+                while (position[0] < fieldEnd) {
+                    int recordTag = (int) readVarint(data, position);
+                    if (recordTag == PARTITION_KEY_INDEX) {
+                        keyIndex = (int) readVarint(data, position);
+                    } else if ((recordTag & 7) == 0) {
+                        readVarint(data, position);
+                    } else {
+                        int valueLength = (int) readVarint(data, position);
+                        if (recordTag == DATA) {
+                            recordData = Arrays.copyOfRange(data, position[0], position[0] + valueLength);
+                        }
+                        position[0] += valueLength;
+                    }
+                }
+                records.add(new UserRecord(keys.get(keyIndex), recordData == null ? new byte[0] : recordData));
+            }
+            // Explicit hash keys and tags aren't used by this producer and are skipped.
+            position[0] = fieldEnd;
+        }
+        return records;
+    }
+
+    private int firstPartitionKeyLength(String partitionKey) {
+        return partitionKeys.isEmpty() ? partitionKey.getBytes(StandardCharsets.UTF_8).length
+            : partitionKeys.get(0).length;
+    }
+
+    private static int recordSize(int keyIndex, int dataLength) {
+        return fieldSize(recordMessageSize(keyIndex, dataLength));
+    }
+
+    private static int recordMessageSize(int keyIndex, int dataLength) {
+        return 1 + varintSize(keyIndex) + fieldSize(dataLength);
+    }
+
+    // The size of a length-delimited field with a one-byte tag.
+    private static int fieldSize(int length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in the aggregated record");
+    }
+
+    private static byte[] md5(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, offset, length);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 isn't available", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import java.util.List;
+
+/**
+ * Where the workers of a {@link KinesisEfoConsumer} record which worker reads which
+ * shard and how far each shard has been processed.
+ *
+ * Every shard has one lease. A worker holds a lease until it expires, and keeps it by
+ * renewing it before then; a lease that has expired, or that has no owner, may be taken
+ * by any worker. Every change is conditional on the version of the lease the worker read
+ * last, so when two workers race for a lease only one of them gets it, and a worker whose
+ * lease was taken finds out at its next renewal.
+ *
+ * Expiry times are wall-clock times, so the clocks of the workers must agree to well
+ * within the lease duration.
+ */
+public interface ShardLeaseTable {
+
+    /**
+     * The checkpoint of a shard that was processed to its end.
+     */
+    String SHARD_END = "SHARD_END";
+
+    /**
+     * The lease of a shard.
+     *
+     * @param shardId         the shard
+     * @param parentShardIds  the shards the shard was split or merged from, which are processed first
+     * @param owner           the worker that holds the lease, or null if it is free
+     * @param expiresAtMillis when the lease expires unless it is renewed, in milliseconds since the epoch
+     * @param checkpoint      the sequence number the shard was processed up to, {@link #SHARD_END}, or
+     *                        null if nothing was processed yet
+     * @param version         the number of times the lease was changed
+     */
+    record Lease(String shardId, List<String> parentShardIds, String owner, long expiresAtMillis,
+                 String checkpoint, long version) {
+
+        public Lease {
+            parentShardIds = parentShardIds == null ? List.of() : List.copyOf(parentShardIds);
+        }
+
+        /**
+         * Returns a new, free lease of a shard.
+         */
+        public static Lease of(String shardId, List<String> parentShardIds) {
+            return new Lease(shardId, parentShardIds, null, 0, null, 0);
+        }
+
+        /**
+         * Returns the next version of the lease, with a new owner, expiry and checkpoint.
+         */
+        public Lease next(String owner, long expiresAtMillis, String checkpoint) {
+            return new Lease(shardId, parentShardIds, owner, expiresAtMillis, checkpoint, version + 1);
+        }
+
+        /**
+         * Returns whether the shard was processed to its end.
+         */
+        public boolean finished() {
+            return SHARD_END.equals(checkpoint);
+        }
+
+        /**
+         * Returns whether a worker may take the lease at the given time.
+         */
+        public boolean availableAt(long nowMillis) {
+            return owner == null || expiresAtMillis <= nowMillis;
+        }
+    }
+
+    /**
+     * Returns every lease in the table.
+     */
+    List<Lease> list();
+
+    /**
+     * Adds a lease, unless the table already has one for the shard.
+     *
+     * @return whether the lease was added
+     */
+    boolean create(Lease lease);
+
+    /**
+     * Replaces a lease with its next version, unless it was changed since it was read.
+     *
+     * @param current the lease as it was read
+     * @param next    the lease that replaces it, usually {@code current.next(...)}
+     * @return whether the lease was replaced
+     */
+    boolean replace(Lease current, Lease next);
+}
@@ -3,10 +3,6 @@
 
 package com.example.kinesis;
 
-import java.io.IOException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * Captures the key elements of a stock trade, such as the ticker symbol, price,
  * number of shares, the type of the trade (buy or sell), and an id uniquely
@@ -15,11 +11,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class StockTrade {
 
-    private final static ObjectMapper JSON = new ObjectMapper();
-    static {
-        JSON.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    }
-
     /**
      * Represents the type of the stock trade eg buy or sell.
      */
@@ -65,20 +56,20 @@ public class StockTrade {
         return id;
     }
 
+    /**
+     * Returns the trade as JSON; see {@link StockTradeCodec#json()}.
+     */
     public byte[] toJsonAsBytes() {
-        try {
-            return JSON.writeValueAsBytes(this);
-        } catch (IOException e) {
-            return null;
-        }
+        return StockTradeCodec.json().encode(this);
     }
 
+    /**
+     * Reads a trade from JSON; see {@link StockTradeCodec#json()}.
+     *
+     * @throws IllegalArgumentException if the bytes aren't a JSON stock trade
+     */
     public static StockTrade fromJsonAsBytes(byte[] bytes) {
-        try {
-            return JSON.readValue(bytes, StockTrade.class);
-        } catch (IOException e) {
-            return null;
-        }
+        return StockTradeCodec.json().decode(bytes);
     }
 
     @Override
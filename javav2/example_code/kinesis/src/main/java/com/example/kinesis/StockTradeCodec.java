@@ -0,0 +1,79 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns a {@link StockTrade} into the data of a Kinesis record and back. The writer and
+ * the readers of a stream must use the same codec.
+ *
+ * {@link #json()} is the format the examples have always written, readable by any
+ * consumer. {@link #binary()} is a fixed layout that is several times smaller and
+ * faster to decode, for consumers that spend their time parsing records.
+ *
+ * Decoding never copies the record data: {@link #decode(SdkBytes)} reads the bytes the
+ * SDK received through a read-only view, and {@link #decode(ByteBuffer)} reads from the
+ * position to the limit of the buffer without moving either. Data that isn't a trade
+ * in the codec's format is rejected with an {@link IllegalArgumentException}.
+ */
+public interface StockTradeCodec {
+
+    /**
+     * Returns the encoded trade in a new array of exactly its size.
+     */
+    byte[] encode(StockTrade trade);
+
+    /**
+     * Writes the encoded trade at the position of the buffer, which can come from a pool
+     * and be reused for the next trade once its contents were sent or copied, and
+     * advances the position past it.
+     *
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the trade doesn't fit in the remaining space; the
+     *                                          position is then unchanged
+     */
+    int encode(StockTrade trade, ByteBuffer buffer);
+
+    /**
+     * Decodes the trade between the position and the limit of the buffer.
+     */
+    StockTrade decode(ByteBuffer data);
+
+    default StockTrade decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    default StockTrade decode(SdkBytes data) {
+        return decode(data.asByteBuffer());
+    }
+
+    /**
+     * Returns the codec that writes trades as JSON objects.
+     */
+    static StockTradeCodec json() {
+        return JsonStockTradeCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec that writes trades in the fixed binary layout of
+     * {@link BinaryStockTradeCodec}.
+     */
+    static StockTradeCodec binary() {
+        return BinaryStockTradeCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec with the given name, "json" or "binary".
+     */
+    static StockTradeCodec named(String name) {
+        return switch (name) {
+            case "json" -> json();
+            case "binary" -> binary();
+            default -> throw new IllegalArgumentException("Unknown codec " + name + "; use json or binary");
+        };
+    }
+}
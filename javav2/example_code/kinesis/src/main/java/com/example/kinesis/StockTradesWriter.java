@@ -5,10 +5,8 @@ package com.example.kinesis;
 
 // snippet-start:[kinesis.java2.putrecord.main]
 // snippet-start:[kinesis.java2.putrecord.import]
-import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
-import software.amazon.awssdk.services.kinesis.model.PutRecordRequest;
 import software.amazon.awssdk.services.kinesis.model.KinesisException;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
@@ -23,22 +21,29 @@ import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
  * https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/get-started.html
  */
 public class StockTradesWriter {
+    // The number of trades the example writes unless another count is given.
+    private static final int DEFAULT_TRADE_COUNT = 50;
+
     public static void main(String[] args) {
         final String usage = """
 
                 Usage:
-                    <streamName>
+                    <streamName> [codec] [count]
 
                 Where:
                     streamName - The Amazon Kinesis data stream to which records are written (for example, StockTradeStream)
+                    codec - How the trades are encoded, json (the default) or binary; GetRecords must use the same codec
+                    count - The number of trades to write (default: 50)
                 """;
 
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 3) {
             System.out.println(usage);
             System.exit(1);
         }
 
         String streamName = args[0];
+        StockTradeCodec codec = StockTradeCodec.named(args.length > 1 ? args[1] : "json");
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TRADE_COUNT;
         Region region = Region.US_EAST_1;
         KinesisClient kinesisClient = KinesisClient.builder()
                 .region(region)
@@ -46,22 +51,35 @@ public class StockTradesWriter {
 
         // Ensure that the Kinesis Stream is valid.
         validateStream(kinesisClient, streamName);
-        setStockData(kinesisClient, streamName);
+        setStockData(kinesisClient, streamName, codec, count);
         kinesisClient.close();
     }
 
     public static void setStockData(KinesisClient kinesisClient, String streamName) {
-        try {
-            // Repeatedly send stock trades with a 100 milliseconds wait in between.
-            StockTradeGenerator stockTradeGenerator = new StockTradeGenerator();
+        setStockData(kinesisClient, streamName, StockTradeCodec.json(), DEFAULT_TRADE_COUNT);
+    }
 
-            // Put in 50 Records for this example.
-            int index = 50;
-            for (int x = 0; x < index; x++) {
+    public static void setStockData(KinesisClient kinesisClient, String streamName, StockTradeCodec codec,
+            int count) {
+        // Buffer the trades per shard and send them in aggregated PutRecords batches,
+        // instead of one PutRecord call per trade.
+        StockTradeGenerator stockTradeGenerator = new StockTradeGenerator();
+        try (KinesisBatchProducer producer = new KinesisBatchProducer(kinesisClient, streamName,
+                KinesisBatchProducer.Config.defaults())) {
+            for (int x = 0; x < count; x++) {
                 StockTrade trade = stockTradeGenerator.getRandomTrade();
-                sendStockTrade(trade, kinesisClient, streamName);
-                Thread.sleep(100);
+                byte[] bytes = codec.encode(trade);
+
+                // We use the ticker symbol as the partition key, explained in the
+                // Supplemental Information section below.
+                producer.add(trade.getTickerSymbol(), bytes);
             }
+            producer.flush();
+
+            KinesisBatchProducer.Stats stats = producer.stats();
+            System.out.printf("Put %d trades in %d Kinesis records with %d requests; %d failed%n",
+                    stats.userRecordsPut(), stats.kinesisRecordsPut(), stats.requests(),
+                    stats.failedUserRecords());
 
         } catch (KinesisException | InterruptedException e) {
             System.err.println(e.getMessage());
@@ -70,32 +88,6 @@ public class StockTradesWriter {
         System.out.println("Done");
     }
 
-    private static void sendStockTrade(StockTrade trade, KinesisClient kinesisClient,
-            String streamName) {
-        byte[] bytes = trade.toJsonAsBytes();
-
-        // The bytes could be null if there is an issue with the JSON serialization by
-        // the Jackson JSON library.
-        if (bytes == null) {
-            System.out.println("Could not get JSON bytes for stock trade");
-            return;
-        }
-
-        System.out.println("Putting trade: " + trade);
-        PutRecordRequest request = PutRecordRequest.builder()
-                .partitionKey(trade.getTickerSymbol()) // We use the ticker symbol as the partition key, explained in
-                                                       // the Supplemental Information section below.
-                .streamName(streamName)
-                .data(SdkBytes.fromByteArray(bytes))
-                .build();
-
-        try {
-            kinesisClient.putRecord(request);
-        } catch (KinesisException e) {
-            System.err.println(e.getMessage());
-        }
-    }
-
     private static void validateStream(KinesisClient kinesisClient, String streamName) {
         try {
             DescribeStreamRequest describeStreamRequest = DescribeStreamRequest.builder()
@@ -0,0 +1,132 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.kinesis.benchmark;
+
+import com.example.kinesis.StockTrade;
+import com.example.kinesis.StockTradeCodec;
+import com.example.kinesis.StockTradeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark that compares the JSON and the binary {@link StockTradeCodec} on the
+ * trades of {@link StockTradeGenerator}, as StockTradesWriter encodes them and
+ * GetRecords decodes them.
+ *
+ * - encode: a trade into a new array of its size, which is what the producer buffers;
+ * - encodeIntoPooledBuffer: a trade into a buffer that is reused for every trade;
+ * - decode: a trade from an array, as it comes out of an aggregated record;
+ * - decodeFromSdkBytes: a trade from the SdkBytes of a plain record, without copying it.
+ *
+ * Running {@link #main(String[])} first prints the mean size of a trade in each format,
+ * and then the throughput in trades per microsecond and, from the GC profiler, the bytes
+ * allocated per trade (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockTradeCodecBenchmark {
+
+    private static final int TRADES = 1024;
+
+    @Param({"json", "binary"})
+    public String codecName;
+
+    private StockTradeCodec codec;
+    private StockTrade[] trades;
+    private byte[][] encoded;
+    private SdkBytes[] received;
+    private ByteBuffer pooled;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        codec = StockTradeCodec.named(codecName);
+        trades = trades();
+        encoded = new byte[TRADES][];
+        received = new SdkBytes[TRADES];
+        for (int i = 0; i < TRADES; i++) {
+            encoded[i] = codec.encode(trades[i]);
+            received[i] = SdkBytes.fromByteArrayUnsafe(encoded[i]);
+        }
+        pooled = ByteBuffer.allocate(1024);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(trades[nextIndex()]);
+    }
+
+    @Benchmark
+    public int encodeIntoPooledBuffer() {
+        pooled.clear();
+        return codec.encode(trades[nextIndex()], pooled);
+    }
+
+    @Benchmark
+    public StockTrade decode() {
+        return codec.decode(encoded[nextIndex()]);
+    }
+
+    @Benchmark
+    public StockTrade decodeFromSdkBytes() {
+        return codec.decode(received[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (TRADES - 1);
+        return next;
+    }
+
+    private static StockTrade[] trades() {
+        StockTradeGenerator generator = new StockTradeGenerator();
+        StockTrade[] trades = new StockTrade[TRADES];
+        for (int i = 0; i < TRADES; i++) {
+            trades[i] = generator.getRandomTrade();
+        }
+        return trades;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        StockTrade[] trades = trades();
+        for (String name : new String[] {"json", "binary"}) {
+            StockTradeCodec codec = StockTradeCodec.named(name);
+            long bytes = 0;
+            for (StockTrade trade : trades) {
+                bytes += codec.encode(trade).length;
+            }
+            System.out.printf("%s: %.1f bytes per trade%n", name, (double) bytes / trades.length);
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine).addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(StockTradeCodecBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,276 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class KinesisBatchProducerTest {
+    private static final String STREAM_NAME = "stream";
+    private static final BigInteger MIDDLE = BigInteger.ONE.shiftLeft(127);
+
+    @Test
+    void writesEveryUserRecordToTheShardOfItsPartitionKey() throws Exception {
+        FakeStream stream = new FakeStream();
+        try (KinesisBatchProducer producer = new KinesisBatchProducer(stream, STREAM_NAME,
+            config(true, 10, Duration.ofMillis(1)))) {
+            for (int i = 0; i < 1000; i++) {
+                producer.add("key-" + i, ("record-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            producer.flush();
+
+            KinesisBatchProducer.Stats stats = producer.stats();
+            assertEquals(1000, stats.userRecordsPut());
+            assertTrue(stats.kinesisRecordsPut() < 10, stats.toString());
+            assertEquals(0, stats.bufferedRecords());
+        }
+        List<String> records = new ArrayList<>();
+        for (PutRecordsRequestEntry entry : stream.entries()) {
+            assertNull(entry.explicitHashKey());
+            String shardId = FakeStream.shardOf(entry);
+            for (RecordAggregator.UserRecord record
+                : RecordAggregator.deaggregate(entry.partitionKey(), entry.data().asByteArray())) {
+                // Kinesis routes the aggregated record by its own key; each user record in it must belong there.
+                assertEquals(shardId, FakeStream.shardOf(KinesisBatchProducer.hash(record.partitionKey())));
+                records.add(new String(record.data(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(1000, records.size());
+        assertEquals(1000, records.stream().distinct().count());
+        // The shard map was right, so the stream wasn't listed again.
+        assertEquals(1, stream.listShardsCalls.get());
+    }
+
+    @Test
+    void sendsOnlyTheFailedEntriesAgain() throws Exception {
+        FakeStream stream = new FakeStream();
+        stream.failKeys = key -> Integer.parseInt(key.substring("key-".length())) % 3 == 0;
+        List<String> keys = new ArrayList<>();
+        // One request at a time, so that a request's failed entries are back in their shards before the next
+        // request is taken.
+        try (KinesisBatchProducer producer = new KinesisBatchProducer(stream, STREAM_NAME,
+            new KinesisBatchProducer.Config(false, 51_200, Duration.ofSeconds(30), 1, 10_000, 10,
+                Duration.ofMillis(1), 10_000, 1024 * 1024))) {
+            for (int i = 0; i < 30; i++) {
+                keys.add("key-" + i);
+                producer.add("key-" + i, new byte[10]);
+            }
+            producer.flush();
+
+            KinesisBatchProducer.Stats stats = producer.stats();
+            assertEquals(30, stats.userRecordsPut());
+            assertEquals(10, stats.retriedEntries());
+            assertEquals(10, stats.throttledEntries());
+            assertEquals(0, stats.failedUserRecords());
+        }
+        // The flusher may send a first request before every record is added, so the entries are told apart by
+        // whether their key was sent before rather than by the request they are in.
+        Set<String> sent = new HashSet<>();
+        List<String> firstAttempts = new ArrayList<>();
+        List<String> resent = new ArrayList<>();
+        for (String key : stream.requests().stream().flatMap(List::stream).toList()) {
+            (sent.add(key) ? firstAttempts : resent).add(key);
+        }
+        assertEquals(keys.stream().sorted().toList(), firstAttempts.stream().sorted().toList());
+        List<String> failed = keys.stream().filter(stream.failKeys).toList();
+        // Only the failed entries were sent again, and each shard kept their order.
+        assertEquals(failed.stream().sorted().toList(), resent.stream().sorted().toList());
+        for (String shardId : List.of("shard-0", "shard-1")) {
+            assertEquals(ofShard(failed, shardId), ofShard(resent, shardId));
+        }
+    }
+
+    @Test
+    void countsTheEntriesThatStillFailAfterTheLastAttempt() throws Exception {
+        FakeStream stream = new FakeStream();
+        stream.failKeys = key -> true;
+        stream.failEveryRequest = true;
+        try (KinesisBatchProducer producer = new KinesisBatchProducer(stream, STREAM_NAME,
+            config(false, 3, Duration.ofMillis(1)))) {
+            for (int i = 0; i < 5; i++) {
+                producer.add("key-" + i, new byte[10]);
+            }
+            producer.flush();
+
+            KinesisBatchProducer.Stats stats = producer.stats();
+            assertEquals(0, stats.userRecordsPut());
+            assertEquals(5, stats.failedUserRecords());
+            assertEquals(10, stats.retriedEntries());
+        }
+    }
+
+    @Test
+    void releasesWaitingFlushesWhenTheSenderStops() throws Exception {
+        FakeStream stream = new FakeStream();
+        // The first response reports other shards, so the producer lists the stream again, which fails
+        // with an error it doesn't expect.
+        stream.wrongShards = true;
+        stream.failListingAfter = 1;
+        stream.blockPuts = new CountDownLatch(1);
+        KinesisBatchProducer producer = new KinesisBatchProducer(stream, STREAM_NAME,
+            new KinesisBatchProducer.Config(false, 51_200, Duration.ofMillis(1), 1, 10_000, 3, Duration.ofMillis(1),
+                10_000, 1024 * 1024));
+        try {
+            for (int i = 0; i < 600; i++) {
+                producer.add("key-" + i, new byte[10]);
+            }
+            stream.blockPuts.countDown();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), producer::flush);
+
+            KinesisBatchProducer.Stats stats = producer.stats();
+            assertEquals(0, stats.bufferedRecords());
+            assertTrue(stats.failedUserRecords() > 0, stats.toString());
+            assertEquals(600, stats.userRecordsPut() + stats.failedUserRecords());
+            assertInstanceOf(IllegalStateException.class, producer.failure().orElseThrow());
+            assertThrows(IllegalStateException.class, () -> producer.add("key", new byte[10]));
+        } finally {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), producer::close);
+        }
+    }
+
+    // The buffer time is long, so the records are sent when the test flushes them.
+    private static KinesisBatchProducer.Config config(boolean aggregate, int maxAttempts, Duration retryBaseDelay) {
+        return new KinesisBatchProducer.Config(aggregate, 51_200, Duration.ofSeconds(30), 4, 10_000, maxAttempts,
+            retryBaseDelay, 10_000, 1024 * 1024);
+    }
+
+    private static List<String> ofShard(List<String> keys, String shardId) {
+        return keys.stream()
+            .filter(key -> FakeStream.shardOf(KinesisBatchProducer.hash(key)).equals(shardId))
+            .toList();
+    }
+
+    /**
+     * A stream of two shards that split the hash key range in half. Only PutRecords and
+     * ListShards are implemented. The entries whose partition key failKeys picks fail the
+     * first time they are put, or every time with failEveryRequest.
+     */
+    private static final class FakeStream implements KinesisClient {
+        private final List<PutRecordsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger listShardsCalls = new AtomicInteger();
+        private final Set<String> putKeys = new HashSet<>();
+        volatile Predicate<String> failKeys = key -> false;
+        volatile boolean failEveryRequest;
+        volatile boolean wrongShards;
+        volatile int failListingAfter = Integer.MAX_VALUE;
+        volatile CountDownLatch blockPuts;
+
+        // Kinesis routes a record by its explicit hash key if it has one, and by the MD5 hash of its partition
+        // key otherwise.
+        static String shardOf(PutRecordsRequestEntry entry) {
+            return shardOf(entry.explicitHashKey() != null ? new BigInteger(entry.explicitHashKey())
+                : KinesisBatchProducer.hash(entry.partitionKey()));
+        }
+
+        static String shardOf(BigInteger hashKey) {
+            return hashKey.compareTo(MIDDLE) < 0 ? "shard-0" : "shard-1";
+        }
+
+        @Override
+        public ListShardsResponse listShards(ListShardsRequest request) {
+            if (listShardsCalls.incrementAndGet() > failListingAfter) {
+                throw new IllegalStateException("Unexpected listing failure");
+            }
+            return ListShardsResponse.builder()
+                .shards(shard("shard-0", BigInteger.ZERO, MIDDLE.subtract(BigInteger.ONE)),
+                    shard("shard-1", MIDDLE, BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE)))
+                .build();
+        }
+
+        @Override
+        public PutRecordsResponse putRecords(PutRecordsRequest request) {
+            CountDownLatch latch = blockPuts;
+            if (latch != null) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            requests.add(request);
+            List<PutRecordsResultEntry> results = new ArrayList<>();
+            int failed = 0;
+            for (int i = 0; i < request.records().size(); i++) {
+                String key = request.records().get(i).partitionKey();
+                boolean firstAttempt;
+                synchronized (putKeys) {
+                    firstAttempt = putKeys.add(key);
+                }
+                if ((failEveryRequest || firstAttempt) && failKeys.test(key)) {
+                    failed++;
+                    results.add(PutRecordsResultEntry.builder()
+                        .errorCode("ProvisionedThroughputExceededException")
+                        .errorMessage("Rate exceeded for shard")
+                        .build());
+                } else {
+                    String shardId = shardOf(request.records().get(i));
+                    results.add(PutRecordsResultEntry.builder()
+                        .shardId(wrongShards ? shardId + "-new" : shardId)
+                        .sequenceNumber(String.valueOf(i))
+                        .build());
+                }
+            }
+            return PutRecordsResponse.builder().failedRecordCount(failed).records(results).build();
+        }
+
+        List<PutRecordsRequestEntry> entries() {
+            synchronized (requests) {
+                return requests.stream().flatMap(request -> request.records().stream()).toList();
+            }
+        }
+
+        List<List<String>> requests() {
+            synchronized (requests) {
+                return requests.stream()
+                    .map(request -> request.records().stream().map(PutRecordsRequestEntry::partitionKey).toList())
+                    .toList();
+            }
+        }
+
+        private static Shard shard(String shardId, BigInteger start, BigInteger end) {
+            return Shard.builder()
+                .shardId(shardId)
+                .hashKeyRange(range -> range.startingHashKey(start.toString()).endingHashKey(end.toString()))
+                .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "kinesis";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,402 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.kinesis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.ChildShard;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+import software.amazon.awssdk.services.kinesis.model.StartingPosition;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEvent;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardEventStream;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardRequest;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardResponse;
+import software.amazon.awssdk.services.kinesis.model.SubscribeToShardResponseHandler;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class KinesisEfoConsumerTest {
+    private static final String STREAM_NAME = "stream";
+    private static final String CONSUMER_ARN = "arn:aws:kinesis:us-east-1:123456789012:stream/stream/consumer/c:1";
+    private static final KinesisEfoConsumer.Config CONFIG = new KinesisEfoConsumer.Config(
+        ShardIteratorType.TRIM_HORIZON, Duration.ofMillis(1_500), Duration.ofMillis(100), Duration.ofMillis(100),
+        2, 3, Duration.ofMillis(10), Duration.ofMinutes(1));
+
+    @TempDir
+    Path directory;
+
+    private FakeStream stream;
+    private final List<KinesisEfoConsumer> consumers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stream = new FakeStream();
+    }
+
+    @AfterEach
+    void tearDown() {
+        consumers.forEach(KinesisEfoConsumer::close);
+        stream.close();
+    }
+
+    @Test
+    void balancesTheShardsBetweenTwoWorkers() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            stream.addShard("shard-" + i, List.of(), 0, false);
+        }
+        ShardLeaseTable leases = leaseTable();
+        KinesisEfoConsumer first = consumer("worker-1", leases);
+        first.subscribe(new Collector());
+        await(() -> first.stats().leasesHeld() == 4);
+
+        KinesisEfoConsumer second = consumer("worker-2", leaseTable());
+        second.subscribe(new Collector());
+        await(() -> first.stats().leasesHeld() == 2 && second.stats().leasesHeld() == 2);
+
+        assertEquals(2, first.stats().leasesLost());
+        Map<String, Long> owners = leases.list().stream()
+            .collect(Collectors.groupingBy(ShardLeaseTable.Lease::owner, Collectors.counting()));
+        assertEquals(Map.of("worker-1", 2L, "worker-2", 2L), owners);
+    }
+
+    @Test
+    void readsChildShardsAfterTheirParentReachedItsEnd() throws Exception {
+        stream.addShard("parent", List.of(), 3, true);
+        stream.addShard("child-1", List.of("parent"), 2, false);
+        stream.addShard("child-2", List.of("parent"), 2, false);
+        ShardLeaseTable leases = leaseTable();
+        KinesisEfoConsumer consumer = consumer("worker-1", leases);
+        Collector collector = new Collector();
+        consumer.subscribe(collector);
+
+        List<String> records = collector.records(7);
+        assertEquals(List.of("parent-0", "parent-1", "parent-2"), records.subList(0, 3));
+        assertEquals(List.of("child-1-0", "child-1-1", "child-2-0", "child-2-1"),
+            records.subList(3, 7).stream().sorted().toList());
+        await(() -> leases.list().stream().anyMatch(lease -> lease.shardId().equals("parent") && lease.finished()));
+        // The children were subscribed to only after the parent's last batch was checkpointed.
+        List<String> subscribed = stream.subscribedShards();
+        assertEquals("parent", subscribed.get(0));
+        assertTrue(subscribed.indexOf("child-1") > subscribed.lastIndexOf("parent"), subscribed.toString());
+        assertTrue(subscribed.indexOf("child-2") > subscribed.lastIndexOf("parent"), subscribed.toString());
+    }
+
+    @Test
+    void subscribesAgainAfterASubscriptionCompletes() throws Exception {
+        stream.addShard("shard-0", List.of(), 5, false);
+        stream.eventsPerSubscription = 2;
+        KinesisEfoConsumer consumer = consumer("worker-1", leaseTable());
+        Collector collector = new Collector();
+        consumer.subscribe(collector);
+
+        assertEquals(List.of("shard-0-0", "shard-0-1", "shard-0-2", "shard-0-3", "shard-0-4"),
+            collector.records(5));
+        List<StartingPosition> positions = stream.startingPositions("shard-0");
+        assertEquals(ShardIteratorType.TRIM_HORIZON, positions.get(0).type());
+        assertEquals(ShardIteratorType.AFTER_SEQUENCE_NUMBER, positions.get(1).type());
+        assertEquals(FakeStream.sequenceNumber(1), positions.get(1).sequenceNumber());
+        assertEquals(FakeStream.sequenceNumber(3), positions.get(2).sequenceNumber());
+        assertTrue(consumer.stats().subscriptions() >= 3);
+    }
+
+    @Test
+    void anotherWorkerStartsAfterTheCheckpoint() throws Exception {
+        stream.addShard("shard-0", List.of(), 6, false);
+        Path file = directory.resolve("leases.json");
+        KinesisEfoConsumer first = consumer("worker-1", new FileShardLeaseTable(file));
+        Collector collector = new Collector();
+        collector.checkpointThrough = "shard-0-2";
+        first.subscribe(collector);
+        collector.records(6);
+        first.close();
+
+        ShardLeaseTable.Lease lease = new FileShardLeaseTable(file).list().get(0);
+        assertEquals(FakeStream.sequenceNumber(2), lease.checkpoint());
+        assertNull(lease.owner());
+        assertEquals(1, first.stats().checkpoints());
+
+        KinesisEfoConsumer second = consumer("worker-2", new FileShardLeaseTable(file));
+        Collector next = new Collector();
+        second.subscribe(next);
+        assertEquals(List.of("shard-0-3", "shard-0-4", "shard-0-5"), next.records(3));
+        List<StartingPosition> positions = stream.startingPositions("shard-0");
+        StartingPosition resumed = positions.get(positions.size() - 1);
+        assertEquals(ShardIteratorType.AFTER_SEQUENCE_NUMBER, resumed.type());
+        assertEquals(FakeStream.sequenceNumber(2), resumed.sequenceNumber());
+    }
+
+    @Test
+    void releasesItsLeasesWhenItFails() throws Exception {
+        stream.addShard("shard-0", List.of(), 0, false);
+        stream.addShard("shard-1", List.of(), 0, false);
+        stream.subscribeFailure = ResourceNotFoundException.builder().message("The consumer was deleted").build();
+        ShardLeaseTable leases = leaseTable();
+        KinesisEfoConsumer consumer = consumer("worker-1", leases);
+        Collector collector = new Collector();
+        consumer.subscribe(collector);
+
+        assertInstanceOf(ResourceNotFoundException.class, collector.error.get(5, TimeUnit.SECONDS));
+        await(() -> leases.list().size() == 2 && leases.list().stream().allMatch(lease -> lease.owner() == null));
+        assertEquals(0, consumer.stats().leasesHeld());
+
+        // Nothing renews or takes leases afterwards.
+        List<ShardLeaseTable.Lease> released = leases.list();
+        Thread.sleep(5 * CONFIG.leaseRenewInterval().toMillis());
+        assertEquals(released, leases.list());
+    }
+
+    private ShardLeaseTable leaseTable() {
+        return new FileShardLeaseTable(directory.resolve("leases.json"));
+    }
+
+    private KinesisEfoConsumer consumer(String workerId, ShardLeaseTable leases) {
+        KinesisEfoConsumer consumer = new KinesisEfoConsumer(stream, STREAM_NAME, CONSUMER_ARN, workerId, leases,
+            CONFIG);
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    // Requests one batch at a time and checkpoints the batches up to a given record.
+    private static final class Collector implements Subscriber<KinesisEfoConsumer.ShardBatch> {
+        private final BlockingQueue<String> records = new LinkedBlockingQueue<>();
+        private final CompletableFuture<Throwable> error = new CompletableFuture<>();
+        private volatile String checkpointThrough;
+        private volatile boolean checkpointing = true;
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(KinesisEfoConsumer.ShardBatch batch) {
+            batch.records().forEach(record -> records.add(record.partitionKey()));
+            boolean reached = batch.records().stream()
+                .anyMatch(record -> record.partitionKey().equals(checkpointThrough));
+            if (checkpointing) {
+                batch.checkpoint();
+            }
+            if (reached) {
+                checkpointing = false;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.complete(t);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        List<String> records(int count) throws InterruptedException {
+            List<String> received = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String record = records.poll(20, TimeUnit.SECONDS);
+                assertNotNull(record, "Received only " + received);
+                received.add(record);
+            }
+            return received;
+        }
+    }
+
+    // A stream whose shards hold a fixed list of records. Open shards keep their subscriptions open once
+    // every record was sent; closed shards end with an event that names their children.
+    private static final class FakeStream implements KinesisAsyncClient {
+        private final Map<String, Shard> shards = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final Map<String, List<Record>> records = new LinkedHashMap<>();
+        private final Map<String, Boolean> closedShards = new LinkedHashMap<>();
+        private final List<SubscribeToShardRequest> subscriptions = Collections.synchronizedList(new ArrayList<>());
+        private final ExecutorService events = Executors.newSingleThreadExecutor();
+        private volatile int eventsPerSubscription = Integer.MAX_VALUE;
+        private volatile RuntimeException subscribeFailure;
+
+        static String sequenceNumber(int i) {
+            return String.format("%020d", i);
+        }
+
+        synchronized void addShard(String shardId, List<String> parents, int recordCount, boolean closed) {
+            Shard.Builder shard = Shard.builder().shardId(shardId);
+            if (!parents.isEmpty()) {
+                shard.parentShardId(parents.get(0));
+            }
+            shards.put(shardId, shard.build());
+            List<Record> shardRecords = new ArrayList<>();
+            for (int i = 0; i < recordCount; i++) {
+                shardRecords.add(Record.builder().partitionKey(shardId + "-" + i).sequenceNumber(sequenceNumber(i))
+                    .data(SdkBytes.fromUtf8String("data")).build());
+            }
+            records.put(shardId, shardRecords);
+            closedShards.put(shardId, closed);
+        }
+
+        List<String> subscribedShards() {
+            synchronized (subscriptions) {
+                return subscriptions.stream().map(SubscribeToShardRequest::shardId).toList();
+            }
+        }
+
+        List<StartingPosition> startingPositions(String shardId) {
+            synchronized (subscriptions) {
+                return subscriptions.stream().filter(request -> request.shardId().equals(shardId))
+                    .map(SubscribeToShardRequest::startingPosition).toList();
+            }
+        }
+
+        @Override
+        public CompletableFuture<ListShardsResponse> listShards(ListShardsRequest request) {
+            synchronized (shards) {
+                return CompletableFuture.completedFuture(
+                    ListShardsResponse.builder().shards(List.copyOf(shards.values())).build());
+            }
+        }
+
+        @Override
+        public CompletableFuture<Void> subscribeToShard(SubscribeToShardRequest request,
+                                                        SubscribeToShardResponseHandler handler) {
+            subscriptions.add(request);
+            if (subscribeFailure != null) {
+                handler.exceptionOccurred(subscribeFailure);
+                return CompletableFuture.failedFuture(subscribeFailure);
+            }
+            List<SubscribeToShardEventStream> shardEvents = new ArrayList<>();
+            boolean holdOpen;
+            synchronized (this) {
+                List<Record> shardRecords = records.get(request.shardId());
+                StartingPosition position = request.startingPosition();
+                int start = switch (position.type()) {
+                    case TRIM_HORIZON -> 0;
+                    case AFTER_SEQUENCE_NUMBER -> Integer.parseInt(position.sequenceNumber()) + 1;
+                    default -> shardRecords.size();
+                };
+                for (int i = start; i < shardRecords.size() && shardEvents.size() < eventsPerSubscription; i++) {
+                    shardEvents.add(SubscribeToShardEvent.builder().records(shardRecords.get(i))
+                        .continuationSequenceNumber(shardRecords.get(i).sequenceNumber()).millisBehindLatest(0L)
+                        .build());
+                }
+                boolean sentAll = start + shardEvents.size() >= shardRecords.size();
+                if (sentAll && closedShards.get(request.shardId()) && shardEvents.size() < eventsPerSubscription) {
+                    List<ChildShard> children = shards.values().stream()
+                        .filter(shard -> request.shardId().equals(shard.parentShardId()))
+                        .map(shard -> ChildShard.builder().shardId(shard.shardId())
+                            .parentShards(request.shardId()).build())
+                        .toList();
+                    shardEvents.add(SubscribeToShardEvent.builder().records(List.of()).childShards(children)
+                        .millisBehindLatest(0L).build());
+                }
+                holdOpen = sentAll && !closedShards.get(request.shardId());
+            }
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            handler.responseReceived(SubscribeToShardResponse.builder().build());
+            handler.onEventStream(SdkPublisher.adapt(new EventPublisher(shardEvents, holdOpen, done)));
+            return done;
+        }
+
+        @Override
+        public String serviceName() {
+            return "kinesis";
+        }
+
+        @Override
+        public void close() {
+            events.shutdownNow();
+        }
+
+        // Sends the events of one subscription as they are requested, one at a time on the events thread.
+        private final class EventPublisher implements Publisher<SubscribeToShardEventStream> {
+            private final List<SubscribeToShardEventStream> shardEvents;
+            private final boolean holdOpen;
+            private final CompletableFuture<Void> done;
+            private long demand;
+            private int next;
+            private boolean cancelled;
+
+            EventPublisher(List<SubscribeToShardEventStream> shardEvents, boolean holdOpen,
+                           CompletableFuture<Void> done) {
+                this.shardEvents = shardEvents;
+                this.holdOpen = holdOpen;
+                this.done = done;
+            }
+
+            @Override
+            public void subscribe(Subscriber<? super SubscribeToShardEventStream> s) {
+                s.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        events.execute(() -> {
+                            demand += n;
+                            emit(s);
+                        });
+                    }
+
+                    @Override
+                    public void cancel() {
+                        events.execute(() -> {
+                            cancelled = true;
+                            done.complete(null);
+                        });
+                    }
+                });
+                events.execute(() -> emit(s));
+            }
+
+            private void emit(Subscriber<? super SubscribeToShardEventStream> s) {
+                while (!cancelled && demand > 0 && next < shardEvents.size()) {
+                    demand--;
+                    s.onNext(shardEvents.get(next++));
+                }
+                if (!cancelled && !holdOpen && next == shardEvents.size() && !done.isDone()) {
+                    s.onComplete();
+                    done.complete(null);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.kinesis.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+import software.amazon.awssdk.services.kinesis.model.ShardIteratorType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class KinesisPollingConsumerTest {
+    private static final String STREAM_NAME = "stream";
+
+    @Test
+    void readsTheChildrenOfASplitShardAfterTheParent() throws Exception {
+        FakeStream stream = new FakeStream();
+        stream.addShard("parent", null, 3, true);
+        stream.addShard("child-1", "parent", 2, false);
+        stream.addShard("child-2", "parent", 2, false);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+
+        try (KinesisPollingConsumer consumer = new KinesisPollingConsumer(stream, STREAM_NAME,
+            (shardId, records) -> records.forEach(record -> handled.add(record.data().asUtf8String())),
+            config(100))) {
+            consumer.start();
+            await(() -> handled.size() == 7);
+
+            assertEquals(List.of("parent-0", "parent-1", "parent-2"), handled.subList(0, 3));
+            assertEquals(List.of("child-1-0", "child-1-1", "child-2-0", "child-2-1"),
+                handled.subList(3, 7).stream().sorted().toList());
+            await(() -> consumer.stats().finishedShards() == 1 && consumer.stats().activeShards() == 2);
+            assertTrue(consumer.failure().isEmpty());
+        }
+        // The children were read from their beginning, and only once the parent was read to its end.
+        List<String> events = stream.events();
+        int parentEnd = events.indexOf("end parent");
+        assertTrue(parentEnd >= 0, events.toString());
+        for (String child : List.of("child-1", "child-2")) {
+            assertTrue(events.indexOf("iterator " + child + " TRIM_HORIZON") > parentEnd, events.toString());
+        }
+        // The parent's end listed the stream again at once, rather than at the next one-minute interval.
+        assertEquals(2, stream.listings());
+    }
+
+    @Test
+    void readsAShardAtMostFiveTimesASecond() throws Exception {
+        FakeStream stream = new FakeStream();
+        stream.addShard("shard-0", null, 100, false);
+        stream.addShard("shard-1", null, 100, false);
+
+        try (KinesisPollingConsumer consumer = new KinesisPollingConsumer(stream, STREAM_NAME,
+            (shardId, records) -> { }, config(1))) {
+            consumer.start();
+            await(() -> stream.calls("shard-0").size() >= 6 && stream.calls("shard-1").size() >= 6);
+        }
+        for (String shardId : List.of("shard-0", "shard-1")) {
+            List<Long> calls = stream.calls(shardId);
+            for (int i = 1; i < calls.size(); i++) {
+                long gap = calls.get(i) - calls.get(i - 1);
+                assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(195), shardId + " was read again after " + gap + " ns");
+            }
+        }
+    }
+
+    private static KinesisPollingConsumer.Config config(int recordsPerCall) {
+        return new KinesisPollingConsumer.Config(ShardIteratorType.TRIM_HORIZON, recordsPerCall, 5,
+            Duration.ofMillis(50), Duration.ofMinutes(1), 3, Duration.ofMillis(10), Duration.ofMinutes(1));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A stream whose shards hold a fixed number of records. An iterator is the shard ID and
+     * the index of the next record; a closed shard returns no next iterator after its last
+     * record, and an open one keeps returning an empty page there.
+     */
+    private static final class FakeStream implements KinesisClient {
+        private record FakeShard(String shardId, String parentShardId, int records, boolean closed) {
+        }
+
+        private final Map<String, FakeShard> shards = new LinkedHashMap<>();
+        private final List<String> events = new ArrayList<>();
+        private final Map<String, List<Long>> calls = new LinkedHashMap<>();
+        private int listings;
+
+        synchronized void addShard(String shardId, String parentShardId, int records, boolean closed) {
+            shards.put(shardId, new FakeShard(shardId, parentShardId, records, closed));
+        }
+
+        synchronized List<String> events() {
+            return List.copyOf(events);
+        }
+
+        synchronized List<Long> calls(String shardId) {
+            return List.copyOf(calls.getOrDefault(shardId, List.of()));
+        }
+
+        synchronized int listings() {
+            return listings;
+        }
+
+        @Override
+        public synchronized ListShardsResponse listShards(ListShardsRequest request) {
+            listings++;
+            List<Shard> listed = shards.values().stream()
+                .map(shard -> Shard.builder()
+                    .shardId(shard.shardId())
+                    .parentShardId(shard.parentShardId())
+                    .sequenceNumberRange(range -> range
+                        .startingSequenceNumber("0")
+                        .endingSequenceNumber(shard.closed() ? String.valueOf(shard.records() - 1) : null))
+                    .build())
+                .toList();
+            return ListShardsResponse.builder().shards(listed).build();
+        }
+
+        @Override
+        public synchronized GetShardIteratorResponse getShardIterator(GetShardIteratorRequest request) {
+            events.add("iterator " + request.shardId() + " " + request.shardIteratorType());
+            FakeShard shard = shards.get(request.shardId());
+            int position = switch (request.shardIteratorType()) {
+                case TRIM_HORIZON -> 0;
+                case LATEST -> shard.records();
+                case AFTER_SEQUENCE_NUMBER -> Integer.parseInt(request.startingSequenceNumber()) + 1;
+                default -> throw new IllegalArgumentException(request.shardIteratorTypeAsString());
+            };
+            return GetShardIteratorResponse.builder().shardIterator(shard.shardId() + "/" + position).build();
+        }
+
+        @Override
+        public synchronized GetRecordsResponse getRecords(GetRecordsRequest request) {
+            String[] iterator = request.shardIterator().split("/");
+            FakeShard shard = shards.get(iterator[0]);
+            int position = Integer.parseInt(iterator[1]);
+            calls.computeIfAbsent(shard.shardId(), id -> new ArrayList<>()).add(System.nanoTime());
+            int end = Math.min(shard.records(), position + request.limit());
+            List<Record> records = new ArrayList<>();
+            for (int i = position; i < end; i++) {
+                records.add(Record.builder()
+                    .sequenceNumber(String.valueOf(i))
+                    .partitionKey("key")
+                    .data(SdkBytes.fromUtf8String(shard.shardId() + "-" + i))
+                    .build());
+            }
+            String next = shard.shardId() + "/" + end;
+            if (shard.closed() && end == shard.records()) {
+                events.add("end " + shard.shardId());
+                next = null;
+            }
+            return GetRecordsResponse.builder()
+                .records(records)
+                .nextShardIterator(next)
+                .millisBehindLatest((long) (shard.records() - end))
+                .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "kinesis";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class RecordAggregatorTest {
+
+    @Test
+    void deaggregatesTheRecordsThatWereAggregated() {
+        RecordAggregator aggregator = new RecordAggregator();
+        List<RecordAggregator.UserRecord> added = List.of(
+            new RecordAggregator.UserRecord("AMZN", bytes("first")),
+            new RecordAggregator.UserRecord("MSFT", bytes("second")),
+            new RecordAggregator.UserRecord("AMZN", bytes("third")),
+            new RecordAggregator.UserRecord("ÄÖÜ", new byte[0]),
+            // Longer than 127 bytes, so that its length takes a two-byte varint.
+            new RecordAggregator.UserRecord("MSFT", new byte[300]));
+        for (RecordAggregator.UserRecord record : added) {
+            aggregator.add(record.partitionKey(), record.data());
+        }
+        assertEquals(5, aggregator.count());
+        assertEquals("AMZN", aggregator.partitionKey());
+        int size = aggregator.size();
+
+        byte[] aggregated = aggregator.build();
+
+        assertTrue(aggregator.isEmpty());
+        assertTrue(RecordAggregator.isAggregated(aggregated));
+        assertEquals(size, aggregated.length + "AMZN".length());
+        List<RecordAggregator.UserRecord> records = RecordAggregator.deaggregate("AMZN", aggregated);
+        assertEquals(added.size(), records.size());
+        for (int i = 0; i < added.size(); i++) {
+            assertEquals(added.get(i).partitionKey(), records.get(i).partitionKey());
+            assertArrayEquals(added.get(i).data(), records.get(i).data());
+        }
+    }
+
+    @Test
+    void endsTheRecordWithTheDigestOfTheMessage() throws Exception {
+        RecordAggregator aggregator = new RecordAggregator();
+        aggregator.add("key", bytes("data"));
+        byte[] aggregated = aggregator.build();
+
+        assertArrayEquals(RecordAggregator.MAGIC, Arrays.copyOf(aggregated, 4));
+        byte[] digest = MessageDigest.getInstance("MD5")
+            .digest(Arrays.copyOfRange(aggregated, 4, aggregated.length - 16));
+        assertArrayEquals(digest, Arrays.copyOfRange(aggregated, aggregated.length - 16, aggregated.length));
+
+        aggregated[aggregated.length - 20] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> RecordAggregator.deaggregate("key", aggregated));
+    }
+
+    @Test
+    void predictsTheSizeOfTheRecordWithAnotherUserRecord() {
+        RecordAggregator aggregator = new RecordAggregator();
+        String[] keys = {"a", "bb", "a", "ccc"};
+        for (int i = 0; i < keys.length; i++) {
+            byte[] data = new byte[i * 100];
+            int predicted = aggregator.sizeWith(keys[i], data);
+            aggregator.add(keys[i], data);
+            assertEquals(predicted, aggregator.size());
+        }
+        assertEquals(aggregator.size(), aggregator.build().length + "a".length());
+    }
+
+    @Test
+    void passesOnRecordsThatArentAggregated() {
+        byte[] data = bytes("{\"ticker\":\"AMZN\"}");
+
+        assertFalse(RecordAggregator.isAggregated(data));
+        List<RecordAggregator.UserRecord> records = RecordAggregator.deaggregate("AMZN", data);
+
+        assertEquals(1, records.size());
+        assertEquals("AMZN", records.get(0).partitionKey());
+        assertArrayEquals(data, records.get(0).data());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.kinesis;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.core.SdkBytes;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+class StockTradeCodecTest {
+    private static final StockTrade TRADE = new StockTrade("AMZN", StockTrade.TradeType.SELL, 187.25, 1200, 42);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "binary"})
+    void decodesWhatItEncodedAsAnArray(String name) {
+        StockTradeCodec codec = StockTradeCodec.named(name);
+
+        assertTrade(TRADE, codec.decode(codec.encode(TRADE)));
+        StockTrade unicode = new StockTrade("ÄÖÜ€", StockTrade.TradeType.BUY, -0.5, Long.MAX_VALUE, Long.MIN_VALUE);
+        assertTrade(unicode, codec.decode(codec.encode(unicode)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "binary"})
+    void encodesIntoALittleEndianBuffer(String name) {
+        StockTradeCodec codec = StockTradeCodec.named(name);
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(3);
+
+        int size = codec.encode(TRADE, buffer);
+
+        assertEquals(3 + size, buffer.position());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        byte[] written = Arrays.copyOfRange(buffer.array(), 3, 3 + size);
+        assertArrayEquals(codec.encode(TRADE), written);
+        buffer.flip().position(3);
+        assertTrade(TRADE, codec.decode(buffer));
+        // Decoding doesn't move the buffer.
+        assertEquals(3, buffer.position());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "binary"})
+    void decodesAReadOnlyViewOfTheSdkBytes(String name) {
+        StockTradeCodec codec = StockTradeCodec.named(name);
+        SdkBytes data = SdkBytes.fromByteArrayUnsafe(codec.encode(TRADE));
+
+        assertFalse(data.asByteBuffer().hasArray());
+        assertTrade(TRADE, codec.decode(data));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "binary"})
+    void decodesADirectBuffer(String name) {
+        StockTradeCodec codec = StockTradeCodec.named(name);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put((byte) 7);
+        codec.encode(TRADE, buffer);
+        buffer.flip().position(1);
+
+        assertTrade(TRADE, codec.decode(buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"json", "binary"})
+    void leavesThePositionWhenTheTradeDoesntFit(String name) {
+        StockTradeCodec codec = StockTradeCodec.named(name);
+        int size = codec.encode(TRADE).length;
+        ByteBuffer buffer = ByteBuffer.allocate(size + 1);
+        buffer.position(2);
+
+        assertThrows(BufferOverflowException.class, () -> codec.encode(TRADE, buffer));
+        assertEquals(2, buffer.position());
+        assertArrayEquals(new byte[size + 1], buffer.array());
+    }
+
+    @Test
+    void rejectsAnotherVersionOfTheBinaryLayout() {
+        byte[] data = StockTradeCodec.binary().encode(TRADE);
+        data[0] = BinaryStockTradeCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.binary().decode(data));
+    }
+
+    @Test
+    void rejectsTruncatedBinaryTrades() {
+        byte[] data = StockTradeCodec.binary().encode(TRADE);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> StockTradeCodec.binary().decode(Arrays.copyOf(data, data.length - 1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> StockTradeCodec.binary().decode(Arrays.copyOf(data, BinaryStockTradeCodec.HEADER_SIZE - 1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> StockTradeCodec.binary().decode(Arrays.copyOf(data, data.length + 1)));
+    }
+
+    @Test
+    void rejectsAnUnknownTradeType() {
+        byte[] data = StockTradeCodec.binary().encode(TRADE);
+        // The trade type is the byte at offset 25.
+        data[25] = (byte) StockTrade.TradeType.values().length;
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.binary().decode(data));
+
+        data[25] = -1;
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.binary().decode(data));
+    }
+
+    @Test
+    void rejectsDataThatIsntJson() {
+        byte[] data = "AMZN,SELL,187.25".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.json().decode(data));
+        assertThrows(IllegalArgumentException.class, () -> StockTradeCodec.binary().decode(data));
+    }
+
+    @Test
+    void takesTheSizeThatItReports() {
+        assertEquals(BinaryStockTradeCodec.HEADER_SIZE + 4, BinaryStockTradeCodec.INSTANCE.encodedSize(TRADE));
+        assertEquals(BinaryStockTradeCodec.INSTANCE.encodedSize(TRADE), StockTradeCodec.binary().encode(TRADE).length);
+    }
+
+    private static void assertTrade(StockTrade expected, StockTrade actual) {
+        assertEquals(expected.getTickerSymbol(), actual.getTickerSymbol());
+        assertEquals(expected.getTradeType(), actual.getTradeType());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getQuantity(), actual.getQuantity());
+        assertEquals(expected.getId(), actual.getId());
+    }
+}
@@ -0,0 +1,432 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Lists or deletes every object under a prefix of an Amazon S3 bucket, using many
+ * ListObjectsV2 and DeleteObjects requests at the same time.
+ *
+ * Listing splits the key space by prefix. A listing thread lists its prefix with a
+ * delimiter while there isn't enough queued work to keep all threads busy, and each
+ * common prefix it finds becomes a new partition for the next idle thread. Once there's
+ * enough work queued, prefixes are listed without a delimiter. Because S3 scales its
+ * request rate per prefix, partitions listed in parallel also spread the load. Keys
+ * under a prefix that has no delimiter in them are listed by a single thread, so
+ * parallelism depends on how the keys are named.
+ *
+ * Deleting streams the listed keys into DeleteObjects batches of up to 1,000 keys as
+ * soon as they arrive. A bounded number of batches is in flight; when all of them are,
+ * listing waits. Keys that DeleteObjects reports with a retryable error, such as
+ * InternalError or SlowDown, are sent again in a smaller batch with exponential backoff
+ * and jitter, and the ones that still fail are reported in the {@link Summary}
+ * instead of failing the whole run. Progress, including keys per second, is logged at
+ * a fixed interval.
+ *
+ * Keys are deleted without a version ID. In a versioning-enabled bucket, this adds
+ * delete markers instead of removing the object versions. Every listing thread and every
+ * batch in flight holds a connection, so the S3Client's HTTP client should allow
+ * listingThreads + maxBatchesInFlight connections.
+ */
+public class BucketDrainer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BucketDrainer.class);
+
+    static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final int MAX_REPORTED_FAILURES = 1000;
+    private static final Set<String> RETRYABLE_ERROR_CODES = Set.of("InternalError", "SlowDown",
+        "ServiceUnavailable", "RequestTimeout", "OperationAborted");
+
+    /**
+     * Settings for listing and deleting.
+     *
+     * @param listingThreads     the number of prefixes that are listed at the same time
+     * @param maxBatchesInFlight the number of DeleteObjects requests that are sent at the same time
+     * @param batchSize          the number of keys per DeleteObjects request, at most 1,000
+     * @param maxAttempts        the number of times a request or a failed key is sent before it's given up
+     * @param retryBaseDelay     the backoff before the second attempt; it doubles for every further attempt
+     * @param delimiter          the character sequence that separates prefixes, usually "/"; directory
+     *                           buckets only support "/"
+     * @param progressInterval   how often progress is logged
+     */
+    public record Config(int listingThreads, int maxBatchesInFlight, int batchSize, int maxAttempts,
+                         Duration retryBaseDelay, String delimiter, Duration progressInterval) {
+
+        public Config {
+            if (listingThreads < 1 || maxBatchesInFlight < 1 || maxAttempts < 1) {
+                throw new IllegalArgumentException("listingThreads, maxBatchesInFlight, and maxAttempts must be positive");
+            }
+            if (batchSize < 1 || batchSize > MAX_KEYS_PER_DELETE) {
+                throw new IllegalArgumentException("batchSize must be between 1 and " + MAX_KEYS_PER_DELETE);
+            }
+        }
+
+        /**
+         * Returns 16 listing threads, 16 batches of 1,000 keys in flight, 5 attempts starting with a
+         * 200 ms backoff, "/" as the delimiter, and progress every 10 seconds.
+         */
+        public static Config defaults() {
+            return new Config(16, 16, MAX_KEYS_PER_DELETE, 5, Duration.ofMillis(200), "/", Duration.ofSeconds(10));
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     *
+     * @param listedKeys     the number of keys that were listed
+     * @param listedBytes    the total size of the listed objects
+     * @param deletedKeys    the number of keys that were deleted
+     * @param failedKeyCount the number of keys that couldn't be deleted
+     * @param failures       the errors of the first 1,000 keys that couldn't be deleted
+     * @param elapsed        the duration of the run
+     */
+    public record Summary(long listedKeys, long listedBytes, long deletedKeys, long failedKeyCount,
+                          List<S3Error> failures, Duration elapsed) {
+
+        public double listedKeysPerSecond() {
+            return perSecond(listedKeys);
+        }
+
+        public double deletedKeysPerSecond() {
+            return perSecond(deletedKeys);
+        }
+
+        private double perSecond(long count) {
+            return count / Math.max(0.001, elapsed.toNanos() / 1e9);
+        }
+    }
+
+    private final S3Client s3Client;
+    private final Config config;
+
+    public BucketDrainer(S3Client s3Client, Config config) {
+        this.s3Client = s3Client;
+        this.config = config;
+    }
+
+    /**
+     * Lists all objects under the prefix in parallel, for example to take an inventory.
+     *
+     * @param bucketName the name of the S3 bucket
+     * @param prefix     the prefix to list, or "" for the whole bucket
+     * @param action     called for every object, from several threads at once and in no particular order
+     * @return the number and total size of the listed objects
+     * @throws SdkException if a listing request failed after all attempts
+     */
+    public Summary list(String bucketName, String prefix, Consumer<S3Object> action) {
+        Run run = new Run(bucketName, null);
+        return run.execute(prefix, objects -> objects.forEach(action));
+    }
+
+    /**
+     * Deletes all objects under the prefix.
+     *
+     * @param bucketName the name of the S3 bucket
+     * @param prefix     the prefix to empty, or "" for the whole bucket
+     * @return the number of deleted keys and the keys that couldn't be deleted
+     * @throws SdkException if a listing request failed after all attempts; the keys listed before that
+     *                      are still deleted
+     */
+    public Summary deleteAll(String bucketName, String prefix) {
+        ExecutorService deleteExecutor = Executors.newFixedThreadPool(config.maxBatchesInFlight(),
+            Thread.ofPlatform().daemon().name("bucket-delete-", 0).factory());
+        try {
+            Run run = new Run(bucketName, deleteExecutor);
+            return run.execute(prefix, run::addToBatch);
+        } finally {
+            deleteExecutor.shutdownNow();
+        }
+    }
+
+    // The state of one list or delete run.
+    private final class Run {
+        private final String bucketName;
+        private final ExecutorService deleteExecutor;
+        private final Semaphore batchesInFlight = new Semaphore(config.maxBatchesInFlight());
+        private final BlockingDeque<String> prefixes = new LinkedBlockingDeque<>();
+        private final AtomicInteger pendingPrefixes = new AtomicInteger();
+        private final AtomicReference<RuntimeException> listingFailure = new AtomicReference<>();
+        private final AtomicLong listedKeys = new AtomicLong();
+        private final AtomicLong listedBytes = new AtomicLong();
+        private final AtomicLong deletedKeys = new AtomicLong();
+        private final AtomicLong failedKeys = new AtomicLong();
+        private final List<S3Error> failures = Collections.synchronizedList(new ArrayList<>());
+        private List<ObjectIdentifier> batch = new ArrayList<>();
+
+        Run(String bucketName, ExecutorService deleteExecutor) {
+            this.bucketName = bucketName;
+            this.deleteExecutor = deleteExecutor;
+        }
+
+        Summary execute(String prefix, Consumer<List<S3Object>> pageConsumer) {
+            long startNanos = System.nanoTime();
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("bucket-progress").factory());
+            long intervalNanos = config.progressInterval().toNanos();
+            reporter.scheduleAtFixedRate(new ProgressReporter(), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+            try {
+                pendingPrefixes.incrementAndGet();
+                prefixes.add(prefix);
+                List<Thread> workers = new ArrayList<>(config.listingThreads());
+                for (int i = 0; i < config.listingThreads(); i++) {
+                    workers.add(Thread.ofPlatform().daemon().name("bucket-list-", i)
+                        .start(() -> listPrefixes(pageConsumer)));
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                if (deleteExecutor != null) {
+                    submitBatch();
+                    // All permits are back once every batch in flight has finished.
+                    batchesInFlight.acquire(config.maxBatchesInFlight());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while draining " + bucketName).cause(e).build();
+            } finally {
+                reporter.shutdownNow();
+            }
+
+            Summary summary = new Summary(listedKeys.get(), listedBytes.get(), deletedKeys.get(), failedKeys.get(),
+                List.copyOf(failures), Duration.ofNanos(System.nanoTime() - startNanos));
+            logger.info("Listed {} keys ({} keys/s), deleted {} keys ({} keys/s), {} keys failed in {}",
+                summary.listedKeys(), Math.round(summary.listedKeysPerSecond()), summary.deletedKeys(),
+                Math.round(summary.deletedKeysPerSecond()), summary.failedKeyCount(), summary.elapsed());
+            if (listingFailure.get() != null) {
+                throw listingFailure.get();
+            }
+            return summary;
+        }
+
+        // Each listing thread takes the next prefix until none are queued or being listed.
+        private void listPrefixes(Consumer<List<S3Object>> pageConsumer) {
+            try {
+                while (pendingPrefixes.get() > 0 && listingFailure.get() == null) {
+                    String prefix = prefixes.poll(50, TimeUnit.MILLISECONDS);
+                    if (prefix == null) {
+                        continue;
+                    }
+                    try {
+                        listPrefix(prefix, pageConsumer);
+                    } catch (RuntimeException e) {
+                        listingFailure.compareAndSet(null, e);
+                    } finally {
+                        pendingPrefixes.decrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listingFailure.compareAndSet(null, AbortedException.builder().cause(e).build());
+            }
+        }
+
+        private void listPrefix(String prefix, Consumer<List<S3Object>> pageConsumer) {
+            // Split the prefix further only while there isn't enough queued work for every thread.
+            boolean split = !config.delimiter().isEmpty() && prefixes.size() < config.listingThreads();
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .delimiter(split ? config.delimiter() : null)
+                .build();
+            ListObjectsV2Response page;
+            do {
+                ListObjectsV2Request pageRequest = request;
+                page = withRetries(() -> s3Client.listObjectsV2(pageRequest));
+                for (CommonPrefix commonPrefix : page.commonPrefixes()) {
+                    pendingPrefixes.incrementAndGet();
+                    prefixes.add(commonPrefix.prefix());
+                }
+                if (!page.contents().isEmpty()) {
+                    listedKeys.addAndGet(page.contents().size());
+                    listedBytes.addAndGet(page.contents().stream().mapToLong(S3Object::size).sum());
+                    pageConsumer.accept(page.contents());
+                }
+                request = request.toBuilder().continuationToken(page.nextContinuationToken()).build();
+            } while (Boolean.TRUE.equals(page.isTruncated()) && listingFailure.get() == null);
+        }
+
+        void addToBatch(List<S3Object> objects) {
+            List<List<ObjectIdentifier>> fullBatches = new ArrayList<>();
+            synchronized (this) {
+                for (S3Object object : objects) {
+                    batch.add(ObjectIdentifier.builder().key(object.key()).build());
+                    if (batch.size() == config.batchSize()) {
+                        fullBatches.add(batch);
+                        batch = new ArrayList<>();
+                    }
+                }
+            }
+            for (List<ObjectIdentifier> fullBatch : fullBatches) {
+                submit(fullBatch);
+            }
+        }
+
+        private void submitBatch() {
+            List<ObjectIdentifier> lastBatch;
+            synchronized (this) {
+                lastBatch = batch;
+                batch = new ArrayList<>();
+            }
+            if (!lastBatch.isEmpty()) {
+                submit(lastBatch);
+            }
+        }
+
+        private void submit(List<ObjectIdentifier> keys) {
+            try {
+                // Listing waits here while the maximum number of batches is in flight.
+                batchesInFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while waiting for deletes").cause(e).build();
+            }
+            try {
+                deleteExecutor.execute(() -> {
+                    try {
+                        deleteBatch(keys);
+                    } finally {
+                        batchesInFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                batchesInFlight.release();
+                throw e;
+            }
+        }
+
+        private void deleteBatch(List<ObjectIdentifier> keys) {
+            List<ObjectIdentifier> remaining = keys;
+            for (int attempt = 1; ; attempt++) {
+                List<ObjectIdentifier> batchKeys = remaining;
+                DeleteObjectsResponse response;
+                try {
+                    response = s3Client.deleteObjects(b -> b
+                        .bucket(bucketName)
+                        .delete(d -> d.objects(batchKeys).quiet(true)));
+                } catch (SdkException e) {
+                    if (!isRetryable(e) || attempt >= config.maxAttempts()) {
+                        String code = e instanceof AwsServiceException serviceException
+                            && serviceException.awsErrorDetails() != null
+                            ? serviceException.awsErrorDetails().errorCode() : "ClientError";
+                        batchKeys.forEach(key -> recordFailure(S3Error.builder()
+                            .key(key.key()).code(code).message(e.getMessage()).build()));
+                        return;
+                    }
+                    backOff(attempt);
+                    continue;
+                }
+
+                // In quiet mode, the response lists only the keys that weren't deleted.
+                deletedKeys.addAndGet(batchKeys.size() - response.errors().size());
+                List<ObjectIdentifier> retryable = new ArrayList<>();
+                for (S3Error error : response.errors()) {
+                    if (RETRYABLE_ERROR_CODES.contains(error.code()) && attempt < config.maxAttempts()) {
+                        retryable.add(ObjectIdentifier.builder().key(error.key()).versionId(error.versionId()).build());
+                    } else {
+                        recordFailure(error);
+                    }
+                }
+                if (retryable.isEmpty()) {
+                    return;
+                }
+                logger.warn("{} keys failed on attempt {}, retrying", retryable.size(), attempt);
+                remaining = retryable;
+                backOff(attempt);
+            }
+        }
+
+        private void recordFailure(S3Error error) {
+            failedKeys.incrementAndGet();
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+                failures.add(error);
+            }
+        }
+
+        private <T> T withRetries(Supplier<T> call) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return call.get();
+                } catch (SdkException e) {
+                    if (!isRetryable(e) || attempt >= config.maxAttempts()) {
+                        throw e;
+                    }
+                    backOff(attempt);
+                }
+            }
+        }
+
+        private void backOff(int attempt) {
+            long baseNanos = config.retryBaseDelay().toNanos() << Math.min(attempt - 1, 10);
+            try {
+                // Full jitter keeps requests that failed together from retrying together.
+                TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(baseNanos + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.builder().message("Interrupted while backing off").cause(e).build();
+            }
+        }
+
+        private final class ProgressReporter implements Runnable {
+            private long lastNanos = System.nanoTime();
+            private long lastListed;
+            private long lastDeleted;
+
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                double seconds = (now - lastNanos) / 1e9;
+                long listed = listedKeys.get();
+                long deleted = deletedKeys.get();
+                logger.info("Listed {} keys ({} keys/s), deleted {} keys ({} keys/s), {} prefixes pending",
+                    listed, Math.round((listed - lastListed) / seconds), deleted,
+                    Math.round((deleted - lastDeleted) / seconds), pendingPrefixes.get());
+                lastNanos = now;
+                lastListed = listed;
+                lastDeleted = deleted;
+            }
+        }
+    }
+
+    // Client errors other than throttling and timeouts won't succeed on a retry; errors
+    // without a response, such as connection resets, might.
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            int status = serviceException.statusCode();
+            return status >= 500 || status == 429 || status == 408;
+        }
+        return !(e instanceof AbortedException);
+    }
+}
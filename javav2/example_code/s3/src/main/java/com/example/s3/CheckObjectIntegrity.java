@@ -7,6 +7,7 @@ package com.example.s3;
 // snippet-start:[s3.java2.s3_object_check_integrity.import]
 
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -23,9 +24,11 @@ import software.amazon.awssdk.services.s3.model.GetObjectAttributesResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.ObjectAttributes;
+import software.amazon.awssdk.services.s3.model.ObjectPart;
 import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -33,11 +36,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 // snippet-end:[s3.java2.s3_object_check_integrity.import]
 
 /**
@@ -51,6 +65,39 @@ import java.util.List;
 
 public class CheckObjectIntegrity {
     private final static int CHUNK_SIZE = 5 * 1024 * 1024;
+    private final static int MAX_PARTS = 10_000;
+    // Parts can be up to 5 GiB, but a single memory mapping is limited to 2 GiB.
+    private final static long MAX_MAPPED_BYTES = 1024 * 1024 * 1024;
+
+    /**
+     * Settings for the pipelined upload and the parallel validation.
+     *
+     * @param partSizeBytes the smallest part size to use; it grows when the file would otherwise need more than
+     *                      10,000 parts
+     * @param hashThreads   the number of threads that compute SHA-256 checksums
+     * @param uploadThreads the number of parts that are uploaded at the same time
+     * @param buffers       the number of part buffers shared by the read, hash, and upload stages, which bounds
+     *                      the memory that the upload uses to about buffers * part size
+     */
+    public record PipelineSettings(int partSizeBytes, int hashThreads, int uploadThreads, int buffers) {
+        public PipelineSettings {
+            if (partSizeBytes < CHUNK_SIZE) {
+                throw new IllegalArgumentException("partSizeBytes must be at least " + CHUNK_SIZE);
+            }
+            if (hashThreads < 1 || uploadThreads < 1 || buffers < 1) {
+                throw new IllegalArgumentException("hashThreads, uploadThreads, and buffers must be positive");
+            }
+        }
+
+        /**
+         * Returns settings that hash on every available processor and upload 8 parts at a time, with
+         * enough 8 MiB buffers to keep both stages busy while the next part is read.
+         */
+        public static PipelineSettings defaults() {
+            int processors = Runtime.getRuntime().availableProcessors();
+            return new PipelineSettings(8 * 1024 * 1024, processors, 8, processors + 8 + 1);
+        }
+    }
 
     public static void main(String[] args) {
         final String USAGE = """
@@ -81,9 +128,14 @@ public class CheckObjectIntegrity {
             .region(region)
             .build();
 
-        putS3MultipartObjectBracketedByChecksum(s3, bucketName, objectKey, objectPath);
-        downloadS3MultipartObjectBracketedByChecksum(s3, bucketName, objectKey);
-        validateExistingFileAgainstS3Checksum(s3, bucketName, objectKey, objectPath);
+        try {
+            putS3MultipartObjectPipelined(s3, bucketName, objectKey, objectPath, PipelineSettings.defaults());
+            downloadS3MultipartObjectBracketedByChecksum(s3, bucketName, objectKey);
+            validateExistingFileAgainstS3ChecksumParallel(s3, bucketName, objectKey, objectPath,
+                PipelineSettings.defaults().hashThreads());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -145,6 +197,97 @@ public class CheckObjectIntegrity {
         }
     }
 
+    /**
+     * Uploads an object with the Multipart Upload API and a SHA-256 checksum for each part, like
+     * {@link #putS3MultipartObjectBracketedByChecksum}, but reads, hashes, and uploads parts at the same time.
+     *
+     * One thread reads the file sequentially into a fixed set of part buffers. Each part is then hashed on a
+     * pool of hash threads and uploaded with its precomputed checksum on a pool of upload threads, and its
+     * buffer is reused once the upload finishes. When all buffers are in use, reading waits, so the stages
+     * stay in step and memory use is bounded whatever the file size. The part size grows as needed to stay
+     * within the 10,000-part limit.
+     *
+     * @param s3         The S3Client instance used to interact with the Amazon S3 service.
+     * @param bucketName The name of the S3 bucket to upload the object to.
+     * @param objectKey  The key (name) of the object to be uploaded.
+     * @param objectPath The local file path of the object to be uploaded.
+     * @param settings   The part size, thread counts, and number of part buffers.
+     * @return the response of CompleteMultipartUpload
+     * @throws IOException if the file can't be read or a part can't be uploaded; the upload is aborted
+     */
+    public static CompleteMultipartUploadResponse putS3MultipartObjectPipelined(S3Client s3, String bucketName,
+                                                                                String objectKey, String objectPath,
+                                                                                PipelineSettings settings)
+        throws IOException {
+        Path path = Paths.get(objectPath);
+        long fileSize = Files.size(path);
+        int partSize = partSizeFor(fileSize, settings.partSizeBytes());
+        int partCount = (int) Math.max(1, (fileSize + partSize - 1) / partSize);
+        long startNanos = System.nanoTime();
+
+        String uploadId = s3.createMultipartUpload(b -> b
+            .bucket(bucketName)
+            .key(objectKey)
+            .checksumAlgorithm(ChecksumAlgorithm.SHA256)).uploadId();
+
+        // Hashing is CPU-bound, so hashThreads defaults to the number of cores; the size of the
+        // upload pool is the number of UploadPart requests in flight.
+        ExecutorService hashExecutor = Executors.newFixedThreadPool(settings.hashThreads(),
+            Thread.ofPlatform().daemon().name("part-hash-", 0).factory());
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(settings.uploadThreads(),
+            Thread.ofPlatform().daemon().name("part-upload-", 0).factory());
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(settings.buffers());
+        for (int i = 0; i < Math.min(settings.buffers(), partCount); i++) {
+            freeBuffers.add(new byte[partSize]);
+        }
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>(partCount);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int partNumber = 1; partNumber <= partCount && !firstFailure.isDone(); partNumber++) {
+                byte[] buffer = freeBuffers.take();
+                long offset = (long) (partNumber - 1) * partSize;
+                int length = (int) Math.min(partSize, fileSize - offset);
+                readFully(channel, ByteBuffer.wrap(buffer, 0, length), offset);
+
+                int number = partNumber;
+                CompletableFuture<CompletedPart> part = CompletableFuture
+                    .supplyAsync(() -> sha256Base64(buffer, length), hashExecutor)
+                    .thenApplyAsync(checksum -> uploadPart(s3, bucketName, objectKey, uploadId, number, buffer,
+                        length, checksum), uploadExecutor);
+                part.whenComplete((completed, e) -> {
+                    freeBuffers.offer(buffer);
+                    if (e != null) {
+                        firstFailure.completeExceptionally(e);
+                    }
+                });
+                parts.add(part);
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            CompleteMultipartUploadResponse response = s3.completeMultipartUpload(b -> b
+                .bucket(bucketName)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .multipartUpload(m -> m.parts(completedParts)));
+            System.out.printf("Uploaded %d parts (%.1f MiB/s)%n", partCount, mibPerSecond(fileSize, startNanos));
+            return response;
+        } catch (IOException | InterruptedException | CompletionException | SdkException e) {
+            abortQuietly(s3, bucketName, objectKey, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            throw new IOException("Couldn't upload " + objectPath + " to " + bucketName + "/" + objectKey, cause);
+        } finally {
+            hashExecutor.shutdownNow();
+            uploadExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Downloads an S3 object that is split into multiple parts, and verifies the checksum of each part as well as the
      * overall checksum of the entire object.
@@ -293,6 +436,188 @@ public class CheckObjectIntegrity {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Validates the locally persisted file against the checksums stored in Amazon S3, like
+     * {@link #validateExistingFileAgainstS3Checksum}, but hashes the parts in parallel.
+     *
+     * Each part is memory-mapped and hashed on its own thread, so validation runs at the speed of the disk
+     * or of all processors together instead of one processor. The part checksums are then combined in part
+     * order into the checksum of checksums, and objects with more than 1,000 parts are handled by paging
+     * through GetObjectAttributes.
+     *
+     * @param s3          The S3Client instance to interact with Amazon S3.
+     * @param bucketName  The name of the S3 bucket where the object is stored.
+     * @param objectKey   The key of the S3 object to be validated.
+     * @param objectPath  The local file path of the object to be validated.
+     * @param hashThreads The number of parts that are hashed at the same time.
+     * @throws IOException if the file can't be read or doesn't match the checksums in S3.
+     */
+    public static void validateExistingFileAgainstS3ChecksumParallel(S3Client s3, String bucketName,
+                                                                     String objectKey, String objectPath,
+                                                                     int hashThreads) throws IOException {
+        System.out.println("Starting validating the locally persisted file with " + hashThreads + " threads.");
+        long startNanos = System.nanoTime();
+        Path path = Paths.get(objectPath);
+        long fileSize = Files.size(path);
+
+        GetObjectAttributesResponse objectAttributes = s3.getObjectAttributes(b -> b
+            .bucket(bucketName)
+            .key(objectKey)
+            .objectAttributes(ObjectAttributes.OBJECT_PARTS, ObjectAttributes.CHECKSUM, ObjectAttributes.OBJECT_SIZE));
+        if (objectAttributes.checksum() == null || objectAttributes.checksum().checksumSHA256() == null) {
+            throw new IOException(bucketName + "/" + objectKey + " has no SHA-256 checksum");
+        }
+        if (objectAttributes.objectSize() != null && objectAttributes.objectSize() != fileSize) {
+            throw new IOException("File size " + fileSize + " doesn't match the object size "
+                + objectAttributes.objectSize());
+        }
+        // The checksum of a multipart object can carry a -<part count> suffix.
+        String expectedChecksum = objectAttributes.checksum().checksumSHA256().split("-")[0];
+
+        ExecutorService hashExecutor = Executors.newFixedThreadPool(hashThreads,
+            Thread.ofPlatform().daemon().name("part-hash-", 0).factory());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (objectAttributes.objectParts() == null || objectAttributes.objectParts().totalPartsCount() == null) {
+                // Uploaded in a single request, so the checksum covers the whole file.
+                String checksum = Base64.getEncoder().encodeToString(sha256(channel, 0, fileSize));
+                if (!checksum.equals(expectedChecksum)) {
+                    throw new IOException("Object checksum doesn't match S3");
+                }
+                return;
+            }
+
+            List<ObjectPart> objectParts = listAllParts(s3, bucketName, objectKey, objectAttributes);
+            List<CompletableFuture<byte[]>> partDigests = new ArrayList<>(objectParts.size());
+            long offset = 0;
+            for (ObjectPart objectPart : objectParts) {
+                long partOffset = offset;
+                partDigests.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return sha256(channel, partOffset, objectPart.size());
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, hashExecutor));
+                offset += objectPart.size();
+            }
+            if (offset != fileSize) {
+                throw new IOException("File size " + fileSize + " doesn't match the part sizes in S3");
+            }
+
+            MessageDigest sha256ChecksumOfChecksums = newSha256();
+            for (int i = 0; i < objectParts.size(); i++) {
+                byte[] partChecksum = partDigests.get(i).join();
+                sha256ChecksumOfChecksums.update(partChecksum);
+                if (!Base64.getEncoder().encodeToString(partChecksum).equals(objectParts.get(i).checksumSHA256())) {
+                    throw new IOException("Part " + objectParts.get(i).partNumber()
+                        + " checksum didn't match what persisted in S3.");
+                }
+            }
+            String base64CalculatedChecksumOfChecksums = Base64.getEncoder()
+                .encodeToString(sha256ChecksumOfChecksums.digest());
+            if (!base64CalculatedChecksumOfChecksums.equals(expectedChecksum)) {
+                throw new IOException("Full object checksum of checksums don't match S3");
+            }
+            System.out.printf("Validated %d parts (%.1f MiB/s)%n", objectParts.size(),
+                mibPerSecond(fileSize, startNanos));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            hashExecutor.shutdownNow();
+        }
+    }
+
+    // Uses the requested part size unless the file would need more than 10,000 parts; then rounds up to a MiB.
+    private static int partSizeFor(long fileSize, int minimumPartSize) {
+        long needed = (fileSize + MAX_PARTS - 1) / MAX_PARTS;
+        if (needed <= minimumPartSize) {
+            return minimumPartSize;
+        }
+        long mib = 1024 * 1024;
+        return Math.toIntExact((needed + mib - 1) / mib * mib);
+    }
+
+    private static CompletedPart uploadPart(S3Client s3, String bucketName, String objectKey, String uploadId,
+                                            int partNumber, byte[] buffer, int length, String checksum) {
+        // The checksum is already known, so the SDK sends it as is instead of hashing the part again.
+        UploadPartResponse uploadedPart = s3.uploadPart(b -> b
+                .bucket(bucketName)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                .checksumSHA256(checksum),
+            RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length), length,
+                "application/octet-stream"));
+        return CompletedPart.builder()
+            .partNumber(partNumber)
+            .checksumSHA256(checksum)
+            .eTag(uploadedPart.eTag())
+            .build();
+    }
+
+    private static List<ObjectPart> listAllParts(S3Client s3, String bucketName, String objectKey,
+                                                 GetObjectAttributesResponse firstPage) {
+        List<ObjectPart> parts = new ArrayList<>(firstPage.objectParts().parts());
+        GetObjectAttributesResponse page = firstPage;
+        while (Boolean.TRUE.equals(page.objectParts().isTruncated())) {
+            Integer marker = page.objectParts().nextPartNumberMarker();
+            page = s3.getObjectAttributes(b -> b
+                .bucket(bucketName)
+                .key(objectKey)
+                .partNumberMarker(marker)
+                .objectAttributes(ObjectAttributes.OBJECT_PARTS));
+            parts.addAll(page.objectParts().parts());
+        }
+        return parts;
+    }
+
+    private static String sha256Base64(byte[] buffer, int length) {
+        MessageDigest digest = newSha256();
+        digest.update(buffer, 0, length);
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static byte[] sha256(FileChannel channel, long offset, long length) throws IOException {
+        MessageDigest digest = newSha256();
+        for (long position = offset; position < offset + length; position += MAX_MAPPED_BYTES) {
+            long size = Math.min(MAX_MAPPED_BYTES, offset + length - position);
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static double mibPerSecond(long bytes, long startNanos) {
+        double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+        return bytes / (1024.0 * 1024.0) / seconds;
+    }
+
+    private static void abortQuietly(S3Client s3, String bucketName, String objectKey, String uploadId) {
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucketName).key(objectKey).uploadId(uploadId));
+        } catch (SdkException e) {
+            // The upload can still be aborted later, for example by a lifecycle rule.
+        }
+    }
 }
 
 // snippet-end:[s3.java2.s3_object_check_integrity.main]
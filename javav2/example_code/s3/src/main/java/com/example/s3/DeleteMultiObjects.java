@@ -100,5 +100,26 @@ public class DeleteMultiObjects {
             System.exit(1);
         }
     }
+
+    /**
+     * Deletes all objects in an Amazon S3 bucket, however many there are.
+     *
+     * The keys are listed by prefix on several threads and deleted in DeleteObjects
+     * requests of up to 1,000 keys each, with several requests in flight. Keys that
+     * fail with a retryable error are retried on their own.
+     *
+     * @param s3 An Amazon S3 client object.
+     * @param bucketName The name of the Amazon S3 bucket to empty.
+     * @return the number of deleted objects and the objects that couldn't be deleted
+     */
+    public static BucketDrainer.Summary deleteAllBucketObjects(S3Client s3, String bucketName) {
+        BucketDrainer drainer = new BucketDrainer(s3, BucketDrainer.Config.defaults());
+        BucketDrainer.Summary summary = drainer.deleteAll(bucketName, "");
+        System.out.printf("Deleted %d objects (%.0f keys/s); %d couldn't be deleted.%n",
+            summary.deletedKeys(), summary.deletedKeysPerSecond(), summary.failedKeyCount());
+        summary.failures().forEach(error ->
+            System.err.println(" Key: " + error.key() + " " + error.code() + ": " + error.message()));
+        return summary;
+    }
 }
 // snippet-end:[s3.java2.delete_many_objects.main]
@@ -45,9 +45,10 @@ public class ListObjectsPaginated {
      */
     public static void listBucketObjects(S3Client s3, String bucketName) {
         try {
+            // Each page holds up to 1,000 keys, the most that S3 returns per request.
             ListObjectsV2Request listReq = ListObjectsV2Request.builder()
                 .bucket(bucketName)
-                .maxKeys(1)
+                .maxKeys(1000)
                 .build();
 
             ListObjectsV2Iterable listRes = s3.listObjectsV2Paginator(listReq);
@@ -60,5 +61,22 @@ public class ListObjectsPaginated {
             System.exit(1);
         }
     }
+
+    /**
+     * Counts the objects in the specified S3 bucket and their total size, listing
+     * the bucket's prefixes in parallel instead of one page after the other.
+     *
+     * @param s3 the S3Client instance used to interact with Amazon S3
+     * @param bucketName the name of the S3 bucket to take the inventory of
+     * @return the number of objects and their total size in bytes
+     */
+    public static BucketDrainer.Summary countBucketObjects(S3Client s3, String bucketName) {
+        BucketDrainer.Summary summary = new BucketDrainer(s3, BucketDrainer.Config.defaults())
+            .list(bucketName, "", object -> {
+            });
+        System.out.printf("%d objects, %d bytes (%.0f keys/s)%n",
+            summary.listedKeys(), summary.listedBytes(), summary.listedKeysPerSecond());
+        return summary;
+    }
 }
 // snippet-end:[s3.java2.list_objects.pag.main]
@@ -0,0 +1,323 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.Part;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Uploads a file to Amazon S3 as a multipart upload with several parts in flight at once.
+ *
+ * Instead of reading the file through a heap buffer, every part is memory-mapped with
+ * FileChannel.map and streamed to the SDK from the mapped region, so the page cache is
+ * the only copy of the file data in memory. A fixed number of worker threads take the
+ * next part number, upload it with the synchronous S3Client, and retry only that part
+ * with exponential backoff and jitter when it fails.
+ *
+ * If a part still fails after all attempts, the upload is left open and an
+ * {@link UploadFailedException} carrying the upload ID is thrown. Calling
+ * {@link #resume} with that ID lists the parts S3 already has with ListParts, uploads
+ * only the missing ones, and completes the upload. The same works after the process
+ * crashed, as long as the upload ID was saved. Call AbortMultipartUpload for uploads
+ * that are given up, because S3 charges for the stored parts until then.
+ *
+ * The S3Client's HTTP client must allow at least maxConcurrentParts connections; the
+ * Apache client allows 50 by default.
+ */
+public class ParallelMultipartUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelMultipartUploader.class);
+
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+
+    /**
+     * Settings for a parallel upload.
+     *
+     * @param partSizeBytes the size of every part except the last one; S3 requires at least 5 MiB
+     * @param maxConcurrentParts the number of parts uploaded at the same time
+     * @param maxAttemptsPerPart the number of times a part is sent before the upload fails
+     * @param retryBaseDelay the backoff before the second attempt; it doubles for every further attempt
+     */
+    public record Config(long partSizeBytes, int maxConcurrentParts, int maxAttemptsPerPart,
+                         Duration retryBaseDelay) {
+
+        public Config {
+            if (partSizeBytes < MIN_PART_SIZE) {
+                throw new IllegalArgumentException("partSizeBytes must be at least " + MIN_PART_SIZE);
+            }
+            if (maxConcurrentParts < 1 || maxAttemptsPerPart < 1) {
+                throw new IllegalArgumentException("maxConcurrentParts and maxAttemptsPerPart must be positive");
+            }
+        }
+
+        /**
+         * Returns 8 MiB parts, 8 parts in flight, and 3 attempts per part starting with a 200 ms backoff.
+         */
+        public static Config defaults() {
+            return new Config(8L * 1024 * 1024, 8, 3, Duration.ofMillis(200));
+        }
+    }
+
+    /**
+     * Thrown when a part couldn't be uploaded. The multipart upload is still open, so it
+     * can be resumed or aborted with the upload ID.
+     */
+    public static class UploadFailedException extends RuntimeException {
+        private final String uploadId;
+
+        UploadFailedException(String uploadId, String message, Throwable cause) {
+            super(message, cause);
+            this.uploadId = uploadId;
+        }
+
+        /**
+         * Returns the ID of the multipart upload that failed.
+         */
+        public String uploadId() {
+            return uploadId;
+        }
+    }
+
+    private final S3Client s3Client;
+    private final Config config;
+
+    public ParallelMultipartUploader(S3Client s3Client, Config config) {
+        this.s3Client = s3Client;
+        this.config = config;
+    }
+
+    /**
+     * Starts a multipart upload and uploads the file in parallel parts.
+     *
+     * @param bucketName the name of the S3 bucket
+     * @param key        the object key
+     * @param file       the file to upload
+     * @return the response of CompleteMultipartUpload
+     * @throws UploadFailedException if a part failed after all attempts
+     */
+    public CompleteMultipartUploadResponse upload(String bucketName, String key, Path file) {
+        String uploadId = s3Client.createMultipartUpload(b -> b
+                .bucket(bucketName)
+                .key(key))
+            .uploadId();
+        logger.info("Started multipart upload {} for {}/{}", uploadId, bucketName, key);
+        return uploadParts(bucketName, key, uploadId, file, Map.of());
+    }
+
+    /**
+     * Continues an existing multipart upload of the same file. Parts that S3 already
+     * has with the expected size are kept; all other parts are uploaded again.
+     *
+     * @param bucketName the name of the S3 bucket
+     * @param key        the object key
+     * @param uploadId   the ID of the upload to continue
+     * @param file       the file that was being uploaded
+     * @return the response of CompleteMultipartUpload
+     * @throws UploadFailedException if a part failed after all attempts
+     */
+    public CompleteMultipartUploadResponse resume(String bucketName, String key, String uploadId, Path file) {
+        Map<Integer, Part> uploadedParts = new ConcurrentHashMap<>();
+        s3Client.listPartsPaginator(b -> b
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId))
+            .parts()
+            .forEach(part -> uploadedParts.put(part.partNumber(), part));
+        logger.info("Resuming multipart upload {} with {} parts already uploaded", uploadId, uploadedParts.size());
+        return uploadParts(bucketName, key, uploadId, file, uploadedParts);
+    }
+
+    private CompleteMultipartUploadResponse uploadParts(String bucketName, String key, String uploadId,
+                                                        Path file, Map<Integer, Part> uploadedParts) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int partCount = (int) Math.max(1, (fileSize + config.partSizeBytes() - 1) / config.partSizeBytes());
+            if (partCount > MAX_PARTS) {
+                throw new IllegalArgumentException("The file needs " + partCount + " parts; S3 allows "
+                    + MAX_PARTS + ". Use a larger part size.");
+            }
+
+            AtomicReferenceArray<CompletedPart> completedParts = new AtomicReferenceArray<>(partCount);
+            AtomicInteger nextPart = new AtomicInteger(1);
+            AtomicReference<UploadFailedException> failure = new AtomicReference<>();
+
+            // Each worker keeps taking the next part number until all parts are taken or one part failed.
+            Runnable worker = () -> {
+                int partNumber;
+                while (failure.get() == null && (partNumber = nextPart.getAndIncrement()) <= partCount) {
+                    long offset = (partNumber - 1) * config.partSizeBytes();
+                    long size = Math.min(config.partSizeBytes(), fileSize - offset);
+                    Part existing = uploadedParts.get(partNumber);
+                    if (existing != null && existing.size() != null && existing.size() == size) {
+                        completedParts.set(partNumber - 1, CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(existing.eTag())
+                            .build());
+                        continue;
+                    }
+                    try {
+                        completedParts.set(partNumber - 1,
+                            uploadPart(bucketName, key, uploadId, channel, partNumber, offset, size));
+                    } catch (UploadFailedException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException | Error e) {
+                        // Such as a failure of the content provider or of the mapping; the other parts stop too.
+                        failure.compareAndSet(null, new UploadFailedException(uploadId,
+                            "Part " + partNumber + " failed", e));
+                    }
+                }
+            };
+
+            int workerCount = Math.min(config.maxConcurrentParts(), partCount);
+            List<Thread> workers = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(Thread.ofPlatform().daemon().name("part-uploader-", i).start(worker));
+            }
+            for (Thread thread : workers) {
+                thread.join();
+            }
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                CompletedPart part = completedParts.get(i);
+                if (part == null) {
+                    throw new UploadFailedException(uploadId, "Part " + (i + 1) + " wasn't uploaded", null);
+                }
+                parts.add(part);
+            }
+            return s3Client.completeMultipartUpload(b -> b
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(m -> m.parts(parts)));
+        } catch (IOException e) {
+            throw new UploadFailedException(uploadId, "Couldn't read " + file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadFailedException(uploadId, "Interrupted while uploading " + file, e);
+        }
+    }
+
+    private CompletedPart uploadPart(String bucketName, String key, String uploadId, FileChannel channel,
+                                     int partNumber, long offset, long size) {
+        MappedByteBuffer mapped;
+        try {
+            // Map each part on its own: a single mapping is limited to 2 GiB, and only the
+            // parts in flight need to be mapped at any time.
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        } catch (IOException e) {
+            throw new UploadFailedException(uploadId, "Couldn't map part " + partNumber, e);
+        }
+        // Every attempt, including the SDK's own retries, streams from a fresh view of the mapping.
+        RequestBody body = RequestBody.fromContentProvider(
+            () -> new ByteBufferInputStream(mapped.duplicate()), size, "application/octet-stream");
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UploadPartResponse response = s3Client.uploadPart(b -> b
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(size),
+                    body);
+                return CompletedPart.builder()
+                    .partNumber(partNumber)
+                    .eTag(response.eTag())
+                    .build();
+            } catch (SdkException e) {
+                if (!isRetryable(e) || attempt >= config.maxAttemptsPerPart()) {
+                    throw new UploadFailedException(uploadId,
+                        "Part " + partNumber + " failed after " + attempt + " attempts", e);
+                }
+                logger.warn("Part {} failed on attempt {}, retrying: {}", partNumber, attempt, e.getMessage());
+                backOff(uploadId, attempt);
+            }
+        }
+    }
+
+    private void backOff(String uploadId, int attempt) {
+        long baseNanos = config.retryBaseDelay().toNanos() << Math.min(attempt - 1, 10);
+        try {
+            // Full jitter keeps parts that failed together from retrying together.
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(baseNanos + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadFailedException(uploadId, "Interrupted while backing off", e);
+        }
+    }
+
+    // Client errors other than throttling and timeouts won't succeed on a retry; errors
+    // without a response, such as connection resets, might.
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            int status = serviceException.statusCode();
+            return status >= 500 || status == 429 || status == 408;
+        }
+        return true;
+    }
+
+    // Reads a buffer without copying it to the heap first.
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -30,7 +30,6 @@ import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 // snippet-end:[s3.java2.performMultiPartUpload.import]
@@ -58,6 +57,11 @@ public class PerformMultiPartUpload {
 
             createBucket(bucketName);
             performMultiPartUpload.multipartUploadWithS3Client(bucketName, key, filePath);
+            deleteResources(bucketName, key);
+
+            createBucket(bucketName);
+            performMultiPartUpload.multipartUploadWithParallelS3Client(s3Client,
+                ParallelMultipartUploader.Config.defaults(), bucketName, key, filePath);
         } catch (SdkException e) {
             logger.error(e.getMessage());
         } finally {
@@ -67,9 +71,14 @@ public class PerformMultiPartUpload {
 
     static String getFullFilePath(String filePath) {
         URL uploadDirectoryURL = PerformMultiPartUpload.class.getResource(filePath);
+        if (uploadDirectoryURL == null) {
+            // Only main() and the integration tests need the sample file. Without it, the
+            // methods that take a file path can still be used, for example by the benchmark.
+            return null;
+        }
         String fullFilePath;
         try {
-            fullFilePath = Paths.get(Objects.requireNonNull(uploadDirectoryURL).toURI()).toString();
+            fullFilePath = Paths.get(uploadDirectoryURL.toURI()).toString();
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
@@ -98,6 +107,20 @@ public class PerformMultiPartUpload {
      */
     public void multipartUploadWithTransferManager(String bucketName, String key, String filePath) {
         S3TransferManager transferManager = S3TransferManager.create();
+        multipartUploadWithTransferManager(transferManager, bucketName, key, filePath);
+        transferManager.close();
+    }
+
+    /**
+     * Uploads a file to an Amazon S3 bucket using the provided S3TransferManager.
+     *
+     * @param transferManager the transfer manager to use; it isn't closed
+     * @param bucketName      the name of the S3 bucket
+     * @param key             the object key
+     * @param filePath        the file path of the file to be uploaded
+     */
+    public void multipartUploadWithTransferManager(S3TransferManager transferManager, String bucketName,
+                                                   String key, String filePath) {
         UploadFileRequest uploadFileRequest = UploadFileRequest.builder()
             .putObjectRequest(b -> b
                 .bucket(bucketName)
@@ -106,7 +129,6 @@ public class PerformMultiPartUpload {
             .build();
         FileUpload fileUpload = transferManager.uploadFile(uploadFileRequest);
         fileUpload.completionFuture().join();
-        transferManager.close();
     }
     // snippet-end:[s3.java2.performMultiPartUpload.transferManager]
 
@@ -119,6 +141,19 @@ public class PerformMultiPartUpload {
      * @param filePath   the path to the file to be uploaded
      */
     public void multipartUploadWithS3Client(String bucketName, String key, String filePath) {
+        multipartUploadWithS3Client(s3Client, bucketName, key, filePath);
+    }
+
+    /**
+     * Performs a multipart upload to Amazon S3 using the provided S3 client, one part
+     * after another.
+     *
+     * @param s3Client   the S3 client to use
+     * @param bucketName the name of the S3 bucket
+     * @param key        the object key
+     * @param filePath   the path to the file to be uploaded
+     */
+    public void multipartUploadWithS3Client(S3Client s3Client, String bucketName, String key, String filePath) {
 
         // Initiate the multipart upload.
         CreateMultipartUploadResponse createMultipartUploadResponse = s3Client.createMultipartUpload(b -> b
@@ -173,6 +208,32 @@ public class PerformMultiPartUpload {
     }
 
     // snippet-end:[s3.java2.performMultiPartUpload.s3Client]
+
+    /**
+     * Performs a multipart upload to Amazon S3 using the provided S3 client, uploading
+     * several memory-mapped parts at the same time.
+     *
+     * @param s3Client   the S3 client to use; its HTTP client must allow maxConcurrentParts connections
+     * @param config     the part size, number of parts in flight, and retry settings
+     * @param bucketName the name of the S3 bucket
+     * @param key        the object key
+     * @param filePath   the path to the file to be uploaded
+     */
+    public void multipartUploadWithParallelS3Client(S3Client s3Client, ParallelMultipartUploader.Config config,
+                                                    String bucketName, String key, String filePath) {
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3Client, config);
+        try {
+            uploader.upload(bucketName, key, Paths.get(filePath));
+        } catch (ParallelMultipartUploader.UploadFailedException e) {
+            // Don't leave the parts that were uploaded behind; resume() could continue the upload instead.
+            s3Client.abortMultipartUpload(b -> b
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(e.uploadId()));
+            throw e;
+        }
+    }
+
     // snippet-start:[s3.java2.performMultiPartUpload.s3AsyncClient]
     /**
      * Uploads a file to an S3 bucket using the S3AsyncClient and enabling multipart support.
@@ -186,7 +247,20 @@ public class PerformMultiPartUpload {
         S3AsyncClient s3AsyncClient = S3AsyncClient.builder()
             .multipartEnabled(true)
             .build();
+        multipartUploadWithS3AsyncClient(s3AsyncClient, bucketName, key, filePath);
+    }
 
+    /**
+     * Uploads a file to an S3 bucket using the provided S3AsyncClient, which must have
+     * multipart support enabled to split the file into parts.
+     *
+     * @param s3AsyncClient the S3 async client to use
+     * @param bucketName    the name of the S3 bucket
+     * @param key           the object key
+     * @param filePath      the local file path of the file to be uploaded
+     */
+    public void multipartUploadWithS3AsyncClient(S3AsyncClient s3AsyncClient, String bucketName, String key,
+                                                 String filePath) {
         CompletableFuture<PutObjectResponse> response = s3AsyncClient.putObject(b -> b
                 .bucket(bucketName)
                 .key(key),
@@ -4,6 +4,8 @@
 package com.example.s3;
 
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -17,7 +19,16 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequ
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -54,7 +65,40 @@ public class S3ZipExample {
             .region(region)
             .build();
 
-        createZIPFile(s3, bucketName, imageKeys);
+        String zipName = java.util.UUID.randomUUID() + ".zip";
+        try {
+            createZIPFileStreaming(s3, bucketName, imageKeys, zipName, StreamingSettings.defaults());
+            String preSignUrl = signObjectToDownload(bucketName, zipName);
+            System.out.println("The Presigned URL is " + preSignUrl);
+        } catch (S3Exception | IOException e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Settings that bound the memory used by {@link #createZIPFileStreaming}.
+     *
+     * @param fetchConcurrency    the number of objects fetched ahead of the one being written
+     * @param prefetchBudgetBytes the total size of objects that may be held in memory while
+     *                            they wait to be written; larger objects are read when they're written
+     * @param partSizeBytes       the size of the multipart upload parts; at least 5 MiB
+     * @param partsInFlight       the number of parts uploaded while the ZIP file is being written
+     */
+    public record StreamingSettings(int fetchConcurrency, int prefetchBudgetBytes, int partSizeBytes,
+                                    int partsInFlight) {
+
+        /**
+         * Returns 8 objects fetched ahead within a 64 MiB budget, and 8 MiB parts with 2 in flight.
+         */
+        public static StreamingSettings defaults() {
+            return new StreamingSettings(8, 64 * 1024 * 1024, 8 * 1024 * 1024, 2);
+        }
+    }
+
+    // An object fetched ahead of time, or null content if it didn't fit into the prefetch budget
+    // and is read when its entry is written.
+    private record FetchedObject(String key, byte[] content) {
     }
 
     /**
@@ -114,6 +158,103 @@ public class S3ZipExample {
         }
     }
 
+    /**
+     * Creates a ZIP file containing the specified objects from an S3 bucket and uploads it
+     * to the same bucket, without holding the whole ZIP file in memory.
+     * <p>
+     * Up to fetchConcurrency objects are fetched concurrently, ahead of the one being
+     * written. Entries are still written in the order of the keys. Fetched objects are
+     * kept in memory only while they fit into the prefetch budget. A larger object is read
+     * only when its entry is written, so that its connection doesn't sit idle while
+     * earlier entries are written. The ZIP output is
+     * written to a {@link MultipartUploadOutputStream}, which uploads each part as soon as
+     * it's full. Memory use is therefore bounded by the settings, not by the archive size.
+     *
+     * @param s3 the S3Client instance to use; its HTTP client must allow fetchConcurrency + partsInFlight connections
+     * @param bucketName the name of the S3 bucket to use
+     * @param keys the keys of the objects to include in the ZIP file
+     * @param zipName the key of the ZIP file to create
+     * @param settings the concurrency and memory settings
+     * @throws IOException if an object couldn't be read or the ZIP file couldn't be uploaded;
+     *                     no ZIP file is created in that case
+     */
+    public static void createZIPFileStreaming(S3Client s3, String bucketName, String[] keys, String zipName,
+                                              StreamingSettings settings) throws IOException {
+        ExecutorService fetchers = Executors.newFixedThreadPool(settings.fetchConcurrency(),
+            Thread.ofPlatform().daemon().name("zip-fetch-", 0).factory());
+        Semaphore prefetchBudget = new Semaphore(settings.prefetchBudgetBytes());
+        Deque<Future<FetchedObject>> window = new ArrayDeque<>();
+        MultipartUploadOutputStream upload = new MultipartUploadOutputStream(s3, bucketName, zipName,
+            settings.partSizeBytes(), settings.partsInFlight());
+        ZipOutputStream zipOutputStream = new ZipOutputStream(upload);
+
+        int nextToFetch = 0;
+        try {
+            while (nextToFetch < keys.length && window.size() < settings.fetchConcurrency()) {
+                window.add(fetchers.submit(fetchTask(s3, bucketName, keys[nextToFetch++], prefetchBudget)));
+            }
+            while (!window.isEmpty()) {
+                FetchedObject fetched = window.poll().get();
+                if (nextToFetch < keys.length) {
+                    window.add(fetchers.submit(fetchTask(s3, bucketName, keys[nextToFetch++], prefetchBudget)));
+                }
+
+                zipOutputStream.putNextEntry(new ZipEntry(fetched.key()));
+                if (fetched.content() != null) {
+                    zipOutputStream.write(fetched.content());
+                    prefetchBudget.release(fetched.content().length);
+                } else {
+                    copyObject(s3, bucketName, fetched.key(), zipOutputStream);
+                }
+                zipOutputStream.closeEntry();
+            }
+            // Writes the central directory and completes the upload.
+            zipOutputStream.close();
+        } catch (IOException | SdkException | ExecutionException | InterruptedException e) {
+            upload.abort();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e instanceof IOException io ? io : new IOException("Couldn't create " + zipName, e);
+        } finally {
+            window.forEach(future -> future.cancel(true));
+            fetchers.shutdownNow();
+        }
+    }
+
+    // Copies an object that was too large to fetch ahead into the current ZIP entry.
+    private static void copyObject(S3Client s3, String bucketName, String key, OutputStream out) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> stream = s3.getObject(b -> b.bucket(bucketName).key(key))) {
+            try {
+                stream.transferTo(out);
+            } catch (IOException | RuntimeException e) {
+                // Closing would read the rest of the object first.
+                stream.abort();
+                throw e;
+            }
+        }
+    }
+
+    private static Callable<FetchedObject> fetchTask(S3Client s3, String bucketName, String key,
+                                                    Semaphore prefetchBudget) {
+        return () -> {
+            ResponseInputStream<GetObjectResponse> stream = s3.getObject(b -> b.bucket(bucketName).key(key));
+            long length = stream.response().contentLength();
+            // Never wait for budget here: the object being written might be the one that needs it.
+            if (length <= Integer.MAX_VALUE && prefetchBudget.tryAcquire((int) length)) {
+                try (stream) {
+                    return new FetchedObject(key, stream.readNBytes((int) length));
+                } catch (IOException | RuntimeException e) {
+                    prefetchBudget.release((int) length);
+                    throw e;
+                }
+            }
+            // Don't keep the connection open until the entry's turn; it's opened again then.
+            stream.abort();
+            return new FetchedObject(key, null);
+        };
+    }
+
     /**
      * Generates a pre-signed URL for downloading an object from an Amazon S3 bucket.
      *
@@ -0,0 +1,136 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3.async;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a stream of byte chunks into records separated by a delimiter, no matter
+ * where the chunk boundaries fall.
+ *
+ * Chunks are fed one at a time and records are taken out one at a time, so only the
+ * current chunk and the bytes of the record that's being assembled are held. A record
+ * that spans several chunks is carried over until its delimiter arrives. Records are
+ * split on bytes before they're decoded, which is safe for UTF-8 because a delimiter
+ * such as a newline never occurs inside a multi-byte character.
+ *
+ * For CSV, delimiters inside quoted fields don't end a record. A quote is escaped either
+ * by doubling it, which toggles the quoted state twice, or by a separate escape
+ * character.
+ */
+final class RecordSplitter {
+    private static final int NONE = -1;
+
+    private final byte[] delimiter;
+    private final int quote;
+    private final int quoteEscape;
+
+    private ByteBuffer chunk = ByteBuffer.allocate(0);
+    private byte[] record = new byte[1024];
+    private int recordLength;
+    private boolean inQuotes;
+    private boolean escaped;
+
+    private RecordSplitter(String delimiter, int quote, int quoteEscape) {
+        if (delimiter.isEmpty()) {
+            throw new IllegalArgumentException("The record delimiter can't be empty");
+        }
+        this.delimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+        this.quote = quote;
+        this.quoteEscape = quoteEscape == quote ? NONE : quoteEscape;
+    }
+
+    /**
+     * Returns a splitter for JSON Lines output, where records can't contain the delimiter.
+     */
+    static RecordSplitter forJson(String recordDelimiter) {
+        return new RecordSplitter(recordDelimiter, NONE, NONE);
+    }
+
+    /**
+     * Returns a splitter for CSV output that ignores delimiters inside quoted fields.
+     */
+    static RecordSplitter forCsv(String recordDelimiter, char quoteCharacter, char quoteEscapeCharacter) {
+        return new RecordSplitter(recordDelimiter, quoteCharacter, quoteEscapeCharacter);
+    }
+
+    /**
+     * Sets the next chunk to split. The previous chunk must have been used up by
+     * {@link #next()}, which returns null once it is.
+     */
+    void feed(ByteBuffer nextChunk) {
+        if (chunk.hasRemaining()) {
+            throw new IllegalStateException("The previous chunk still has records");
+        }
+        chunk = nextChunk;
+    }
+
+    /**
+     * Returns the next complete record without its delimiter, or null if the current
+     * chunk ends before the next delimiter.
+     */
+    String next() {
+        while (chunk.hasRemaining()) {
+            byte b = chunk.get();
+            append(b);
+            if (quote != NONE) {
+                if (escaped) {
+                    escaped = false;
+                    continue;
+                }
+                if (b == quoteEscape && inQuotes) {
+                    escaped = true;
+                    continue;
+                }
+                if (b == quote) {
+                    inQuotes = !inQuotes;
+                    continue;
+                }
+                if (inQuotes) {
+                    continue;
+                }
+            }
+            if (endsWithDelimiter()) {
+                String completed = new String(record, 0, recordLength - delimiter.length, StandardCharsets.UTF_8);
+                recordLength = 0;
+                return completed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the last record when the stream has ended without a final delimiter, or
+     * null if there's nothing left.
+     */
+    String finish() {
+        if (recordLength == 0) {
+            return null;
+        }
+        String last = new String(record, 0, recordLength, StandardCharsets.UTF_8);
+        recordLength = 0;
+        return last;
+    }
+
+    private void append(byte b) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = b;
+    }
+
+    private boolean endsWithDelimiter() {
+        if (recordLength < delimiter.length) {
+            return false;
+        }
+        int start = recordLength - delimiter.length;
+        for (int i = 0; i < delimiter.length; i++) {
+            if (record[start + i] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -29,10 +29,10 @@ import software.amazon.awssdk.services.s3.model.Stats;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 // snippet-end:[s3.java2.async.selectObjectContentMethod.import]
 
 /**
@@ -93,14 +93,11 @@ public class SelectObjectContentExample {
                 .build();
 
         EventStreamInfo eventStreamInfo = new EventStreamInfo();
-        // Call the selectObjectContent method with the request and a response handler.
-        // Supply an EventStreamInfo object to the response handler to gather records and information from the response.
-        s3AsyncClient.selectObjectContent(select, buildResponseHandler(eventStreamInfo)).join();
+        // Start the query and process the records one at a time as they arrive, so that the whole
+        // result is never held in memory. Supply a visitor that gathers information from the other events.
+        long recordCount = processRecords(select, buildVisitor(eventStreamInfo));
 
         // Log out information gathered while processing the response stream.
-        long recordCount = eventStreamInfo.getRecords().stream().mapToInt(record ->
-                record.split("\n").length
-        ).sum();
         logger.info("Total records {}: {}", fileType, recordCount);
         logger.info("Visitor onRecords for fileType {} called {} times", fileType, eventStreamInfo.getCountOnRecordsCalled());
         logger.info("Visitor onStats for fileType {}, {}", fileType, eventStreamInfo.getStats());
@@ -109,13 +106,31 @@ public class SelectObjectContentExample {
     }
 // snippet-end:[s3.java2.async.selectObjectContentMethod.json]
 
+// snippet-start:[s3.java2.async.selectObjectContentMethod.records]
+    static long processRecords(SelectObjectContentRequest select, SelectObjectContentResponseHandler.Visitor visitor) {
+        // SelectRecordStream requests the next events only as records are taken, and joins records
+        // that are split across events. A slow consumer slows down the response stream instead of
+        // filling up memory.
+        long recordCount = 0;
+        try (SelectRecordStream records = SelectRecordStream.open(s3AsyncClient, select, 4, visitor)) {
+            while (records.hasNext()) {
+                String record = records.next();
+                // Process the record here. This example only logs it.
+                logger.debug("Record: {}", record);
+                recordCount++;
+            }
+        }
+        return recordCount;
+    }
+// snippet-end:[s3.java2.async.selectObjectContentMethod.records]
+
 // snippet-start:[s3.java2.async.selectObjectContentMethod.response-handler]
-    static SelectObjectContentResponseHandler buildResponseHandler(EventStreamInfo eventStreamInfo) {
-        // Use a Visitor to process the response stream. This visitor logs information and gathers details while processing.
-        final SelectObjectContentResponseHandler.Visitor visitor = SelectObjectContentResponseHandler.Visitor.builder()
+    static SelectObjectContentResponseHandler.Visitor buildVisitor(EventStreamInfo eventStreamInfo) {
+        // Use a Visitor to follow the response stream. This visitor logs information and gathers details while
+        // processing; the records themselves are handed out by SelectRecordStream.
+        return SelectObjectContentResponseHandler.Visitor.builder()
                 .onRecords(r -> {
                     logger.info("Record event received.");
-                    eventStreamInfo.addRecord(r.payload().asUtf8String());
                     eventStreamInfo.incrementOnRecordsCalled();
                 })
                 .onCont(ce -> {
@@ -135,47 +150,35 @@ public class SelectObjectContentExample {
                     eventStreamInfo.addStats(se.details());
                 })
                 .build();
-
-        // Build the SelectObjectContentResponseHandler with the visitor that processes the stream.
-        return SelectObjectContentResponseHandler.builder()
-                .subscriber(visitor).build();
     }
 // snippet-end:[s3.java2.async.selectObjectContentMethod.response-handler]
 
 // snippet-start:[s3.java2.async.selectObjectContentMethod.stream-info]
     // The EventStreamInfo class is used to store information gathered while processing the response stream.
+    // The visitor updates it on the SDK's thread while records are processed on the caller's thread.
     static class EventStreamInfo {
-        private final List<String> records = new ArrayList<>();
-        private Integer countOnRecordsCalled = 0;
-        private Integer countContinuationEvents = 0;
-        private Stats stats;
+        private final AtomicInteger countOnRecordsCalled = new AtomicInteger();
+        private final AtomicInteger countContinuationEvents = new AtomicInteger();
+        private volatile Stats stats;
 
         void incrementOnRecordsCalled() {
-            countOnRecordsCalled++;
+            countOnRecordsCalled.incrementAndGet();
         }
 
         void incrementContinuationEvents() {
-            countContinuationEvents++;
-        }
-
-        void addRecord(String record) {
-            records.add(record);
+            countContinuationEvents.incrementAndGet();
         }
 
         void addStats(Stats stats) {
             this.stats = stats;
         }
 
-        public List<String> getRecords() {
-            return records;
-        }
-
         public Integer getCountOnRecordsCalled() {
-            return countOnRecordsCalled;
+            return countOnRecordsCalled.get();
         }
 
         public Integer getCountContinuationEvents() {
-            return countContinuationEvents;
+            return countContinuationEvents.get();
         }
 
         public Stats getStats() {
@@ -210,10 +213,8 @@ public class SelectObjectContentExample {
 
         EventStreamInfo eventStreamInfo = new EventStreamInfo();
 
-        s3AsyncClient.selectObjectContent(select, buildResponseHandler(eventStreamInfo)).join();
-        long recordCount = eventStreamInfo.getRecords().stream().mapToInt(record ->
-                record.split("\n").length
-        ).sum();
+        // Quoted CSV fields can contain newlines; SelectRecordStream doesn't split records there.
+        long recordCount = processRecords(select, buildVisitor(eventStreamInfo));
         logger.info("Total records {}: {}", fileType, recordCount);
         logger.info("Visitor onRecords for fileType {} called {} times", fileType, eventStreamInfo.getCountOnRecordsCalled());
         logger.info("Visitor onStats for fileType {}, {}", fileType, eventStreamInfo.getStats());
@@ -0,0 +1,245 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3.async;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CSVOutput;
+import software.amazon.awssdk.services.s3.model.JSONOutput;
+import software.amazon.awssdk.services.s3.model.OutputSerialization;
+import software.amazon.awssdk.services.s3.model.RecordsEvent;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentEventStream;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentRequest;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentResponseHandler;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs an S3 Select query and hands out the result records one at a time as the
+ * event stream arrives, instead of collecting the whole result first.
+ *
+ * Records events are requested from the SDK only as they're consumed: at most
+ * prefetchEvents payloads are queued, and the next one is requested when the caller
+ * has taken all records of the current one. A slow consumer therefore slows down the
+ * response stream, and memory stays at a few event payloads plus the record that's
+ * being assembled, whatever the size of the result. Records that are split across
+ * events are joined, and CSV records with delimiters inside quoted fields are kept
+ * whole; see {@link RecordSplitter}.
+ *
+ * Iterate with {@link #hasNext()} and {@link #next()}, or use {@link #stream()}, on a
+ * thread of your own; both block while the next event is on its way. Other events,
+ * such as Stats and Progress, go to an optional visitor on the SDK's thread. Close the
+ * stream to cancel the query early.
+ */
+public final class SelectRecordStream implements Iterator<String>, AutoCloseable {
+
+    private static final int DEFAULT_PREFETCH_EVENTS = 4;
+    private static final Object END_OF_STREAM = new Object();
+
+    private final RecordSplitter splitter;
+    private final int prefetchEvents;
+    private final SelectObjectContentResponseHandler.Visitor visitor;
+    private final BlockingQueue<Object> payloads = new LinkedBlockingQueue<>();
+    private final AtomicReference<Subscription> subscription = new AtomicReference<>();
+    private volatile boolean closed;
+    private String nextRecord;
+    private boolean ended;
+    private long recordCount;
+
+    SelectRecordStream(RecordSplitter splitter, int prefetchEvents, SelectObjectContentResponseHandler.Visitor visitor) {
+        if (prefetchEvents < 1) {
+            throw new IllegalArgumentException("prefetchEvents must be positive");
+        }
+        this.splitter = splitter;
+        this.prefetchEvents = prefetchEvents;
+        this.visitor = visitor;
+    }
+
+    /**
+     * Starts the query and returns the stream of its records.
+     *
+     * @param s3AsyncClient the client that runs the query
+     * @param request       the query; its output serialization decides how records are split
+     * @return the records, which arrive as the query runs
+     */
+    public static SelectRecordStream open(S3AsyncClient s3AsyncClient, SelectObjectContentRequest request) {
+        return open(s3AsyncClient, request, DEFAULT_PREFETCH_EVENTS, null);
+    }
+
+    /**
+     * Starts the query and returns the stream of its records.
+     *
+     * @param s3AsyncClient  the client that runs the query
+     * @param request        the query; its output serialization decides how records are split
+     * @param prefetchEvents the number of Records events that are requested ahead of the consumer
+     * @param visitor        receives every event, including Records events, on the SDK's thread; can be null
+     * @return the records, which arrive as the query runs
+     */
+    public static SelectRecordStream open(S3AsyncClient s3AsyncClient, SelectObjectContentRequest request,
+                                          int prefetchEvents, SelectObjectContentResponseHandler.Visitor visitor) {
+        SelectRecordStream records = new SelectRecordStream(splitterFor(request.outputSerialization()),
+            prefetchEvents, visitor);
+        CompletableFuture<Void> response = s3AsyncClient.selectObjectContent(request, records.responseHandler());
+        // Errors before the event stream starts, such as NoSuchKey, only complete the future.
+        response.whenComplete((ignored, error) -> {
+            if (error != null) {
+                records.payloads.add(error);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Returns a sequential stream of the records. Closing the returned stream closes this one.
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+            false).onClose(this::close);
+    }
+
+    /**
+     * Returns the number of records handed out so far.
+     */
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextRecord == null && !ended) {
+            nextRecord = splitter.next();
+            if (nextRecord != null) {
+                break;
+            }
+            Object payload = take();
+            if (payload == END_OF_STREAM) {
+                nextRecord = splitter.finish();
+                ended = true;
+            } else if (payload instanceof Throwable error) {
+                ended = true;
+                throw error instanceof SdkException sdkException ? sdkException
+                    : SdkClientException.create("The Select query failed", error);
+            } else {
+                splitter.feed((ByteBuffer) payload);
+                // The event has been taken off the queue, so there's room for another one.
+                request(1);
+            }
+        }
+        return nextRecord != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String record = nextRecord;
+        nextRecord = null;
+        recordCount++;
+        return record;
+    }
+
+    /**
+     * Cancels the query if it's still running. Records that weren't taken yet are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ended = true;
+        Subscription current = subscription.get();
+        if (current != null) {
+            current.cancel();
+        }
+        payloads.clear();
+    }
+
+    SelectObjectContentResponseHandler responseHandler() {
+        return SelectObjectContentResponseHandler.builder()
+            .subscriber(EventSubscriber::new)
+            .build();
+    }
+
+    private Object take() {
+        try {
+            return payloads.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw AbortedException.builder().message("Interrupted while waiting for records").cause(e).build();
+        }
+    }
+
+    private void request(long count) {
+        Subscription current = subscription.get();
+        if (current != null && !closed) {
+            current.request(count);
+        }
+    }
+
+    private static RecordSplitter splitterFor(OutputSerialization output) {
+        if (output != null && output.csv() != null) {
+            CSVOutput csv = output.csv();
+            char quote = csv.quoteCharacter() == null || csv.quoteCharacter().isEmpty()
+                ? '"' : csv.quoteCharacter().charAt(0);
+            char escape = csv.quoteEscapeCharacter() == null || csv.quoteEscapeCharacter().isEmpty()
+                ? quote : csv.quoteEscapeCharacter().charAt(0);
+            return RecordSplitter.forCsv(delimiterOrNewline(csv.recordDelimiter()), quote, escape);
+        }
+        JSONOutput json = output == null ? null : output.json();
+        return RecordSplitter.forJson(delimiterOrNewline(json == null ? null : json.recordDelimiter()));
+    }
+
+    private static String delimiterOrNewline(String recordDelimiter) {
+        return recordDelimiter == null || recordDelimiter.isEmpty() ? "\n" : recordDelimiter;
+    }
+
+    // Runs on the SDK's threads and never blocks: payloads are queued, and demand limits how many.
+    private final class EventSubscriber implements Subscriber<SelectObjectContentEventStream> {
+
+        @Override
+        public void onSubscribe(Subscription newSubscription) {
+            if (!subscription.compareAndSet(null, newSubscription) || closed) {
+                newSubscription.cancel();
+                return;
+            }
+            newSubscription.request(prefetchEvents);
+        }
+
+        @Override
+        public void onNext(SelectObjectContentEventStream event) {
+            if (visitor != null) {
+                event.accept(visitor);
+            }
+            if (event instanceof RecordsEvent records && records.payload() != null) {
+                payloads.add(records.payload().asByteBuffer());
+            } else {
+                // Only Records events count against the prefetch limit.
+                request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            payloads.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            payloads.add(END_OF_STREAM);
+        }
+    }
+}
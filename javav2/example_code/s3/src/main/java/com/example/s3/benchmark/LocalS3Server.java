@@ -0,0 +1,981 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3.benchmark;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An in-process, in-memory stand-in for Amazon S3 that speaks the REST-XML
+ * protocol used by the AWS SDK for Java 2.x S3 clients with path-style
+ * addressing.
+ *
+ * The server supports the subset of operations that the upload and download
+ * examples use: CreateBucket, ListObjectsV2, PutObject, GetObject (including byte
+ * ranges and part numbers), HeadObject, GetObjectAttributes, DeleteObject,
+ * DeleteObjects, CreateMultipartUpload, UploadPart, ListParts, CompleteMultipartUpload, and
+ * AbortMultipartUpload. Request bodies sent with aws-chunked content encoding are
+ * decoded, so clients can keep their default signing and checksum settings.
+ * SHA-256 checksums sent with PutObject and UploadPart are verified and stored,
+ * and multipart objects get the checksum of their part checksums, like in S3.
+ *
+ * It is intended for repeatable local benchmarks and unit tests only. Signatures
+ * and most headers aren't validated. An optional response delay
+ * approximates a network round trip, and failures can be injected per operation
+ * to exercise retry and resume logic, either for whole requests or for single keys
+ * of a DeleteObjects request. For large benchmarks, object contents can
+ * be discarded so that only sizes and ETags are kept in memory.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+    private static final String XML_NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final int DEFAULT_MAX_PARTS = 1000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> injectedFailures = new ConcurrentHashMap<>();
+    private final AtomicInteger injectedKeyDeleteFailures = new AtomicInteger();
+    private final Map<String, AtomicLong> operationCounts = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile long responseDelayNanos;
+    private volatile boolean retainContent = true;
+
+    private LocalS3Server(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     *
+     * @return the running server
+     * @throws IOException if the server socket can't be bound
+     */
+    public static LocalS3Server start() throws IOException {
+        // Without TCP_NODELAY, small responses wait on delayed ACKs and every
+        // call takes tens of milliseconds.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        LocalS3Server s3Server = new LocalS3Server(httpServer, executor);
+        httpServer.createContext("/", s3Server::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return s3Server;
+    }
+
+    /**
+     * Returns the endpoint that SDK clients should use as their endpoint override.
+     */
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Creates an S3Client that sends its requests to this server using dummy
+     * credentials and path-style addressing.
+     */
+    public S3Client newClient() {
+        return newClient(builder -> {
+        });
+    }
+
+    /**
+     * Creates an S3Client that sends its requests to this server, after applying
+     * additional settings to its builder.
+     */
+    public S3Client newClient(Consumer<S3ClientBuilder> customizer) {
+        S3ClientBuilder builder = S3Client.builder()
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("local", "local")));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Creates an S3AsyncClient that sends its requests to this server using dummy
+     * credentials and path-style addressing.
+     */
+    public S3AsyncClient newAsyncClient() {
+        return newAsyncClient(builder -> {
+        });
+    }
+
+    /**
+     * Creates an S3AsyncClient that sends its requests to this server, after applying
+     * additional settings to its builder.
+     */
+    public S3AsyncClient newAsyncClient(Consumer<S3AsyncClientBuilder> customizer) {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("local", "local")));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Creates the bucket if it doesn't exist yet.
+     */
+    public void createBucket(String bucketName) {
+        buckets.computeIfAbsent(bucketName, name -> new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * Stores an object directly, without going through the HTTP interface.
+     */
+    public void putObject(String bucketName, String key, byte[] content) {
+        bucket(bucketName).put(key, StoredObject.of(content, retainContent, null));
+    }
+
+    /**
+     * Returns the content of an object, or null if the object doesn't exist or its
+     * content wasn't retained.
+     */
+    public byte[] objectContent(String bucketName, String key) {
+        StoredObject object = bucketOrEmpty(bucketName).get(key);
+        return object == null ? null : object.content;
+    }
+
+    /**
+     * Returns the size of an object, or -1 if it doesn't exist.
+     */
+    public long objectSize(String bucketName, String key) {
+        StoredObject object = bucketOrEmpty(bucketName).get(key);
+        return object == null ? -1 : object.size;
+    }
+
+    /**
+     * Returns the number of objects in the bucket.
+     */
+    public int objectCount(String bucketName) {
+        return bucketOrEmpty(bucketName).size();
+    }
+
+    /**
+     * Returns the number of multipart uploads that were created and neither
+     * completed nor aborted.
+     */
+    public int openUploadCount() {
+        return uploads.size();
+    }
+
+    /**
+     * Adds a delay before every response to approximate a network round trip.
+     */
+    public void setResponseDelay(Duration delay) {
+        this.responseDelayNanos = delay.toNanos();
+    }
+
+    /**
+     * Chooses whether object and part contents are kept. When they aren't, only
+     * sizes and ETags are stored, which keeps large benchmarks from filling the heap.
+     */
+    public void setRetainContent(boolean retainContent) {
+        this.retainContent = retainContent;
+    }
+
+    /**
+     * Makes the next requests of the given operation fail with 500 InternalError.
+     *
+     * @param operation the operation name, such as "UploadPart"
+     * @param count the number of requests that fail before the operation works again
+     */
+    public void failNext(String operation, int count) {
+        injectedFailures.computeIfAbsent(operation, op -> new AtomicInteger()).set(count);
+    }
+
+    /**
+     * Makes the next keys of DeleteObjects requests fail with a per-key InternalError
+     * while the request itself succeeds.
+     *
+     * @param count the number of keys that fail before deletes work again
+     */
+    public void failNextKeyDeletes(int count) {
+        injectedKeyDeleteFailures.set(count);
+    }
+
+    /**
+     * Returns the total number of API requests the server has handled.
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests of the given operation the server has handled,
+     * including the ones that failed.
+     */
+    public long operationCount(String operation) {
+        AtomicLong count = operationCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private NavigableMap<String, StoredObject> bucket(String bucketName) {
+        NavigableMap<String, StoredObject> bucket = buckets.get(bucketName);
+        if (bucket == null) {
+            throw new LocalS3Exception(404, "NoSuchBucket", "The specified bucket does not exist");
+        }
+        return bucket;
+    }
+
+    private NavigableMap<String, StoredObject> bucketOrEmpty(String bucketName) {
+        return buckets.getOrDefault(bucketName, new ConcurrentSkipListMap<>());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            Request request = Request.parse(exchange);
+            Response response;
+            try {
+                String operation = operation(request);
+                operationCounts.computeIfAbsent(operation, op -> new AtomicLong()).incrementAndGet();
+                AtomicInteger failures = injectedFailures.get(operation);
+                if (failures != null && failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    throw new LocalS3Exception(500, "InternalError", "Injected failure for " + operation);
+                }
+                response = dispatch(operation, request);
+            } catch (LocalS3Exception e) {
+                response = Response.xml(e.status, "<Error><Code>" + e.errorCode + "</Code><Message>"
+                        + xml(e.getMessage()) + "</Message><RequestId>" + UUID.randomUUID() + "</RequestId></Error>");
+            }
+
+            long delay = responseDelayNanos;
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("x-amz-request-id", UUID.randomUUID().toString());
+            response.headers.forEach(headers::set);
+            if (request.method.equals("HEAD")) {
+                if (response.contentLength >= 0) {
+                    headers.set("Content-Length", Long.toString(response.contentLength));
+                }
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+            if (response.body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response.body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String operation(Request request) {
+        boolean hasKey = !request.key.isEmpty();
+        Map<String, String> query = request.query;
+        return switch (request.method) {
+            case "PUT" -> !hasKey ? "CreateBucket"
+                    : query.containsKey("uploadId") ? "UploadPart" : "PutObject";
+            case "POST" -> query.containsKey("uploads") ? "CreateMultipartUpload"
+                    : query.containsKey("uploadId") ? "CompleteMultipartUpload"
+                    : query.containsKey("delete") && !hasKey ? "DeleteObjects" : "Unsupported";
+            case "GET" -> query.containsKey("uploadId") ? "ListParts"
+                    : !hasKey ? "2".equals(query.get("list-type")) ? "ListObjectsV2" : "Unsupported"
+                    : query.containsKey("attributes") ? "GetObjectAttributes" : "GetObject";
+            case "HEAD" -> hasKey ? "HeadObject" : "HeadBucket";
+            case "DELETE" -> !hasKey ? "DeleteBucket"
+                    : query.containsKey("uploadId") ? "AbortMultipartUpload" : "DeleteObject";
+            default -> "Unsupported";
+        };
+    }
+
+    private Response dispatch(String operation, Request request) {
+        return switch (operation) {
+            case "CreateBucket" -> createBucket(request);
+            case "HeadBucket" -> headBucket(request);
+            case "DeleteBucket" -> deleteBucket(request);
+            case "ListObjectsV2" -> listObjectsV2(request);
+            case "PutObject" -> putObject(request);
+            case "GetObject" -> getObject(request, false);
+            case "HeadObject" -> getObject(request, true);
+            case "GetObjectAttributes" -> getObjectAttributes(request);
+            case "DeleteObject" -> deleteObject(request);
+            case "DeleteObjects" -> deleteObjects(request);
+            case "CreateMultipartUpload" -> createMultipartUpload(request);
+            case "UploadPart" -> uploadPart(request);
+            case "ListParts" -> listParts(request);
+            case "CompleteMultipartUpload" -> completeMultipartUpload(request);
+            case "AbortMultipartUpload" -> abortMultipartUpload(request);
+            default -> throw new LocalS3Exception(501, "NotImplemented",
+                    request.method + " " + request.bucket + "/" + request.key + " isn't supported");
+        };
+    }
+
+    private Response createBucket(Request request) {
+        createBucket(request.bucket);
+        return Response.empty(200).header("Location", "/" + request.bucket);
+    }
+
+    private Response headBucket(Request request) {
+        bucket(request.bucket);
+        return Response.empty(200);
+    }
+
+    private Response deleteBucket(Request request) {
+        if (!bucket(request.bucket).isEmpty()) {
+            throw new LocalS3Exception(409, "BucketNotEmpty", "The bucket you tried to delete is not empty");
+        }
+        buckets.remove(request.bucket);
+        return Response.empty(204);
+    }
+
+    private Response listObjectsV2(Request request) {
+        NavigableMap<String, StoredObject> bucket = bucket(request.bucket);
+        String prefix = request.query.getOrDefault("prefix", "");
+        String delimiter = request.query.getOrDefault("delimiter", "");
+        int maxKeys = Math.min(1000, Integer.parseInt(request.query.getOrDefault("max-keys", "1000")));
+        String token = request.query.get("continuation-token");
+        // The continuation token is the last key or common prefix that was returned.
+        String cursor = token != null
+                ? new String(Base64.getDecoder().decode(token), StandardCharsets.UTF_8)
+                : request.query.get("start-after");
+
+        StringBuilder contents = new StringBuilder();
+        StringBuilder commonPrefixes = new StringBuilder();
+        int keyCount = 0;
+        boolean truncated = false;
+        while (true) {
+            String key = cursor == null || cursor.compareTo(prefix) < 0
+                    ? bucket.ceilingKey(prefix) : bucket.higherKey(cursor);
+            if (key == null || !key.startsWith(prefix)) {
+                break;
+            }
+            if (keyCount == maxKeys) {
+                truncated = true;
+                break;
+            }
+            int delimiterIndex = delimiter.isEmpty() ? -1 : key.indexOf(delimiter, prefix.length());
+            if (delimiterIndex >= 0) {
+                String commonPrefix = key.substring(0, delimiterIndex + delimiter.length());
+                commonPrefixes.append("<CommonPrefixes><Prefix>").append(xml(commonPrefix))
+                        .append("</Prefix></CommonPrefixes>");
+                // Skip the remaining keys that share the common prefix.
+                cursor = commonPrefix + Character.MAX_VALUE;
+            } else {
+                StoredObject object = bucket.get(key);
+                if (object == null) {
+                    cursor = key;
+                    continue;
+                }
+                contents.append("<Contents><Key>").append(xml(key)).append("</Key>")
+                        .append("<LastModified>").append(object.lastModified).append("</LastModified>")
+                        .append("<ETag>").append(xml(object.eTag)).append("</ETag>")
+                        .append("<Size>").append(object.size).append("</Size>")
+                        .append("<StorageClass>STANDARD</StorageClass></Contents>");
+                cursor = key;
+            }
+            keyCount++;
+        }
+        String nextToken = truncated
+                ? Base64.getEncoder().encodeToString(cursor.getBytes(StandardCharsets.UTF_8)) : null;
+        return Response.xml(200, "<ListBucketResult xmlns=\"" + XML_NAMESPACE + "\">"
+                + "<Name>" + xml(request.bucket) + "</Name>"
+                + "<Prefix>" + xml(prefix) + "</Prefix>"
+                + (delimiter.isEmpty() ? "" : "<Delimiter>" + xml(delimiter) + "</Delimiter>")
+                + "<MaxKeys>" + maxKeys + "</MaxKeys>"
+                + "<KeyCount>" + keyCount + "</KeyCount>"
+                + "<IsTruncated>" + truncated + "</IsTruncated>"
+                + (token == null ? "" : "<ContinuationToken>" + token + "</ContinuationToken>")
+                + (nextToken == null ? "" : "<NextContinuationToken>" + nextToken + "</NextContinuationToken>")
+                + contents
+                + commonPrefixes
+                + "</ListBucketResult>");
+    }
+
+    private Response putObject(Request request) {
+        StoredObject object = StoredObject.of(request.body, retainContent, verifiedChecksum(request));
+        bucket(request.bucket).put(request.key, object);
+        return withChecksum(Response.empty(200).header("ETag", object.eTag), object.checksumSha256);
+    }
+
+    private Response getObject(Request request, boolean headOnly) {
+        StoredObject object = bucket(request.bucket).get(request.key);
+        if (object == null) {
+            throw new LocalS3Exception(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        Response response = Response.empty(200)
+                .header("ETag", object.eTag)
+                .header("Last-Modified", HTTP_DATE.format(object.lastModified))
+                .header("Accept-Ranges", "bytes")
+                .header("Content-Type", "binary/octet-stream");
+        if (!object.parts.isEmpty()) {
+            response.header("x-amz-mp-parts-count", Integer.toString(object.parts.size()));
+        }
+        boolean checksumEnabled = "ENABLED".equalsIgnoreCase(request.headers.getFirst("x-amz-checksum-mode"));
+
+        long start = 0;
+        long end = object.size - 1;
+        String range = request.headers.getFirst("Range");
+        String partNumber = request.query.get("partNumber");
+        if (partNumber != null) {
+            // A part number selects the byte range of that part, and the checksum is the part's own.
+            int number = Integer.parseInt(partNumber);
+            ObjectPart selected = null;
+            for (ObjectPart part : object.parts) {
+                if (part.partNumber == number) {
+                    selected = part;
+                    break;
+                }
+                start += part.size;
+            }
+            if (selected == null) {
+                throw new LocalS3Exception(416, "InvalidPartNumber", "The requested partnumber is not satisfiable");
+            }
+            end = start + selected.size - 1;
+            response.status = 206;
+            response.header("Content-Range", "bytes " + start + "-" + end + "/" + object.size);
+            if (checksumEnabled) {
+                withChecksum(response, selected.checksumSha256);
+            }
+        } else if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, object.size - Long.parseLong(bounds[1]));
+            } else {
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+            }
+            if (start > end) {
+                throw new LocalS3Exception(416, "InvalidRange", "The requested range is not satisfiable");
+            }
+            response.status = 206;
+            response.header("Content-Range", "bytes " + start + "-" + end + "/" + object.size);
+        } else if (checksumEnabled && object.checksumSha256 != null) {
+            withChecksum(response, object.parts.isEmpty()
+                    ? object.checksumSha256 : object.checksumSha256 + "-" + object.parts.size());
+        }
+
+        long length = end - start + 1;
+        if (headOnly) {
+            response.contentLength = length;
+            return response;
+        }
+        response.body = object.content == null
+                ? new byte[(int) length]
+                : Arrays.copyOfRange(object.content, (int) start, (int) (end + 1));
+        return response;
+    }
+
+    private Response getObjectAttributes(Request request) {
+        StoredObject object = bucket(request.bucket).get(request.key);
+        if (object == null) {
+            throw new LocalS3Exception(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        List<String> requested = new ArrayList<>();
+        for (String value : request.headers.getOrDefault("x-amz-object-attributes", List.of())) {
+            requested.addAll(Arrays.asList(value.split("\\s*,\\s*")));
+        }
+
+        StringBuilder result = new StringBuilder("<GetObjectAttributesResponse xmlns=\"" + XML_NAMESPACE + "\">");
+        if (requested.contains("ETag")) {
+            // GetObjectAttributes reports the ETag without quotes.
+            result.append("<ETag>").append(xml(object.eTag.replace("\"", ""))).append("</ETag>");
+        }
+        if (requested.contains("Checksum") && object.checksumSha256 != null) {
+            result.append("<Checksum><ChecksumSHA256>").append(object.checksumSha256).append("</ChecksumSHA256></Checksum>");
+        }
+        if (requested.contains("ObjectParts") && !object.parts.isEmpty()) {
+            int marker = headerInt(request, "x-amz-part-number-marker", 0);
+            int maxParts = headerInt(request, "x-amz-max-parts", DEFAULT_MAX_PARTS);
+            StringBuilder parts = new StringBuilder();
+            int listed = 0;
+            int lastListed = marker;
+            boolean truncated = false;
+            for (ObjectPart part : object.parts) {
+                if (part.partNumber <= marker) {
+                    continue;
+                }
+                if (listed == maxParts) {
+                    truncated = true;
+                    break;
+                }
+                parts.append("<Part><PartNumber>").append(part.partNumber).append("</PartNumber>")
+                        .append("<Size>").append(part.size).append("</Size>");
+                if (part.checksumSha256 != null) {
+                    parts.append("<ChecksumSHA256>").append(part.checksumSha256).append("</ChecksumSHA256>");
+                }
+                parts.append("</Part>");
+                lastListed = part.partNumber;
+                listed++;
+            }
+            result.append("<ObjectParts>")
+                    .append("<PartsCount>").append(object.parts.size()).append("</PartsCount>")
+                    .append("<PartNumberMarker>").append(marker).append("</PartNumberMarker>")
+                    .append("<NextPartNumberMarker>").append(lastListed).append("</NextPartNumberMarker>")
+                    .append("<MaxParts>").append(maxParts).append("</MaxParts>")
+                    .append("<IsTruncated>").append(truncated).append("</IsTruncated>")
+                    .append(parts)
+                    .append("</ObjectParts>");
+        }
+        if (requested.contains("StorageClass")) {
+            result.append("<StorageClass>STANDARD</StorageClass>");
+        }
+        if (requested.contains("ObjectSize")) {
+            result.append("<ObjectSize>").append(object.size).append("</ObjectSize>");
+        }
+        result.append("</GetObjectAttributesResponse>");
+        return Response.xml(200, result.toString())
+                .header("Last-Modified", HTTP_DATE.format(object.lastModified));
+    }
+
+    private Response deleteObject(Request request) {
+        bucket(request.bucket).remove(request.key);
+        return Response.empty(204);
+    }
+
+    private Response deleteObjects(Request request) {
+        NavigableMap<String, StoredObject> bucket = bucket(request.bucket);
+        Document document = parseXml(request.body);
+        NodeList objectElements = document.getElementsByTagNameNS("*", "Object");
+        if (objectElements.getLength() == 0 || objectElements.getLength() > 1000) {
+            throw new LocalS3Exception(400, "MalformedXML", "The XML you provided was not well-formed");
+        }
+        boolean quiet = "true".equals(childText(document.getDocumentElement(), "Quiet"));
+
+        StringBuilder result = new StringBuilder("<DeleteResult xmlns=\"" + XML_NAMESPACE + "\">");
+        for (int i = 0; i < objectElements.getLength(); i++) {
+            String key = childText((Element) objectElements.item(i), "Key");
+            if (injectedKeyDeleteFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                result.append("<Error><Key>").append(xml(key)).append("</Key><Code>InternalError</Code>")
+                        .append("<Message>Injected failure for ").append(xml(key)).append("</Message></Error>");
+                continue;
+            }
+            bucket.remove(key);
+            if (!quiet) {
+                result.append("<Deleted><Key>").append(xml(key)).append("</Key></Deleted>");
+            }
+        }
+        return Response.xml(200, result.append("</DeleteResult>").toString());
+    }
+
+    private Response createMultipartUpload(Request request) {
+        bucket(request.bucket);
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new MultipartUpload(request.bucket, request.key));
+        return Response.xml(200, "<InitiateMultipartUploadResult xmlns=\"" + XML_NAMESPACE + "\">"
+                + "<Bucket>" + xml(request.bucket) + "</Bucket>"
+                + "<Key>" + xml(request.key) + "</Key>"
+                + "<UploadId>" + uploadId + "</UploadId>"
+                + "</InitiateMultipartUploadResult>");
+    }
+
+    private Response uploadPart(Request request) {
+        MultipartUpload upload = upload(request);
+        int partNumber = Integer.parseInt(request.query.getOrDefault("partNumber", "0"));
+        if (partNumber < 1 || partNumber > 10_000) {
+            throw new LocalS3Exception(400, "InvalidArgument", "Part number must be between 1 and 10000");
+        }
+        StoredObject part = StoredObject.of(request.body, retainContent, verifiedChecksum(request));
+        upload.parts.put(partNumber, part);
+        return withChecksum(Response.empty(200).header("ETag", part.eTag), part.checksumSha256);
+    }
+
+    private Response listParts(Request request) {
+        MultipartUpload upload = upload(request);
+        int marker = Integer.parseInt(request.query.getOrDefault("part-number-marker", "0"));
+        int maxParts = Integer.parseInt(request.query.getOrDefault("max-parts", Integer.toString(DEFAULT_MAX_PARTS)));
+
+        StringBuilder parts = new StringBuilder();
+        int listed = 0;
+        int lastListed = marker;
+        boolean truncated = false;
+        for (Map.Entry<Integer, StoredObject> entry : upload.parts.tailMap(marker, false).entrySet()) {
+            if (listed == maxParts) {
+                truncated = true;
+                break;
+            }
+            StoredObject part = entry.getValue();
+            parts.append("<Part><PartNumber>").append(entry.getKey()).append("</PartNumber>")
+                    .append("<LastModified>").append(part.lastModified).append("</LastModified>")
+                    .append("<ETag>").append(xml(part.eTag)).append("</ETag>")
+                    .append("<Size>").append(part.size).append("</Size></Part>");
+            lastListed = entry.getKey();
+            listed++;
+        }
+        return Response.xml(200, "<ListPartsResult xmlns=\"" + XML_NAMESPACE + "\">"
+                + "<Bucket>" + xml(upload.bucket) + "</Bucket>"
+                + "<Key>" + xml(upload.key) + "</Key>"
+                + "<UploadId>" + request.query.get("uploadId") + "</UploadId>"
+                + "<PartNumberMarker>" + marker + "</PartNumberMarker>"
+                + "<NextPartNumberMarker>" + lastListed + "</NextPartNumberMarker>"
+                + "<MaxParts>" + maxParts + "</MaxParts>"
+                + "<IsTruncated>" + truncated + "</IsTruncated>"
+                + parts
+                + "</ListPartsResult>");
+    }
+
+    private Response completeMultipartUpload(Request request) {
+        MultipartUpload upload = upload(request);
+        Document document = parseXml(request.body);
+        NodeList partElements = document.getElementsByTagNameNS("*", "Part");
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        MessageDigest md5OfMd5s = md5();
+        MessageDigest sha256OfSha256s = sha256();
+        List<ObjectPart> objectParts = new ArrayList<>();
+        boolean allPartsHaveChecksums = true;
+        long size = 0;
+        int previousPartNumber = 0;
+        boolean keepContent = retainContent;
+        for (int i = 0; i < partElements.getLength(); i++) {
+            Element element = (Element) partElements.item(i);
+            int partNumber = Integer.parseInt(childText(element, "PartNumber"));
+            String eTag = childText(element, "ETag");
+            StoredObject part = upload.parts.get(partNumber);
+            if (part == null || !part.eTag.equals(eTag)) {
+                throw new LocalS3Exception(400, "InvalidPart",
+                        "One or more of the specified parts could not be found: " + partNumber);
+            }
+            if (partNumber <= previousPartNumber) {
+                throw new LocalS3Exception(400, "InvalidPartOrder", "The list of parts was not in ascending order");
+            }
+            previousPartNumber = partNumber;
+            md5OfMd5s.update(HexFormat.of().parseHex(part.eTag.substring(1, part.eTag.length() - 1)));
+            if (part.checksumSha256 != null) {
+                sha256OfSha256s.update(Base64.getDecoder().decode(part.checksumSha256));
+            } else {
+                allPartsHaveChecksums = false;
+            }
+            objectParts.add(new ObjectPart(partNumber, part.size, part.checksumSha256));
+            size += part.size;
+            if (keepContent && part.content != null) {
+                content.writeBytes(part.content);
+            } else {
+                keepContent = false;
+            }
+        }
+        if (partElements.getLength() == 0) {
+            throw new LocalS3Exception(400, "MalformedXML", "The XML you provided was not well-formed");
+        }
+
+        String eTag = "\"" + HexFormat.of().formatHex(md5OfMd5s.digest()) + "-" + partElements.getLength() + "\"";
+        // Like S3, the checksum of a multipart object is the checksum of its part checksums.
+        String checksum = allPartsHaveChecksums
+                ? Base64.getEncoder().encodeToString(sha256OfSha256s.digest()) : null;
+        StoredObject object = new StoredObject(keepContent ? content.toByteArray() : null, size, eTag,
+                Instant.now(), checksum, List.copyOf(objectParts));
+        bucket(upload.bucket).put(upload.key, object);
+        uploads.remove(request.query.get("uploadId"));
+        return Response.xml(200, "<CompleteMultipartUploadResult xmlns=\"" + XML_NAMESPACE + "\">"
+                + "<Location>" + endpoint() + "/" + xml(upload.bucket) + "/" + xml(upload.key) + "</Location>"
+                + "<Bucket>" + xml(upload.bucket) + "</Bucket>"
+                + "<Key>" + xml(upload.key) + "</Key>"
+                + "<ETag>" + xml(eTag) + "</ETag>"
+                + (checksum == null ? ""
+                        : "<ChecksumSHA256>" + checksum + "-" + objectParts.size() + "</ChecksumSHA256>")
+                + "</CompleteMultipartUploadResult>");
+    }
+
+    private Response abortMultipartUpload(Request request) {
+        upload(request);
+        uploads.remove(request.query.get("uploadId"));
+        return Response.empty(204);
+    }
+
+    private MultipartUpload upload(Request request) {
+        MultipartUpload upload = uploads.get(request.query.get("uploadId"));
+        if (upload == null || !upload.bucket.equals(request.bucket) || !upload.key.equals(request.key)) {
+            throw new LocalS3Exception(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+        return upload;
+    }
+
+    // Verifies the SHA-256 checksum that was sent as a header or an aws-chunked trailer, if any.
+    private static String verifiedChecksum(Request request) {
+        String expected = request.header("x-amz-checksum-sha256");
+        if (expected == null) {
+            return null;
+        }
+        String actual = Base64.getEncoder().encodeToString(sha256().digest(request.body));
+        if (!actual.equals(expected)) {
+            throw new LocalS3Exception(400, "BadDigest",
+                    "The SHA256 you specified did not match the calculated checksum.");
+        }
+        return actual;
+    }
+
+    private static Response withChecksum(Response response, String checksumSha256) {
+        return checksumSha256 == null ? response : response.header("x-amz-checksum-sha256", checksumSha256);
+    }
+
+    private static int headerInt(Request request, String name, int defaultValue) {
+        String value = request.headers.getFirst(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static Document parseXml(byte[] body) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(body));
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            throw new LocalS3Exception(400, "MalformedXML", "The XML you provided was not well-formed");
+        }
+    }
+
+    private static String childText(Element element, String name) {
+        NodeList children = element.getElementsByTagNameNS("*", name);
+        return children.getLength() == 0 ? "" : children.item(0).getTextContent().trim();
+    }
+
+    private static String xml(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Request(String method, String bucket, String key, Map<String, String> query,
+                           Headers headers, Map<String, String> trailers, byte[] body) {
+
+        String header(String name) {
+            String value = headers.getFirst(name);
+            return value != null ? value : trailers.get(name.toLowerCase());
+        }
+
+        static Request parse(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String bucketAndKey = path.startsWith("/") ? path.substring(1) : path;
+            int slash = bucketAndKey.indexOf('/');
+            String bucket = slash < 0 ? bucketAndKey : bucketAndKey.substring(0, slash);
+            String key = slash < 0 ? "" : bucketAndKey.substring(slash + 1);
+
+            Map<String, String> query = new HashMap<>();
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String parameter : rawQuery.split("&")) {
+                    int equals = parameter.indexOf('=');
+                    String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                    String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                    query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                            URLDecoder.decode(value, StandardCharsets.UTF_8));
+                }
+            }
+
+            Headers headers = exchange.getRequestHeaders();
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            Map<String, String> trailers = new HashMap<>();
+            String contentSha256 = headers.getFirst("x-amz-content-sha256");
+            String contentEncoding = headers.getFirst("Content-Encoding");
+            if ((contentSha256 != null && contentSha256.startsWith("STREAMING-"))
+                    || (contentEncoding != null && contentEncoding.contains("aws-chunked"))) {
+                body = decodeAwsChunked(body, trailers);
+            }
+            return new Request(exchange.getRequestMethod(), bucket, key, query, headers, trailers, body);
+        }
+
+        // Each chunk is "<hex size>[;chunk-signature=...]\r\n<data>\r\n"; the last chunk
+        // has size 0 and is followed by optional trailing checksum headers.
+        private static byte[] decodeAwsChunked(byte[] encoded, Map<String, String> trailers) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream(encoded.length);
+            int position = 0;
+            while (position < encoded.length) {
+                int lineEnd = indexOfCrlf(encoded, position);
+                if (lineEnd < 0) {
+                    break;
+                }
+                String header = new String(encoded, position, lineEnd - position, StandardCharsets.US_ASCII);
+                int semicolon = header.indexOf(';');
+                int size = Integer.parseInt((semicolon < 0 ? header : header.substring(0, semicolon)).trim(), 16);
+                position = lineEnd + 2;
+                if (size == 0) {
+                    readTrailers(encoded, position, trailers);
+                    break;
+                }
+                decoded.write(encoded, position, size);
+                position += size + 2;
+            }
+            return decoded.toByteArray();
+        }
+
+        private static void readTrailers(byte[] encoded, int position, Map<String, String> trailers) {
+            int lineEnd;
+            while ((lineEnd = indexOfCrlf(encoded, position)) > position) {
+                String line = new String(encoded, position, lineEnd - position, StandardCharsets.US_ASCII);
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    trailers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+                }
+                position = lineEnd + 2;
+            }
+        }
+
+        private static int indexOfCrlf(byte[] bytes, int from) {
+            for (int i = from; i < bytes.length - 1; i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Response {
+        private int status;
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body = new byte[0];
+        // Set for HEAD responses, which report the size of a body they don't send.
+        private long contentLength = -1;
+
+        private Response(int status) {
+            this.status = status;
+        }
+
+        static Response empty(int status) {
+            return new Response(status);
+        }
+
+        static Response xml(int status, String document) {
+            Response response = new Response(status);
+            response.header("Content-Type", "application/xml");
+            response.body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + document).getBytes(StandardCharsets.UTF_8);
+            return response;
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private record StoredObject(byte[] content, long size, String eTag, Instant lastModified,
+                                String checksumSha256, List<ObjectPart> parts) {
+
+        static StoredObject of(byte[] content, boolean retainContent, String checksumSha256) {
+            String eTag = "\"" + HexFormat.of().formatHex(md5().digest(content)) + "\"";
+            return new StoredObject(retainContent ? content : null, content.length, eTag, Instant.now(),
+                    checksumSha256, List.of());
+        }
+    }
+
+    private record ObjectPart(int partNumber, long size, String checksumSha256) {
+    }
+
+    private static final class MultipartUpload {
+        private final String bucket;
+        private final String key;
+        private final NavigableMap<Integer, StoredObject> parts = new ConcurrentSkipListMap<>();
+
+        MultipartUpload(String bucket, String key) {
+            this.bucket = bucket;
+            this.key = key;
+        }
+    }
+
+    private static final class LocalS3Exception extends RuntimeException {
+        private final int status;
+        private final String errorCode;
+
+        LocalS3Exception(int status, String errorCode, String message) {
+            super(message);
+            this.status = status;
+            this.errorCode = errorCode;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.s3.benchmark;
+
+import com.example.s3.ParallelMultipartUploader;
+import com.example.s3.PerformMultiPartUpload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.core.SdkSystemSetting;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark that compares the multipart upload variants of
+ * {@link PerformMultiPartUpload} against {@link LocalS3Server}, an in-process S3
+ * stand-in, so that results are repeatable and free of AWS charges.
+ *
+ * - sequentialS3Client: multipartUploadWithS3Client, one heap-buffered part at a time
+ * - parallelS3Client: multipartUploadWithParallelS3Client, memory-mapped parts
+ *   uploaded by {@link ParallelMultipartUploader}
+ * - transferManager: multipartUploadWithTransferManager
+ * - s3AsyncClient: multipartUploadWithS3AsyncClient with multipart support enabled
+ *
+ * The transfer manager is built on a Java-based S3AsyncClient with multipart support
+ * instead of the AWS CRT-based client, because the CRT client doesn't run against a
+ * plain HTTP endpoint the same way. Both asynchronous variants use the same part
+ * size as the parallel uploader.
+ *
+ * Running {@link #main(String[])} reports the average time per upload and bytes
+ * allocated per upload (gc.alloc.rate.norm). Use responseDelayMillis to approximate
+ * the round trip to S3, which is where uploading parts in parallel pays off, for
+ * example {@code -p fileSizeMiB=256 -p responseDelayMillis=0,20 -p maxConcurrentParts=4,16}.
+ * The allocation figures include the work done by the in-process server, so compare
+ * them relative to each other rather than as absolutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class MultipartUploadBenchmark {
+
+    private static final String BUCKET_NAME = "benchmark-bucket";
+    private static final String KEY = "benchmark-object";
+
+    @Param({"64"})
+    public int fileSizeMiB;
+
+    @Param({"8"})
+    public int partSizeMiB;
+
+    @Param({"8"})
+    public int maxConcurrentParts;
+
+    @Param({"0", "20"})
+    public int responseDelayMillis;
+
+    private LocalS3Server server;
+    private Path file;
+    private String filePath;
+    private S3Client s3Client;
+    private S3AsyncClient s3AsyncClient;
+    private S3TransferManager transferManager;
+    private ParallelMultipartUploader.Config parallelConfig;
+    private PerformMultiPartUpload performMultiPartUpload;
+
+    @Setup
+    public void setUp() throws IOException {
+        // PerformMultiPartUpload creates a default S3Client when it's loaded, which needs a Region.
+        if (System.getProperty(SdkSystemSetting.AWS_REGION.property()) == null
+                && System.getenv(SdkSystemSetting.AWS_REGION.environmentVariable()) == null) {
+            System.setProperty(SdkSystemSetting.AWS_REGION.property(), "us-east-1");
+        }
+
+        server = LocalS3Server.start();
+        server.setRetainContent(false);
+        server.setResponseDelay(Duration.ofMillis(responseDelayMillis));
+        server.createBucket(BUCKET_NAME);
+
+        file = Files.createTempFile("multipart-upload-benchmark", ".bin");
+        byte[] chunk = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMiB; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+        filePath = file.toString();
+
+        long partSizeBytes = partSizeMiB * 1024L * 1024;
+        int connections = Math.max(50, maxConcurrentParts);
+        s3Client = server.newClient(b -> b.httpClientBuilder(ApacheHttpClient.builder()
+                .maxConnections(connections)));
+        s3AsyncClient = server.newAsyncClient(b -> b
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(connections))
+                .multipartEnabled(true)
+                .multipartConfiguration(m -> m
+                        .minimumPartSizeInBytes(partSizeBytes)
+                        .thresholdInBytes(partSizeBytes)));
+        transferManager = S3TransferManager.builder()
+                .s3Client(s3AsyncClient)
+                .build();
+        parallelConfig = new ParallelMultipartUploader.Config(partSizeBytes, maxConcurrentParts, 3,
+                Duration.ofMillis(200));
+        performMultiPartUpload = new PerformMultiPartUpload();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        transferManager.close();
+        s3AsyncClient.close();
+        s3Client.close();
+        server.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void sequentialS3Client() {
+        performMultiPartUpload.multipartUploadWithS3Client(s3Client, BUCKET_NAME, KEY, filePath);
+    }
+
+    @Benchmark
+    public void parallelS3Client() {
+        performMultiPartUpload.multipartUploadWithParallelS3Client(s3Client, parallelConfig, BUCKET_NAME, KEY,
+                filePath);
+    }
+
+    @Benchmark
+    public void transferManager() {
+        performMultiPartUpload.multipartUploadWithTransferManager(transferManager, BUCKET_NAME, KEY, filePath);
+    }
+
+    @Benchmark
+    public void s3AsyncClient() {
+        performMultiPartUpload.multipartUploadWithS3AsyncClient(s3AsyncClient, BUCKET_NAME, KEY, filePath);
+    }
+
+    /**
+     * Runs the benchmark with the GC profiler. Standard JMH command-line options are
+     * accepted; without an include pattern, only this benchmark runs.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine).addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(MultipartUploadBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -2,6 +2,7 @@
 // SPDX-License-Identifier: Apache-2.0
 package com.example.s3.util;
 
+import com.example.s3.BucketDrainer;
 import com.example.s3.directorybucket.CompleteDirectoryBucketMultipartUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +39,6 @@ import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
 import software.amazon.awssdk.services.s3.model.ListMultipartUploadsResponse;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.LocationInfo;
 import software.amazon.awssdk.services.s3.model.LocationType;
 import software.amazon.awssdk.services.s3.model.MultipartUpload;
@@ -48,8 +47,8 @@ import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutBucketEncryptionRequest;
 import software.amazon.awssdk.services.s3.model.PutBucketPolicyRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.S3Exception;
-import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
 import software.amazon.awssdk.services.s3.model.ServerSideEncryptionByDefault;
 import software.amazon.awssdk.services.s3.model.ServerSideEncryptionConfiguration;
@@ -382,29 +381,22 @@ public class S3DirectoryBucketUtils {
      */
     public static void deleteAllObjectsInDirectoryBucket(S3Client s3Client, String bucketName) {
         try {
-            ListObjectsV2Request listObjectsRequest = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .build();
-
-            ListObjectsV2Response listObjectsResponse;
-            do {
-                listObjectsResponse = s3Client.listObjectsV2(listObjectsRequest);
-                List<S3Object> objects = listObjectsResponse.contents();
-
-                for (S3Object object : objects) {
-                    DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(object.key())
-                            .build();
-                    s3Client.deleteObject(deleteObjectRequest);
-                }
-
-                listObjectsRequest = listObjectsRequest.toBuilder()
-                        .continuationToken(listObjectsResponse.nextContinuationToken())
+            // Lists prefixes in parallel and deletes the keys in DeleteObjects batches of up to 1,000.
+            BucketDrainer.Summary summary = new BucketDrainer(s3Client, BucketDrainer.Config.defaults())
+                    .deleteAll(bucketName, "");
+            if (summary.failedKeyCount() > 0) {
+                S3Error failure = summary.failures().get(0);
+                throw S3Exception.builder()
+                        .message(summary.failedKeyCount() + " objects couldn't be deleted")
+                        .awsErrorDetails(AwsErrorDetails.builder()
+                                .errorCode(failure.code())
+                                .errorMessage(summary.failedKeyCount() + " objects couldn't be deleted, for example "
+                                        + failure.key() + ": " + failure.message())
+                                .build())
                         .build();
-            } while (listObjectsResponse.isTruncated());
+            }
 
-            logger.info("Successfully deleted all objects in bucket: {}", bucketName);
+            logger.info("Successfully deleted all {} objects in bucket: {}", summary.deletedKeys(), bucketName);
         } catch (S3Exception e) {
             logger.error("Failed to delete objects in bucket: {} - Error code: {}", e.awsErrorDetails().errorMessage(), e.awsErrorDetails().errorCode());
             throw e;
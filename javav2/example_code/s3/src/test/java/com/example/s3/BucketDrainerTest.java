@@ -0,0 +1,109 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3;
+
+import com.example.s3.benchmark.LocalS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class BucketDrainerTest {
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final BucketDrainer.Config CONFIG =
+        new BucketDrainer.Config(4, 3, 1000, 3, Duration.ofMillis(1), "/", Duration.ofSeconds(1));
+
+    private LocalS3Server server;
+    private S3Client s3Client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalS3Server.start();
+        server.createBucket(BUCKET_NAME);
+        // SDK retries are off so that the drainer's own retries are what's tested.
+        s3Client = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.close();
+    }
+
+    @Test
+    void listsEveryKeyAcrossNestedPrefixes() {
+        int count = putNestedKeys("logs/", 4_321);
+        server.putObject(BUCKET_NAME, "root.txt", new byte[7]);
+        Set<String> listed = ConcurrentHashMap.newKeySet();
+
+        BucketDrainer.Summary summary = new BucketDrainer(s3Client, CONFIG)
+            .list(BUCKET_NAME, "", object -> listed.add(object.key()));
+
+        assertEquals(count + 1, summary.listedKeys());
+        assertEquals(count + 1, listed.size());
+        assertEquals(count * 3L + 7, summary.listedBytes());
+        assertTrue(listed.contains("root.txt"));
+    }
+
+    @Test
+    void deletesOnlyTheKeysUnderThePrefixInFullBatches() {
+        int count = putNestedKeys("logs/", 5_500);
+        int kept = putNestedKeys("keep/", 20);
+
+        BucketDrainer.Summary summary = new BucketDrainer(s3Client, CONFIG).deleteAll(BUCKET_NAME, "logs/");
+
+        assertEquals(count, summary.deletedKeys());
+        assertEquals(0, summary.failedKeyCount());
+        assertEquals(kept, server.objectCount(BUCKET_NAME));
+        assertEquals(6, server.operationCount("DeleteObjects"));
+    }
+
+    @Test
+    void retriesFailedKeysAndFailedRequests() {
+        int count = putNestedKeys("logs/", 2_500);
+        server.failNextKeyDeletes(5);
+        server.failNext("DeleteObjects", 1);
+
+        BucketDrainer.Summary summary = new BucketDrainer(s3Client, CONFIG).deleteAll(BUCKET_NAME, "");
+
+        assertEquals(count, summary.deletedKeys());
+        assertEquals(0, summary.failedKeyCount());
+        assertEquals(0, server.objectCount(BUCKET_NAME));
+    }
+
+    @Test
+    void reportsKeysThatStillFailAfterAllAttempts() {
+        putNestedKeys("logs/", 10);
+        server.failNextKeyDeletes(15);
+
+        BucketDrainer.Summary summary = new BucketDrainer(s3Client,
+            new BucketDrainer.Config(2, 1, 10, 2, Duration.ofMillis(1), "/", Duration.ofSeconds(1)))
+            .deleteAll(BUCKET_NAME, "");
+
+        assertEquals(5, summary.deletedKeys());
+        assertEquals(5, summary.failedKeyCount());
+        assertEquals("InternalError", summary.failures().get(0).code());
+        assertEquals(5, server.objectCount(BUCKET_NAME));
+    }
+
+    // Spreads the keys over two levels of prefixes, like <prefix><day>/<hour>/object-<n>.
+    private int putNestedKeys(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            String key = prefix + "day" + (i % 7) + "/hour" + (i % 5) + "/object-" + i;
+            server.putObject(BUCKET_NAME, key, new byte[3]);
+        }
+        return count;
+    }
+}
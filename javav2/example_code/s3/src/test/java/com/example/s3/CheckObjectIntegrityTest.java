@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3;
+
+import com.example.s3.benchmark.LocalS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class CheckObjectIntegrityTest {
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalS3Server server;
+    private S3Client s3Client;
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalS3Server.start();
+        server.createBucket(BUCKET_NAME);
+        s3Client = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+
+        // Five full parts and a short last part, with fewer buffers than parts so that buffers are reused.
+        content = new byte[5 * PART_SIZE + 4321];
+        new Random(11).nextBytes(content);
+        file = tempDir.resolve("upload.bin");
+        Files.write(file, content);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.close();
+    }
+
+    @Test
+    void pipelinedUploadSendsVerifiedPartChecksums() throws IOException {
+        CompleteMultipartUploadResponse response = CheckObjectIntegrity.putS3MultipartObjectPipelined(s3Client,
+            BUCKET_NAME, "object", file.toString(), new CheckObjectIntegrity.PipelineSettings(PART_SIZE, 2, 2, 3));
+
+        // The server rejects parts whose checksum doesn't match their content.
+        assertTrue(response.checksumSHA256().endsWith("-6"));
+        assertArrayEquals(content, server.objectContent(BUCKET_NAME, "object"));
+        assertEquals(6, server.operationCount("UploadPart"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void failedPartAbortsThePipelinedUpload() {
+        server.failNext("UploadPart", 1);
+
+        assertThrows(IOException.class, () -> CheckObjectIntegrity.putS3MultipartObjectPipelined(s3Client,
+            BUCKET_NAME, "object", file.toString(), new CheckObjectIntegrity.PipelineSettings(PART_SIZE, 2, 1, 2)));
+
+        assertNull(server.objectContent(BUCKET_NAME, "object"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void parallelValidationAcceptsTheUploadedFileAndRejectsAChangedOne() throws IOException {
+        CheckObjectIntegrity.putS3MultipartObjectPipelined(s3Client, BUCKET_NAME, "object", file.toString(),
+            new CheckObjectIntegrity.PipelineSettings(PART_SIZE, 2, 2, 3));
+
+        assertDoesNotThrow(() -> CheckObjectIntegrity.validateExistingFileAgainstS3ChecksumParallel(s3Client,
+            BUCKET_NAME, "object", file.toString(), 3));
+
+        content[3 * PART_SIZE + 17] ^= 1;
+        Files.write(file, content);
+        IOException failure = assertThrows(IOException.class,
+            () -> CheckObjectIntegrity.validateExistingFileAgainstS3ChecksumParallel(s3Client, BUCKET_NAME,
+                "object", file.toString(), 3));
+        assertTrue(failure.getMessage().contains("Part 4"));
+    }
+}
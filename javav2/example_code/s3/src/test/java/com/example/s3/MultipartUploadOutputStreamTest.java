@@ -0,0 +1,35 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class MultipartUploadOutputStreamTest {
+    private static final int MIB = 1024 * 1024;
+
+    @Test
+    void doublesThePartSizeEveryThousandParts() {
+        assertEquals(8 * MIB, MultipartUploadOutputStream.partSize(8 * MIB, 1));
+        assertEquals(8 * MIB, MultipartUploadOutputStream.partSize(8 * MIB, 1_000));
+        assertEquals(16 * MIB, MultipartUploadOutputStream.partSize(8 * MIB, 1_001));
+        assertEquals(512 * MIB, MultipartUploadOutputStream.partSize(8 * MIB, 6_001));
+        assertEquals(MultipartUploadOutputStream.MAX_PART_SIZE, MultipartUploadOutputStream.partSize(8 * MIB, 7_001));
+        assertEquals(MultipartUploadOutputStream.MAX_PART_SIZE,
+            MultipartUploadOutputStream.partSize(8 * MIB, MultipartUploadOutputStream.MAX_PARTS));
+    }
+
+    @Test
+    void fitsFarMoreThanTenThousandFixedPartsWithinThePartLimit() {
+        long total = 0;
+        for (int part = 1; part <= MultipartUploadOutputStream.MAX_PARTS; part++) {
+            total += MultipartUploadOutputStream.partSize(8 * MIB, part);
+        }
+        // 10,000 parts of a fixed 8 MiB would end at about 78 GiB.
+        assertTrue(total > 3L * 1024 * 1024 * MIB, total + " bytes");
+    }
+}
@@ -0,0 +1,173 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3;
+
+import com.example.s3.benchmark.LocalS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class ParallelMultipartUploaderTest {
+    private static final String BUCKET_NAME = "test-bucket";
+    private static final long PART_SIZE = ParallelMultipartUploader.MIN_PART_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalS3Server server;
+    private S3Client s3Client;
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalS3Server.start();
+        server.createBucket(BUCKET_NAME);
+        // SDK retries are off so that the uploader's own per-part retries are what's tested.
+        s3Client = server.newClient(b -> b.overrideConfiguration(o -> o
+            .retryStrategy(AwsRetryStrategy.doNotRetry())));
+
+        // Four full parts and a short last part.
+        content = new byte[(int) (4 * PART_SIZE + 12345)];
+        new Random(7).nextBytes(content);
+        file = tempDir.resolve("upload.bin");
+        Files.write(file, content);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.close();
+    }
+
+    @Test
+    void uploadsAllPartsInOrder() {
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3Client,
+            new ParallelMultipartUploader.Config(PART_SIZE, 3, 1, Duration.ofMillis(1)));
+
+        CompleteMultipartUploadResponse response = uploader.upload(BUCKET_NAME, "object", file);
+
+        assertTrue(response.eTag().endsWith("-5\""));
+        assertArrayEquals(content, server.objectContent(BUCKET_NAME, "object"));
+        assertEquals(5, server.operationCount("UploadPart"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void retriesOnlyTheFailedParts() {
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3Client,
+            new ParallelMultipartUploader.Config(PART_SIZE, 2, 3, Duration.ofMillis(1)));
+        server.failNext("UploadPart", 2);
+
+        uploader.upload(BUCKET_NAME, "object", file);
+
+        assertArrayEquals(content, server.objectContent(BUCKET_NAME, "object"));
+        assertEquals(7, server.operationCount("UploadPart"));
+    }
+
+    @Test
+    void resumeUploadsOnlyMissingParts() {
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3Client,
+            new ParallelMultipartUploader.Config(PART_SIZE, 1, 1, Duration.ofMillis(1)));
+        // Simulate a run that uploaded two parts before it crashed, then a resume that fails again.
+        String uploadId = s3Client.createMultipartUpload(b -> b.bucket(BUCKET_NAME).key("object")).uploadId();
+        uploadFirstParts(uploadId, 2);
+        server.failNext("UploadPart", 1);
+
+        ParallelMultipartUploader.UploadFailedException failure = assertThrows(
+            ParallelMultipartUploader.UploadFailedException.class,
+            () -> uploader.resume(BUCKET_NAME, "object", uploadId, file));
+        assertEquals(uploadId, failure.uploadId());
+        assertEquals(1, server.openUploadCount());
+
+        long partsBeforeResume = server.operationCount("UploadPart");
+        uploader.resume(BUCKET_NAME, "object", uploadId, file);
+
+        assertEquals(3, server.operationCount("UploadPart") - partsBeforeResume);
+        assertArrayEquals(content, server.objectContent(BUCKET_NAME, "object"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void failsTheUploadWhenAPartThrowsAnUnexpectedException() {
+        // A client whose third part fails with something other than an SdkException.
+        S3Client failingClient = new S3Client() {
+            @Override
+            public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+                return s3Client.createMultipartUpload(request);
+            }
+
+            @Override
+            public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+                if (request.partNumber() == 3) {
+                    throw new IllegalStateException("The content provider broke");
+                }
+                return s3Client.uploadPart(request, body);
+            }
+
+            @Override
+            public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+                return s3Client.completeMultipartUpload(request);
+            }
+
+            @Override
+            public String serviceName() {
+                return s3Client.serviceName();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(failingClient,
+            new ParallelMultipartUploader.Config(PART_SIZE, 2, 3, Duration.ofMillis(1)));
+
+        ParallelMultipartUploader.UploadFailedException failure = assertThrows(
+            ParallelMultipartUploader.UploadFailedException.class,
+            () -> uploader.upload(BUCKET_NAME, "object", file));
+
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(0, server.operationCount("CompleteMultipartUpload"));
+        assertEquals(1, server.openUploadCount());
+    }
+
+    @Test
+    void rejectsPartsSmallerThanTheS3Minimum() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ParallelMultipartUploader.Config(1024, 4, 3, Duration.ofMillis(1)));
+    }
+
+    private void uploadFirstParts(String uploadId, int count) {
+        for (int partNumber = 1; partNumber <= count; partNumber++) {
+            int offset = (int) ((partNumber - 1) * PART_SIZE);
+            int number = partNumber;
+            s3Client.uploadPart(b -> b.bucket(BUCKET_NAME).key("object").uploadId(uploadId).partNumber(number),
+                RequestBody.fromBytes(Arrays.copyOfRange(content, offset, offset + (int) PART_SIZE)));
+        }
+    }
+}
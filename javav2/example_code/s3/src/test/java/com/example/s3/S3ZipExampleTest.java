@@ -0,0 +1,105 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3;
+
+import com.example.s3.benchmark.LocalS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+class S3ZipExampleTest {
+    private static final String BUCKET_NAME = "photos";
+    private static final int MIB = 1024 * 1024;
+
+    private LocalS3Server server;
+    private S3Client s3Client;
+    private final Map<String, byte[]> objects = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalS3Server.start();
+        server.createBucket(BUCKET_NAME);
+        s3Client = server.newClient();
+
+        // Random bytes don't compress, so the archive spans several 5 MiB parts. The two
+        // large objects don't fit into the prefetch budget and are read when they're written.
+        Random random = new Random(3);
+        int[] sizes = {100_000, 7 * MIB, 250_000, 0, 3 * MIB, 90_000, 400_000, 120_000};
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] content = new byte[sizes[i]];
+            random.nextBytes(content);
+            String key = "pic" + i + ".jpg";
+            objects.put(key, content);
+            server.putObject(BUCKET_NAME, key, content);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.close();
+    }
+
+    @Test
+    void streamsEntriesInKeyOrderIntoAMultipartUpload() throws IOException {
+        String[] keys = objects.keySet().toArray(new String[0]);
+
+        S3ZipExample.createZIPFileStreaming(s3Client, BUCKET_NAME, keys, "bundle.zip",
+            new S3ZipExample.StreamingSettings(3, 2 * MIB, 5 * MIB, 2));
+
+        List<String> entryNames = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(server.objectContent(BUCKET_NAME, "bundle.zip")))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entryNames.add(entry.getName());
+                assertArrayEquals(objects.get(entry.getName()), zip.readAllBytes(), entry.getName());
+            }
+        }
+        assertEquals(List.of(keys), entryNames);
+        // The two large objects were fetched ahead, let go, and requested again when their turn came.
+        assertEquals(keys.length + 2, server.operationCount("GetObject"));
+        assertEquals(1, server.operationCount("CreateMultipartUpload"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void missingObjectAbortsTheUpload() {
+        String[] keys = {"pic1.jpg", "pic2.jpg", "missing.jpg", "pic4.jpg"};
+
+        assertThrows(IOException.class, () -> S3ZipExample.createZIPFileStreaming(s3Client, BUCKET_NAME, keys,
+            "bundle.zip", new S3ZipExample.StreamingSettings(2, 2 * MIB, 5 * MIB, 1)));
+
+        assertNull(server.objectContent(BUCKET_NAME, "bundle.zip"));
+        assertEquals(0, server.openUploadCount());
+    }
+
+    @Test
+    void smallArchiveIsUploadedWithPutObject() throws IOException {
+        String[] keys = {"pic0.jpg", "pic2.jpg"};
+
+        S3ZipExample.createZIPFileStreaming(s3Client, BUCKET_NAME, keys, "small.zip",
+            S3ZipExample.StreamingSettings.defaults());
+
+        assertEquals(0, server.operationCount("CreateMultipartUpload"));
+        assertEquals(1, server.operationCount("PutObject"));
+    }
+}
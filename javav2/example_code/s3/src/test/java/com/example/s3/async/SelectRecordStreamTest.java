@@ -0,0 +1,156 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.s3.async;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentEventStream;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentResponse;
+import software.amazon.awssdk.services.s3.model.SelectObjectContentResponseHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class SelectRecordStreamTest {
+
+    @Test
+    void joinsRecordsAndCharactersSplitAcrossEvents() {
+        byte[] result = "{\"a\":1}\n{\"b\":\"é\"}\n{\"c\":3}\n".getBytes(StandardCharsets.UTF_8);
+        // Split inside the two-byte é as well as inside records.
+        int split = new String(result, StandardCharsets.UTF_8).indexOf('é') + 1;
+        List<SelectObjectContentEventStream> events = List.of(
+            records(Arrays.copyOfRange(result, 0, 3)),
+            records(Arrays.copyOfRange(result, 3, split)),
+            records(Arrays.copyOfRange(result, split, result.length)),
+            SelectObjectContentEventStream.statsBuilder().details(d -> d.bytesReturned((long) result.length)).build());
+        AtomicLong bytesReturned = new AtomicLong();
+        SelectObjectContentResponseHandler.Visitor visitor = SelectObjectContentResponseHandler.Visitor.builder()
+            .onStats(stats -> bytesReturned.set(stats.details().bytesReturned()))
+            .build();
+
+        SelectRecordStream stream = new SelectRecordStream(RecordSplitter.forJson("\n"), 2, visitor);
+        subscribe(stream, new EventPublisher(events, null));
+
+        assertEquals(List.of("{\"a\":1}", "{\"b\":\"é\"}", "{\"c\":3}"), stream.stream().collect(Collectors.toList()));
+        assertEquals(3, stream.recordCount());
+        assertEquals(result.length, bytesReturned.get());
+    }
+
+    @Test
+    void requestsEventsOnlyAsRecordsAreConsumed() {
+        List<SelectObjectContentEventStream> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(records(("row" + i + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        EventPublisher publisher = new EventPublisher(events, null);
+        SelectRecordStream stream = new SelectRecordStream(RecordSplitter.forJson("\n"), 2, null);
+        subscribe(stream, publisher);
+
+        assertEquals(2, publisher.emitted);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("row" + i, stream.next());
+            // The event a record came from is replaced by one more requested event.
+            assertEquals(i + 3, publisher.emitted);
+        }
+
+        stream.close();
+        assertTrue(publisher.cancelled);
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    void keepsCsvRecordsWithQuotedDelimitersWhole() {
+        String csv = "1,\"two\nlines\",x\r\n2,\"say \"\"hi\"\"\r\n\",y\r\n3,plain,z";
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        List<SelectObjectContentEventStream> events = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += 5) {
+            events.add(records(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + 5))));
+        }
+
+        SelectRecordStream stream = new SelectRecordStream(RecordSplitter.forCsv("\r\n", '"', '"'), 3, null);
+        subscribe(stream, new EventPublisher(events, null));
+
+        assertEquals(List.of("1,\"two\nlines\",x", "2,\"say \"\"hi\"\"\r\n\",y", "3,plain,z"),
+            stream.stream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void failsWithTheStreamError() {
+        EventPublisher publisher = new EventPublisher(List.of(records("ok\npartial".getBytes(StandardCharsets.UTF_8))),
+            SdkClientException.create("Connection reset"));
+        SelectRecordStream stream = new SelectRecordStream(RecordSplitter.forJson("\n"), 2, null);
+        subscribe(stream, publisher);
+
+        assertEquals("ok", stream.next());
+        SdkException failure = assertThrows(SdkException.class, stream::hasNext);
+        assertEquals("Connection reset", failure.getMessage());
+    }
+
+    private static SelectObjectContentEventStream records(byte[] payload) {
+        return SelectObjectContentEventStream.recordsBuilder().payload(SdkBytes.fromByteArray(payload)).build();
+    }
+
+    private static void subscribe(SelectRecordStream stream, EventPublisher publisher) {
+        SelectObjectContentResponseHandler handler = stream.responseHandler();
+        handler.responseReceived(SelectObjectContentResponse.builder().build());
+        handler.onEventStream(publisher);
+    }
+
+    // Emits events on the requesting thread, only as far as the subscriber's demand goes.
+    private static final class EventPublisher implements SdkPublisher<SelectObjectContentEventStream> {
+        private final List<SelectObjectContentEventStream> events;
+        private final Throwable error;
+        private int emitted;
+        private long demand;
+        private boolean done;
+        private boolean cancelled;
+
+        EventPublisher(List<SelectObjectContentEventStream> events, Throwable error) {
+            this.events = events;
+            this.error = error;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super SelectObjectContentEventStream> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    demand += n;
+                    while (demand > 0 && emitted < events.size() && !cancelled) {
+                        demand--;
+                        subscriber.onNext(events.get(emitted++));
+                    }
+                    if (emitted == events.size() && !done && !cancelled) {
+                        done = true;
+                        if (error != null) {
+                            subscriber.onError(error);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,228 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the batch size and flush delay for {@link AdaptiveBatchSender} from what
+ * it observes at run time, instead of using a fixed batch size and the batch
+ * manager's fixed 200 ms send frequency.
+ *
+ * Inputs:
+ * - the round-trip time of each SendMessageBatch call and the time each message
+ *   waited from send() until it was acknowledged
+ * - the rate at which messages are offered and their average size
+ * - the queue depth (ApproximateNumberOfMessages from GetQueueAttributes)
+ *
+ * The batch size is always capped by the 10-entry limit and by how many messages of
+ * the average observed size fit into the batch payload limit. Then, depending on the
+ * goal:
+ * - MAX_THROUGHPUT: always aim for full batches. The flush delay is the time it takes
+ *   to fill a batch at the current arrival rate, so low load waits a little longer
+ *   instead of sending half-empty batches, and bursts flush as soon as a batch is full.
+ * - LATENCY_SLO: the flush delay is adjusted with additive increase and multiplicative
+ *   decrease so that the observed send latency stays under the target, and the batch
+ *   size is the number of messages expected to arrive within that delay. When the
+ *   queue backlog is larger than the backlog threshold, messages wait in the queue
+ *   anyway, so the controller temporarily behaves as if the goal were MAX_THROUGHPUT.
+ *
+ * The controller is thread-safe; all methods are synchronized because they're called
+ * at most once per batch or per queue depth poll.
+ */
+public class AdaptiveBatchController {
+
+    /**
+     * What the controller optimizes for.
+     */
+    public enum Goal {
+        MAX_THROUGHPUT,
+        LATENCY_SLO
+    }
+
+    /**
+     * The current settings and the observations they were derived from.
+     *
+     * @param batchSize the number of messages that triggers an immediate flush
+     * @param flushDelay how long a partial batch waits before it's sent
+     * @param smoothedRoundTrip the smoothed SendMessageBatch round-trip time
+     * @param smoothedLatency the smoothed time from send() until the message was acknowledged
+     * @param arrivalRatePerSecond the smoothed rate at which messages are offered
+     * @param averageMessageBytes the smoothed message body size
+     * @param queueDepth the last observed ApproximateNumberOfMessages
+     * @param averageFill the smoothed number of messages per batch actually sent
+     */
+    public record Snapshot(int batchSize, Duration flushDelay, Duration smoothedRoundTrip,
+                           Duration smoothedLatency, double arrivalRatePerSecond,
+                           double averageMessageBytes, long queueDepth, double averageFill) {
+    }
+
+    static final int MAX_BATCH_ENTRIES = 10;
+    // Weight of the newest sample in the exponentially weighted moving averages.
+    private static final double ALPHA = 0.2;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final Goal goal;
+    private final long latencyTargetNanos;
+    private final long minFlushDelayNanos;
+    private final long maxFlushDelayNanos;
+    private final int maxBatchPayloadBytes;
+    private final long backlogThreshold;
+
+    private int batchSize = MAX_BATCH_ENTRIES;
+    private long flushDelayNanos;
+    private double roundTripNanos;
+    private double latencyNanos;
+    private double arrivalRate;
+    private double messageBytes;
+    private double averageFill;
+    private long queueDepth;
+    private long lastArrivalNanos;
+    private long arrivalsSinceLastSample;
+
+    private AdaptiveBatchController(Goal goal, Duration latencyTarget, Duration minFlushDelay,
+                                    Duration maxFlushDelay, int maxBatchPayloadBytes,
+                                    long backlogThreshold) {
+        this.goal = goal;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.minFlushDelayNanos = minFlushDelay.toNanos();
+        this.maxFlushDelayNanos = maxFlushDelay.toNanos();
+        this.maxBatchPayloadBytes = maxBatchPayloadBytes;
+        this.backlogThreshold = backlogThreshold;
+        this.flushDelayNanos = goal == Goal.LATENCY_SLO
+                ? Math.min(maxFlushDelayNanos, latencyTargetNanos / 2)
+                : maxFlushDelayNanos;
+    }
+
+    /**
+     * Creates a controller that maximizes throughput, waiting at most 200 ms (the batch
+     * manager default) for a batch to fill.
+     */
+    public static AdaptiveBatchController maxThroughput() {
+        return new AdaptiveBatchController(Goal.MAX_THROUGHPUT, Duration.ZERO, Duration.ofMillis(1),
+                Duration.ofMillis(200), AdaptiveBatchSender.MAX_BATCH_PAYLOAD_BYTES, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a controller that keeps the time from send() to acknowledgement under the
+     * target, switching to full batches while the queue backlog exceeds the threshold.
+     *
+     * @param latencyTarget the send latency to stay under
+     * @param backlogThreshold the queue depth above which throughput is preferred
+     */
+    public static AdaptiveBatchController latencySlo(Duration latencyTarget, long backlogThreshold) {
+        return new AdaptiveBatchController(Goal.LATENCY_SLO, latencyTarget, Duration.ofMillis(1),
+                Duration.ofMillis(200), AdaptiveBatchSender.MAX_BATCH_PAYLOAD_BYTES, backlogThreshold);
+    }
+
+    /**
+     * Returns the number of messages that triggers an immediate flush.
+     */
+    public synchronized int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns how long a partial batch waits before it's sent.
+     */
+    public synchronized long flushDelayNanos() {
+        return flushDelayNanos;
+    }
+
+    /**
+     * Returns the batch payload limit in bytes.
+     */
+    public int maxBatchPayloadBytes() {
+        return maxBatchPayloadBytes;
+    }
+
+    /**
+     * Returns the current settings and observations.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(batchSize, Duration.ofNanos(flushDelayNanos),
+                Duration.ofNanos((long) roundTripNanos), Duration.ofNanos((long) latencyNanos),
+                arrivalRate, messageBytes, queueDepth, averageFill);
+    }
+
+    /**
+     * Records that a message of the given size was offered to the sender.
+     */
+    public synchronized void onMessage(int bodyBytes, long nowNanos) {
+        messageBytes = messageBytes == 0 ? bodyBytes : ewma(messageBytes, bodyBytes);
+        arrivalsSinceLastSample++;
+        if (lastArrivalNanos == 0) {
+            lastArrivalNanos = nowNanos;
+            return;
+        }
+        // Sample the arrival rate at most every millisecond to keep the estimate stable.
+        long elapsed = nowNanos - lastArrivalNanos;
+        if (elapsed >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            double rate = arrivalsSinceLastSample * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            arrivalRate = arrivalRate == 0 ? rate : ewma(arrivalRate, rate);
+            arrivalsSinceLastSample = 0;
+            lastArrivalNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Records the result of a SendMessageBatch call and adjusts the settings.
+     *
+     * @param messages the number of messages in the batch
+     * @param roundTripNanos the time the SendMessageBatch call took
+     * @param oldestWaitNanos the time from send() to acknowledgement of the oldest message
+     */
+    public synchronized void onBatchComplete(int messages, long roundTripNanos, long oldestWaitNanos) {
+        this.roundTripNanos = this.roundTripNanos == 0 ? roundTripNanos : ewma(this.roundTripNanos, roundTripNanos);
+        this.latencyNanos = this.latencyNanos == 0 ? oldestWaitNanos : ewma(this.latencyNanos, oldestWaitNanos);
+        this.averageFill = this.averageFill == 0 ? messages : ewma(this.averageFill, messages);
+        adjust();
+    }
+
+    /**
+     * Records the latest ApproximateNumberOfMessages of the queue.
+     */
+    public synchronized void onQueueDepth(long approximateNumberOfMessages) {
+        this.queueDepth = approximateNumberOfMessages;
+        adjust();
+    }
+
+    private void adjust() {
+        int payloadCap = messageBytes <= 0
+                ? MAX_BATCH_ENTRIES
+                : (int) Math.max(1, Math.min(MAX_BATCH_ENTRIES, maxBatchPayloadBytes / messageBytes));
+
+        if (goal == Goal.MAX_THROUGHPUT || queueDepth > backlogThreshold) {
+            batchSize = payloadCap;
+            // Wait as long as it takes to fill a batch at the current rate.
+            long fillNanos = arrivalRate > 0
+                    ? (long) (payloadCap / arrivalRate * TimeUnit.SECONDS.toNanos(1))
+                    : maxFlushDelayNanos;
+            flushDelayNanos = clamp(fillNanos, minFlushDelayNanos, maxFlushDelayNanos);
+            return;
+        }
+
+        long ceiling = Math.min(maxFlushDelayNanos, Math.max(minFlushDelayNanos, latencyTargetNanos));
+        if (latencyNanos > latencyTargetNanos) {
+            flushDelayNanos = (long) (flushDelayNanos * DECREASE_FACTOR);
+        } else {
+            // Grow by 5% of the headroom left under the target.
+            long headroom = latencyTargetNanos - (long) latencyNanos;
+            flushDelayNanos += Math.max(TimeUnit.MICROSECONDS.toNanos(100), headroom / 20);
+        }
+        flushDelayNanos = clamp(flushDelayNanos, minFlushDelayNanos, ceiling);
+
+        long expected = (long) Math.ceil(arrivalRate * flushDelayNanos / TimeUnit.SECONDS.toNanos(1));
+        batchSize = (int) clamp(expected, 1, payloadCap);
+    }
+
+    private static double ewma(double current, double sample) {
+        return current + ALPHA * (sample - current);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,251 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers messages and sends them with SendMessageBatch, using the batch size and
+ * flush delay chosen by an {@link AdaptiveBatchController}.
+ *
+ * A batch is sent as soon as one of these is true:
+ * - it holds the controller's current batch size
+ * - the next message wouldn't fit into the batch payload limit
+ * - the oldest message in it has waited for the controller's flush delay
+ *
+ * The sender also polls ApproximateNumberOfMessages from GetQueueAttributes and passes
+ * it to the controller, and reports every batch's round-trip time and the wait of its
+ * oldest message back to the controller.
+ */
+public class AdaptiveBatchSender implements AutoCloseable {
+
+    // The maximum total size of all message bodies in one SendMessageBatch request.
+    static final int MAX_BATCH_PAYLOAD_BYTES = 256 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBatchSender.class);
+
+    // Batch entry IDs are the position in the batch; reuse the strings instead of formatting them.
+    private static final String[] ENTRY_IDS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
+
+    private final SqsAsyncClient sqsAsyncClient;
+    private final String queueUrl;
+    private final AdaptiveBatchController controller;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledFuture<?> depthPoller;
+
+    // Guarded by this.
+    private List<Pending> buffer = new ArrayList<>(AdaptiveBatchController.MAX_BATCH_ENTRIES);
+    private int bufferBytes;
+    private ScheduledFuture<?> flushTimer;
+
+    private record Pending(String body, long enqueuedNanos,
+                           CompletableFuture<SendMessageBatchResultEntry> future) {
+    }
+
+    /**
+     * Creates a sender and starts polling the queue depth.
+     *
+     * @param sqsAsyncClient the client used to send batches
+     * @param queueUrl the URL of the queue
+     * @param controller the controller that chooses batch size and flush delay
+     * @param scheduler the executor used for flush timers and queue depth polling
+     * @param queueDepthPollInterval how often to read ApproximateNumberOfMessages
+     */
+    public AdaptiveBatchSender(SqsAsyncClient sqsAsyncClient, String queueUrl,
+                               AdaptiveBatchController controller, ScheduledExecutorService scheduler,
+                               Duration queueDepthPollInterval) {
+        this.sqsAsyncClient = sqsAsyncClient;
+        this.queueUrl = queueUrl;
+        this.controller = controller;
+        this.scheduler = scheduler;
+        this.depthPoller = scheduler.scheduleWithFixedDelay(this::pollQueueDepth, 0,
+                queueDepthPollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the controller whose settings this sender uses.
+     */
+    public AdaptiveBatchController controller() {
+        return controller;
+    }
+
+    /**
+     * Adds a message to the current batch.
+     *
+     * @param body the message body
+     * @return a future that completes when the batch that contains the message is acknowledged
+     */
+    public CompletableFuture<SendMessageBatchResultEntry> send(String body) {
+        long now = System.nanoTime();
+        int bodyBytes = utf8Length(body);
+        controller.onMessage(bodyBytes, now);
+
+        CompletableFuture<SendMessageBatchResultEntry> future = new CompletableFuture<>();
+        List<Pending> ready = null;
+        List<Pending> overflow = null;
+        synchronized (this) {
+            if (!buffer.isEmpty() && bufferBytes + bodyBytes > controller.maxBatchPayloadBytes()) {
+                overflow = takeBuffer();
+            }
+            buffer.add(new Pending(body, now, future));
+            bufferBytes += bodyBytes;
+            if (buffer.size() >= controller.batchSize()) {
+                ready = takeBuffer();
+            } else if (flushTimer == null) {
+                flushTimer = scheduler.schedule(this::flushOnTimer, controller.flushDelayNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        if (overflow != null) {
+            sendBatch(overflow);
+        }
+        if (ready != null) {
+            sendBatch(ready);
+        }
+        return future;
+    }
+
+    /**
+     * Sends whatever is buffered and stops polling the queue depth. The scheduler and
+     * the client aren't closed.
+     */
+    @Override
+    public void close() {
+        depthPoller.cancel(false);
+        List<Pending> remaining;
+        synchronized (this) {
+            remaining = buffer.isEmpty() ? null : takeBuffer();
+        }
+        if (remaining != null) {
+            sendBatch(remaining);
+        }
+    }
+
+    private void flushOnTimer() {
+        List<Pending> ready;
+        synchronized (this) {
+            flushTimer = null;
+            if (buffer.isEmpty()) {
+                return;
+            }
+            ready = takeBuffer();
+        }
+        sendBatch(ready);
+    }
+
+    // Must be called while holding the lock.
+    private List<Pending> takeBuffer() {
+        List<Pending> taken = buffer;
+        buffer = new ArrayList<>(AdaptiveBatchController.MAX_BATCH_ENTRIES);
+        bufferBytes = 0;
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        return taken;
+    }
+
+    private void sendBatch(List<Pending> batch) {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(ENTRY_IDS[i])
+                    .messageBody(batch.get(i).body())
+                    .build());
+        }
+
+        long sentNanos = System.nanoTime();
+        CompletableFuture<SendMessageBatchResponse> request;
+        try {
+            request = sqsAsyncClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+        } catch (RuntimeException e) {
+            // The client can fail before it returns a future, for example once it's closed.
+            batch.forEach(p -> p.future().completeExceptionally(e));
+            return;
+        }
+        request.whenComplete((response, throwable) -> {
+            try {
+                long now = System.nanoTime();
+                controller.onBatchComplete(batch.size(), now - sentNanos, now - batch.get(0).enqueuedNanos());
+                if (throwable != null) {
+                    batch.forEach(p -> p.future().completeExceptionally(throwable));
+                    return;
+                }
+                for (SendMessageBatchResultEntry entry : response.successful()) {
+                    batch.get(Integer.parseInt(entry.id())).future().complete(entry);
+                }
+                for (BatchResultErrorEntry entry : response.failed()) {
+                    batch.get(Integer.parseInt(entry.id())).future().completeExceptionally(
+                            SqsException.builder()
+                                    .message(entry.code() + ": " + entry.message())
+                                    .build());
+                }
+            } finally {
+                // A message that the response doesn't mention would otherwise never complete.
+                for (Pending pending : batch) {
+                    pending.future().completeExceptionally(SqsException.builder()
+                            .message("SendMessageBatch returned no result for the message")
+                            .build());
+                }
+            }
+        });
+    }
+
+    private void pollQueueDepth() {
+        sqsAsyncClient.getQueueAttributes(GetQueueAttributesRequest.builder()
+                        .queueUrl(queueUrl)
+                        .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
+                        .build())
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("Couldn't read the queue depth: " + throwable.getMessage());
+                        return;
+                    }
+                    String depth = response.attributes().get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES);
+                    if (depth != null) {
+                        controller.onQueueDepth(Long.parseLong(depth));
+                    }
+                });
+    }
+
+    // Counts UTF-8 bytes without encoding the string.
+    static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,353 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.batchmanager.SqsAsyncBatchManager;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A consumer runtime that keeps receiving while messages are being processed, and
+ * keeps in-flight messages invisible for as long as their handler needs.
+ *
+ * - Prefetching: receiver threads long-poll ReceiveMessage into a bounded buffer
+ *   independently of the handler threads, so the next receive is already in flight
+ *   while the current messages are handled. A receiver only asks for as many messages
+ *   as there is room for in the buffer.
+ * - Visibility heartbeat: a background task extends the visibility timeout of every
+ *   buffered or in-process message that is about to become visible again. The
+ *   ChangeMessageVisibility calls go through SqsAsyncBatchManager, which combines
+ *   them into ChangeMessageVisibilityBatch requests. Messages are extended for at most
+ *   maxProcessingTime so that a stuck handler can't hold a message forever.
+ * - Deletes go through SqsAsyncBatchManager as well. When a handler throws, the
+ *   message's visibility timeout is set to 0 so it's redelivered right away.
+ *
+ * Receivers and handlers run on virtual threads.
+ */
+public class PrefetchingConsumer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchingConsumer.class);
+
+    /**
+     * Processes one message. The message is deleted when this method returns normally.
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+        void handle(Message message) throws Exception;
+    }
+
+    /**
+     * Settings for the consumer.
+     *
+     * @param receivers the number of concurrent ReceiveMessage loops
+     * @param maxMessagesPerReceive the maximum number of messages per ReceiveMessage call (1-10)
+     * @param waitTimeSeconds the long polling wait time of each ReceiveMessage call
+     * @param bufferCapacity the maximum number of received messages that aren't finished yet
+     * @param handlerThreads the number of messages handled concurrently
+     * @param visibilityTimeout the visibility timeout requested on receive and on every extension
+     * @param heartbeatInterval how often in-flight messages are checked for extension
+     * @param maxProcessingTime how long a message is kept invisible in total before extensions stop
+     */
+    public record Config(int receivers, int maxMessagesPerReceive, int waitTimeSeconds, int bufferCapacity,
+                         int handlerThreads, Duration visibilityTimeout, Duration heartbeatInterval,
+                         Duration maxProcessingTime) {
+
+        /**
+         * Returns settings suitable for most workloads: one receiver that long-polls for
+         * 10 messages, a buffer of 100 messages, 10 handlers, and a 30-second visibility
+         * timeout that is extended every 10 seconds for up to 12 hours.
+         */
+        public static Config defaults() {
+            return new Config(1, 10, 20, 100, 10, Duration.ofSeconds(30), Duration.ofSeconds(10),
+                    Duration.ofHours(12));
+        }
+    }
+
+    /**
+     * A received message together with the time its visibility timeout ends.
+     */
+    private static final class InFlightMessage {
+        final Message message;
+        final long receivedNanos;
+        volatile long visibleAtNanos;
+
+        InFlightMessage(Message message, long receivedNanos, long visibleAtNanos) {
+            this.message = message;
+            this.receivedNanos = receivedNanos;
+            this.visibleAtNanos = visibleAtNanos;
+        }
+    }
+
+    private final SqsAsyncClient sqsAsyncClient;
+    private final SqsAsyncBatchManager batchManager;
+    private final String queueUrl;
+    private final Config config;
+    private final MessageHandler handler;
+
+    private final BlockingQueue<InFlightMessage> buffer;
+    private final Semaphore bufferSpace;
+    private final Map<String, InFlightMessage> inFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final List<Thread> receivers = new ArrayList<>();
+    private final List<Thread> handlers = new ArrayList<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong extensions = new AtomicLong();
+
+    /**
+     * Creates a consumer. Call {@link #start()} to begin receiving.
+     *
+     * @param sqsAsyncClient the client used for ReceiveMessage
+     * @param batchManager the batch manager used for DeleteMessage and ChangeMessageVisibility
+     * @param queueUrl the URL of the queue
+     * @param config the consumer settings
+     * @param handler the code that processes each message
+     */
+    public PrefetchingConsumer(SqsAsyncClient sqsAsyncClient, SqsAsyncBatchManager batchManager,
+                               String queueUrl, Config config, MessageHandler handler) {
+        this.sqsAsyncClient = sqsAsyncClient;
+        this.batchManager = batchManager;
+        this.queueUrl = queueUrl;
+        this.config = config;
+        this.handler = handler;
+        this.buffer = new LinkedBlockingQueue<>(config.bufferCapacity());
+        this.bufferSpace = new Semaphore(config.bufferCapacity());
+    }
+
+    /**
+     * Starts the receivers, handlers, and visibility heartbeat.
+     */
+    public void start() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        for (int i = 0; i < config.receivers(); i++) {
+            receivers.add(Thread.ofVirtual().name("receiver-" + i).start(this::receiveLoop));
+        }
+        for (int i = 0; i < config.handlerThreads(); i++) {
+            handlers.add(Thread.ofVirtual().name("handler-" + i).start(this::handleLoop));
+        }
+        long interval = config.heartbeatInterval().toMillis();
+        heartbeat.scheduleAtFixedRate(this::extendVisibility, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops receiving, waits for the handlers to finish their current messages, and
+     * makes buffered messages that weren't handled visible again right away.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running.set(false);
+        // Receivers may be waiting in a long poll; handlers notice the flag on their own.
+        for (Thread receiver : receivers) {
+            receiver.interrupt();
+        }
+        for (Thread receiver : receivers) {
+            receiver.join();
+        }
+        for (Thread handlerThread : handlers) {
+            handlerThread.join();
+        }
+        heartbeat.shutdownNow();
+
+        List<InFlightMessage> unhandled = new ArrayList<>();
+        buffer.drainTo(unhandled);
+        for (InFlightMessage message : unhandled) {
+            release(message);
+        }
+    }
+
+    /** Returns the number of messages received so far. */
+    public long receivedCount() {
+        return received.get();
+    }
+
+    /** Returns the number of messages handled and deleted so far. */
+    public long processedCount() {
+        return processed.get();
+    }
+
+    /** Returns the number of messages whose handler threw an exception. */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /** Returns the number of visibility timeout extensions requested so far. */
+    public long extensionCount() {
+        return extensions.get();
+    }
+
+    /** Returns the number of received messages that are waiting for a handler. */
+    public int bufferedCount() {
+        return buffer.size();
+    }
+
+    /** Returns the number of received messages that are buffered or being handled. */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private void receiveLoop() {
+        int visibilitySeconds = (int) config.visibilityTimeout().toSeconds();
+        while (running.get()) {
+            // Only receive what the buffer has room for: wait for one free slot, then
+            // take as many more as are free, up to the per-receive maximum.
+            try {
+                bufferSpace.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int requested = 1;
+            while (requested < config.maxMessagesPerReceive() && bufferSpace.tryAcquire()) {
+                requested++;
+            }
+
+            List<Message> messages = List.of();
+            CompletableFuture<ReceiveMessageResponse> receive = sqsAsyncClient.receiveMessage(
+                    ReceiveMessageRequest.builder()
+                            .queueUrl(queueUrl)
+                            .maxNumberOfMessages(requested)
+                            .waitTimeSeconds(config.waitTimeSeconds())
+                            .visibilityTimeout(visibilitySeconds)
+                            .build());
+            try {
+                // get() rather than join() so that close() can interrupt a long poll.
+                messages = receive.get().messages();
+            } catch (InterruptedException e) {
+                // Messages that arrive after shutdown become visible again when their
+                // visibility timeout ends.
+                receive.cancel(true);
+                return;
+            } catch (ExecutionException e) {
+                log.error("PrefetchingConsumer: receive failed: " + e.getCause().getMessage());
+            } finally {
+                bufferSpace.release(requested - messages.size());
+            }
+
+            long now = System.nanoTime();
+            for (Message message : messages) {
+                InFlightMessage entry = new InFlightMessage(message, now,
+                        now + config.visibilityTimeout().toNanos());
+                inFlight.put(message.receiptHandle(), entry);
+                received.incrementAndGet();
+                // Never blocks: a permit was reserved for every message.
+                buffer.add(entry);
+            }
+        }
+    }
+
+    private void handleLoop() {
+        while (running.get() || !buffer.isEmpty()) {
+            InFlightMessage entry;
+            try {
+                entry = buffer.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (entry == null) {
+                continue;
+            }
+            if (!running.get()) {
+                // Shutting down: put the message back so that close() releases it.
+                buffer.add(entry);
+                return;
+            }
+            process(entry);
+        }
+    }
+
+    private void process(InFlightMessage entry) {
+        Message message = entry.message;
+        try {
+            if (entry.visibleAtNanos - System.nanoTime() <= 0) {
+                // The message may already have been delivered to another consumer.
+                log.warn("PrefetchingConsumer: message " + message.messageId() + " expired in the buffer");
+                return;
+            }
+            handler.handle(message);
+            batchManager.deleteMessage(DeleteMessageRequest.builder()
+                            .queueUrl(queueUrl)
+                            .receiptHandle(message.receiptHandle())
+                            .build())
+                    .whenComplete((response, throwable) -> {
+                        if (throwable == null) {
+                            processed.incrementAndGet();
+                        } else {
+                            log.error("PrefetchingConsumer: Failed to delete message", throwable);
+                        }
+                    });
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("PrefetchingConsumer: handler failed for message " + message.messageId(), e);
+            release(entry);
+        } finally {
+            inFlight.remove(message.receiptHandle());
+            bufferSpace.release();
+        }
+    }
+
+    // Makes the message visible again immediately so that it can be redelivered.
+    private void release(InFlightMessage entry) {
+        inFlight.remove(entry.message.receiptHandle());
+        batchManager.changeMessageVisibility(ChangeMessageVisibilityRequest.builder()
+                .queueUrl(queueUrl)
+                .receiptHandle(entry.message.receiptHandle())
+                .visibilityTimeout(0)
+                .build());
+    }
+
+    private void extendVisibility() {
+        long now = System.nanoTime();
+        // Extend anything that would become visible before the heartbeat after next.
+        long horizon = now + 2 * config.heartbeatInterval().toNanos();
+        long maxProcessingNanos = config.maxProcessingTime().toNanos();
+        int visibilitySeconds = (int) config.visibilityTimeout().toSeconds();
+
+        for (InFlightMessage entry : inFlight.values()) {
+            if (entry.visibleAtNanos - horizon > 0 || now - entry.receivedNanos >= maxProcessingNanos) {
+                continue;
+            }
+            long requestedNanos = System.nanoTime();
+            extensions.incrementAndGet();
+            batchManager.changeMessageVisibility(ChangeMessageVisibilityRequest.builder()
+                            .queueUrl(queueUrl)
+                            .receiptHandle(entry.message.receiptHandle())
+                            .visibilityTimeout(visibilitySeconds)
+                            .build())
+                    .whenComplete((response, throwable) -> {
+                        if (throwable == null) {
+                            entry.visibleAtNanos = requestedNanos + config.visibilityTimeout().toNanos();
+                        } else if (inFlight.containsKey(entry.message.receiptHandle())) {
+                            log.warn("PrefetchingConsumer: couldn't extend visibility of message "
+                                    + entry.message.messageId() + ": " + throwable.getMessage());
+                        }
+                    });
+        }
+    }
+}
@@ -13,18 +13,23 @@ import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
 import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 
-import java.math.BigInteger;
+import java.time.Duration;
 import java.util.List;
-import java.util.Random;
 import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Demonstrates the AWS SDK for Java 2.x Automatic Request Batching API for Amazon SQS.
@@ -70,6 +75,14 @@ public class SimpleProducerConsumer {
 
     // The maximum runtime of the program.
     private final static int MAX_RUNTIME_MINUTES = 60;
+    // The characters used for random message bodies.
+    private final static char[] BASE32_ALPHABET = "0123456789abcdefghijklmnopqrstuv".toCharArray();
+    // The default maximum number of outstanding SQS requests across all workers.
+    private final static int DEFAULT_MAX_IN_FLIGHT = 500;
+    // The queue depth above which a latency-targeting adaptive sender prefers throughput.
+    private final static long ADAPTIVE_BACKLOG_THRESHOLD = 10_000;
+    // How often the adaptive sender reads ApproximateNumberOfMessages.
+    private final static Duration ADAPTIVE_QUEUE_DEPTH_POLL_INTERVAL = Duration.ofSeconds(5);
     private final static Logger log = LoggerFactory.getLogger(SimpleProducerConsumer.class);
 
     /**
@@ -78,10 +91,59 @@ public class SimpleProducerConsumer {
      * Prompts for queue name, thread counts, batch size, message size, and runtime.
      * Creates producer and consumer threads to demonstrate batching performance.
      * 
-     * @param args command line arguments (not used)
+     * Optional command line arguments:
+     * - --virtual-threads: run each producer and consumer on a virtual thread instead
+     *   of a platform thread, so that thousands of them can share a few carrier threads
+     * - --max-in-flight=N: the maximum number of SQS requests that all producers and
+     *   consumers together can have outstanding (default: 500)
+     * - --adaptive=throughput or --adaptive=latency:MILLIS: when the batch size is greater
+     *   than 1, send through an AdaptiveBatchSender whose batch size and flush delay are
+     *   tuned at run time for maximum throughput or to stay under a send latency target
+     * - --prefetch: consume with a PrefetchingConsumer that receives into a bounded buffer
+     *   while messages are handled and extends their visibility timeout in the background
+     * 
+     * @param args command line arguments described above
      * @throws InterruptedException if thread operations are interrupted
      */
     public static void main(String[] args) throws InterruptedException {
+        final String usage = """
+
+                Usage:    [--virtual-threads] [--max-in-flight=N] [--adaptive=throughput | --adaptive=latency:MILLIS] [--prefetch]
+
+                Where:
+                   --virtual-threads - Run each producer and consumer on a virtual thread.
+                   --max-in-flight=N - The maximum number of outstanding SQS requests, at least 1 (default: 500).
+                   --adaptive - Tune the batch size and flush delay for throughput or for a send latency target.
+                   --prefetch - Consume with a PrefetchingConsumer.
+                """;
+
+        boolean virtualThreads = false;
+        int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        AdaptiveBatchController adaptiveController = null;
+        boolean prefetch = false;
+        for (String arg : args) {
+            if (arg.equals("--virtual-threads")) {
+                virtualThreads = true;
+            } else if (arg.equals("--prefetch")) {
+                prefetch = true;
+            } else if (arg.startsWith("--max-in-flight=")) {
+                try {
+                    maxInFlight = Integer.parseInt(arg.substring("--max-in-flight=".length()));
+                } catch (NumberFormatException e) {
+                    maxInFlight = 0;
+                }
+                if (maxInFlight < 1) {
+                    System.out.println(usage);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--adaptive=throughput")) {
+                adaptiveController = AdaptiveBatchController.maxThroughput();
+            } else if (arg.startsWith("--adaptive=latency:")) {
+                long targetMillis = Long.parseLong(arg.substring("--adaptive=latency:".length()));
+                adaptiveController = AdaptiveBatchController.latencySlo(Duration.ofMillis(targetMillis),
+                        ADAPTIVE_BACKLOG_THRESHOLD);
+            }
+        }
 
         final Scanner input = new Scanner(System.in);
 
@@ -108,80 +170,193 @@ public class SimpleProducerConsumer {
         // batchManager() factory method, which provides default batching configuration.
         // This high-level library automatically handles request buffering and batching
         // while maintaining the same method signatures as SqsAsyncClient.
-        final SqsAsyncClient sqsAsyncClient = SqsAsyncClient.create();
+        // The HTTP client gets one connection per permitted in-flight request so that
+        // requests never wait for a pooled connection and time out.
+        final SqsAsyncClient sqsAsyncClient = SqsAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxInFlight))
+                .build();
         final SqsAsyncBatchManager batchManager = sqsAsyncClient.batchManager();
 
         final String queueUrl = sqsAsyncClient.getQueueUrl(GetQueueUrlRequest.builder()
                 .queueName(queueName)
                 .build()).join().queueUrl();
 
+        final Settings settings = new Settings(producerCount, consumerCount, batchSize,
+                messageSizeByte, Duration.ofMinutes(Math.min(runTimeMinutes, MAX_RUNTIME_MINUTES)),
+                virtualThreads, maxInFlight, adaptiveController, prefetch);
+        run(sqsAsyncClient, batchManager, queueUrl, settings);
+
+        // Close resources
+        batchManager.close();
+        sqsAsyncClient.close();
+    }
+
+    /**
+     * The workload that {@link #run} executes.
+     *
+     * @param producerCount the number of logical producers
+     * @param consumerCount the number of logical consumers
+     * @param batchSize the number of messages per batch; 1 uses SqsAsyncClient directly
+     * @param messageSizeByte the size of each message body
+     * @param runTime how long the producers and consumers run
+     * @param virtualThreads whether producers and consumers run on virtual threads
+     * @param maxInFlight the maximum number of outstanding SQS requests across all workers
+     * @param adaptiveController the controller for adaptive batch sending, or null to send
+     *                           batches through the SqsAsyncBatchManager
+     * @param prefetch whether to consume with a PrefetchingConsumer that has one handler
+     *                 per consumer instead of with Consumer or BatchConsumer threads
+     */
+    record Settings(int producerCount, int consumerCount, int batchSize, int messageSizeByte,
+                    Duration runTime, boolean virtualThreads, int maxInFlight,
+                    AdaptiveBatchController adaptiveController, boolean prefetch) {
+    }
+
+    /**
+     * The final message counts of a run.
+     */
+    record Counts(int produced, int consumed) {
+    }
+
+    /**
+     * Starts the producers, consumers, and monitor, lets them run for the configured
+     * time, and then stops them.
+     * 
+     * Every producer and consumer acquires a permit from one shared semaphore before it
+     * issues a request and releases it when the request completes. This bounds the number
+     * of in-flight requests, so the batch loops don't need a fixed sleep to pace
+     * themselves, and a blocked worker parks instead of spinning. On virtual threads a
+     * parked worker releases its carrier thread, so thousands of consumers can wait on
+     * receives at the same time.
+     * 
+     * @param sqsAsyncClient the client used when the batch size is 1
+     * @param batchManager the batch manager used when the batch size is greater than 1
+     * @param queueUrl the URL of the queue
+     * @param settings the workload to run
+     * @return the number of messages produced and consumed
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    static Counts run(SqsAsyncClient sqsAsyncClient, SqsAsyncBatchManager batchManager,
+                      String queueUrl, Settings settings) throws InterruptedException {
+
         // The flag used to stop producer, consumer, and monitor threads.
         final AtomicBoolean stop = new AtomicBoolean(false);
 
+        // Bounds the outstanding requests of all producers and consumers.
+        final Semaphore inFlight = new Semaphore(settings.maxInFlight());
+
+        final Thread.Builder producerThreads = settings.virtualThreads()
+                ? Thread.ofVirtual().name("producer-", 0)
+                : Thread.ofPlatform().name("producer-", 0);
+        final Thread.Builder consumerThreads = settings.virtualThreads()
+                ? Thread.ofVirtual().name("consumer-", 0)
+                : Thread.ofPlatform().name("consumer-", 0);
+
+        // When adaptive batching is enabled, all batch producers share one sender so
+        // that its controller sees the combined arrival rate.
+        ScheduledExecutorService adaptiveScheduler = null;
+        AdaptiveBatchSender adaptiveSender = null;
+        if (settings.batchSize() > 1 && settings.adaptiveController() != null) {
+            adaptiveScheduler = Executors.newSingleThreadScheduledExecutor();
+            adaptiveSender = new AdaptiveBatchSender(sqsAsyncClient, queueUrl,
+                    settings.adaptiveController(), adaptiveScheduler, ADAPTIVE_QUEUE_DEPTH_POLL_INTERVAL);
+        }
+
         // Start the producers.
         final AtomicInteger producedCount = new AtomicInteger();
-        final Thread[] producers = new Thread[producerCount];
-        for (int i = 0; i < producerCount; i++) {
-            if (batchSize == 1) {
-                producers[i] = new Producer(sqsAsyncClient, queueUrl, messageSizeByte,
-                        producedCount, stop);
+        final Thread[] producers = new Thread[settings.producerCount()];
+        for (int i = 0; i < settings.producerCount(); i++) {
+            Runnable producer;
+            if (settings.batchSize() == 1) {
+                producer = new Producer(sqsAsyncClient, queueUrl, settings.messageSizeByte(),
+                        producedCount, stop, inFlight);
+            } else if (adaptiveSender != null) {
+                producer = new AdaptiveBatchProducer(adaptiveSender, settings.messageSizeByte(),
+                        producedCount, stop, inFlight);
             } else {
-                producers[i] = new BatchProducer(batchManager, queueUrl, batchSize,
-                        messageSizeByte, producedCount, stop);
+                producer = new BatchProducer(batchManager, queueUrl, settings.batchSize(),
+                        settings.messageSizeByte(), producedCount, stop, inFlight);
             }
-            producers[i].start();
+            producers[i] = producerThreads.start(producer);
         }
 
         // Start the consumers.
         final AtomicInteger consumedCount = new AtomicInteger();
-        final Thread[] consumers = new Thread[consumerCount];
-        for (int i = 0; i < consumerCount; i++) {
-            if (batchSize == 1) {
-                consumers[i] = new Consumer(sqsAsyncClient, queueUrl, consumedCount, stop);
+        PrefetchingConsumer prefetchingConsumer = null;
+        if (settings.prefetch()) {
+            // Messages are counted when handled; the consumer deletes them in batches
+            // right after. One receiver per 10 handlers keeps the buffer filled.
+            PrefetchingConsumer.Config defaults = PrefetchingConsumer.Config.defaults();
+            PrefetchingConsumer.Config config = new PrefetchingConsumer.Config(
+                    Math.max(1, settings.consumerCount() / 10), defaults.maxMessagesPerReceive(),
+                    defaults.waitTimeSeconds(), Math.max(10, 2 * settings.consumerCount()),
+                    settings.consumerCount(), defaults.visibilityTimeout(), defaults.heartbeatInterval(),
+                    defaults.maxProcessingTime());
+            prefetchingConsumer = new PrefetchingConsumer(sqsAsyncClient, batchManager, queueUrl, config,
+                    message -> consumedCount.incrementAndGet());
+            prefetchingConsumer.start();
+        }
+        final Thread[] consumers = new Thread[settings.prefetch() ? 0 : settings.consumerCount()];
+        for (int i = 0; i < consumers.length; i++) {
+            Runnable consumer;
+            if (settings.batchSize() == 1) {
+                consumer = new Consumer(sqsAsyncClient, queueUrl, consumedCount, stop, inFlight);
             } else {
-                consumers[i] = new BatchConsumer(batchManager, queueUrl, batchSize,
-                        consumedCount, stop);
+                consumer = new BatchConsumer(batchManager, queueUrl, settings.batchSize(),
+                        consumedCount, stop, inFlight);
             }
-            consumers[i].start();
+            consumers[i] = consumerThreads.start(consumer);
         }
 
         // Start the monitor thread.
-        final Thread monitor = new Monitor(producedCount, consumedCount, stop);
+        final Thread monitor = new Monitor(producedCount, consumedCount, stop,
+                adaptiveSender == null ? null : adaptiveSender.controller());
         monitor.start();
 
         // Wait for the specified amount of time then stop.
-        Thread.sleep(TimeUnit.MINUTES.toMillis(Math.min(runTimeMinutes,
-                MAX_RUNTIME_MINUTES)));
+        Thread.sleep(settings.runTime().toMillis());
         stop.set(true);
 
         // Join all threads.
-        for (int i = 0; i < producerCount; i++) {
-            producers[i].join();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        for (Thread consumer : consumers) {
+            consumer.join();
         }
 
-        for (int i = 0; i < consumerCount; i++) {
-            consumers[i].join();
+        if (prefetchingConsumer != null) {
+            prefetchingConsumer.close();
         }
 
         monitor.interrupt();
         monitor.join();
 
-        // Close resources
-        batchManager.close();
-        sqsAsyncClient.close();
+        if (adaptiveSender != null) {
+            adaptiveSender.close();
+            adaptiveScheduler.shutdown();
+        }
+
+        return new Counts(producedCount.get(), consumedCount.get());
     }
 
     /**
-     * Creates a random string of approximately the specified size in bytes.
+     * Creates a random string of exactly the specified size in bytes.
      * 
-     * @param sizeByte the target size in bytes for the generated string
-     * @return a random string encoded in base-32
+     * Each character is drawn directly from the base-32 alphabet, so the payload is
+     * built in a single char array instead of going through a BigInteger conversion.
+     * 
+     * @param sizeByte the size in bytes of the generated string
+     * @return a random string of base-32 characters
      */
-    private static String makeRandomString(int sizeByte) {
-        final byte[] bs = new byte[(int) Math.ceil(sizeByte * 5 / 8)];
-        new Random().nextBytes(bs);
-        bs[0] = (byte) ((bs[0] | 64) & 127);
-        return new BigInteger(bs).toString(32);
+    static String makeRandomString(int sizeByte) {
+        final char[] chars = new char[sizeByte];
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < sizeByte; i++) {
+            chars[i] = BASE32_ALPHABET[random.nextInt(BASE32_ALPHABET.length)];
+        }
+        return new String(chars);
     }
 
     /**
@@ -195,12 +370,13 @@ public class SimpleProducerConsumer {
      * showing how the high-level batching library maintains API compatibility while
      * adding automatic optimization behind the scenes.
      */
-    private static class Producer extends Thread {
+    private static class Producer implements Runnable {
         final SqsAsyncClient sqsAsyncClient;
         final String queueUrl;
         final AtomicInteger producedCount;
         final AtomicBoolean stop;
-        final String theMessage;
+        final Semaphore inFlight;
+        final SendMessageRequest request;
 
         /**
          * Creates a producer thread for single-message operations.
@@ -210,14 +386,21 @@ public class SimpleProducerConsumer {
          * @param messageSizeByte the size of messages to generate
          * @param producedCount shared counter for tracking sent messages
          * @param stop shared flag to signal thread termination
+         * @param inFlight shared permits that bound outstanding requests
          */
         Producer(SqsAsyncClient sqsAsyncClient, String queueUrl, int messageSizeByte,
-                 AtomicInteger producedCount, AtomicBoolean stop) {
+                 AtomicInteger producedCount, AtomicBoolean stop, Semaphore inFlight) {
             this.sqsAsyncClient = sqsAsyncClient;
             this.queueUrl = queueUrl;
             this.producedCount = producedCount;
             this.stop = stop;
-            this.theMessage = makeRandomString(messageSizeByte);
+            this.inFlight = inFlight;
+            // SDK requests are immutable, so one request is built up front and sent
+            // repeatedly instead of running the builder chain for every message.
+            this.request = SendMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .messageBody(makeRandomString(messageSizeByte))
+                    .build();
         }
 
         /**
@@ -231,12 +414,17 @@ public class SimpleProducerConsumer {
         public void run() {
             try {
                 while (!stop.get()) {
-                    sqsAsyncClient.sendMessage(SendMessageRequest.builder()
-                            .queueUrl(queueUrl)
-                            .messageBody(theMessage)
-                            .build()).join();
+                    inFlight.acquire();
+                    try {
+                        sqsAsyncClient.sendMessage(request).join();
+                    } finally {
+                        inFlight.release();
+                    }
                     producedCount.incrementAndGet();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Producer interrupted: " + e.getMessage());
             } catch (SdkException | java.util.concurrent.CompletionException e) {
                 // Handle both SdkException and CompletionException from async operations.
                 // If this unlikely condition occurs, stop.
@@ -263,13 +451,15 @@ public class SimpleProducerConsumer {
      * - Lower costs: Fewer API calls result in reduced SQS charges
      * - Higher throughput: Batch operations process significantly more messages per second
      */
-    private static class BatchProducer extends Thread {
+    private static class BatchProducer implements Runnable {
         final SqsAsyncBatchManager batchManager;
         final String queueUrl;
         final int batchSize;
         final AtomicInteger producedCount;
         final AtomicBoolean stop;
-        final String theMessage;
+        final Semaphore inFlight;
+        final SendMessageRequest request;
+        final BiConsumer<SendMessageResponse, Throwable> onSent;
 
         /**
          * Creates a producer thread for batch operations.
@@ -280,16 +470,33 @@ public class SimpleProducerConsumer {
          * @param messageSizeByte the size of messages to generate
          * @param producedCount shared counter for tracking sent messages
          * @param stop shared flag to signal thread termination
+         * @param inFlight shared permits that bound outstanding requests
          */
         BatchProducer(SqsAsyncBatchManager batchManager, String queueUrl, int batchSize,
                       int messageSizeByte, AtomicInteger producedCount,
-                      AtomicBoolean stop) {
+                      AtomicBoolean stop, Semaphore inFlight) {
             this.batchManager = batchManager;
             this.queueUrl = queueUrl;
             this.batchSize = batchSize;
             this.producedCount = producedCount;
             this.stop = stop;
-            this.theMessage = makeRandomString(messageSizeByte);
+            this.inFlight = inFlight;
+            // Build the immutable request and the completion callback once, so that the
+            // send loop doesn't allocate a builder chain and a lambda for every message.
+            this.request = SendMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .messageBody(makeRandomString(messageSizeByte))
+                    .build();
+            this.onSent = (response, throwable) -> {
+                inFlight.release();
+                if (throwable == null) {
+                    producedCount.incrementAndGet();
+                } else if (!(throwable instanceof java.util.concurrent.CancellationException) &&
+                          !(throwable.getMessage() != null && throwable.getMessage().contains("executor not accepting a task"))) {
+                    log.error("BatchProducer: Failed to send message", throwable);
+                }
+                // Ignore CancellationException and executor shutdown errors - expected during shutdown
+            };
         }
 
         /**
@@ -317,27 +524,22 @@ public class SimpleProducerConsumer {
                     // The SDK automatically buffers these calls and sends them as
                     // batch operations when maxBatchSize (10) or sendRequestFrequency (200ms)
                     // thresholds are reached, significantly improving throughput.
+                    // Each buffered message holds an in-flight permit until its batch
+                    // completes, which paces the loop without a fixed sleep.
                     for (int i = 0; i < batchSize; i++) {
-                        CompletableFuture<SendMessageResponse> future = batchManager.sendMessage(
-                                SendMessageRequest.builder()
-                                        .queueUrl(queueUrl)
-                                        .messageBody(theMessage)
-                                        .build());
-                        
+                        inFlight.acquire();
+                        CompletableFuture<SendMessageResponse> future;
+                        try {
+                            future = batchManager.sendMessage(request);
+                        } catch (RuntimeException e) {
+                            // The callback that releases the permit is never registered.
+                            inFlight.release();
+                            throw e;
+                        }
+
                         // Handle the response asynchronously
-                        future.whenComplete((response, throwable) -> {
-                            if (throwable == null) {
-                                producedCount.incrementAndGet();
-                            } else if (!(throwable instanceof java.util.concurrent.CancellationException) &&
-                                      !(throwable.getMessage() != null && throwable.getMessage().contains("executor not accepting a task"))) {
-                                log.error("BatchProducer: Failed to send message", throwable);
-                            }
-                            // Ignore CancellationException and executor shutdown errors - expected during shutdown
-                        });
+                        future.whenComplete(onSent);
                     }
-                    
-                    // Small delay to allow batching to occur
-                    Thread.sleep(10);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -349,6 +551,62 @@ public class SimpleProducerConsumer {
         }
     }
 
+    /**
+     * Sends messages through an AdaptiveBatchSender, whose controller tunes the batch size
+     * and flush delay from the observed send latency, arrival rate, message size, and
+     * queue depth instead of using the batch manager's fixed settings.
+     */
+    private static class AdaptiveBatchProducer implements Runnable {
+        final AdaptiveBatchSender sender;
+        final AtomicInteger producedCount;
+        final AtomicBoolean stop;
+        final Semaphore inFlight;
+        final String theMessage;
+        final BiConsumer<SendMessageBatchResultEntry, Throwable> onSent;
+
+        /**
+         * Creates a producer that sends through the shared adaptive sender.
+         *
+         * @param sender the sender shared by all adaptive producers
+         * @param messageSizeByte the size of messages to generate
+         * @param producedCount shared counter for tracking sent messages
+         * @param stop shared flag to signal thread termination
+         * @param inFlight shared permits that bound outstanding requests
+         */
+        AdaptiveBatchProducer(AdaptiveBatchSender sender, int messageSizeByte,
+                              AtomicInteger producedCount, AtomicBoolean stop, Semaphore inFlight) {
+            this.sender = sender;
+            this.producedCount = producedCount;
+            this.stop = stop;
+            this.inFlight = inFlight;
+            this.theMessage = makeRandomString(messageSizeByte);
+            this.onSent = (entry, throwable) -> {
+                inFlight.release();
+                if (throwable == null) {
+                    producedCount.incrementAndGet();
+                } else {
+                    log.error("AdaptiveBatchProducer: Failed to send message", throwable);
+                }
+            };
+        }
+
+        /**
+         * Continuously offers messages to the adaptive sender. Each message holds an
+         * in-flight permit until its batch is acknowledged.
+         */
+        public void run() {
+            try {
+                while (!stop.get()) {
+                    inFlight.acquire();
+                    sender.send(theMessage).whenComplete(onSent);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("AdaptiveBatchProducer interrupted: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Receives and deletes messages individually using SqsAsyncClient for baseline measurement.
      * 
@@ -362,11 +620,12 @@ public class SimpleProducerConsumer {
      * 
      * This API consistency allows easy migration to the high-level batching library.
      */
-    private static class Consumer extends Thread {
+    private static class Consumer implements Runnable {
         final SqsAsyncClient sqsAsyncClient;
         final String queueUrl;
         final AtomicInteger consumedCount;
         final AtomicBoolean stop;
+        final Semaphore inFlight;
 
         /**
          * Creates a consumer thread for single-message operations.
@@ -375,13 +634,15 @@ public class SimpleProducerConsumer {
          * @param queueUrl the URL of the source queue
          * @param consumedCount shared counter for tracking processed messages
          * @param stop shared flag to signal thread termination
+         * @param inFlight shared permits that bound outstanding requests
          */
         Consumer(SqsAsyncClient sqsAsyncClient, String queueUrl, AtomicInteger consumedCount,
-                 AtomicBoolean stop) {
+                 AtomicBoolean stop, Semaphore inFlight) {
             this.sqsAsyncClient = sqsAsyncClient;
             this.queueUrl = queueUrl;
             this.consumedCount = consumedCount;
             this.stop = stop;
+            this.inFlight = inFlight;
         }
 
         /**
@@ -398,6 +659,7 @@ public class SimpleProducerConsumer {
         public void run() {
             try {
                 while (!stop.get()) {
+                    inFlight.acquire();
                     try {
                         final ReceiveMessageResponse result = sqsAsyncClient.receiveMessage(
                                 ReceiveMessageRequest.builder()
@@ -415,8 +677,13 @@ public class SimpleProducerConsumer {
                         }
                     } catch (SdkException | java.util.concurrent.CompletionException e) {
                         log.error(e.getMessage());
+                    } finally {
+                        inFlight.release();
                     }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Consumer interrupted: " + e.getMessage());
             } catch (SdkException | java.util.concurrent.CompletionException e) {
                 // Handle both SdkException and CompletionException from async operations.
                 // If this unlikely condition occurs, stop.
@@ -451,12 +718,13 @@ public class SimpleProducerConsumer {
      * - Lower latency for receives due to background message buffering
      * - Higher overall throughput with fewer network round trips
      */
-    private static class BatchConsumer extends Thread {
+    private static class BatchConsumer implements Runnable {
         final SqsAsyncBatchManager batchManager;
         final String queueUrl;
         final int batchSize;
         final AtomicInteger consumedCount;
         final AtomicBoolean stop;
+        final Semaphore inFlight;
 
         /**
          * Creates a consumer thread for batch operations.
@@ -466,14 +734,16 @@ public class SimpleProducerConsumer {
          * @param batchSize the maximum number of messages to receive per batch
          * @param consumedCount shared counter for tracking processed messages
          * @param stop shared flag to signal thread termination
+         * @param inFlight shared permits that bound outstanding requests
          */
         BatchConsumer(SqsAsyncBatchManager batchManager, String queueUrl, int batchSize,
-                      AtomicInteger consumedCount, AtomicBoolean stop) {
+                      AtomicInteger consumedCount, AtomicBoolean stop, Semaphore inFlight) {
             this.batchManager = batchManager;
             this.queueUrl = queueUrl;
             this.batchSize = batchSize;
             this.consumedCount = consumedCount;
             this.stop = stop;
+            this.inFlight = inFlight;
         }
 
         /**
@@ -500,11 +770,17 @@ public class SimpleProducerConsumer {
                     // Receive messages using the high-level batch manager.
                     // This call uses identical syntax to sqsAsyncClient.receiveMessage()
                     // but benefits from internal message buffering for improved performance.
-                    final ReceiveMessageResponse result = batchManager.receiveMessage(
-                            ReceiveMessageRequest.builder()
-                                    .queueUrl(queueUrl)
-                                    .maxNumberOfMessages(Math.min(batchSize, 10))
-                                    .build()).join();
+                    final ReceiveMessageResponse result;
+                    inFlight.acquire();
+                    try {
+                        result = batchManager.receiveMessage(
+                                ReceiveMessageRequest.builder()
+                                        .queueUrl(queueUrl)
+                                        .maxNumberOfMessages(Math.min(batchSize, 10))
+                                        .build()).join();
+                    } finally {
+                        inFlight.release();
+                    }
 
                     if (!result.messages().isEmpty()) {
                         final List<Message> messages = result.messages();
@@ -514,6 +790,7 @@ public class SimpleProducerConsumer {
                         // but the SDK automatically buffers these calls and sends them
                         // as DeleteMessageBatchRequest operations for optimal performance.
                         for (Message message : messages) {
+                            inFlight.acquire();
                             CompletableFuture<DeleteMessageResponse> future = batchManager.deleteMessage(
                                     DeleteMessageRequest.builder()
                                             .queueUrl(queueUrl)
@@ -521,6 +798,7 @@ public class SimpleProducerConsumer {
                                             .build());
                             
                             future.whenComplete((response, throwable) -> {
+                                inFlight.release();
                                 if (throwable == null) {
                                     consumedCount.incrementAndGet();
                                 } else if (!(throwable instanceof java.util.concurrent.CancellationException) &&
@@ -530,10 +808,10 @@ public class SimpleProducerConsumer {
                                 // Ignore CancellationException and executor shutdown errors - expected during shutdown
                             });
                         }
+                    } else {
+                        // Small delay to prevent tight polling of an empty queue
+                        Thread.sleep(10);
                     }
-                    
-                    // Small delay to prevent tight polling
-                    Thread.sleep(10);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -557,6 +835,7 @@ public class SimpleProducerConsumer {
         private final AtomicInteger producedCount;
         private final AtomicInteger consumedCount;
         private final AtomicBoolean stop;
+        private final AdaptiveBatchController adaptiveController;
 
         /**
          * Creates a monitoring thread that displays throughput statistics.
@@ -564,19 +843,22 @@ public class SimpleProducerConsumer {
          * @param producedCount shared counter for messages sent
          * @param consumedCount shared counter for messages processed
          * @param stop shared flag to signal thread termination
+         * @param adaptiveController the adaptive batch controller whose settings are logged, or null
          */
         Monitor(AtomicInteger producedCount, AtomicInteger consumedCount,
-                AtomicBoolean stop) {
+                AtomicBoolean stop, AdaptiveBatchController adaptiveController) {
             this.producedCount = producedCount;
             this.consumedCount = consumedCount;
             this.stop = stop;
+            this.adaptiveController = adaptiveController;
         }
 
         /**
          * Logs throughput statistics every second until stopped.
          * 
          * Displays the current count of produced and consumed messages
-         * to help monitor the performance comparison between batching strategies.
+         * to help monitor the performance comparison between batching strategies,
+         * and the current adaptive batch size and flush delay when they're in use.
          */
         public void run() {
             try {
@@ -584,6 +866,9 @@ public class SimpleProducerConsumer {
                     Thread.sleep(1000);
                     log.info("produced messages = " + producedCount.get()
                             + ", consumed messages = " + consumedCount.get());
+                    if (adaptiveController != null) {
+                        log.info("adaptive batching: " + adaptiveController.snapshot());
+                    }
                 }
             } catch (InterruptedException e) {
                 // Allow the thread to exit.
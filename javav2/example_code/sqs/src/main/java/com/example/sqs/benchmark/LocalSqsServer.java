@@ -0,0 +1,464 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An in-process, in-memory stand-in for Amazon SQS that speaks the AWS JSON
+ * protocol used by the AWS SDK for Java 2.x SQS clients.
+ *
+ * The server supports the subset of operations that the producer/consumer
+ * examples use: GetQueueUrl, GetQueueAttributes, SendMessage, SendMessageBatch,
+ * ReceiveMessage, DeleteMessage, DeleteMessageBatch, ChangeMessageVisibility,
+ * and ChangeMessageVisibilityBatch. Queues are created on first use, received
+ * messages become visible again when their visibility timeout expires, and
+ * long polling waits for new messages up to the requested wait time.
+ *
+ * It is intended for repeatable local benchmarks and unit tests only. Message
+ * attributes, FIFO queues, and request signing are not validated. An optional
+ * response delay can be configured to approximate a network round trip.
+ */
+public class LocalSqsServer implements AutoCloseable {
+
+    private static final String TARGET_PREFIX = "AmazonSQS.";
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.0";
+    private static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LocalQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile long responseDelayNanos;
+
+    private LocalSqsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server on an ephemeral port of the loopback interface.
+     *
+     * @return the running server
+     * @throws IOException if the server socket can't be bound
+     */
+    public static LocalSqsServer start() throws IOException {
+        // Without TCP_NODELAY, small responses wait on delayed ACKs and every
+        // call takes tens of milliseconds.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        LocalSqsServer sqsServer = new LocalSqsServer(httpServer, executor);
+        httpServer.createContext("/", sqsServer::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return sqsServer;
+    }
+
+    /**
+     * Returns the endpoint that SDK clients should use as their endpoint override.
+     */
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Creates an SqsAsyncClient that sends its requests to this server using
+     * dummy credentials.
+     */
+    public SqsAsyncClient newAsyncClient() {
+        return newAsyncClient(builder -> {
+        });
+    }
+
+    /**
+     * Creates an SqsAsyncClient that sends its requests to this server, after applying
+     * additional settings to its builder.
+     */
+    public SqsAsyncClient newAsyncClient(Consumer<SqsAsyncClientBuilder> customizer) {
+        SqsAsyncClientBuilder builder = SqsAsyncClient.builder()
+                .endpointOverride(endpoint())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("local", "local")));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * Creates the queue if needed and returns its URL.
+     */
+    public String createQueue(String queueName) {
+        return queue(queueName).url;
+    }
+
+    /**
+     * Adds a delay before every response to approximate a network round trip.
+     */
+    public void setResponseDelay(Duration delay) {
+        this.responseDelayNanos = delay.toNanos();
+    }
+
+    /**
+     * Returns the total number of API requests the server has handled.
+     */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of visible messages in the queue.
+     */
+    public int visibleMessageCount(String queueName) {
+        return queue(queueName).visible.size();
+    }
+
+    /**
+     * Returns the number of received messages that haven't been deleted yet.
+     */
+    public int inFlightMessageCount(String queueName) {
+        return queue(queueName).inFlight.size();
+    }
+
+    /**
+     * Adds a message to the queue without going through HTTP.
+     */
+    public void seed(String queueName, String body) {
+        queue(queueName).add(body);
+    }
+
+    /**
+     * Creates an in-flight message directly in the server and returns its
+     * receipt handle, so that delete latency can be measured in isolation.
+     */
+    public String seedInFlight(String queueName, String body) {
+        LocalQueue queue = queue(queueName);
+        StoredMessage message = new StoredMessage(UUID.randomUUID().toString(), body, md5Hex(body));
+        return queue.markInFlight(message, DEFAULT_VISIBILITY_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Removes all messages from every queue.
+     */
+    public void purgeAll() {
+        for (LocalQueue queue : queues.values()) {
+            queue.visible.clear();
+            queue.inFlight.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private LocalQueue queue(String queueName) {
+        return queues.computeIfAbsent(queueName,
+                name -> new LocalQueue(endpoint() + "/000000000000/" + name));
+    }
+
+    private LocalQueue queueForUrl(String queueUrl) {
+        return queue(queueUrl.substring(queueUrl.lastIndexOf('/') + 1));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            JsonObject request;
+            try (InputStream in = exchange.getRequestBody()) {
+                request = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+            }
+
+            JsonObject response;
+            int status = 200;
+            try {
+                response = dispatch(target == null ? "" : target.substring(TARGET_PREFIX.length()), request);
+            } catch (LocalSqsException e) {
+                status = 400;
+                response = new JsonObject();
+                response.addProperty("__type", "com.amazonaws.sqs#" + e.errorCode);
+                response.addProperty("message", e.getMessage());
+            }
+
+            long delay = responseDelayNanos;
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+
+            byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JsonObject dispatch(String operation, JsonObject request) throws InterruptedException {
+        return switch (operation) {
+            case "GetQueueUrl" -> getQueueUrl(request);
+            case "GetQueueAttributes" -> getQueueAttributes(request);
+            case "SendMessage" -> sendMessage(request);
+            case "SendMessageBatch" -> sendMessageBatch(request);
+            case "ReceiveMessage" -> receiveMessage(request);
+            case "DeleteMessage" -> deleteMessage(request);
+            case "DeleteMessageBatch" -> deleteMessageBatch(request);
+            case "ChangeMessageVisibility" -> changeMessageVisibility(request);
+            case "ChangeMessageVisibilityBatch" -> changeMessageVisibilityBatch(request);
+            default -> throw new LocalSqsException("InvalidAction", "Unsupported operation: " + operation);
+        };
+    }
+
+    private JsonObject getQueueUrl(JsonObject request) {
+        JsonObject response = new JsonObject();
+        response.addProperty("QueueUrl", queue(request.get("QueueName").getAsString()).url);
+        return response;
+    }
+
+    private JsonObject getQueueAttributes(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        JsonObject attributes = new JsonObject();
+        attributes.addProperty("ApproximateNumberOfMessages", String.valueOf(queue.visible.size()));
+        attributes.addProperty("ApproximateNumberOfMessagesNotVisible", String.valueOf(queue.inFlight.size()));
+        attributes.addProperty("VisibilityTimeout", String.valueOf(DEFAULT_VISIBILITY_TIMEOUT_SECONDS));
+        attributes.addProperty("ReceiveMessageWaitTimeSeconds", "0");
+        attributes.addProperty("MaximumMessageSize", "262144");
+        JsonObject response = new JsonObject();
+        response.add("Attributes", attributes);
+        return response;
+    }
+
+    private JsonObject sendMessage(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        StoredMessage message = queue.add(request.get("MessageBody").getAsString());
+        JsonObject response = new JsonObject();
+        response.addProperty("MessageId", message.messageId);
+        response.addProperty("MD5OfMessageBody", message.md5OfBody);
+        return response;
+    }
+
+    private JsonObject sendMessageBatch(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        JsonArray successful = new JsonArray();
+        for (JsonElement element : request.getAsJsonArray("Entries")) {
+            JsonObject entry = element.getAsJsonObject();
+            StoredMessage message = queue.add(entry.get("MessageBody").getAsString());
+            JsonObject result = new JsonObject();
+            result.addProperty("Id", entry.get("Id").getAsString());
+            result.addProperty("MessageId", message.messageId);
+            result.addProperty("MD5OfMessageBody", message.md5OfBody);
+            successful.add(result);
+        }
+        return batchResponse(successful);
+    }
+
+    private JsonObject receiveMessage(JsonObject request) throws InterruptedException {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        int maxMessages = request.has("MaxNumberOfMessages") ? request.get("MaxNumberOfMessages").getAsInt() : 1;
+        int waitSeconds = request.has("WaitTimeSeconds") ? request.get("WaitTimeSeconds").getAsInt() : 0;
+        int visibilityTimeout = request.has("VisibilityTimeout")
+                ? request.get("VisibilityTimeout").getAsInt()
+                : DEFAULT_VISIBILITY_TIMEOUT_SECONDS;
+
+        JsonArray messages = new JsonArray();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+        while (true) {
+            queue.requeueExpired();
+            StoredMessage message;
+            while (messages.size() < maxMessages && (message = queue.visible.poll()) != null) {
+                JsonObject json = new JsonObject();
+                json.addProperty("MessageId", message.messageId);
+                json.addProperty("ReceiptHandle", queue.markInFlight(message, visibilityTimeout));
+                json.addProperty("MD5OfBody", message.md5OfBody);
+                json.addProperty("Body", message.body);
+                messages.add(json);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (!messages.isEmpty() || remaining <= 0) {
+                break;
+            }
+            queue.awaitMessages(remaining);
+        }
+
+        JsonObject response = new JsonObject();
+        if (!messages.isEmpty()) {
+            response.add("Messages", messages);
+        }
+        return response;
+    }
+
+    private JsonObject deleteMessage(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        queue.inFlight.remove(request.get("ReceiptHandle").getAsString());
+        return new JsonObject();
+    }
+
+    private JsonObject deleteMessageBatch(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        JsonArray successful = new JsonArray();
+        for (JsonElement element : request.getAsJsonArray("Entries")) {
+            JsonObject entry = element.getAsJsonObject();
+            queue.inFlight.remove(entry.get("ReceiptHandle").getAsString());
+            JsonObject result = new JsonObject();
+            result.addProperty("Id", entry.get("Id").getAsString());
+            successful.add(result);
+        }
+        return batchResponse(successful);
+    }
+
+    private JsonObject changeMessageVisibility(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        if (!queue.changeVisibility(request.get("ReceiptHandle").getAsString(),
+                request.get("VisibilityTimeout").getAsInt())) {
+            throw new LocalSqsException("MessageNotInflight", "The message isn't in flight.");
+        }
+        return new JsonObject();
+    }
+
+    private JsonObject changeMessageVisibilityBatch(JsonObject request) {
+        LocalQueue queue = queueForUrl(request.get("QueueUrl").getAsString());
+        JsonArray successful = new JsonArray();
+        JsonArray failed = new JsonArray();
+        for (JsonElement element : request.getAsJsonArray("Entries")) {
+            JsonObject entry = element.getAsJsonObject();
+            JsonObject result = new JsonObject();
+            result.addProperty("Id", entry.get("Id").getAsString());
+            if (queue.changeVisibility(entry.get("ReceiptHandle").getAsString(),
+                    entry.get("VisibilityTimeout").getAsInt())) {
+                successful.add(result);
+            } else {
+                result.addProperty("Code", "MessageNotInflight");
+                result.addProperty("SenderFault", true);
+                result.addProperty("Message", "The message isn't in flight.");
+                failed.add(result);
+            }
+        }
+        JsonObject response = batchResponse(successful);
+        response.add("Failed", failed);
+        return response;
+    }
+
+    private static JsonObject batchResponse(JsonArray successful) {
+        JsonObject response = new JsonObject();
+        response.add("Successful", successful);
+        response.add("Failed", new JsonArray());
+        return response;
+    }
+
+    static String md5Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredMessage(String messageId, String body, String md5OfBody) {
+    }
+
+    private record InFlightMessage(StoredMessage message, long visibleAtNanos) {
+    }
+
+    private static final class LocalQueue {
+        private final String url;
+        private final Queue<StoredMessage> visible = new ConcurrentLinkedQueue<>();
+        private final Map<String, InFlightMessage> inFlight = new ConcurrentHashMap<>();
+        private final Object signal = new Object();
+
+        LocalQueue(String url) {
+            this.url = url;
+        }
+
+        StoredMessage add(String body) {
+            StoredMessage message = new StoredMessage(UUID.randomUUID().toString(), body, md5Hex(body));
+            visible.add(message);
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+            return message;
+        }
+
+        String markInFlight(StoredMessage message, int visibilityTimeoutSeconds) {
+            String receiptHandle = UUID.randomUUID().toString();
+            inFlight.put(receiptHandle, new InFlightMessage(message,
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds)));
+            return receiptHandle;
+        }
+
+        boolean changeVisibility(String receiptHandle, int visibilityTimeoutSeconds) {
+            long visibleAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+            return inFlight.computeIfPresent(receiptHandle,
+                    (handle, current) -> new InFlightMessage(current.message, visibleAt)) != null;
+        }
+
+        void requeueExpired() {
+            long now = System.nanoTime();
+            inFlight.forEach((handle, entry) -> {
+                if (entry.visibleAtNanos - now <= 0 && inFlight.remove(handle, entry)) {
+                    visible.add(entry.message);
+                }
+            });
+        }
+
+        void awaitMessages(long timeoutNanos) throws InterruptedException {
+            synchronized (signal) {
+                if (visible.isEmpty()) {
+                    // Wake up at least every 100 ms so that expired visibility
+                    // timeouts are noticed during long polls.
+                    TimeUnit.NANOSECONDS.timedWait(signal,
+                            Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(100)));
+                }
+            }
+        }
+    }
+
+    private static final class LocalSqsException extends RuntimeException {
+        private final String errorCode;
+
+        LocalSqsException(String errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.batchmanager.SqsAsyncBatchManager;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark that compares single-message SqsAsyncClient calls with the
+ * SqsAsyncBatchManager against {@link LocalSqsServer}, an in-process SQS
+ * stand-in, so that results are repeatable and free of AWS charges.
+ *
+ * Each benchmark method performs the same per-message work as one iteration of
+ * the matching loop in {@code SimpleProducerConsumer}:
+ * - sendSingle: Producer (SqsAsyncClient.sendMessage)
+ * - sendBatched: BatchProducer (SqsAsyncBatchManager.sendMessage)
+ * - sendSingleFromTemplate / sendBatchedFromTemplate: the same calls, but the
+ *   producers' current path that reuses one prebuilt, immutable SendMessageRequest
+ *   instead of running the builder chain for every message. Compare their
+ *   gc.alloc.rate.norm with sendSingle / sendBatched for the before and after
+ *   bytes allocated per message.
+ * - deleteSingle / receiveAndDeleteSingle: Consumer (SqsAsyncClient)
+ * - deleteBatched / receiveAndDeleteBatched: BatchConsumer (SqsAsyncBatchManager)
+ *
+ * Running {@link #main(String[])} reports:
+ * - throughput (messages per second) from Mode.Throughput
+ * - p50, p99, and p999 latency per message from Mode.SampleTime
+ * - bytes allocated per message (gc.alloc.rate.norm) from the GC profiler
+ *
+ * Use the standard JMH options to vary the scenario, for example
+ * {@code -t 16 -p messageSizeBytes=1024,65536 -p sendRequestFrequencyMillis=20,200}.
+ * The thread count (-t, 10 by default so that batches can fill) corresponds
+ * to the number of producers or consumers.
+ * Note that the allocation figures include the work done by the in-process
+ * server, so compare them relative to each other rather than as absolutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(10)
+public class SqsBatchingBenchmark {
+
+    private static final String QUEUE_NAME = "benchmark-queue";
+
+    /** Size of every message body in bytes. */
+    @Param({"1024", "65536"})
+    public int messageSizeBytes;
+
+    /** Maximum number of entries the batch manager puts in one batch request (1-10). */
+    @Param({"10"})
+    public int maxBatchSize;
+
+    /** How long the batch manager waits for a batch to fill before it sends it. */
+    @Param({"200"})
+    public int sendRequestFrequencyMillis;
+
+    /** Artificial delay that the local server adds to every response to approximate a network round trip. */
+    @Param({"0"})
+    public int responseDelayMicros;
+
+    /** Whether the client verifies the MD5 digests of message bodies, which hashes every body twice. */
+    @Param({"true"})
+    public boolean checksumValidation;
+
+    private LocalSqsServer server;
+    private SqsAsyncClient sqsAsyncClient;
+    private SqsAsyncBatchManager batchManager;
+    private ScheduledExecutorService batchScheduler;
+    private String queueUrl;
+    private String messageBody;
+    private SendMessageRequest sendTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = LocalSqsServer.start();
+        server.setResponseDelay(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(responseDelayMicros)));
+        sqsAsyncClient = server.newAsyncClient(b -> b.checksumValidationEnabled(checksumValidation));
+        batchScheduler = Executors.newSingleThreadScheduledExecutor();
+        batchManager = SqsAsyncBatchManager.builder()
+                .client(sqsAsyncClient)
+                .scheduledExecutor(batchScheduler)
+                .overrideConfiguration(b -> b
+                        .maxBatchSize(maxBatchSize)
+                        .sendRequestFrequency(Duration.ofMillis(sendRequestFrequencyMillis)))
+                .build();
+        queueUrl = server.createQueue(QUEUE_NAME);
+        messageBody = "x".repeat(messageSizeBytes);
+        sendTemplate = SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(messageBody)
+                .build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void purge() {
+        // Keep the in-memory queue from growing across iterations.
+        server.purgeAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batchManager.close();
+        batchScheduler.shutdownNow();
+        sqsAsyncClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public SendMessageResponse sendSingle() {
+        return sqsAsyncClient.sendMessage(SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(messageBody)
+                .build()).join();
+    }
+
+    @Benchmark
+    public SendMessageResponse sendBatched() {
+        return batchManager.sendMessage(SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(messageBody)
+                .build()).join();
+    }
+
+    @Benchmark
+    public SendMessageResponse sendSingleFromTemplate() {
+        return sqsAsyncClient.sendMessage(sendTemplate).join();
+    }
+
+    @Benchmark
+    public SendMessageResponse sendBatchedFromTemplate() {
+        return batchManager.sendMessage(sendTemplate).join();
+    }
+
+    @Benchmark
+    public DeleteMessageResponse deleteSingle() {
+        String receiptHandle = server.seedInFlight(QUEUE_NAME, messageBody);
+        return sqsAsyncClient.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .receiptHandle(receiptHandle)
+                .build()).join();
+    }
+
+    @Benchmark
+    public DeleteMessageResponse deleteBatched() {
+        String receiptHandle = server.seedInFlight(QUEUE_NAME, messageBody);
+        return batchManager.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .receiptHandle(receiptHandle)
+                .build()).join();
+    }
+
+    @Benchmark
+    public int receiveAndDeleteSingle() {
+        server.seed(QUEUE_NAME, messageBody);
+        List<Message> messages = sqsAsyncClient.receiveMessage(ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .build()).join().messages();
+        for (Message message : messages) {
+            sqsAsyncClient.deleteMessage(DeleteMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(message.receiptHandle())
+                    .build()).join();
+        }
+        return messages.size();
+    }
+
+    @Benchmark
+    public int receiveAndDeleteBatched() {
+        server.seed(QUEUE_NAME, messageBody);
+        List<Message> messages = batchManager.receiveMessage(ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(1)
+                .build()).join().messages();
+        for (Message message : messages) {
+            batchManager.deleteMessage(DeleteMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(message.receiptHandle())
+                    .build()).join();
+        }
+        return messages.size();
+    }
+
+    /**
+     * Runs the benchmark with the GC profiler enabled. Any standard JMH
+     * command line option can be passed to override the defaults.
+     *
+     * @param args JMH command line options
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine).addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(SqsBatchingBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+public class AdaptiveBatchControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Offers messages at a fixed rate starting at the given time and returns the end time.
+    private static long offer(AdaptiveBatchController controller, int count, int bodyBytes,
+                              long startNanos, long intervalNanos) {
+        long now = startNanos;
+        for (int i = 0; i < count; i++) {
+            now += intervalNanos;
+            controller.onMessage(bodyBytes, now);
+        }
+        return now;
+    }
+
+    @Test
+    void batchSizeIsCappedByPayloadLimit() {
+        AdaptiveBatchController controller = AdaptiveBatchController.maxThroughput();
+        offer(controller, 100, 64 * 1024, 1, MS);
+        controller.onBatchComplete(4, 5 * MS, 10 * MS);
+
+        assertEquals(4, controller.batchSize());
+    }
+
+    @Test
+    void throughputGoalWaitsLongerAtLowLoad() {
+        AdaptiveBatchController busy = AdaptiveBatchController.maxThroughput();
+        offer(busy, 1000, 100, 1, MS / 10);
+        busy.onBatchComplete(10, 5 * MS, 5 * MS);
+
+        AdaptiveBatchController idle = AdaptiveBatchController.maxThroughput();
+        offer(idle, 100, 100, 1, 50 * MS);
+        idle.onBatchComplete(4, 5 * MS, 200 * MS);
+
+        assertEquals(10, busy.batchSize());
+        assertTrue(busy.flushDelayNanos() < 5 * MS, "busy delay: " + busy.flushDelayNanos());
+        assertEquals(200 * MS, idle.flushDelayNanos());
+    }
+
+    @Test
+    void latencyGoalBacksOffWhenOverTarget() {
+        AdaptiveBatchController controller = AdaptiveBatchController.latencySlo(Duration.ofMillis(20), 1000);
+        offer(controller, 100, 100, 1, MS);
+        long before = controller.flushDelayNanos();
+
+        controller.onBatchComplete(5, 40 * MS, 60 * MS);
+
+        assertTrue(controller.flushDelayNanos() < before,
+                before + " -> " + controller.flushDelayNanos());
+        assertTrue(controller.batchSize() < 10, "batch size: " + controller.batchSize());
+    }
+
+    @Test
+    void latencyGoalGrowsWithinTargetAndPrefersThroughputWithBacklog() {
+        AdaptiveBatchController controller = AdaptiveBatchController.latencySlo(Duration.ofMillis(20), 1000);
+        offer(controller, 100, 100, 1, MS);
+        for (int i = 0; i < 100; i++) {
+            controller.onBatchComplete(5, MS, 2 * MS);
+        }
+        assertEquals(20 * MS, controller.flushDelayNanos());
+
+        controller.onQueueDepth(5000);
+        assertEquals(10, controller.batchSize());
+        assertEquals(5000, controller.snapshot().queueDepth());
+    }
+}
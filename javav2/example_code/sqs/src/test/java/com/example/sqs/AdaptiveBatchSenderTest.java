@@ -0,0 +1,92 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Tag("UnitTest")
+public class AdaptiveBatchSenderTest {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/batch-queue";
+    private final SqsAsyncClient sqsAsyncClient = mock(SqsAsyncClient.class);
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        when(sqsAsyncClient.getQueueAttributes(any(GetQueueAttributesRequest.class)))
+                .thenReturn(new CompletableFuture<>());
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    // Sends the messages as one batch by closing the sender.
+    private List<CompletableFuture<SendMessageBatchResultEntry>> sendBatch(String... bodies) {
+        List<CompletableFuture<SendMessageBatchResultEntry>> futures = new ArrayList<>();
+        try (AdaptiveBatchSender sender = new AdaptiveBatchSender(sqsAsyncClient, QUEUE_URL,
+                AdaptiveBatchController.maxThroughput(), scheduler, Duration.ofMinutes(1))) {
+            for (String body : bodies) {
+                futures.add(sender.send(body));
+            }
+        }
+        return futures;
+    }
+
+    @Test
+    void failsEveryMessageWhenTheClientThrows() {
+        IllegalStateException rejected = new IllegalStateException("The client is closed");
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(rejected);
+
+        List<CompletableFuture<SendMessageBatchResultEntry>> futures = sendBatch("a", "b", "c");
+
+        for (CompletableFuture<SendMessageBatchResultEntry> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertEquals(rejected, e.getCause());
+        }
+    }
+
+    @Test
+    void failsTheMessagesThatTheResponseLeavesOut() throws Exception {
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                        .successful(SendMessageBatchResultEntry.builder().id("1").messageId("m-1").build())
+                        .build()));
+
+        List<CompletableFuture<SendMessageBatchResultEntry>> futures = sendBatch("a", "b", "c");
+
+        assertEquals("m-1", futures.get(1).get(5, TimeUnit.SECONDS).messageId());
+        for (int i : new int[] {0, 2}) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> futures.get(i).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SqsException.class, e.getCause());
+        }
+    }
+}
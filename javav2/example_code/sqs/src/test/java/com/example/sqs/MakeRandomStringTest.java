@@ -0,0 +1,26 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+public class MakeRandomStringTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100, 1024, 262144})
+    void producesExactSizeInBase32(int sizeByte) {
+        String payload = SimpleProducerConsumer.makeRandomString(sizeByte);
+
+        assertEquals(sizeByte, payload.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(payload.chars().allMatch(c -> Character.digit(c, 32) >= 0), payload);
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import com.example.sqs.benchmark.LocalSqsServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.batchmanager.SqsAsyncBatchManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+public class PrefetchingConsumerTest {
+    private static final String QUEUE_NAME = "prefetch-queue";
+    private LocalSqsServer server;
+    private SqsAsyncClient sqsAsyncClient;
+    private SqsAsyncBatchManager batchManager;
+    private String queueUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalSqsServer.start();
+        sqsAsyncClient = server.newAsyncClient();
+        batchManager = sqsAsyncClient.batchManager();
+        queueUrl = server.createQueue(QUEUE_NAME);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchManager.close();
+        sqsAsyncClient.close();
+        server.close();
+    }
+
+    private static PrefetchingConsumer.Config config(int bufferCapacity, int handlers,
+                                                     Duration visibilityTimeout, Duration heartbeat) {
+        return new PrefetchingConsumer.Config(1, 10, 1, bufferCapacity, handlers, visibilityTimeout,
+                heartbeat, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void handlesAndDeletesAllMessages() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            server.seed(QUEUE_NAME, "message " + i);
+        }
+        CountDownLatch handled = new CountDownLatch(100);
+        PrefetchingConsumer consumer = new PrefetchingConsumer(sqsAsyncClient, batchManager, queueUrl,
+                config(20, 5, Duration.ofSeconds(30), Duration.ofSeconds(10)), message -> handled.countDown());
+        consumer.start();
+
+        assertTrue(handled.await(30, TimeUnit.SECONDS));
+        consumer.close();
+        batchManager.close();
+
+        assertEquals(100, consumer.receivedCount());
+        assertEquals(0, server.visibleMessageCount(QUEUE_NAME));
+        assertEquals(0, server.inFlightMessageCount(QUEUE_NAME));
+    }
+
+    @Test
+    void prefetchIsBoundedByBufferCapacity() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            server.seed(QUEUE_NAME, "message " + i);
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        PrefetchingConsumer consumer = new PrefetchingConsumer(sqsAsyncClient, batchManager, queueUrl,
+                config(15, 2, Duration.ofSeconds(30), Duration.ofSeconds(10)), message -> release.await());
+        consumer.start();
+
+        // Wait until the receivers have filled the buffer while both handlers are blocked.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (consumer.receivedCount() < 15 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(500);
+        assertEquals(15, consumer.receivedCount());
+        assertEquals(13, consumer.bufferedCount());
+
+        release.countDown();
+        consumer.close();
+    }
+
+    @Test
+    void heartbeatKeepsSlowMessagesInvisible() throws Exception {
+        server.seed(QUEUE_NAME, "slow");
+        Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(1);
+        PrefetchingConsumer consumer = new PrefetchingConsumer(sqsAsyncClient, batchManager, queueUrl,
+                config(10, 1, Duration.ofSeconds(1), Duration.ofMillis(300)), message -> {
+                    deliveries.computeIfAbsent(message.messageId(), id -> new AtomicInteger()).incrementAndGet();
+                    // Three times the visibility timeout.
+                    Thread.sleep(3000);
+                    done.countDown();
+                });
+        consumer.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        consumer.close();
+
+        assertEquals(1, deliveries.size());
+        assertEquals(1, deliveries.values().iterator().next().get());
+        assertTrue(consumer.extensionCount() >= 3, "extensions: " + consumer.extensionCount());
+    }
+
+    @Test
+    void failedMessagesAreReleasedForRedelivery() throws Exception {
+        server.seed(QUEUE_NAME, "poison");
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch secondAttempt = new CountDownLatch(2);
+        PrefetchingConsumer consumer = new PrefetchingConsumer(sqsAsyncClient, batchManager, queueUrl,
+                config(10, 1, Duration.ofSeconds(30), Duration.ofSeconds(10)), message -> {
+                    secondAttempt.countDown();
+                    if (attempts.incrementAndGet() == 1) {
+                        throw new IllegalStateException("first attempt fails");
+                    }
+                });
+        consumer.start();
+
+        assertTrue(secondAttempt.await(10, TimeUnit.SECONDS));
+        consumer.close();
+        assertEquals(1, consumer.failedCount());
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs;
+
+import com.example.sqs.benchmark.LocalSqsServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.batchmanager.SqsAsyncBatchManager;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the SimpleProducerConsumer workload against the in-process LocalSqsServer.
+ */
+@Tag("UnitTest")
+public class SimpleProducerConsumerTest {
+    private LocalSqsServer server;
+    private SqsAsyncClient sqsAsyncClient;
+    private SqsAsyncBatchManager batchManager;
+    private String queueUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalSqsServer.start();
+        sqsAsyncClient = server.newAsyncClient();
+        batchManager = sqsAsyncClient.batchManager();
+        queueUrl = server.createQueue("producer-consumer-queue");
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchManager.close();
+        sqsAsyncClient.close();
+        server.close();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, false", "1, true", "10, false", "10, true"})
+    void producesAndConsumesMessages(int batchSize, boolean virtualThreads) throws InterruptedException {
+        SimpleProducerConsumer.Settings settings = new SimpleProducerConsumer.Settings(
+                2, 4, batchSize, 100, Duration.ofSeconds(2), virtualThreads, 32, null, false);
+
+        SimpleProducerConsumer.Counts counts =
+                SimpleProducerConsumer.run(sqsAsyncClient, batchManager, queueUrl, settings);
+
+        assertTrue(counts.produced() > 0, "produced: " + counts.produced());
+        assertTrue(counts.consumed() > 0, "consumed: " + counts.consumed());
+        assertTrue(counts.consumed() <= counts.produced(), counts.toString());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"true", "false"})
+    void producesWithAdaptiveBatching(boolean latencyTarget) throws InterruptedException {
+        AdaptiveBatchController controller = latencyTarget
+                ? AdaptiveBatchController.latencySlo(Duration.ofMillis(50), 10_000)
+                : AdaptiveBatchController.maxThroughput();
+        SimpleProducerConsumer.Settings settings = new SimpleProducerConsumer.Settings(
+                2, 4, 10, 100, Duration.ofSeconds(2), true, 32, controller, false);
+
+        SimpleProducerConsumer.Counts counts =
+                SimpleProducerConsumer.run(sqsAsyncClient, batchManager, queueUrl, settings);
+
+        assertTrue(counts.produced() > 0, "produced: " + counts.produced());
+        assertTrue(controller.snapshot().averageFill() > 1, controller.snapshot().toString());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "10"})
+    void consumesWithPrefetchingConsumer(int batchSize) throws InterruptedException {
+        SimpleProducerConsumer.Settings settings = new SimpleProducerConsumer.Settings(
+                2, 4, batchSize, 100, Duration.ofSeconds(2), true, 32, null, true);
+
+        SimpleProducerConsumer.Counts counts =
+                SimpleProducerConsumer.run(sqsAsyncClient, batchManager, queueUrl, settings);
+
+        assertTrue(counts.consumed() > 0, "consumed: " + counts.consumed());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "10"})
+    void runsThousandsOfVirtualConsumers(int batchSize) throws InterruptedException {
+        SimpleProducerConsumer.Settings settings = new SimpleProducerConsumer.Settings(
+                2, 2000, batchSize, 100, Duration.ofSeconds(2), true, 32, null, false);
+
+        SimpleProducerConsumer.Counts counts =
+                SimpleProducerConsumer.run(sqsAsyncClient, batchManager, queueUrl, settings);
+
+        assertTrue(counts.consumed() > 0, "consumed: " + counts.consumed());
+    }
+}
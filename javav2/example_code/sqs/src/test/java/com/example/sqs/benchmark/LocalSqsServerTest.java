@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.sqs.benchmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.batchmanager.SqsAsyncBatchManager;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+public class LocalSqsServerTest {
+    private static final String QUEUE_NAME = "local-test-queue";
+    private LocalSqsServer server;
+    private SqsAsyncClient sqsAsyncClient;
+    private String queueUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = LocalSqsServer.start();
+        sqsAsyncClient = server.newAsyncClient();
+        queueUrl = sqsAsyncClient.getQueueUrl(GetQueueUrlRequest.builder()
+                .queueName(QUEUE_NAME)
+                .build()).join().queueUrl();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sqsAsyncClient.close();
+        server.close();
+    }
+
+    @Test
+    void sendReceiveAndDeleteWithClient() {
+        sqsAsyncClient.sendMessage(b -> b.queueUrl(queueUrl).messageBody("hello")).join();
+        sqsAsyncClient.sendMessageBatch(b -> b.queueUrl(queueUrl).entries(
+                SendMessageBatchRequestEntry.builder().id("1").messageBody("one").build(),
+                SendMessageBatchRequestEntry.builder().id("2").messageBody("two").build())).join();
+
+        ReceiveMessageResponse response = sqsAsyncClient.receiveMessage(b -> b
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(10)).join();
+        assertEquals(3, response.messages().size());
+        assertEquals(3, server.inFlightMessageCount(QUEUE_NAME));
+
+        for (Message message : response.messages()) {
+            sqsAsyncClient.deleteMessage(b -> b.queueUrl(queueUrl).receiptHandle(message.receiptHandle())).join();
+        }
+        assertEquals(0, server.inFlightMessageCount(QUEUE_NAME));
+        assertEquals(0, server.visibleMessageCount(QUEUE_NAME));
+    }
+
+    @Test
+    void expiredVisibilityTimeoutMakesMessageVisibleAgain() {
+        server.seed(QUEUE_NAME, "retry me");
+        sqsAsyncClient.receiveMessage(b -> b.queueUrl(queueUrl).visibilityTimeout(0)).join();
+
+        List<Message> redelivered = sqsAsyncClient.receiveMessage(b -> b.queueUrl(queueUrl)).join().messages();
+        assertEquals(1, redelivered.size());
+        assertEquals("retry me", redelivered.get(0).body());
+    }
+
+    @Test
+    void batchManagerSendsAndDeletesInBatches() {
+        try (SqsAsyncBatchManager batchManager = sqsAsyncClient.batchManager()) {
+            CompletableFuture<?>[] sends = IntStream.range(0, 20)
+                    .mapToObj(i -> batchManager.sendMessage(b -> b.queueUrl(queueUrl).messageBody("m" + i)))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(sends).join();
+            assertEquals(20, server.visibleMessageCount(QUEUE_NAME));
+
+            List<Message> messages = sqsAsyncClient.receiveMessage(b -> b
+                    .queueUrl(queueUrl)
+                    .maxNumberOfMessages(10)).join().messages();
+            CompletableFuture<?>[] deletes = messages.stream()
+                    .map(m -> batchManager.deleteMessage(b -> b.queueUrl(queueUrl).receiptHandle(m.receiptHandle())))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(deletes).join();
+        }
+        assertEquals(0, server.inFlightMessageCount(QUEUE_NAME));
+        // 1 GetQueueUrl, 2 SendMessageBatch, 1 ReceiveMessage, and 1 DeleteMessageBatch.
+        assertTrue(server.requestCount() <= 6, "requests: " + server.requestCount());
+    }
+}
@@ -0,0 +1,313 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.photo.services;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An OutputStream that uploads what is written to it to an Amazon S3 object, without
+ * knowing the total size in advance and without holding the whole object in memory.
+ *
+ * Written bytes are collected in a part buffer. When a buffer is full, it's uploaded
+ * with UploadPart on a background thread while writing continues into the next buffer.
+ * At most partsInFlight + 1 buffers exist, and writes block while all of them are in
+ * use, so memory stays at about the part size * (partsInFlight + 1).
+ *
+ * S3 allows at most 10,000 parts, which at a fixed 8 MiB would end an object at about
+ * 78 GiB. The part size therefore doubles every 1,000 parts, up to 1 GiB, which allows
+ * objects of several TiB; memory grows with the part size only for such large objects.
+ * A write that would need part 10,001 fails and the upload is aborted.
+ *
+ * The multipart upload is only created once the first part is full. Smaller objects
+ * are sent with a single PutObject when the stream is closed. If an upload fails, the
+ * next write or close throws an IOException and the multipart upload is aborted.
+ * Call {@link #abort()} instead of {@link #close()} to discard what was written, for
+ * example when producing the content failed.
+ */
+public class MultipartUploadOutputStream extends OutputStream {
+
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int MAX_PART_SIZE = 1024 * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+    // The number of parts after which the part size doubles.
+    static final int PARTS_PER_SIZE = 1_000;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final int partSizeBytes;
+    private final int maxBuffers;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final ExecutorService uploadExecutor;
+    private final List<CompletedPart> completedParts = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private int allocatedBuffers;
+    private byte[] buffer;
+    private int position;
+    private int nextPartNumber = 1;
+    private int pendingParts;
+    private String uploadId;
+    private boolean closed;
+
+    /**
+     * Creates a stream that uploads to the given object.
+     *
+     * @param s3Client      the client used for the uploads
+     * @param bucketName    the name of the S3 bucket
+     * @param key           the object key
+     * @param partSizeBytes the size of the first 1,000 parts; at least 5 MiB
+     * @param partsInFlight the number of parts that are uploaded while writing continues
+     */
+    public MultipartUploadOutputStream(S3Client s3Client, String bucketName, String key, int partSizeBytes,
+            int partsInFlight) {
+        if (partSizeBytes < MIN_PART_SIZE || partSizeBytes > MAX_PART_SIZE) {
+            throw new IllegalArgumentException("partSizeBytes must be between " + MIN_PART_SIZE + " and "
+                    + MAX_PART_SIZE);
+        }
+        if (partsInFlight < 1) {
+            throw new IllegalArgumentException("partsInFlight must be positive");
+        }
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSizeBytes = partSizeBytes;
+        this.maxBuffers = partsInFlight + 1;
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+        this.uploadExecutor = Executors.newFixedThreadPool(partsInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "part-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the ID of the multipart upload, or null while everything written still
+     * fits into the first part.
+     */
+    public String uploadId() {
+        return uploadId;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        checkWritable();
+        while (length > 0) {
+            if (buffer == null) {
+                if (nextPartNumber > MAX_PARTS) {
+                    abort();
+                    throw new IOException(bucketName + "/" + key + " is larger than " + MAX_PARTS
+                            + " parts; start with a larger part size");
+                }
+                buffer = takeBuffer(partSize(partSizeBytes, nextPartNumber));
+                position = 0;
+            }
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+            if (position == buffer.length) {
+                try {
+                    uploadBuffer();
+                } catch (SdkException e) {
+                    abort();
+                    throw new IOException("Couldn't start the upload of " + bucketName + "/" + key, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads the remaining bytes and completes the upload. Blocks until all parts are uploaded.
+     *
+     * @throws IOException if a part or the completion failed; the upload is aborted
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        checkWritable();
+        closed = true;
+        try {
+            if (uploadId == null) {
+                byte[] data = buffer == null ? new byte[0] : buffer;
+                int length = position;
+                s3Client.putObject(b -> b.bucket(bucketName).key(key),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length,
+                                "application/octet-stream"));
+                return;
+            }
+            if (position > 0) {
+                uploadBuffer();
+            }
+            awaitPendingParts();
+            if (failure.get() != null) {
+                throw new IOException("Couldn't upload " + bucketName + "/" + key, failure.get());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+            s3Client.completeMultipartUpload(b -> b
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(completedParts)));
+        } catch (IOException | SdkException e) {
+            abortQuietly();
+            throw e instanceof IOException io ? io : new IOException("Couldn't upload " + bucketName + "/" + key, e);
+        } finally {
+            uploadExecutor.shutdownNow();
+            buffer = null;
+            freeBuffers.clear();
+        }
+    }
+
+    /**
+     * Stops the upload and aborts the multipart upload, if one was started, so that no
+     * object is created and no parts are left behind.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            awaitPendingParts();
+        } catch (IOException e) {
+            // Interrupted; abort anyway.
+        }
+        abortQuietly();
+        uploadExecutor.shutdownNow();
+        buffer = null;
+        freeBuffers.clear();
+    }
+
+    private void checkWritable() throws IOException {
+        if (closed) {
+            throw new IOException("The stream is closed");
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            abort();
+            throw new IOException("Couldn't upload " + bucketName + "/" + key, cause);
+        }
+    }
+
+    /**
+     * Returns the size of the part with the given number: partSizeBytes for the first
+     * 1,000 parts, doubling for every further 1,000, up to {@link #MAX_PART_SIZE}.
+     */
+    static int partSize(int partSizeBytes, int partNumber) {
+        int doublings = Math.min((partNumber - 1) / PARTS_PER_SIZE, 30);
+        return (int) Math.min(MAX_PART_SIZE, (long) partSizeBytes << doublings);
+    }
+
+    private byte[] takeBuffer(int size) throws IOException {
+        while (true) {
+            byte[] free = freeBuffers.poll();
+            if (free == null) {
+                synchronized (this) {
+                    if (allocatedBuffers < maxBuffers) {
+                        allocatedBuffers++;
+                        return new byte[size];
+                    }
+                }
+                try {
+                    // All buffers are being uploaded; wait for one of them to finish.
+                    free = freeBuffers.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a part upload", e);
+                }
+            }
+            if (free.length == size) {
+                return free;
+            }
+            // The part size has grown; let the smaller buffer go so that a larger one can take its place.
+            synchronized (this) {
+                allocatedBuffers--;
+            }
+        }
+    }
+
+    private void uploadBuffer() {
+        if (uploadId == null) {
+            uploadId = s3Client.createMultipartUpload(b -> b.bucket(bucketName).key(key)).uploadId();
+        }
+        byte[] data = buffer;
+        int length = position;
+        int partNumber = nextPartNumber++;
+        buffer = null;
+        position = 0;
+        synchronized (this) {
+            pendingParts++;
+        }
+        uploadExecutor.execute(() -> {
+            try {
+                String eTag = s3Client.uploadPart(b -> b
+                                .bucket(bucketName)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length,
+                                "application/octet-stream"))
+                        .eTag();
+                synchronized (this) {
+                    completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                freeBuffers.offer(data);
+                synchronized (this) {
+                    pendingParts--;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    private synchronized void awaitPendingParts() throws IOException {
+        try {
+            while (pendingParts > 0) {
+                wait(TimeUnit.SECONDS.toMillis(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for part uploads", e);
+        }
+    }
+
+    private void abortQuietly() {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            s3Client.abortMultipartUpload(b -> b.bucket(bucketName).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            // The upload can still be aborted later, for example by a lifecycle rule.
+        }
+    }
+}
@@ -6,6 +6,8 @@ package com.example.photo.services;
 import com.example.photo.PhotoApplicationResources;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -24,14 +26,37 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequ
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class S3Service {
+    // Bounds for zipObjectsToBucket: objects fetched ahead of the one being zipped, the
+    // total size of fetched objects held in memory, and the multipart upload parts.
+    private static final int ZIP_FETCH_CONCURRENCY = 8;
+    private static final int ZIP_PREFETCH_BUDGET_BYTES = 64 * 1024 * 1024;
+    private static final int ZIP_PART_SIZE_BYTES = 8 * 1024 * 1024;
+    private static final int ZIP_PARTS_IN_FLIGHT = 2;
+
+    // An object fetched ahead of time, or null content if it didn't fit into the prefetch budget
+    // and is read when its entry is written.
+    private record FetchedObject(String key, byte[] content) {
+    }
+
     // Create the S3Client object.
     private S3Client getClient() {
         return S3Client.builder()
@@ -100,7 +125,8 @@ public class S3Service {
         }
     }
 
-    // Pass a map and get back a byte[] that represents a ZIP of all images.
+    // Pass a map and get back a byte[] that represents a ZIP of all images. This holds
+    // every image and the whole ZIP in memory; use zipObjectsToBucket for large bundles.
     public byte[] listBytesToZip(Map<String, byte[]> mapReport) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ZipOutputStream zos = new ZipOutputStream(baos);
@@ -115,6 +141,98 @@ public class S3Service {
         return baos.toByteArray();
     }
 
+    // Streams a ZIP of the given objects into an object in the target bucket. Objects are
+    // fetched concurrently but written in order, and the ZIP is uploaded in parts as it's
+    // written, so memory stays bounded however many images the bundle has. Objects too large
+    // for the prefetch budget are read only when their entry is written.
+    public void zipObjectsToBucket(String sourceBucket, Collection<String> keys, String targetBucket,
+            String zipKey) throws IOException {
+        S3Client s3 = getClient();
+        ExecutorService fetchers = Executors.newFixedThreadPool(ZIP_FETCH_CONCURRENCY, runnable -> {
+            Thread thread = new Thread(runnable, "zip-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore prefetchBudget = new Semaphore(ZIP_PREFETCH_BUDGET_BYTES);
+        Deque<Future<FetchedObject>> window = new ArrayDeque<>();
+        MultipartUploadOutputStream upload = new MultipartUploadOutputStream(s3, targetBucket, zipKey,
+                ZIP_PART_SIZE_BYTES, ZIP_PARTS_IN_FLIGHT);
+        ZipOutputStream zos = new ZipOutputStream(upload);
+
+        Iterator<String> remaining = keys.iterator();
+        try {
+            while (remaining.hasNext() && window.size() < ZIP_FETCH_CONCURRENCY) {
+                window.add(fetchers.submit(fetchTask(s3, sourceBucket, remaining.next(), prefetchBudget)));
+            }
+            while (!window.isEmpty()) {
+                FetchedObject fetched = window.poll().get();
+                if (remaining.hasNext()) {
+                    window.add(fetchers.submit(fetchTask(s3, sourceBucket, remaining.next(), prefetchBudget)));
+                }
+
+                zos.putNextEntry(new ZipEntry(fetched.key()));
+                if (fetched.content() != null) {
+                    zos.write(fetched.content());
+                    prefetchBudget.release(fetched.content().length);
+                } else {
+                    copyObject(s3, sourceBucket, fetched.key(), zos);
+                }
+                zos.closeEntry();
+            }
+            // Writes the central directory and completes the upload.
+            zos.close();
+        } catch (IOException | SdkException | ExecutionException | InterruptedException e) {
+            upload.abort();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e instanceof IOException io ? io : new IOException("Couldn't create " + zipKey, e);
+        } finally {
+            window.forEach(future -> future.cancel(true));
+            fetchers.shutdownNow();
+            s3.close();
+        }
+    }
+
+    // Copies an object that was too large to fetch ahead into the current ZIP entry.
+    private static void copyObject(S3Client s3, String bucketName, String key, OutputStream out) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> stream = s3.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build())) {
+            try {
+                stream.transferTo(out);
+            } catch (IOException | RuntimeException e) {
+                // Closing would read the rest of the object first.
+                stream.abort();
+                throw e;
+            }
+        }
+    }
+
+    private static Callable<FetchedObject> fetchTask(S3Client s3, String bucketName, String key,
+            Semaphore prefetchBudget) {
+        return () -> {
+            ResponseInputStream<GetObjectResponse> stream = s3.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            long length = stream.response().contentLength();
+            // Never wait for budget here: the object being written might be the one that needs it.
+            if (length <= Integer.MAX_VALUE && prefetchBudget.tryAcquire((int) length)) {
+                try (stream) {
+                    return new FetchedObject(key, stream.readNBytes((int) length));
+                } catch (IOException | RuntimeException e) {
+                    prefetchBudget.release((int) length);
+                    throw e;
+                }
+            }
+            // Don't keep the connection open until the entry's turn; it's opened again then.
+            stream.abort();
+            return new FetchedObject(key, null);
+        };
+    }
+
     // Returns true if object exists.
     public boolean checkS3ObjectDoesNotExist(String keyName) {
         S3Client s3 = getClient();
@@ -3,12 +3,7 @@
 
 package com.example.resilient;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import software.amazon.awssdk.core.waiters.WaiterResponse;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
@@ -22,8 +17,8 @@ import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
 import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
 import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbWaiter;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 
 // snippet-start:[javav2.example_code.workflow.ResilientService_RecommendationService]
 public class Database {
@@ -121,35 +116,19 @@ public class Database {
         System.out.println("Table " + tableName + " deleted.");
     }
 
-    // Populates the table with data located in a JSON file using the DynamoDB
-    // enhanced client.
+    // Populates the table with data located in a JSON file. The file is streamed
+    // into BatchWriteItem calls that are written in parallel within the table's
+    // write capacity.
     public void populateTable(String fileName, String tableName) throws IOException {
-        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder()
-                .dynamoDbClient(getDynamoDbClient())
-                .build();
-        ObjectMapper objectMapper = new ObjectMapper();
-        File jsonFile = new File(fileName);
-        JsonNode rootNode = objectMapper.readTree(jsonFile);
-
-        DynamoDbTable<Recommendation> mappedTable = enhancedClient.table(tableName,
-                TableSchema.fromBean(Recommendation.class));
-        for (JsonNode currentNode : rootNode) {
-            String mediaType = currentNode.path("MediaType").path("S").asText();
-            int itemId = currentNode.path("ItemId").path("N").asInt();
-            String title = currentNode.path("Title").path("S").asText();
-            String creator = currentNode.path("Creator").path("S").asText();
-
-            // Create a Recommendation object and set its properties.
-            Recommendation rec = new Recommendation();
-            rec.setMediaType(mediaType);
-            rec.setItemId(itemId);
-            rec.setTitle(title);
-            rec.setCreator(creator);
-
-            // Put the item into the DynamoDB table.
-            mappedTable.putItem(rec); // Add the Recommendation to the list.
+        TableLoader loader = new TableLoader(getDynamoDbClient(), TableLoader.Config.defaults());
+        TableLoader.Summary summary = loader.load(Path.of(fileName), tableName);
+        long failed = summary.itemsRead() - summary.items();
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + summary.itemsRead() + " records weren't added to the "
+                + tableName + " table");
         }
-        System.out.println("Added all records to the " + tableName);
+        System.out.printf("Added all %d records to the %s table in %d ms%n", summary.items(), tableName,
+                summary.elapsed().toMillis());
     }
 }
 // snippet-end:[javav2.example_code.workflow.ResilientService_RecommendationService]
\ No newline at end of file
@@ -0,0 +1,405 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.example.resilient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads a file of items in DynamoDB JSON format, such as recommendations.json, into a
+ * table.
+ *
+ * The file is read with Jackson's streaming parser, so only the batches in flight are
+ * held in memory. Items are written in BatchWriteItem calls of 25 on a bounded pool of
+ * workers, and a token bucket keeps the write rate within the table's capacity: the
+ * provisioned write capacity units, the maximum write request units of an on-demand
+ * table, or {@link Config#onDemandWritesPerSecond()} when the on-demand table has no
+ * maximum. Unprocessed items and throttled batches are sent again after a backoff.
+ */
+public class TableLoader {
+    // BatchWriteItem accepts at most 25 put or delete requests.
+    static final int MAX_BATCH_SIZE = 25;
+    private static final int WRITE_UNIT_BYTES = 1024;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final Config config;
+
+    /**
+     * Settings for a load.
+     *
+     * @param workers                 the number of batches written concurrently.
+     * @param onDemandWritesPerSecond the write rate for an on-demand table that has no
+     *                                maximum write request units.
+     * @param burst                   how much unused capacity the token bucket saves up.
+     *                                DynamoDB keeps up to five minutes of unused capacity
+     *                                as burst capacity, so a short burst is rarely throttled.
+     * @param maxAttempts             how many times a batch is sent before the load fails.
+     * @param retryBaseDelay          the backoff before the first resend; it doubles with
+     *                                every attempt, with full jitter.
+     * @param progressInterval        how often progress is printed, or zero for never.
+     */
+    public record Config(int workers, double onDemandWritesPerSecond, Duration burst, int maxAttempts,
+                         Duration retryBaseDelay, Duration progressInterval) {
+        public Config {
+            if (workers < 1) {
+                throw new IllegalArgumentException("workers must be at least 1");
+            }
+            if (!(onDemandWritesPerSecond > 0)) {
+                throw new IllegalArgumentException("onDemandWritesPerSecond must be positive");
+            }
+            if (burst.isNegative()) {
+                throw new IllegalArgumentException("burst must not be negative");
+            }
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            if (retryBaseDelay.isNegative() || progressInterval.isNegative()) {
+                throw new IllegalArgumentException("delays must not be negative");
+            }
+        }
+
+        public static Config defaults() {
+            return new Config(8, 4000, Duration.ofSeconds(10), 10, Duration.ofMillis(50), Duration.ofSeconds(2));
+        }
+    }
+
+    /**
+     * The outcome of a load.
+     *
+     * @param itemsRead       the items read from the file.
+     * @param items           the items written.
+     * @param batches         the BatchWriteItem calls that succeeded, including resends.
+     * @param resentItems     the unprocessed items that were sent again.
+     * @param throttledCalls  the calls that failed with a throttling error and were retried.
+     * @param writesPerSecond the write rate the token bucket was set to.
+     * @param elapsed         how long the load took.
+     */
+    public record Summary(long itemsRead, long items, long batches, long resentItems, long throttledCalls,
+                          double writesPerSecond, Duration elapsed) {
+    }
+
+    public TableLoader(DynamoDbClient dynamoDbClient, Config config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+    }
+
+    /**
+     * Writes every item in the file to the table and returns once all of them are
+     * written. If a batch still fails after {@link Config#maxAttempts()}, no more
+     * batches are started and the error is thrown once the batches in flight finish.
+     */
+    public Summary load(Path file, String tableName) throws IOException {
+        double writesPerSecond = writeCapacity(tableName);
+        TokenBucket bucket = new TokenBucket(writesPerSecond,
+            Math.max(MAX_BATCH_SIZE, writesPerSecond * config.burst().toNanos() / 1e9));
+        Load load = new Load(tableName, bucket);
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(config.workers(), daemonThreads("table-loader"));
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(daemonThreads("table-loader-progress"));
+        if (!config.progressInterval().isZero()) {
+            long interval = config.progressInterval().toMillis();
+            progress.scheduleAtFixedRate(() -> load.printProgress(start), interval, interval, TimeUnit.MILLISECONDS);
+        }
+        // Two batches per worker are enough to keep every worker busy while the file is read.
+        Semaphore inFlight = new Semaphore(config.workers() * 2);
+        try (JsonParser parser = new JsonFactory().createParser(Files.newInputStream(file))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of items");
+            }
+            List<WriteRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (parser.nextToken() == JsonToken.START_OBJECT && load.failure.get() == null) {
+                load.itemsRead.incrementAndGet();
+                batch.add(WriteRequest.builder().putRequest(PutRequest.builder().item(readItem(parser)).build()).build());
+                if (batch.size() == MAX_BATCH_SIZE) {
+                    submit(workers, inFlight, load, batch);
+                    batch = new ArrayList<>(MAX_BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty() && load.failure.get() == null) {
+                submit(workers, inFlight, load, batch);
+            }
+            inFlight.acquire(config.workers() * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while loading " + tableName).cause(e).build();
+        } finally {
+            workers.shutdownNow();
+            progress.shutdownNow();
+        }
+
+        Throwable failure = load.failure.get();
+        if (failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (failure instanceof Error error) {
+            throw error;
+        }
+        return new Summary(load.itemsRead.get(), load.items.get(), load.batches.get(), load.resentItems.get(),
+            load.throttledCalls.get(), writesPerSecond, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, Load load, List<WriteRequest> batch)
+            throws InterruptedException {
+        inFlight.acquire();
+        workers.execute(() -> {
+            try {
+                writeBatch(load, batch);
+            } catch (Throwable e) {
+                load.failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void writeBatch(Load load, List<WriteRequest> batch) throws InterruptedException {
+        List<WriteRequest> pending = batch;
+        for (int attempt = 1; ; attempt++) {
+            load.bucket.acquire(writeUnits(pending));
+            Map<String, List<WriteRequest>> requestItems = Map.of(load.tableName, pending);
+            try {
+                BatchWriteItemResponse response = dynamoDbClient.batchWriteItem(r -> r.requestItems(requestItems));
+                load.batches.incrementAndGet();
+                List<WriteRequest> unprocessed = response.unprocessedItems().getOrDefault(load.tableName, List.of());
+                load.items.addAndGet(pending.size() - unprocessed.size());
+                if (unprocessed.isEmpty()) {
+                    return;
+                }
+                if (attempt == config.maxAttempts()) {
+                    throw SdkException.create(unprocessed.size() + " items were still unprocessed after "
+                        + attempt + " attempts", null);
+                }
+                load.resentItems.addAndGet(unprocessed.size());
+                pending = unprocessed;
+            } catch (SdkException e) {
+                if (!isRetryable(e) || attempt == config.maxAttempts()) {
+                    throw e;
+                }
+                if (e instanceof AwsServiceException serviceException && serviceException.isThrottlingException()) {
+                    load.throttledCalls.incrementAndGet();
+                }
+            }
+            long base = config.retryBaseDelay().toNanos() << Math.min(attempt - 1, 10);
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(base + 1));
+        }
+    }
+
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof AbortedException) {
+            return false;
+        }
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkException;
+    }
+
+    // Returns the sustained write rate of the table, in write units per second.
+    private double writeCapacity(String tableName) {
+        TableDescription table = dynamoDbClient.describeTable(r -> r.tableName(tableName)).table();
+        boolean onDemand = table.billingModeSummary() != null
+            && table.billingModeSummary().billingMode() == BillingMode.PAY_PER_REQUEST;
+        if (onDemand) {
+            Long maximum = table.onDemandThroughput() == null ? null
+                : table.onDemandThroughput().maxWriteRequestUnits();
+            return maximum != null && maximum > 0 ? maximum : config.onDemandWritesPerSecond();
+        }
+        Long provisioned = table.provisionedThroughput() == null ? null
+            : table.provisionedThroughput().writeCapacityUnits();
+        return provisioned != null && provisioned > 0 ? provisioned : config.onDemandWritesPerSecond();
+    }
+
+    // A put costs one write unit for each started kilobyte of the item.
+    static int writeUnits(List<WriteRequest> batch) {
+        int units = 0;
+        for (WriteRequest request : batch) {
+            long size = 0;
+            for (Map.Entry<String, AttributeValue> attribute : request.putRequest().item().entrySet()) {
+                size += utf8Length(attribute.getKey()) + size(attribute.getValue());
+            }
+            units += (int) Math.max(1, (size + WRITE_UNIT_BYTES - 1) / WRITE_UNIT_BYTES);
+        }
+        return units;
+    }
+
+    private static long size(AttributeValue value) {
+        return switch (value.type()) {
+            case S -> utf8Length(value.s());
+            case N -> value.n().length();
+            case B -> value.b().asByteBuffer().remaining();
+            case BOOL, NUL -> 1;
+            case SS -> value.ss().stream().mapToLong(TableLoader::utf8Length).sum();
+            case NS -> value.ns().stream().mapToLong(String::length).sum();
+            case BS -> value.bs().stream().mapToLong(b -> b.asByteBuffer().remaining()).sum();
+            case L -> 3 + value.l().stream().mapToLong(element -> 1 + size(element)).sum();
+            case M -> 3 + value.m().entrySet().stream()
+                .mapToLong(entry -> 1 + utf8Length(entry.getKey()) + size(entry.getValue())).sum();
+            default -> 0;
+        };
+    }
+
+    private static long utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Reads one item in DynamoDB JSON format, for example
+     * {@code {"MediaType": {"S": "Book"}, "ItemId": {"N": "1"}}}, from a parser that is on
+     * the item's START_OBJECT token.
+     */
+    static Map<String, AttributeValue> readItem(JsonParser parser) throws IOException {
+        Map<String, AttributeValue> item = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            item.put(name, readValue(parser));
+        }
+        return item;
+    }
+
+    private static AttributeValue readValue(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+            throw new JsonParseException(parser, "Expected an attribute value such as {\"S\": \"text\"}");
+        }
+        String type = parser.currentName();
+        parser.nextToken();
+        AttributeValue value = switch (type) {
+            case "S" -> AttributeValue.fromS(parser.getText());
+            case "N" -> AttributeValue.fromN(parser.getText());
+            case "B" -> AttributeValue.fromB(SdkBytes.fromByteArray(parser.getBinaryValue()));
+            case "BOOL" -> AttributeValue.fromBool(parser.getBooleanValue());
+            case "NULL" -> AttributeValue.fromNul(parser.getBooleanValue());
+            case "SS" -> AttributeValue.fromSs(readStrings(parser));
+            case "NS" -> AttributeValue.fromNs(readStrings(parser));
+            case "BS" -> {
+                List<SdkBytes> values = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    values.add(SdkBytes.fromByteArray(parser.getBinaryValue()));
+                }
+                yield AttributeValue.fromBs(values);
+            }
+            case "L" -> {
+                List<AttributeValue> values = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    values.add(readValue(parser));
+                }
+                yield AttributeValue.fromL(values);
+            }
+            case "M" -> AttributeValue.fromM(readItem(parser));
+            default -> throw new JsonParseException(parser, "Unknown attribute type " + type);
+        };
+        if (parser.nextToken() != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "Expected one type in the attribute value");
+        }
+        return value;
+    }
+
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // The state of one call to load.
+    private static final class Load {
+        final String tableName;
+        final TokenBucket bucket;
+        final AtomicLong itemsRead = new AtomicLong();
+        final AtomicLong items = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong resentItems = new AtomicLong();
+        final AtomicLong throttledCalls = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Load(String tableName, TokenBucket bucket) {
+            this.tableName = tableName;
+            this.bucket = bucket;
+        }
+
+        void printProgress(long start) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Loaded %d items into %s (%.0f items/s, %d resent, %d throttled calls)%n",
+                items.get(), tableName, items.get() / seconds, resentItems.get(), throttledCalls.get());
+        }
+    }
+
+    /**
+     * A token bucket that refills at a fixed rate up to a fixed capacity. A caller that
+     * asks for more tokens than the bucket has waits until they have been refilled; a
+     * request larger than the capacity is let through once the bucket is full, so a
+     * single large batch can't wait forever.
+     */
+    static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double tokensPerSecond, double capacity) {
+            this.tokensPerNano = tokensPerSecond / 1e9;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        synchronized void acquire(int permits) throws InterruptedException {
+            double wanted = Math.min(permits, capacity);
+            while (true) {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+                if (tokens >= wanted) {
+                    tokens -= permits;
+                    return;
+                }
+                // Waiting while holding the lock keeps the callers in order.
+                TimeUnit.NANOSECONDS.sleep((long) Math.ceil((wanted - tokens) / tokensPerNano));
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+package com.example.resilient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("UnitTest")
+class TableLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEveryAttributeTypeOfDynamoDbJson() throws IOException {
+        Map<String, AttributeValue> item = readItem("""
+            {"MediaType": {"S": "Book"}, "ItemId": {"N": "1"}, "Cover": {"B": "AQID"},
+             "InPrint": {"BOOL": true}, "Isbn": {"NULL": true}, "Tags": {"SS": ["a", "b"]},
+             "Ratings": {"NS": ["4", "5.5"]}, "Scans": {"BS": ["AQ==", "Ag=="]},
+             "Authors": {"L": [{"S": "Ann"}, {"N": "2"}]},
+             "Publisher": {"M": {"Name": {"S": "Acme"}, "Founded": {"N": "1900"}}}}
+            """);
+
+        assertEquals(List.of("MediaType", "ItemId", "Cover", "InPrint", "Isbn", "Tags", "Ratings", "Scans",
+            "Authors", "Publisher"), List.copyOf(item.keySet()));
+        assertEquals(AttributeValue.fromS("Book"), item.get("MediaType"));
+        assertEquals(AttributeValue.fromN("1"), item.get("ItemId"));
+        assertEquals(AttributeValue.fromB(SdkBytes.fromByteArray(new byte[] {1, 2, 3})), item.get("Cover"));
+        assertEquals(AttributeValue.fromBool(true), item.get("InPrint"));
+        assertEquals(AttributeValue.fromNul(true), item.get("Isbn"));
+        assertEquals(AttributeValue.fromSs(List.of("a", "b")), item.get("Tags"));
+        assertEquals(AttributeValue.fromNs(List.of("4", "5.5")), item.get("Ratings"));
+        assertEquals(AttributeValue.fromBs(List.of(SdkBytes.fromByteArray(new byte[] {1}),
+            SdkBytes.fromByteArray(new byte[] {2}))), item.get("Scans"));
+        assertEquals(AttributeValue.fromL(List.of(AttributeValue.fromS("Ann"), AttributeValue.fromN("2"))),
+            item.get("Authors"));
+        assertEquals(AttributeValue.fromM(Map.of("Name", AttributeValue.fromS("Acme"),
+            "Founded", AttributeValue.fromN("1900"))), item.get("Publisher"));
+    }
+
+    @Test
+    void leavesTheParserAtTheEndOfTheItem() throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(
+            "[{\"Id\": {\"N\": \"1\"}}, {\"Id\": {\"N\": \"2\"}}]")) {
+            assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals(Map.of("Id", AttributeValue.fromN("1")), TableLoader.readItem(parser));
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals(Map.of("Id", AttributeValue.fromN("2")), TableLoader.readItem(parser));
+            assertEquals(JsonToken.END_ARRAY, parser.nextToken());
+        }
+    }
+
+    @Test
+    void rejectsValuesThatArentDynamoDbJson() {
+        assertThrows(JsonParseException.class, () -> readItem("{\"Id\": 1}"));
+        assertThrows(JsonParseException.class, () -> readItem("{\"Id\": {\"X\": \"1\"}}"));
+        assertThrows(JsonParseException.class, () -> readItem("{\"Id\": {\"S\": \"1\", \"N\": \"1\"}}"));
+    }
+
+    @Test
+    void chargesOneWriteUnitForEachStartedKilobyte() {
+        // "Id" and "1" take 3 bytes.
+        assertEquals(1, TableLoader.writeUnits(List.of(put(Map.of("Id", AttributeValue.fromN("1"))))));
+        // 2 bytes of name and 1,022 of value fill exactly one kilobyte; one more byte starts the next.
+        assertEquals(1, TableLoader.writeUnits(List.of(put(Map.of("Id", AttributeValue.fromS("x".repeat(1022)))))));
+        assertEquals(2, TableLoader.writeUnits(List.of(put(Map.of("Id", AttributeValue.fromS("x".repeat(1023)))))));
+        // Strings count in UTF-8 bytes, not characters.
+        assertEquals(2, TableLoader.writeUnits(List.of(put(Map.of("Id", AttributeValue.fromS("é".repeat(600)))))));
+        // Binary values count their bytes, and nested values their names and a small overhead.
+        assertEquals(3, TableLoader.writeUnits(List.of(put(Map.of(
+            "Id", AttributeValue.fromB(SdkBytes.fromByteArray(new byte[2040])),
+            "M", AttributeValue.fromM(Map.of("L", AttributeValue.fromL(List.of(AttributeValue.fromS("x"))))))))));
+        // A batch costs the sum of its items.
+        assertEquals(4, TableLoader.writeUnits(List.of(
+            put(Map.of("Id", AttributeValue.fromN("1"))),
+            put(Map.of("Id", AttributeValue.fromS("x".repeat(2000)))),
+            put(Map.of("Id", AttributeValue.fromBool(true))))));
+    }
+
+    @Test
+    void letsTheCapacityThroughAtOnceAndThenPacesTheRate() throws InterruptedException {
+        TableLoader.TokenBucket bucket = new TableLoader.TokenBucket(1000, 100);
+
+        long start = System.nanoTime();
+        bucket.acquire(100);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+
+        // 200 more tokens take 200 ms at 1,000 per second.
+        bucket.acquire(100);
+        bucket.acquire(100);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(190), elapsed + " ns");
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), elapsed + " ns");
+    }
+
+    @Test
+    void letsARequestLargerThanTheCapacityThroughOnceTheBucketIsFull() throws InterruptedException {
+        TableLoader.TokenBucket bucket = new TableLoader.TokenBucket(1000, 50);
+
+        long start = System.nanoTime();
+        bucket.acquire(200);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+
+        // The bucket owes 150 tokens, so the next one waits for 151.
+        bucket.acquire(1);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(145));
+    }
+
+    @Test
+    void writesEveryItemAndResendsTheUnprocessedOnes() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 60; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"Id\": {\"N\": \"").append(i).append("\"}}");
+        }
+        Path file = Files.writeString(directory.resolve("items.json"), json.append("]"));
+        FakeTable table = new FakeTable();
+
+        TableLoader.Summary summary = new TableLoader(table,
+            new TableLoader.Config(2, 10_000, Duration.ofSeconds(1), 5, Duration.ofMillis(1), Duration.ZERO))
+            .load(file, "Recommendations");
+
+        assertEquals(60, summary.itemsRead());
+        assertEquals(60, summary.items());
+        assertEquals(2, summary.resentItems());
+        assertEquals(4, summary.batches());
+        assertEquals(60, table.written.stream().distinct().count());
+        assertEquals(1000, summary.writesPerSecond());
+    }
+
+    private static Map<String, AttributeValue> readItem(String json) throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(json.getBytes(StandardCharsets.UTF_8))) {
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            return TableLoader.readItem(parser);
+        }
+    }
+
+    private static WriteRequest put(Map<String, AttributeValue> item) {
+        return WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build();
+    }
+
+    // A provisioned table of 1,000 write units whose first BatchWriteItem call leaves two items unprocessed.
+    private static final class FakeTable implements DynamoDbClient {
+        private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public DescribeTableResponse describeTable(DescribeTableRequest request) {
+            return DescribeTableResponse.builder()
+                .table(table -> table
+                    .tableName(request.tableName())
+                    .provisionedThroughput(throughput -> throughput.readCapacityUnits(5L).writeCapacityUnits(1000L)))
+                .build();
+        }
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            List<WriteRequest> requests = request.requestItems().get("Recommendations");
+            int unprocessed = calls.getAndIncrement() == 0 ? 2 : 0;
+            List<WriteRequest> processed = requests.subList(0, requests.size() - unprocessed);
+            processed.forEach(write -> written.add(write.putRequest().item().get("Id").n()));
+            BatchWriteItemResponse.Builder response = BatchWriteItemResponse.builder();
+            if (unprocessed > 0) {
+                response.unprocessedItems(Map.of("Recommendations",
+                    requests.subList(requests.size() - unprocessed, requests.size())));
+            }
+            return response.build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}